@@ -20,5 +20,32 @@ public class AntiCheatConfig {
     
     // Violation threshold (0.0 - 1.0)
     public static final double VIOLATION_THRESHOLD = 0.70;
+
+    // Transport: true = POST raw JPEG (application/octet-stream) tới {AI_SERVICE_URL}/raw,
+    // false = JSON + Base64 (tương thích AI service cũ)
+    public static final boolean BINARY_TRANSPORT = false;
+
+    // Số request phân tích tối đa đang chạy đồng thời (frame mới bị bỏ khi quá tải)
+    public static final int MAX_IN_FLIGHT_REQUESTS = 2;
+
+    // Batch mode: proctor gom frame nhận từ students và gửi theo batch tới {AI_SERVICE_URL}/batch
+    // (students không tự gọi AI service nữa)
+    public static final boolean PROCTOR_BATCH_ANALYSIS = false;
+    public static final int BATCH_MAX_FRAMES = 16;
+    public static final long BATCH_WINDOW_MS = 1000;
+
+    // Violation aggregation: gộp các frame vi phạm liên tiếp cùng loại thành 1 episode
+    public static final long VIOLATION_MERGE_GAP_MS = 3000;       // Khoảng cách tối đa giữa 2 frame cùng episode
+    public static final long VIOLATION_MAX_EPISODE_MS = 30000;    // Episode dài hơn sẽ được báo cáo và mở episode mới
+    public static final long VIOLATION_FLUSH_INTERVAL_MS = 5000;  // Chu kỳ gửi batch episode lên server
+
+    // Frame gate: bỏ qua frame gần như giống frame đã gửi trước đó (0.0 - 1.0)
+    public static final double FRAME_DIFF_THRESHOLD = 0.02;
+
+    // Frame gate: vẫn gửi ít nhất 1 frame mỗi khoảng thời gian này
+    public static final long MAX_SKIP_INTERVAL_MS = 5000;
+
+    // Frame gate: chiều rộng tối đa của frame gửi lên AI service
+    public static final int ANALYSIS_MAX_WIDTH = 320;
 }
 
@@ -22,4 +22,16 @@ public class NetworkConfig {
     // Timeout
     public static final int CONNECTION_TIMEOUT = 30000; // 30 seconds
     public static final int READ_TIMEOUT = 5000; // 5 seconds
+
+    // LAN Multicast (tùy chọn): host meeting / course chat gửi 1 bản cho cả subnet thay vì 1 bản mỗi peer
+    // Peer khác subnet vẫn nhận unicast. Mọi client phải cùng bật để nhận được.
+    public static final boolean MULTICAST_ENABLED = false;
+    public static final int MULTICAST_VIDEO_PORT = 7000;
+    public static final int MULTICAST_AUDIO_PORT = 7001;
+    public static final int MULTICAST_CHAT_PORT = 7002;        // Chat trong meeting
+    public static final int MULTICAST_MESSENGER_PORT = 7003;   // Course chat của messenger
+    public static final int MULTICAST_BEACON_PORT = 7004;      // Beacon xác nhận membership (MulticastMembership)
+    public static final long MULTICAST_BEACON_INTERVAL_MS = 5000;
+    public static final int MULTICAST_TTL = 1;                 // Không đi qua router
+    public static final int MULTICAST_MAX_GROUPS = 20;         // Giới hạn membership mỗi socket (Linux mặc định 20)
 }
\ No newline at end of file
@@ -12,6 +12,10 @@ public class RMIConfig {
     public static final String PEER_SERVICE = "PeerService";
     public static final String EXAM_SERVICE = "ExamService";
 
+    // Client: timeout kết nối + deadline mỗi lời gọi RMI (không có response -> lỗi thay vì treo UI)
+    public static final int CONNECT_TIMEOUT_MS = 3000;
+    public static final int CALL_TIMEOUT_MS = 20000;
+
     public static String getRMIUrl(String serviceName) {
         return "rmi://" + RMI_HOST + ":" + RMI_PORT + "/" + serviceName;
     }
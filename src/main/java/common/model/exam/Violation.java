@@ -23,7 +23,9 @@ public class Violation implements Serializable {
     private double suspicionScore;
     private String decision;  // OK, WARNING, VIOLATION
     private List<String> flags;
-    private long timestamp;
+    private long timestamp;        // Thời điểm bắt đầu (episode start)
+    private long endTimestamp;     // Thời điểm cuối cùng phát hiện (episode end), = timestamp nếu chỉ 1 frame (0 với client cũ)
+    private int occurrences;       // Số frame vi phạm đã gộp vào episode này
     private String screenshot;  // base64, optional
 }
 
@@ -12,6 +12,12 @@ import java.util.List;
 public interface IChatService extends Remote {
     Message sendMessage(String conversationId, String senderId, String textContent) throws RemoteException;
     Message sendFileMessage(String conversationId, String senderId, MessageType type, String fileUrl) throws RemoteException;
+    /**
+     * Lưu nhiều message trong 1 lần gọi (theo thứ tự). messageId do client sinh - server bỏ qua message đã lưu
+     * (client gửi lại batch khi timeout). Server cũ không có method này -> client nhận ServerException
+     * với cause là UnmarshalException.
+     */
+    List<Message> sendMessages(List<Message> messages) throws RemoteException;
     List<Message> getMessages(String conversationId, int limit) throws RemoteException;
     List<Message> getMessagesAfter(String conversationId, long timestamp) throws RemoteException;
 
@@ -20,6 +26,7 @@ public interface IChatService extends Remote {
     Conversation getMeetingConversation(String meetingId) throws RemoteException;
 
     List<Conversation> getUserConversations(String userId) throws RemoteException;
+    List<Conversation> getUserConversationsAfter(String userId, long timestamp) throws RemoteException;
 
     boolean markAsRead(String conversationId, String userId) throws RemoteException;
 }
\ No newline at end of file
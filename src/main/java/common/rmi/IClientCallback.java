@@ -16,4 +16,6 @@ public interface IClientCallback extends Remote {
     void onUserJoinedMeeting(String meetingId, String userId, String userName) throws RemoteException;
     void onUserLeftMeeting(String meetingId, String userId, String userName) throws RemoteException;
     void onNewMessage(Message message) throws RemoteException;
+    void onUserJoinedExam(String examId, String userId, String userName) throws RemoteException;
+    void onUserLeftExam(String examId, String userId, String userName) throws RemoteException;
 }
\ No newline at end of file
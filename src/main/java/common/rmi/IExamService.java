@@ -106,11 +106,27 @@ public interface IExamService extends Remote {
      */
     boolean reportViolation(Violation violation) throws RemoteException;
 
+    /**
+     * Báo cáo nhiều violation trong 1 lần gọi (client đã gộp thành episode)
+     * @return số violation đã lưu
+     */
+    int reportViolations(List<Violation> violations) throws RemoteException;
+
     /**
      * Lấy violations gần đây của exam (cho proctor)
      */
     List<Violation> getRecentViolations(String examId, long sinceTimestamp) throws RemoteException;
 
+    /**
+     * Đăng ký nhận violations mới của exam qua callback (cho proctor)
+     */
+    boolean subscribeViolations(String examId, IViolationCallback callback) throws RemoteException;
+
+    /**
+     * Hủy đăng ký nhận violations
+     */
+    void unsubscribeViolations(String examId, IViolationCallback callback) throws RemoteException;
+
     /**
      * Lấy tất cả violations của exam (cho proctor)
      */
@@ -5,6 +5,8 @@ import common.model.Peer;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 public interface IPeerService extends Remote {
     boolean registerGlobalPeer(String userId, String ipAddress, int videoPort, 
@@ -12,7 +14,18 @@ public interface IPeerService extends Remote {
     boolean unregisterGlobalPeer(String userId) throws RemoteException;
     
     Peer getGlobalPeer(String userId) throws RemoteException;
+
+    /**
+     * Lấy peer của nhiều user trong 1 round-trip (user offline/không có -> không có trong map)
+     */
+    Map<String, Peer> getGlobalPeers(List<String> userIds) throws RemoteException;
     boolean isUserOnline(String userId) throws RemoteException;
     
     boolean heartbeat(String userId) throws RemoteException;
+
+    /**
+     * Đăng ký callback để server push sự kiện (meeting, exam, message) cho user - thay cho client polling
+     */
+    boolean registerCallback(String userId, IClientCallback callback) throws RemoteException;
+    void unregisterCallback(String userId) throws RemoteException;
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package common.rmi;
+
+import common.model.exam.Violation;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Violation callback - Server push violations mới cho proctor (thay cho polling)
+ */
+public interface IViolationCallback extends Remote {
+    void onViolations(List<Violation> violations) throws RemoteException;
+}
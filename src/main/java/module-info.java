@@ -13,6 +13,8 @@ module org.example.eduverseclient {
     requires cloudinary.core;
     requires javafx.web;  // Cho SwingFXUtils
     requires java.net.http;
+    requires java.management;  // RmiMetrics MXBean
+    requires jdk.jfr;          // RmiCallEvent
     requires com.google.gson;  // Cho HttpClient (không cần Gson/Jackson vì dùng manual JSON parsing)
 
     opens org.example.eduverseclient.service to com.google.gson;
@@ -23,6 +25,7 @@ module org.example.eduverseclient {
     //exports là để chỉ định các gói (packages) mà module này muốn chia sẻ với các module khác.
     exports common.rmi;
     exports common.model;
+    exports org.example.eduverseclient.network.rmi to java.management;
 
     // Mở quyền cho javafx.fxml truy cập vào package chứa Controller
     // để nó có thể khởi tạo LoginController và gán các biến @FXML
@@ -5,6 +5,8 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.network.rmi.RmiMetrics;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 @Slf4j
 public class ClientMain extends Application {
@@ -40,6 +42,9 @@ public class ClientMain extends Application {
         log.info(" Shutting down client...");
         // Cleanup resources
         RMIClient.getInstance().shutdown();
+        ClientExecutors.logStats();
+        RmiMetrics.getInstance().stop();
+        RmiMetrics.getInstance().logStats();
         log.info(" Client shutdown complete");
     }
     
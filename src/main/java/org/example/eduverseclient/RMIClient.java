@@ -11,12 +11,18 @@ import common.rmi.IMeetingService;
 import common.rmi.IPeerService;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.network.rmi.CachingStub;
+import org.example.eduverseclient.network.rmi.InstrumentedStub;
+import org.example.eduverseclient.network.rmi.ResilientStub;
+import org.example.eduverseclient.network.rmi.RmiMetrics;
+import org.example.eduverseclient.service.ClientCallbackService;
+import org.example.eduverseclient.utils.ClientExecutors;
 import org.example.eduverseclient.utils.NetworkUtil;
 
 
+import java.rmi.Remote;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -77,15 +83,49 @@ public class RMIClient {
         try {
             log.info("🔌 Connecting to RMI Server at {}:{}...", RMI_HOST, RMI_PORT);
 
+            ResilientStub.installSocketFactory();
+            RmiMetrics.getInstance().start();
             Registry registry = LocateRegistry.getRegistry(RMI_HOST, RMI_PORT);
 
-            // Lookup services
-            authService = (IAuthService) registry.lookup(RMIConfig.AUTH_SERVICE);
-            meetingService = (IMeetingService) registry.lookup(RMIConfig.MEETING_SERVICE);
-            courseService = (ICourseService) registry.lookup(RMIConfig.COURSE_SERVICE);
-            chatService = (IChatService) registry.lookup(RMIConfig.CHAT_SERVICE);
-            peerService = (IPeerService) registry.lookup(RMIConfig.PEER_SERVICE);
-            examService = (IExamService) registry.lookup(RMIConfig.EXAM_SERVICE);
+            // Lookup services, bọc trong ResilientStub: server restart -> tự lookup lại, không cần khởi động lại app
+            // Query idempotent hay gọi lại mỗi lần chuyển màn hình -> CachingStub (TTL + xóa khi có mutation)
+            authService = CachingStub.builder(IAuthService.class, RMIConfig.AUTH_SERVICE,
+                            remoteStub(registry, IAuthService.class, RMIConfig.AUTH_SERVICE))
+                    .cache("getUsersByRole", 5 * 60_000)
+                    .invalidateOn("register", "getUsersByRole")
+                    .build();
+            meetingService = remoteStub(registry, IMeetingService.class, RMIConfig.MEETING_SERVICE);
+            courseService = CachingStub.builder(ICourseService.class, RMIConfig.COURSE_SERVICE,
+                            remoteStub(registry, ICourseService.class, RMIConfig.COURSE_SERVICE))
+                    .cache("getAllCourses", 60_000)
+                    .cache("getCourseById", 5 * 60_000)
+                    .cache("getLessonsByCourse", 5 * 60_000)
+                    .cache("getEnrollmentsByStudent", 60_000)
+                    .cache("getEnrollmentByCourseAndStudent", 60_000)
+                    // Course chứa studentIds -> join/leave cũng làm cũ course
+                    .invalidateOn("joinCourse", "getAllCourses", "getCourseById",
+                            "getEnrollmentsByStudent", "getEnrollmentByCourseAndStudent")
+                    .invalidateOn("leaveCourse", "getAllCourses", "getCourseById",
+                            "getEnrollmentsByStudent", "getEnrollmentByCourseAndStudent")
+                    .invalidateOn("completeLessonInEnrollment",
+                            "getEnrollmentsByStudent", "getEnrollmentByCourseAndStudent")
+                    .invalidateOn("createCourse", "getAllCourses")
+                    .invalidateOn("updateCourse", "getAllCourses", "getCourseById")
+                    .invalidateOn("deleteCourse", "getAllCourses", "getCourseById", "getLessonsByCourse")
+                    .build();
+            chatService = remoteStub(registry, IChatService.class, RMIConfig.CHAT_SERVICE);
+            peerService = remoteStub(registry, IPeerService.class, RMIConfig.PEER_SERVICE);
+            // Exam chứa status + participants -> TTL ngắn, xóa khi start/end/join/leave
+            examService = CachingStub.builder(IExamService.class, RMIConfig.EXAM_SERVICE,
+                            remoteStub(registry, IExamService.class, RMIConfig.EXAM_SERVICE))
+                    .cache("getExamById", 10_000)
+                    .cache("getQuestions", 60_000)
+                    .invalidateOn("addQuestion", "getQuestions", "getExamById")
+                    .invalidateOn("startExam", "getExamById")
+                    .invalidateOn("endExam", "getExamById")
+                    .invalidateOn("joinExam", "getExamById")
+                    .invalidateOn("leaveExam", "getExamById")
+                    .build();
 
             log.info("✅ Connected to RMI Server");
             return true;
@@ -96,6 +136,14 @@ public class RMIClient {
         }
     }
 
+    /**
+     * Stub cho 1 service: ResilientStub (reconnect, circuit breaker) bọc trong InstrumentedStub (RmiMetrics)
+     */
+    private <T extends Remote> T remoteStub(Registry registry, Class<T> type, String name) throws Exception {
+        T stub = type.cast(registry.lookup(name));
+        return InstrumentedStub.wrap(type, name, ResilientStub.create(type, name, RMI_HOST, RMI_PORT, stub));
+    }
+
     /**
      * 🔥 AUTO-DETECT IP ADDRESS
      */
@@ -147,6 +195,9 @@ public class RMIClient {
 
                     // 4. Start heartbeat
                     startHeartbeat();
+
+                    // 5. Đăng ký nhận server push (meeting / exam / message events)
+                    ClientCallbackService.getInstance().register();
                 } else {
                     log.error("❌ Failed to get peer info");
                 }
@@ -174,6 +225,8 @@ public class RMIClient {
 
             // Stop heartbeat
             stopHeartbeat();
+            ClientCallbackService.getInstance().unregister();
+            CachingStub.clearAll();
 
             // Call server logout
             boolean success = authService.logout(currentUser.getUserId());
@@ -201,13 +254,17 @@ public class RMIClient {
             return;
         }
 
-        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+        heartbeatExecutor = ClientExecutors.newScheduler("rmi-heartbeat");
 
         heartbeatExecutor.scheduleAtFixedRate(() -> {
             try {
                 if (currentUser != null) {
                     boolean alive = peerService.heartbeat(currentUser.getUserId());
-                    if (!alive) log.warn("⚠️ Server reported heartbeat failed");
+                    if (!alive) {
+                        log.warn("⚠️ Server reported heartbeat failed");
+                        // Server có thể vừa restart -> mất callback đã đăng ký
+                        ClientCallbackService.getInstance().register();
+                    }
                 }
             } catch (Exception e) {
                 // ✨ SỬA: Bắt lỗi kết nối im lặng hơn
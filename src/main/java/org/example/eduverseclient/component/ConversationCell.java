@@ -0,0 +1,265 @@
+package org.example.eduverseclient.component;
+
+import common.model.Conversation;
+import common.model.Message;
+import common.model.User;
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.OverrunStyle;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import org.example.eduverseclient.service.ImageCache;
+import org.example.eduverseclient.service.MessengerServiceHelper;
+import org.example.eduverseclient.service.UserDirectory;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * ConversationCell - 1 ô của ListView conversation trong Messenger
+ * - Chỉ cell đang hiển thị mới load preview (MessageStore) và avatar (UserDirectory):
+ *   100 conversation nhưng viewport 8 dòng -> ~8 lần load
+ * - Preview được cache theo conversationId kèm lastUpdate (PreviewCache dùng chung giữa các cell):
+ *   cuộn qua lại không đọc lại, conversation có message mới (lastUpdate đổi) thì load lại.
+ *   Message realtime được seed thẳng vào cache (seed) với lastUpdate = timestamp của message, vì MessageStore
+ *   có thể chưa có message đó (outbox gửi theo batch); tail cũ hơn lastUpdate thì không cache
+ * - ListView nên dùng fixedCellSize = CELL_HEIGHT để không phải đo (và load) cell ngoài viewport
+ */
+public class ConversationCell extends ListCell<Conversation> {
+
+    public static final double CELL_HEIGHT = 82;
+
+    private static final String CARD_STYLE = "-fx-padding: 10; -fx-background-color: white; -fx-background-radius: 5;";
+    private static final String HOVER_STYLE = "-fx-padding: 10; -fx-background-color: #F0F0F0; -fx-background-radius: 5;";
+    private static final String SELECTED_STYLE = "-fx-padding: 10; -fx-background-color: #E3F2FD; -fx-background-radius: 5;";
+
+    private final String currentUserId;
+    private final Function<Conversation, String> displayNameProvider;
+    private final Function<Message, String> previewFormatter;
+    private final PreviewCache previewCache;
+    private final UserDirectory userDirectory = UserDirectory.getInstance();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+
+    private final HBox card = new HBox(10);
+    private final Circle defaultAvatar = new Circle(25, Color.LIGHTGRAY);
+    private final Label initialLabel = new Label("?");
+    private final ImageView avatarView = new ImageView();
+    private final Label nameLabel = new Label();
+    private final Label subtitleLabel = new Label();
+    private final Label previewLabel = new Label();
+    private final Label timeLabel = new Label();
+
+    private boolean hovered = false;
+
+    public ConversationCell(String currentUserId,
+                            Function<Conversation, String> displayNameProvider,
+                            Function<Message, String> previewFormatter,
+                            PreviewCache previewCache) {
+        this.currentUserId = currentUserId;
+        this.displayNameProvider = displayNameProvider;
+        this.previewFormatter = previewFormatter;
+        this.previewCache = previewCache;
+
+        setStyle("-fx-background-color: transparent; -fx-padding: 1 0 1 0;");
+        setText(null);
+
+        StackPane avatarContainer = new StackPane();
+        avatarContainer.setPrefSize(50, 50);
+        initialLabel.setStyle("-fx-font-size: 20; -fx-font-weight: bold; -fx-text-fill: #666;");
+        avatarView.setFitWidth(50);
+        avatarView.setFitHeight(50);
+        avatarView.setPreserveRatio(true);
+        avatarView.setSmooth(true);
+        avatarView.setClip(new Circle(25, 25, 25));
+        avatarContainer.getChildren().addAll(defaultAvatar, initialLabel, avatarView);
+
+        nameLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14;");
+        nameLabel.setTextOverrun(OverrunStyle.ELLIPSIS);
+        subtitleLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11;");
+        previewLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 12;");
+        previewLabel.setMaxWidth(200);
+        previewLabel.setTextOverrun(OverrunStyle.ELLIPSIS);
+        timeLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 11;");
+
+        VBox info = new VBox(3, nameLabel, subtitleLabel, previewLabel, timeLabel);
+        info.setPrefWidth(200);
+
+        card.setStyle(CARD_STYLE);
+        card.getChildren().addAll(avatarContainer, info);
+
+        setOnMouseEntered(e -> {
+            hovered = true;
+            applyCardStyle();
+        });
+        setOnMouseExited(e -> {
+            hovered = false;
+            applyCardStyle();
+        });
+    }
+
+    /**
+     * Preview mới nhất của mỗi conversation, hợp lệ khi lastUpdate chưa đổi
+     */
+    public static final class PreviewCache {
+        private final Map<String, Preview> previews = new ConcurrentHashMap<>();
+
+        private static final class Preview {
+            final long lastUpdate;
+            final String text;
+
+            Preview(long lastUpdate, String text) {
+                this.lastUpdate = lastUpdate;
+                this.text = text;
+            }
+        }
+
+        String get(Conversation conv) {
+            Preview preview = previews.get(conv.getConversationId());
+            return preview != null && preview.lastUpdate == conv.getLastUpdate() ? preview.text : null;
+        }
+
+        void put(Conversation conv, String text) {
+            put(conv.getConversationId(), conv.getLastUpdate(), text);
+        }
+
+        /**
+         * Preview từ message vừa nhận/gửi (ConversationStore đặt lastUpdate = timestamp của message)
+         */
+        public void seed(Message message, String text) {
+            if (message == null || message.getConversationId() == null) return;
+            put(message.getConversationId(), message.getTimestamp(), text);
+        }
+
+        private void put(String conversationId, long lastUpdate, String text) {
+            // Không ghi đè preview mới hơn (load chậm về sau message realtime)
+            previews.merge(conversationId, new Preview(lastUpdate, text),
+                    (old, fresh) -> fresh.lastUpdate >= old.lastUpdate ? fresh : old);
+        }
+
+        public void clear() {
+            previews.clear();
+        }
+    }
+
+    @Override
+    protected void updateItem(Conversation conv, boolean empty) {
+        super.updateItem(conv, empty);
+        if (empty || conv == null) {
+            setGraphic(null);
+            ImageCache.getInstance().clear(avatarView);
+            return;
+        }
+
+        nameLabel.setText(displayNameProvider.apply(conv));
+        timeLabel.setText(conv.getLastUpdate() == 0 ? "" : timeFormat.format(new Date(conv.getLastUpdate())));
+        bindAvatar(conv);
+        bindPreview(conv);
+        applyCardStyle();
+        setGraphic(card);
+    }
+
+    @Override
+    public void updateSelected(boolean selected) {
+        super.updateSelected(selected);
+        applyCardStyle();
+    }
+
+    private void applyCardStyle() {
+        card.setStyle(isSelected() ? SELECTED_STYLE : hovered ? HOVER_STYLE : CARD_STYLE);
+    }
+
+    private void bindAvatar(Conversation conv) {
+        ImageCache.getInstance().clear(avatarView);
+
+        if ("courseChat".equals(conv.getType())) {
+            // Course icon
+            defaultAvatar.setFill(Color.web("#4CAF50"));
+            initialLabel.setText("📚");
+            subtitleLabel.setText("Course Chat");
+            return;
+        }
+
+        defaultAvatar.setFill(Color.LIGHTGRAY);
+        initialLabel.setText("?");
+        subtitleLabel.setText("Online");
+
+        String otherUserId = otherParticipant(conv);
+        if (otherUserId == null) return;
+
+        User cached = userDirectory.peek(otherUserId);
+        if (cached != null) {
+            applyAvatar(cached);
+            return;
+        }
+        userDirectory.getUser(otherUserId).thenAccept(otherUser -> Platform.runLater(() -> {
+            // Cell đã được tái sử dụng cho conversation khác
+            if (getItem() != conv) return;
+            applyAvatar(otherUser);
+            nameLabel.setText(displayNameProvider.apply(conv));
+        }));
+    }
+
+    private void applyAvatar(User user) {
+        if (user == null) return;
+        if (user.getFullName() != null && !user.getFullName().isEmpty()) {
+            initialLabel.setText(user.getFullName().substring(0, 1).toUpperCase());
+        }
+        if (user.getAvatarUrl() != null && !user.getAvatarUrl().isEmpty()) {
+            ImageCache.getInstance().loadInto(avatarView, user.getAvatarUrl(), 50, 50);
+        }
+    }
+
+    private void bindPreview(Conversation conv) {
+        if (conv.getConversationId() == null) {
+            previewLabel.setText("");
+            return;
+        }
+
+        String cached = previewCache.get(conv);
+        if (cached != null) {
+            previewLabel.setText(cached);
+            return;
+        }
+
+        previewLabel.setText("");
+        MessengerServiceHelper.getInstance().getLastMessage(conv)
+            .thenAccept(lastMessage -> {
+                String preview = lastMessage != null ? previewFormatter.apply(lastMessage) : "";
+                if (isCurrentTail(conv, lastMessage)) {
+                    previewCache.put(conv, preview);
+                }
+                Platform.runLater(() -> {
+                    if (getItem() == conv) {
+                        previewLabel.setText(preview);
+                    }
+                });
+            });
+    }
+
+    /**
+     * Tail của MessageStore đúng là message mới nhất của conv? (sync chưa thấy message mới -> tail cũ hơn
+     * lastUpdate: hiển thị tạm nhưng không cache, lần bind sau load lại)
+     */
+    private static boolean isCurrentTail(Conversation conv, Message lastMessage) {
+        if (lastMessage == null) return conv.getLastMessageId() == null;
+        return lastMessage.getTimestamp() >= conv.getLastUpdate()
+                || Objects.equals(conv.getLastMessageId(), lastMessage.getMessageId());
+    }
+
+    private String otherParticipant(Conversation conv) {
+        if (conv.getParticipants() == null) return null;
+        return conv.getParticipants().stream()
+                .filter(id -> !id.equals(currentUserId))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.eduverseclient.component;
+
+import common.enums.MessageType;
+import common.model.Message;
+import common.model.User;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import org.example.eduverseclient.service.ImageCache;
+import org.example.eduverseclient.service.UserDirectory;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * MessageBubbleCell - 1 ô của ListView message trong Messenger
+ * - ListView chỉ tạo đủ cell cho viewport và tái sử dụng khi cuộn: node tree được dựng 1 lần trong constructor,
+ *   updateItem chỉ đổi nội dung / ẩn hiện từng phần theo loại message
+ * - Avatar load bất đồng bộ qua UserDirectory; kết quả về muộn (cell đã được dùng cho message khác) bị bỏ qua
+ * - Ảnh / thumbnail / avatar qua ImageCache, decode đúng kích thước hiển thị
+ */
+public class MessageBubbleCell extends ListCell<Message> {
+
+    private static final String SENT_TEXT_STYLE = "-fx-text-fill: white; -fx-font-size: 14;";
+    private static final String RECEIVED_TEXT_STYLE = "-fx-text-fill: black; -fx-font-size: 14;";
+
+    private final String currentUserId;
+    private final Consumer<String> onOpenFile;
+    private final UserDirectory userDirectory = UserDirectory.getInstance();
+    private final ImageCache imageCache = ImageCache.getInstance();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+
+    private final HBox messageRow = new HBox(10);
+
+    // Avatar (chỉ message nhận)
+    private final StackPane avatarContainer = new StackPane();
+    private final Circle defaultAvatar = new Circle(20, Color.LIGHTGRAY);
+    private final Label initialLabel = new Label("?");
+    private final ImageView avatarView = new ImageView();
+
+    // Nội dung
+    private final VBox messageContent = new VBox(5);
+    private final Label textLabel = new Label();
+    private final ImageView imageView = new ImageView();
+    private final StackPane videoContainer = new StackPane();
+    private final ImageView thumbnailView = new ImageView();
+    private final Label fileLabel = new Label();
+    private final Label timeLabel = new Label();
+
+    public MessageBubbleCell(String currentUserId, Consumer<String> onOpenFile) {
+        this.currentUserId = currentUserId;
+        this.onOpenFile = onOpenFile;
+
+        setStyle("-fx-background-color: transparent; -fx-padding: 5 10 5 10;");
+        setText(null);
+
+        // Avatar
+        avatarContainer.setPrefSize(40, 40);
+        initialLabel.setStyle("-fx-font-size: 18; -fx-font-weight: bold; -fx-text-fill: #666;");
+        avatarView.setFitWidth(40);
+        avatarView.setFitHeight(40);
+        avatarView.setPreserveRatio(true);
+        avatarView.setSmooth(true);
+        avatarView.setClip(new Circle(20, 20, 20));
+        avatarContainer.getChildren().addAll(defaultAvatar, initialLabel, avatarView);
+
+        // Text / file name
+        textLabel.setWrapText(true);
+        fileLabel.setWrapText(true);
+
+        // Image
+        imageView.setFitWidth(300);
+        imageView.setFitHeight(300);
+        imageView.setPreserveRatio(true);
+        imageView.setSmooth(true);
+        imageView.setCache(true);
+
+        // Video: thumbnail + nút play
+        videoContainer.setPrefWidth(300);
+        videoContainer.setPrefHeight(200);
+        thumbnailView.setFitWidth(300);
+        thumbnailView.setFitHeight(200);
+        thumbnailView.setPreserveRatio(true);
+        thumbnailView.setSmooth(true);
+        Circle playButton = new Circle(30, Color.WHITE);
+        playButton.setOpacity(0.8);
+        Label playIcon = new Label("▶");
+        playIcon.setStyle("-fx-font-size: 24; -fx-text-fill: #0084FF;");
+        StackPane playOverlay = new StackPane(playButton, playIcon);
+        videoContainer.getChildren().addAll(thumbnailView, playOverlay);
+        videoContainer.setStyle("-fx-cursor: hand;");
+        videoContainer.setOnMouseClicked(e -> openCurrentFile());
+
+        HBox fileContainer = new HBox(10, fileLabel);
+        fileContainer.setAlignment(Pos.CENTER_LEFT);
+        fileContainer.setStyle("-fx-cursor: hand;");
+        fileContainer.setOnMouseClicked(e -> openCurrentFile());
+
+        timeLabel.setStyle("-fx-font-size: 10; -fx-text-fill: #999;");
+
+        messageContent.setMaxWidth(400);
+        messageContent.setPadding(new Insets(10, 15, 10, 15));
+        messageContent.getChildren().addAll(textLabel, imageView, videoContainer, fileContainer, timeLabel);
+
+        messageRow.getChildren().addAll(avatarContainer, messageContent);
+    }
+
+    @Override
+    protected void updateItem(Message message, boolean empty) {
+        super.updateItem(message, empty);
+        if (empty || message == null) {
+            setGraphic(null);
+            imageCache.clear(imageView);
+            imageCache.clear(thumbnailView);
+            imageCache.clear(avatarView);
+            return;
+        }
+
+        boolean isSent = currentUserId != null && currentUserId.equals(message.getSenderId());
+        String textStyle = isSent ? SENT_TEXT_STYLE : RECEIVED_TEXT_STYLE;
+
+        messageRow.setAlignment(isSent ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
+        messageContent.setStyle(isSent
+                ? "-fx-background-color: #0084FF; -fx-background-radius: 18;"
+                : "-fx-background-color: #E4E6EB; -fx-background-radius: 18;");
+
+        show(avatarContainer, !isSent);
+        if (!isSent) {
+            bindAvatar(message);
+        }
+
+        String content = message.getContent();
+        boolean hasUrl = content != null && content.startsWith("http");
+        MessageType type = message.getType();
+
+        show(imageView, false);
+        show(videoContainer, false);
+        show(fileLabel.getParent(), false);
+        show(textLabel, false);
+        imageCache.clear(imageView);
+        imageCache.clear(thumbnailView);
+
+        if (type == MessageType.IMAGE && hasUrl) {
+            imageCache.loadInto(imageView, content, 300, 300);
+            show(imageView, true);
+        } else if (type == MessageType.VIDEO && hasUrl) {
+            // Cloudinary tự sinh thumbnail qua transformation
+            String thumbnailUrl = content.contains("upload/")
+                    ? content.replace("/upload/", "/upload/w_300,h_200,c_fill/")
+                    : content;
+            imageCache.loadInto(thumbnailView, thumbnailUrl, 300, 200);
+            show(videoContainer, true);
+        } else if (type == MessageType.FILE && hasUrl) {
+            fileLabel.setText("📎 " + (content.contains("/") ? content.substring(content.lastIndexOf("/") + 1) : "File"));
+            fileLabel.setStyle(textStyle);
+            show(fileLabel.getParent(), true);
+        } else {
+            // TEXT, hoặc FILE / VIDEO / IMAGE chưa có URL
+            textLabel.setText(content != null ? content : (type == MessageType.TEXT ? "" : "[Media]"));
+            textLabel.setStyle(textStyle);
+            show(textLabel, true);
+        }
+
+        timeLabel.setText(timeFormat.format(new Date(message.getTimestamp())));
+        setGraphic(messageRow);
+    }
+
+    private void bindAvatar(Message message) {
+        initialLabel.setText("?");
+        imageCache.clear(avatarView);
+
+        String senderId = message.getSenderId();
+        User cached = userDirectory.peek(senderId);
+        if (cached != null) {
+            applyAvatar(cached);
+            return;
+        }
+        userDirectory.getUser(senderId).thenAccept(sender -> Platform.runLater(() -> {
+            // Cell đã được tái sử dụng cho message khác
+            if (getItem() != message) return;
+            applyAvatar(sender);
+        }));
+    }
+
+    private void applyAvatar(User sender) {
+        if (sender == null) return;
+        if (sender.getFullName() != null && !sender.getFullName().isEmpty()) {
+            initialLabel.setText(sender.getFullName().substring(0, 1).toUpperCase());
+        }
+        if (sender.getAvatarUrl() != null && !sender.getAvatarUrl().isEmpty()) {
+            imageCache.loadInto(avatarView, sender.getAvatarUrl(), 40, 40);
+        }
+    }
+
+    private void openCurrentFile() {
+        Message message = getItem();
+        if (message != null && message.getContent() != null && onOpenFile != null) {
+            onOpenFile.accept(message.getContent());
+        }
+    }
+
+    private static void show(Node node, boolean visible) {
+        node.setVisible(visible);
+        node.setManaged(visible);
+    }
+}
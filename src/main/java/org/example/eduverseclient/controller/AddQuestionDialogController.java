@@ -8,6 +8,7 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.service.ExamService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -131,7 +132,7 @@ public class AddQuestionDialogController {
             });
         } else {
             // Thêm vào exam đã tồn tại
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 boolean success = examService.addQuestion(examId, question);
                 
                 Platform.runLater(() -> {
@@ -145,7 +146,7 @@ public class AddQuestionDialogController {
                         showError("Không thể thêm câu hỏi!");
                     }
                 });
-            }).start();
+            });
         }
     }
     
@@ -7,11 +7,11 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.service.ImageCache;
 
 @Slf4j
 @Getter
@@ -77,13 +77,8 @@ public class CourseCardController {
 
         // Set thumbnail
         if (course.getThumbnailUrl() != null && !course.getThumbnailUrl().isEmpty()) {
-            try {
-                Image image = new Image(course.getThumbnailUrl(), true);
-                thumbnailImage.setImage(image);
-            } catch (Exception e) {
-                log.warn("Failed to load thumbnail: {}", course.getThumbnailUrl());
-                setPlaceholderImage();
-            }
+            ImageCache.getInstance().loadInto(thumbnailImage, course.getThumbnailUrl(), 280, 157,
+                    this::setPlaceholderImage);
         } else {
             setPlaceholderImage();
         }
@@ -20,6 +20,7 @@ import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.service.CourseService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -118,7 +119,7 @@ public class CourseDashboardController {
                         log.error("Failed to load courses from Firebase", e);
                         return new ArrayList<Course>();
                     }
-                }).thenAccept(courses -> {
+                }, ClientExecutors.io()).thenAccept(courses -> {
                     Platform.runLater(() -> {
                         if (courses != null && !courses.isEmpty()) {
                             allCourses.addAll(courses);
@@ -275,7 +276,7 @@ public class CourseDashboardController {
                 log.error("Failed to load my courses", e);
                 return new ArrayList<Course>();
             }
-        }).thenAccept(courses -> {
+        }, ClientExecutors.io()).thenAccept(courses -> {
             Platform.runLater(() -> {
                 displayMyCoursesWithProgress(courses);
             });
@@ -297,7 +298,7 @@ public class CourseDashboardController {
                 log.error("Failed to load enrollments", e);
                 return new ArrayList<CourseEnrollment>();
             }
-        }).thenAccept(enrollments -> {
+        }, ClientExecutors.io()).thenAccept(enrollments -> {
             Platform.runLater(() -> {
                 for (Course course : courses) {
                     try {
@@ -463,7 +464,7 @@ public class CourseDashboardController {
                 log.error("Failed to load recent lessons", e);
                 return new ArrayList<Lesson>();
             }
-        }).thenAccept(lessons -> {
+        }, ClientExecutors.io()).thenAccept(lessons -> {
             Platform.runLater(() -> {
                 displayRecentLessons(lessons);
             });
@@ -572,7 +573,7 @@ public class CourseDashboardController {
                 log.error("Failed to load recent exam results", e);
                 return new ArrayList<ExamResult>();
             }
-        }).thenAccept(examResults -> {
+        }, ClientExecutors.io()).thenAccept(examResults -> {
             Platform.runLater(() -> {
                 displayRecentExamResults(examResults);
             });
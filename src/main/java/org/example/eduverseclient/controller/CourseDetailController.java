@@ -8,13 +8,14 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.service.CourseService;
+import org.example.eduverseclient.service.ImageCache;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -78,7 +79,7 @@ public class CourseDetailController {
             try {
                 CompletableFuture.supplyAsync(() -> {
                     return courseService.getCourseById(courseId);
-                }).thenAccept(loadedCourse -> {
+                }, ClientExecutors.io()).thenAccept(loadedCourse -> {
                     Platform.runLater(() -> {
                         if (loadedCourse != null) {
                             log.info("✅ Course loaded: {}", loadedCourse.getTitle());
@@ -152,31 +153,9 @@ public class CourseDetailController {
     private void loadThumbnail() {
         if (course.getThumbnailUrl() != null && !course.getThumbnailUrl().isEmpty()) {
             log.info("📷 Loading thumbnail from: {}", course.getThumbnailUrl());
-            try {
-                Image image = new Image(course.getThumbnailUrl(), true);
-
-                // Check if image loaded successfully
-                image.errorProperty().addListener((obs, oldError, newError) -> {
-                    if (newError) {
-                        log.warn("❌ Failed to load thumbnail: {}", course.getThumbnailUrl());
-                        Platform.runLater(this::setPlaceholderThumbnail);
-                    }
-                });
-
-                image.progressProperty().addListener((obs, oldProgress, newProgress) -> {
-                    if (newProgress.doubleValue() >= 1.0) {
-                        log.info("✅ Thumbnail loaded successfully");
-                        Platform.runLater(() -> thumbnailImageView.setImage(image));
-                    }
-                });
-
-                // Set image immediately (will show when loaded)
-                thumbnailImageView.setImage(image);
-
-            } catch (Exception e) {
-                log.error("❌ Exception loading thumbnail", e);
-                setPlaceholderThumbnail();
-            }
+            // Cache RAM/đĩa; lỗi tải / decode -> placeholder
+            ImageCache.getInstance().loadInto(thumbnailImageView, course.getThumbnailUrl(), 340, 190,
+                    this::setPlaceholderThumbnail);
         } else {
             log.warn("⚠️ No thumbnail URL provided");
             setPlaceholderThumbnail();
@@ -196,7 +175,7 @@ public class CourseDetailController {
             List<Lesson> loadedLessons = courseService.getLessonsByCourse(course.getCourseId());
             log.info("📚 Found {} lessons", loadedLessons != null ? loadedLessons.size() : 0);
             return loadedLessons;
-        }).thenAccept(loadedLessons -> {
+        }, ClientExecutors.io()).thenAccept(loadedLessons -> {
             Platform.runLater(() -> {
                 this.lessons = loadedLessons != null ? loadedLessons : new ArrayList<>();
 
@@ -491,7 +470,7 @@ public class CourseDetailController {
             if (response == ButtonType.OK) {
                 CompletableFuture.supplyAsync(() -> {
                     return courseService.joinCourse(course.getCourseId(), currentUserId);
-                }).thenAccept(success -> {
+                }, ClientExecutors.io()).thenAccept(success -> {
                     Platform.runLater(() -> {
                         if (success) {
                             isEnrolled = true;
@@ -15,6 +15,7 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.service.ExamService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -102,7 +103,7 @@ public class CreateExamDialogController {
             long scheduledTime = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
             
             // Create exam
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 Exam exam = examService.createExam(
                     course.getCourseId(),
                     title,
@@ -135,7 +136,7 @@ public class CreateExamDialogController {
                 } else {
                     Platform.runLater(() -> showError("Không thể tạo bài thi!"));
                 }
-            }).start();
+            });
             
         } catch (Exception e) {
             showError("Định dạng giờ không đúng! (VD: 14:30)");
@@ -8,6 +8,7 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.service.MeetingService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -69,7 +70,7 @@ public class CreateMeetingDialogController {
             long scheduledTime = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
             
             // Create meeting
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 Meeting meeting = meetingService.createMeeting("course_demo", title, scheduledTime);
                 
                 Platform.runLater(() -> {
@@ -85,7 +86,7 @@ public class CreateMeetingDialogController {
                         showError("Không thể tạo meeting!");
                     }
                 });
-            }).start();
+            });
             
         } catch (Exception e) {
             showError("Định dạng giờ không đúng! (VD: 14:30)");
@@ -14,6 +14,7 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 @Slf4j
 public class DashboardController {
@@ -141,10 +142,10 @@ public class DashboardController {
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
                 // Logout
-                new Thread(() -> {
+                ClientExecutors.io().execute(() -> {
                     rmiClient.logout();
                     Platform.runLater(this::backToLogin);
-                }).start();
+                });
             }
         });
     }
@@ -18,6 +18,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.service.CourseService;
 import org.example.eduverseclient.service.ExamService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -59,7 +60,7 @@ public class ExamListController {
     }
     
     private void loadCourses() {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             List<Course> coursesList;
             var currentUser = RMIClient.getInstance().getCurrentUser();
             
@@ -110,11 +111,11 @@ public class ExamListController {
                     }
                 });
             });
-        }).start();
+        });
     }
     
     private void loadExams(String courseId) {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             List<Exam> exams = examService.getExamsByCourse(courseId);
             
             Platform.runLater(() -> {
@@ -128,7 +129,7 @@ public class ExamListController {
                     exams.forEach(this::addExamCard);
                 }
             });
-        }).start();
+        });
     }
     
     private void addExamCard(Exam exam) {
@@ -254,7 +255,7 @@ public class ExamListController {
         
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                new Thread(() -> {
+                ClientExecutors.io().execute(() -> {
                     boolean success = examService.startExam(exam.getExamId());
                     
                     Platform.runLater(() -> {
@@ -267,7 +268,7 @@ public class ExamListController {
                             showError("Không thể bắt đầu bài thi!");
                         }
                     });
-                }).start();
+                });
             }
         });
     }
@@ -280,7 +281,7 @@ public class ExamListController {
         
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                new Thread(() -> {
+                ClientExecutors.io().execute(() -> {
                     boolean success = examService.endExam(exam.getExamId());
                     
                     Platform.runLater(() -> {
@@ -291,13 +292,13 @@ public class ExamListController {
                             showError("Không thể kết thúc bài thi!");
                         }
                     });
-                }).start();
+                });
             }
         });
     }
     
     private void handleJoinExam(Exam exam) {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             ExamParticipant participant = examService.joinExam(exam.getExamId());
             
             Platform.runLater(() -> {
@@ -307,7 +308,7 @@ public class ExamListController {
                     showError("Không thể tham gia bài thi!");
                 }
             });
-        }).start();
+        });
     }
     
     private void openExamRoom(Exam exam, ExamParticipant participant) {
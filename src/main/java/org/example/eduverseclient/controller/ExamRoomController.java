@@ -17,12 +17,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.component.VideoPanel;
 import org.example.eduverseclient.network.media.ExamStreamManager;
+import org.example.eduverseclient.service.ClientEventBus;
 import org.example.eduverseclient.service.ExamService;
+import org.example.eduverseclient.service.ViolationFeed;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javafx.scene.control.ProgressBar;
@@ -62,14 +64,15 @@ public class ExamRoomController {
     private long examDurationMs;
     private ScheduledExecutorService updateExecutor;
     private ScheduledExecutorService timerExecutor;
+    private ClientEventBus.Subscription membershipSubscription;
 
     private Map<String, String> participantNames = new ConcurrentHashMap<>();
     
     // Violations tracking (proctor)
     private Map<String, List<common.model.exam.Violation>> studentViolations = new ConcurrentHashMap<>(); // userId -> List<Violation>
     private Map<String, Double> studentSuspicionScores = new ConcurrentHashMap<>(); // userId -> latest suspicion score
-    private long lastViolationUpdateTime = 0;
-    private ScheduledExecutorService violationUpdateExecutor;
+    private Map<String, ViolationCard> violationCards = new HashMap<>();  // userId -> card (chỉ truy cập trên FX thread)
+    private ViolationFeed violationFeed;
 
     @FXML
     public void initialize() {
@@ -177,148 +180,152 @@ public class ExamRoomController {
 
     private void startViolationUpdates() {
         if (!isProctor) return;
-        
-        lastViolationUpdateTime = System.currentTimeMillis();
-        violationUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
-        violationUpdateExecutor.scheduleAtFixedRate(this::updateViolationsPanel, 0, 2, TimeUnit.SECONDS);
+
+        showEmptyViolationsPanel();
+        violationFeed = new ViolationFeed(exam.getExamId(),
+                violations -> Platform.runLater(() -> applyViolations(violations)));
+        // export + subscribe là RMI -> không chặn FX thread
+        ClientExecutors.io().execute(violationFeed::start);
     }
 
-    private void updateViolationsPanel() {
-        if (!isProctor || violationsPanel == null) return;
-        
-        new Thread(() -> {
-            try {
-                List<common.model.exam.Violation> recentViolations = examService.getRecentViolations(
-                        exam.getExamId(), lastViolationUpdateTime);
-                
-                if (recentViolations != null && !recentViolations.isEmpty()) {
-                    // Update violation maps
-                    for (common.model.exam.Violation violation : recentViolations) {
-                        String userId = violation.getUserId();
-                        studentViolations.computeIfAbsent(userId, k -> new ArrayList<>()).add(violation);
-                        studentSuspicionScores.put(userId, violation.getSuspicionScore());
-                    }
-                    
-                    lastViolationUpdateTime = System.currentTimeMillis();
-                    
-                    // Update UI
-                    Platform.runLater(this::refreshViolationsPanel);
-                }
-            } catch (Exception e) {
-                log.warn("Failed to update violations: {}", e.getMessage());
+    /**
+     * Cập nhật incremental: chỉ card của student có violation mới bị chạm tới (FX thread)
+     */
+    private void applyViolations(List<common.model.exam.Violation> newViolations) {
+        if (violationsPanel == null) return;
+
+        Set<String> changedUsers = new LinkedHashSet<>();
+        for (common.model.exam.Violation violation : newViolations) {
+            String userId = violation.getUserId();
+            if (userId == null) continue;
+            studentViolations.computeIfAbsent(userId, k -> new ArrayList<>()).add(violation);
+            studentSuspicionScores.put(userId, violation.getSuspicionScore());
+            if (violation.getUserName() != null) {
+                participantNames.putIfAbsent(userId, violation.getUserName());
             }
-        }).start();
+            changedUsers.add(userId);
+        }
+
+        if (changedUsers.isEmpty()) return;
+
+        if (violationCards.isEmpty()) {
+            violationsPanel.getChildren().clear();  // Bỏ label "chưa có cảnh báo"
+        }
+
+        for (String userId : changedUsers) {
+            ViolationCard card = violationCards.computeIfAbsent(userId, id -> {
+                ViolationCard created = new ViolationCard();
+                violationsPanel.getChildren().add(created.root);
+                return created;
+            });
+            String userName = participantNames.getOrDefault(userId, "Student " + userId.substring(0, Math.min(8, userId.length())));
+            card.update(userName, studentViolations.get(userId), studentSuspicionScores.getOrDefault(userId, 0.0));
+        }
     }
 
-    private void refreshViolationsPanel() {
+    private void showEmptyViolationsPanel() {
         if (violationsPanel == null) return;
-        
+
         violationsPanel.getChildren().clear();
-        
+
         // Set padding và spacing lớn hơn cho violations panel
         violationsPanel.setSpacing(15);
         violationsPanel.setStyle("-fx-padding: 15;");
-        
-        if (studentViolations.isEmpty()) {
-            Label emptyLabel = new Label("Chưa có cảnh báo gian lận nào.");
-            emptyLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 16; -fx-padding: 20;");
-            violationsPanel.getChildren().add(emptyLabel);
-            return;
-        }
-        
-        // Hiển thị từng student với violations
-        for (Map.Entry<String, List<common.model.exam.Violation>> entry : studentViolations.entrySet()) {
-            String userId = entry.getKey();
-            List<common.model.exam.Violation> violations = entry.getValue();
-            String userName = participantNames.getOrDefault(userId, "Student " + userId.substring(0, 8));
-            Double latestScore = studentSuspicionScores.getOrDefault(userId, 0.0);
-            
-            VBox studentCard = createStudentViolationCard(userId, userName, violations, latestScore);
-            violationsPanel.getChildren().add(studentCard);
-        }
+
+        Label emptyLabel = new Label("Chưa có cảnh báo gian lận nào.");
+        emptyLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 16; -fx-padding: 20;");
+        violationsPanel.getChildren().add(emptyLabel);
     }
 
-    private VBox createStudentViolationCard(String userId, String userName, 
-                                           List<common.model.exam.Violation> violations, 
-                                           double latestScore) {
-        VBox card = new VBox(12);  // Tăng spacing từ 8 lên 12
-        
-        // Determine status color
-        String borderColor = "#4CAF50"; // OK
-        String statusText = "OK";
-        if (latestScore >= 0.70) {
-            borderColor = "#E53935"; // VIOLATION
-            statusText = "VIOLATION";
-        } else if (latestScore >= 0.40) {
-            borderColor = "#FFC107"; // WARNING
-            statusText = "WARNING";
-        }
-        
-        // Tăng padding và border width
-        card.setStyle(String.format(
-            "-fx-background-color: #2C2C2C; -fx-border-color: %s; -fx-border-width: 3; " +
-            "-fx-border-radius: 8; -fx-background-radius: 8; -fx-padding: 15;",
-            borderColor
-        ));
-        
-        // Header: Student name + status
-        HBox header = new HBox(15);  // Tăng spacing từ 10 lên 15
-        Label nameLabel = new Label(userName);
-        nameLabel.setStyle("-fx-text-fill: white; -fx-font-size: 18; -fx-font-weight: bold;");  // Tăng từ 14 lên 18
-        
-        Label statusLabel = new Label(statusText);
-        statusLabel.setStyle(String.format(
-            "-fx-text-fill: %s; -fx-font-size: 16; -fx-font-weight: bold; -fx-padding: 5 10;",  // Tăng từ 12 lên 16
-            borderColor
-        ));
-        
-        Region spacer = new Region();
-        HBox.setHgrow(spacer, javafx.scene.layout.Priority.ALWAYS);
-        
-        Label scoreLabel = new Label(String.format("%.1f%%", latestScore * 100));
-        scoreLabel.setStyle("-fx-text-fill: white; -fx-font-size: 16; -fx-font-weight: bold;");  // Tăng từ 12 lên 16
-        
-        header.getChildren().addAll(nameLabel, spacer, statusLabel, scoreLabel);
-        
-        // Progress bar for suspicion score - tăng height
-        ProgressBar scoreBar = new ProgressBar(latestScore);
-        scoreBar.setPrefWidth(Double.MAX_VALUE);
-        scoreBar.setPrefHeight(25);  // Tăng height của progress bar
-        scoreBar.setStyle(String.format(
-            "-fx-accent: %s; -fx-background-color: #1E1E1E;",
-            borderColor
-        ));
-        
-        // Recent violations (last 3)
-        VBox violationsList = new VBox(8);  // Tăng spacing từ 5 lên 8
-        violationsList.setStyle("-fx-padding: 10;");  // Tăng padding từ 5 lên 10
-        
-        int count = Math.min(3, violations.size());
-        for (int i = violations.size() - count; i < violations.size(); i++) {
-            common.model.exam.Violation v = violations.get(i);
-            String timeStr = new SimpleDateFormat("HH:mm:ss").format(new Date(v.getTimestamp()));
-            String flagsText = v.getFlags() != null ? String.join(", ", v.getFlags()) : v.getViolationType();
-            
-            Label violationLabel = new Label(String.format("[%s] %s (%.1f%%)", 
-                    timeStr, flagsText, v.getSuspicionScore() * 100));
-            violationLabel.setStyle("-fx-text-fill: #FFC107; -fx-font-size: 14; -fx-padding: 3;");  // Tăng từ 11 lên 14
-            violationLabel.setWrapText(true);
-            violationsList.getChildren().add(violationLabel);
+    /**
+     * Card violations của 1 student - tạo 1 lần, sau đó chỉ cập nhật nội dung
+     */
+    private static class ViolationCard {
+        private final VBox root = new VBox(12);  // Tăng spacing từ 8 lên 12
+        private final Label nameLabel = new Label();
+        private final Label statusLabel = new Label();
+        private final Label scoreLabel = new Label();
+        private final ProgressBar scoreBar = new ProgressBar(0);
+        private final VBox violationsList = new VBox(8);  // Tăng spacing từ 5 lên 8
+
+        ViolationCard() {
+            // Header: Student name + status
+            HBox header = new HBox(15);  // Tăng spacing từ 10 lên 15
+            nameLabel.setStyle("-fx-text-fill: white; -fx-font-size: 18; -fx-font-weight: bold;");  // Tăng từ 14 lên 18
+            scoreLabel.setStyle("-fx-text-fill: white; -fx-font-size: 16; -fx-font-weight: bold;");  // Tăng từ 12 lên 16
+
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, javafx.scene.layout.Priority.ALWAYS);
+            header.getChildren().addAll(nameLabel, spacer, statusLabel, scoreLabel);
+
+            // Progress bar for suspicion score - tăng height
+            scoreBar.setPrefWidth(Double.MAX_VALUE);
+            scoreBar.setPrefHeight(25);
+
+            violationsList.setStyle("-fx-padding: 10;");  // Tăng padding từ 5 lên 10
+
+            root.getChildren().addAll(header, scoreBar, violationsList);
+
+            // Set min width để card không bị thu nhỏ quá
+            root.setMinWidth(400);
+            root.setPrefWidth(Region.USE_COMPUTED_SIZE);
         }
-        
-        if (violations.size() > 3) {
-            Label moreLabel = new Label(String.format("... và %d cảnh báo khác", violations.size() - 3));
-            moreLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 13; -fx-padding: 5;");  // Tăng từ 10 lên 13
-            violationsList.getChildren().add(moreLabel);
+
+        void update(String userName, List<common.model.exam.Violation> violations, double latestScore) {
+            // Determine status color
+            String borderColor = "#4CAF50"; // OK
+            String statusText = "OK";
+            if (latestScore >= 0.70) {
+                borderColor = "#E53935"; // VIOLATION
+                statusText = "VIOLATION";
+            } else if (latestScore >= 0.40) {
+                borderColor = "#FFC107"; // WARNING
+                statusText = "WARNING";
+            }
+
+            root.setStyle(String.format(
+                "-fx-background-color: #2C2C2C; -fx-border-color: %s; -fx-border-width: 3; " +
+                "-fx-border-radius: 8; -fx-background-radius: 8; -fx-padding: 15;",
+                borderColor
+            ));
+
+            nameLabel.setText(userName);
+            statusLabel.setText(statusText);
+            statusLabel.setStyle(String.format(
+                "-fx-text-fill: %s; -fx-font-size: 16; -fx-font-weight: bold; -fx-padding: 5 10;",
+                borderColor
+            ));
+            scoreLabel.setText(String.format("%.1f%%", latestScore * 100));
+            scoreBar.setProgress(latestScore);
+            scoreBar.setStyle(String.format(
+                "-fx-accent: %s; -fx-background-color: #1E1E1E;",
+                borderColor
+            ));
+
+            // Recent violations (last 3)
+            violationsList.getChildren().clear();
+            int count = Math.min(3, violations.size());
+            for (int i = violations.size() - count; i < violations.size(); i++) {
+                common.model.exam.Violation v = violations.get(i);
+                String timeStr = new SimpleDateFormat("HH:mm:ss").format(new Date(v.getTimestamp()));
+                String flagsText = v.getFlags() != null ? String.join(", ", v.getFlags()) : v.getViolationType();
+                if (v.getOccurrences() > 1 && v.getEndTimestamp() > v.getTimestamp()) {
+                    timeStr += " - " + new SimpleDateFormat("HH:mm:ss").format(new Date(v.getEndTimestamp()));
+                }
+
+                Label violationLabel = new Label(String.format("[%s] %s (%.1f%%)",
+                        timeStr, flagsText, v.getSuspicionScore() * 100));
+                violationLabel.setStyle("-fx-text-fill: #FFC107; -fx-font-size: 14; -fx-padding: 3;");  // Tăng từ 11 lên 14
+                violationLabel.setWrapText(true);
+                violationsList.getChildren().add(violationLabel);
+            }
+
+            if (violations.size() > 3) {
+                Label moreLabel = new Label(String.format("... và %d cảnh báo khác", violations.size() - 3));
+                moreLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 13; -fx-padding: 5;");  // Tăng từ 10 lên 13
+                violationsList.getChildren().add(moreLabel);
+            }
         }
-        
-        card.getChildren().addAll(header, scoreBar, violationsList);
-        
-        // Set min width để card không bị thu nhỏ quá
-        card.setMinWidth(400);
-        card.setPrefWidth(Region.USE_COMPUTED_SIZE);
-        
-        return card;
     }
 
     private void initMediaStreaming() {
@@ -329,9 +336,8 @@ public class ExamRoomController {
             if (proctorPeer == null && !isProctor) {
                 log.warn("⚠️ Proctor peer not found, will retry...");
                 // Retry sau 2 giây
-                new Thread(() -> {
+                ClientExecutors.schedule(() -> {
                     try {
-                        Thread.sleep(2000);
                         Peer retryPeer = examService.getProctorPeer(exam.getExamId());
                         if (retryPeer != null) {
                             Platform.runLater(() -> {
@@ -347,7 +353,7 @@ public class ExamRoomController {
                         log.error("Retry failed", e);
                         Platform.runLater(() -> startStreamingWithPeer(null));
                     }
-                }).start();
+                }, 2, TimeUnit.SECONDS);
                 return;
             }
 
@@ -420,7 +426,7 @@ public class ExamRoomController {
     }
 
     private void loadQuestions() {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 questions = examService.getQuestions(exam.getExamId());
                 Platform.runLater(() -> {
@@ -443,7 +449,7 @@ public class ExamRoomController {
                     questionsContainer.getChildren().add(new Label("❌ Không thể tải câu hỏi: " + e.getMessage()));
                 });
             }
-        }).start();
+        });
     }
 
     private VBox createQuestionUI(Question question, int questionNumber) {
@@ -563,9 +569,9 @@ public class ExamRoomController {
             studentAnswers.put(question.getQuestionId(), answer);
 
             // Gửi lên server (async)
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 examService.submitAnswer(exam.getExamId(), answer);
-            }).start();
+            });
 
             log.debug("💾 Saved answer for question: {}", question.getQuestionId());
         } catch (Exception e) {
@@ -574,7 +580,7 @@ public class ExamRoomController {
     }
 
     private void startTimer() {
-        timerExecutor = Executors.newSingleThreadScheduledExecutor();
+        timerExecutor = ClientExecutors.newScheduler("exam-timer");
         timerExecutor.scheduleAtFixedRate(() -> {
             long elapsed = System.currentTimeMillis() - examStartTime;
             long remaining = examDurationMs - elapsed;
@@ -610,23 +616,35 @@ public class ExamRoomController {
     private void startAutoUpdate() {
         if (!isProctor) return;
 
-        updateExecutor = Executors.newScheduledThreadPool(1);
-        updateExecutor.scheduleAtFixedRate(() -> {
-            try {
-                List<ExamParticipant> participants = examService.getExamParticipants(exam.getExamId());
-                Platform.runLater(() -> {
-                    // Cập nhật tên participants
-                    participants.forEach(p -> {
-                        if (!p.getUserId().equals(exam.getProctorId())) {
-                            participantNames.put(p.getUserId(), p.getUserName());
+        updateExecutor = ClientExecutors.newScheduler("exam-participants");
+        // Server push khi thí sinh vào/rời phòng, polling 5s chỉ khi server không hỗ trợ push
+        ClientEventBus.getInstance().schedulePoll(updateExecutor, this::loadParticipants, 5000);
+        membershipSubscription = ClientEventBus.getInstance().subscribe(
+                ClientEventBus.ExamMembershipChanged.class, event -> {
+                    if (exam.getExamId().equals(event.getExamId())) {
+                        ScheduledExecutorService executor = updateExecutor;
+                        if (executor != null && !executor.isShutdown()) {
+                            executor.execute(this::loadParticipants);
                         }
-                    });
-                    log.debug("📋 Participants: {}", participants.size());
+                    }
                 });
-            } catch (Exception e) {
-                log.warn("⚠️ Failed to update participants", e);
-            }
-        }, 5, 5, TimeUnit.SECONDS);
+    }
+
+    private void loadParticipants() {
+        try {
+            List<ExamParticipant> participants = examService.getExamParticipants(exam.getExamId());
+            Platform.runLater(() -> {
+                // Cập nhật tên participants
+                participants.forEach(p -> {
+                    if (!p.getUserId().equals(exam.getProctorId())) {
+                        participantNames.put(p.getUserId(), p.getUserName());
+                    }
+                });
+                log.debug("📋 Participants: {}", participants.size());
+            });
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to update participants", e);
+        }
     }
 
     @FXML
@@ -643,7 +661,7 @@ public class ExamRoomController {
     }
 
     private void submitExam() {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 // Nộp tất cả answers chưa nộp
                 for (StudentAnswer answer : studentAnswers.values()) {
@@ -666,7 +684,7 @@ public class ExamRoomController {
                     showError("Lỗi khi nộp bài: " + e.getMessage());
                 });
             }
-        }).start();
+        });
     }
 
     private void showExamResult(common.model.exam.ExamResult result) {
@@ -712,10 +730,10 @@ public class ExamRoomController {
         confirm.setHeaderText("Kết thúc bài thi?");
         confirm.setContentText("Kết thúc sẽ đuổi tất cả thí sinh khỏi phòng thi.");
         confirm.showAndWait().filter(r -> r == ButtonType.OK).ifPresent(r -> {
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 examService.endExam(exam.getExamId());
                 Platform.runLater(this::closeWindow);
-            }).start();
+            });
         });
     }
 
@@ -726,10 +744,10 @@ public class ExamRoomController {
         confirm.setContentText("Bạn có chắc muốn rời đi?");
         confirm.showAndWait().filter(r -> r == ButtonType.OK).ifPresent(r -> {
             cleanup();
-            new Thread(() -> {
+            ClientExecutors.io().execute(() -> {
                 examService.leaveExam(exam.getExamId());
                 Platform.runLater(this::closeWindow);
-            }).start();
+            });
         });
     }
 
@@ -792,17 +810,10 @@ public class ExamRoomController {
         log.info("✅ Alert added. New children count: {}", alertContainer.getChildren().size());
         
         // Auto-remove sau 5 giây
-        new Thread(() -> {
-            try {
-                Thread.sleep(5000);
-                Platform.runLater(() -> {
-                    boolean removed = alertContainer.getChildren().remove(alert);
-                    log.debug("🗑️ Auto-removed alert: {}", removed);
-                });
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+        ClientExecutors.schedule(() -> Platform.runLater(() -> {
+            boolean removed = alertContainer.getChildren().remove(alert);
+            log.debug("🗑️ Auto-removed alert: {}", removed);
+        }), 5, TimeUnit.SECONDS);
     }
 
     private void cleanup() {
@@ -812,12 +823,16 @@ public class ExamRoomController {
             timerExecutor.shutdownNow();
         }
 
+        if (membershipSubscription != null) {
+            membershipSubscription.close();
+        }
+
         if (updateExecutor != null) {
             updateExecutor.shutdownNow();
         }
 
-        if (violationUpdateExecutor != null) {
-            violationUpdateExecutor.shutdownNow();
+        if (violationFeed != null) {
+            ClientExecutors.io().execute(violationFeed::stop);
         }
 
         if (examStreamManager != null) {
@@ -10,13 +10,14 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.Hyperlink;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.controller.CourseDetailController;
 import org.example.eduverseclient.service.CourseService;
+import org.example.eduverseclient.service.ImageCache;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -69,7 +70,7 @@ public class HomeDashboardController {
                 log.error("Failed to load courses", e);
                 return new ArrayList<Course>();
             }
-        }).thenAccept(courses -> {
+        }, ClientExecutors.io()).thenAccept(courses -> {
             Platform.runLater(() -> {
                 if (courses != null && !courses.isEmpty()) {
                     allCourses.addAll(courses.stream()
@@ -173,7 +174,7 @@ public class HomeDashboardController {
                 log.error("Failed to load teachers", e);
                 return new ArrayList<User>();
             }
-        }).thenAccept(teachers -> {
+        }, ClientExecutors.io()).thenAccept(teachers -> {
             Platform.runLater(() -> {
                 for (User teacher : teachers) {
                     VBox card = createTeacherCard(teacher);
@@ -202,12 +203,7 @@ public class HomeDashboardController {
         avatar.setPreserveRatio(true);
         
         if (teacher.getAvatarUrl() != null && !teacher.getAvatarUrl().isEmpty()) {
-            try {
-                Image img = new Image(teacher.getAvatarUrl(), true);
-                avatar.setImage(img);
-            } catch (Exception e) {
-                log.warn("Failed to load teacher avatar: {}", teacher.getAvatarUrl());
-            }
+            ImageCache.getInstance().loadInto(avatar, teacher.getAvatarUrl(), 80, 80);
         }
         
         // Name
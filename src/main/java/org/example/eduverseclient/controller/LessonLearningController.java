@@ -16,6 +16,7 @@ import javafx.scene.web.WebView;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.service.CourseService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -74,7 +75,7 @@ public class LessonLearningController {
 
         CompletableFuture.supplyAsync(() -> {
             return courseService.getCourseById(courseId);
-        }).thenAccept(loadedCourse -> {
+        }, ClientExecutors.io()).thenAccept(loadedCourse -> {
             Platform.runLater(() -> {
                 if (loadedCourse != null) {
                     this.course = loadedCourse;
@@ -94,7 +95,7 @@ public class LessonLearningController {
         // Load lessons
         CompletableFuture.supplyAsync(() -> {
             return courseService.getLessonsByCourse(course.getCourseId());
-        }).thenAccept(loadedLessons -> {
+        }, ClientExecutors.io()).thenAccept(loadedLessons -> {
             Platform.runLater(() -> {
                 this.lessons = loadedLessons != null ? loadedLessons : new ArrayList<>();
 
@@ -430,7 +431,7 @@ public class LessonLearningController {
                 log.error("Failed to complete lesson", e);
                 return false;
             }
-        }).thenAccept(success -> {
+        }, ClientExecutors.io()).thenAccept(success -> {
             Platform.runLater(() -> {
                 completeButton.setDisable(false); // Enable lại nút
 
@@ -497,7 +498,7 @@ public class LessonLearningController {
                 log.error("Failed to load enrollment", e);
                 return null;
             }
-        }).thenAccept(loadedEnrollment -> {
+        }, ClientExecutors.io()).thenAccept(loadedEnrollment -> {
             Platform.runLater(() -> {
                 if (loadedEnrollment != null) {
                     this.enrollment = loadedEnrollment;
@@ -10,6 +10,7 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 @Slf4j
 public class LoginController {
@@ -52,7 +53,7 @@ public class LoginController {
         statusLabel.setStyle("-fx-text-fill: blue;");
         
         // Login trong background thread
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             User user = rmiClient.login(email, password);
             
             Platform.runLater(() -> {
@@ -65,7 +66,7 @@ public class LoginController {
                     showError("Email hoặc mật khẩu không đúng!");
                 }
             });
-        }).start();
+        });
     }
     
     @FXML
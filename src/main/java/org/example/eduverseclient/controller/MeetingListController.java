@@ -16,6 +16,7 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.service.MeetingService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -36,7 +37,7 @@ public class MeetingListController {
     
     private void loadMeetings() {
         // Load meetings trong background thread
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             // TODO: Tạm thời dùng courseId cố định, sau này sẽ chọn course
             List<Meeting> meetings = meetingService.getMeetingsByCourse("course_demo");
             
@@ -51,7 +52,7 @@ public class MeetingListController {
                     meetings.forEach(this::addMeetingCard);
                 }
             });
-        }).start();
+        });
     }
     
     private void addMeetingCard(Meeting meeting) {
@@ -141,7 +142,7 @@ public class MeetingListController {
         
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                new Thread(() -> {
+                ClientExecutors.io().execute(() -> {
                     boolean success = meetingService.startMeeting(meeting.getMeetingId());
                     
                     Platform.runLater(() -> {
@@ -154,13 +155,13 @@ public class MeetingListController {
                             showError("Không thể bắt đầu meeting!");
                         }
                     });
-                }).start();
+                });
             }
         });
     }
     
     private void handleJoinMeeting(Meeting meeting) {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             MeetingEnrollment enrollment = meetingService.joinMeeting(meeting.getMeetingId());
             
             Platform.runLater(() -> {
@@ -170,7 +171,7 @@ public class MeetingListController {
                     showError("Không thể tham gia meeting!");
                 }
             });
-        }).start();
+        });
     }
     
     private void openMeetingRoom(Meeting meeting, MeetingEnrollment enrollment) {
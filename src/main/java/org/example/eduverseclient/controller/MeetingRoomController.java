@@ -17,7 +17,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.component.VideoPanel; // Đảm bảo bạn có class này
 import org.example.eduverseclient.network.media.MediaStreamManager;
+import org.example.eduverseclient.service.ClientEventBus;
 import org.example.eduverseclient.service.MeetingService;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.io.File;
 import java.io.IOException;
@@ -28,7 +30,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -66,6 +67,7 @@ public class MeetingRoomController {
     private java.util.concurrent.ScheduledFuture<?> autoEndTask; // Quản lý task tự động end
 
     private ScheduledExecutorService updateExecutor;
+    private ClientEventBus.Subscription membershipSubscription;
     private long joinTime;
 
 
@@ -316,9 +318,9 @@ public class MeetingRoomController {
 
     private void updateStatus() {
         // Gửi trạng thái mới lên server để đồng bộ icon
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             meetingService.updateStatus(meeting.getMeetingId(), isMuted, isCameraOn, isHandRaised);
-        }).start();
+        });
     }
 
     // ================= VIDEO RENDERING =================
@@ -392,7 +394,7 @@ public class MeetingRoomController {
         // Ngắt ngay các cập nhật UI để tránh gọi lại scheduleAutoEnd
         cleanup();
 
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             // Gọi server
             boolean success = meetingService.endMeeting(meeting.getMeetingId());
 
@@ -406,15 +408,15 @@ public class MeetingRoomController {
                     showError("Không thể kết thúc meeting!");
                 }
             });
-        }).start();
+        });
     }
 
     private void leaveMeeting() {
         cleanup();
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             meetingService.leaveMeeting(meeting.getMeetingId());
             Platform.runLater(this::closeWindow);
-        }).start();
+        });
     }
 
     private void cleanup() {
@@ -427,6 +429,9 @@ public class MeetingRoomController {
 
         try {
             // 1. Stop auto-update executor
+            if (membershipSubscription != null) {
+                membershipSubscription.close();
+            }
             if (updateExecutor != null) {
                 updateExecutor.shutdownNow();
             }
@@ -444,15 +449,14 @@ public class MeetingRoomController {
             // 4. ▶️ KHÔI PHỤC MESSENGER (RESUME)
             // Chạy trong Thread riêng hoặc Platform.runLater để tránh block UI
             // Delay nhẹ 200ms để đảm bảo MediaStreamManager đã nhả hoàn toàn quyền lắng nghe
-            new Thread(() -> {
+            ClientExecutors.schedule(() -> {
                 try {
-                    Thread.sleep(200);
                     log.info("🔄 Resuming P2P Messenger service...");
                     org.example.eduverseclient.service.P2PMessengerService.getInstance().resumeReceiver();
                 } catch (Exception e) {
                     log.error("Failed to resume messenger", e);
                 }
-            }).start();
+            }, 200, TimeUnit.MILLISECONDS);
 
             log.info("✅ Cleanup completed");
         } catch (Exception e) {
@@ -469,7 +473,7 @@ public class MeetingRoomController {
 
     // Hàm phụ trợ để code ngắn gọn hơn
     private void loadParticipants() {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 // Thử gọi Server
                 List<MeetingEnrollment> participants = meetingService.getParticipants(meeting.getMeetingId());
@@ -488,7 +492,7 @@ public class MeetingRoomController {
                 // Nhảy vào đây -> UI đóng băng -> ĐÚNG Ý BẠN
                 log.warn("⚠️ Cannot update participant list (Server maybe down). UI will freeze.");
             }
-        }).start();
+        });
     }
 
     private void scheduleAutoEnd(List<MeetingEnrollment> participants) {
@@ -591,8 +595,19 @@ public class MeetingRoomController {
     }
 
     private void startAutoUpdate() {
-        updateExecutor = Executors.newScheduledThreadPool(1);
-        updateExecutor.scheduleAtFixedRate(this::loadParticipants, 5, 5, TimeUnit.SECONDS);
+        updateExecutor = ClientExecutors.newScheduler("meeting-room-update");
+        // Participants: server push khi có người vào/rời, polling 5s chỉ khi server không hỗ trợ push
+        ClientEventBus.getInstance().schedulePoll(updateExecutor, this::loadParticipants, 5000);
+        membershipSubscription = ClientEventBus.getInstance().subscribe(
+                ClientEventBus.MeetingMembershipChanged.class, event -> {
+                    // loadParticipants gọi RMI -> không chạy trên thread dispatcher "client-events" dùng chung
+                    if (meeting.getMeetingId().equals(event.getMeetingId())) {
+                        ScheduledExecutorService executor = updateExecutor;
+                        if (executor != null && !executor.isShutdown()) {
+                            executor.execute(this::loadParticipants);
+                        }
+                    }
+                });
         updateExecutor.scheduleAtFixedRate(this::updateDuration, 1, 1, TimeUnit.SECONDS);
     }
 
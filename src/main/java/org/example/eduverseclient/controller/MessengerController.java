@@ -7,12 +7,14 @@ import common.model.Course;
 import common.model.Message;
 import common.model.User;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
@@ -23,12 +25,18 @@ import javafx.scene.shape.Circle;
 import javafx.stage.*;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.component.ConversationCell;
+import org.example.eduverseclient.component.MessageBubbleCell;
+import org.example.eduverseclient.service.ImageCache;
 import org.example.eduverseclient.service.MessengerServiceHelper;
 import org.example.eduverseclient.service.P2PMessengerService;
+import org.example.eduverseclient.service.UserDirectory;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -38,7 +46,8 @@ public class MessengerController {
     @FXML private Button privateTabButton;
     @FXML private Button courseTabButton;
     @FXML private TextField userSearchField;
-    @FXML private ScrollPane conversationListScrollPane;
+    @FXML private ListView<Conversation> conversationListView;
+    @FXML private ScrollPane conversationListScrollPane;   // Kết quả tìm user
     @FXML private VBox conversationListBox;
     
     @FXML private HBox conversationHeader;
@@ -47,8 +56,7 @@ public class MessengerController {
     @FXML private Label conversationStatusLabel;
     @FXML private Button optionsButton;
     
-    @FXML private ScrollPane messagesScrollPane;
-    @FXML private VBox messagesBox;
+    @FXML private ListView<Message> messagesListView;
     
     @FXML private Button emojiButton;
     @FXML private Button attachmentButton;
@@ -57,6 +65,7 @@ public class MessengerController {
     
     private RMIClient rmiClient;
     private P2PMessengerService messengerService;
+    private UserDirectory userDirectory;
     private User currentUser;
     
     private ConversationType currentTab = ConversationType.PRIVATE;
@@ -66,18 +75,34 @@ public class MessengerController {
     private List<User> allUsers = new ArrayList<>();
     private boolean isSearching = false;
     
+    // Conversation list ảo hóa: data từng tab được giữ lại -> đổi tab hiển thị ngay
+    private final ObservableList<Conversation> conversationItems = FXCollections.observableArrayList();
+    private final Map<ConversationType, List<Conversation>> tabConversations = new EnumMap<>(ConversationType.class);
+    private final ConversationCell.PreviewCache previewCache = new ConversationCell.PreviewCache();
+    
+    // Message list ảo hóa: chỉ giữ cell cho viewport, history cũ tải theo trang khi cuộn lên đầu
+    private static final int MESSAGE_PAGE_SIZE = 50;
+    private final ObservableList<Message> messageItems = FXCollections.observableArrayList();
+    private boolean loadingOlder = false;
+    private boolean olderExhausted = false;
+    private boolean messageScrollBarHooked = false;
+    
     @FXML
     public void initialize() {
         rmiClient = RMIClient.getInstance();
         messengerService = P2PMessengerService.getInstance();
+        userDirectory = UserDirectory.getInstance();
         currentUser = rmiClient.getCurrentUser();
         
         // Initialize messenger service
         messengerService.initialize();
         messengerService.setMessageCallback(this::onNewMessage);
+        messengerService.setSendFailedCallback(this::onSendFailed);
         
         // Setup UI
+        setupConversationList();
         setupTabs();
+        setupMessageList();
         setupInputArea();
         setupSearchField();
         
@@ -113,174 +138,102 @@ public class MessengerController {
         loadConversations();
     }
     
+    /**
+     * ListView với ConversationCell (fixed cell size): chỉ dòng đang hiển thị mới load preview / avatar
+     */
+    private void setupConversationList() {
+        conversationListView.setItems(conversationItems);
+        conversationListView.setFixedCellSize(ConversationCell.CELL_HEIGHT);
+        conversationListView.setCellFactory(list -> new ConversationCell(
+            currentUser.getUserId(), this::getConversationDisplayName, this::formatMessagePreview, previewCache));
+        conversationListView.getSelectionModel().selectedItemProperty().addListener((obs, oldConv, conv) -> {
+            // Chọn lại cùng conversation sau khi list được refresh -> không load lại
+            if (conv != null && !isSelected(conv.getConversationId())) {
+                openConversation(conv);
+            }
+        });
+    }
+    
+    private void showConversationPlaceholder(String text, String color) {
+        Label label = new Label(text);
+        label.setStyle("-fx-text-fill: " + color + "; -fx-font-size: 14; -fx-padding: 20;");
+        conversationListView.setPlaceholder(label);
+    }
+    
+    /**
+     * Hiện conversation list hoặc kết quả tìm user (dùng chung chỗ ở panel trái)
+     */
+    private void showSearchResults(boolean searching) {
+        conversationListView.setVisible(!searching);
+        conversationListView.setManaged(!searching);
+        conversationListScrollPane.setVisible(searching);
+        conversationListScrollPane.setManaged(searching);
+    }
+    
     private void loadConversations() {
         // Don't load conversations if user is searching
         if (isSearching) {
             return;
         }
+        showSearchResults(false);
         
-        conversationListBox.getChildren().clear();
-        
-        // Show loading state
-        Label loadingLabel = new Label("Đang tải conversations...");
-        loadingLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 14; -fx-padding: 20;");
-        conversationListBox.getChildren().add(loadingLabel);
+        // Tab đã có data -> hiển thị ngay, refresh phía sau
+        ConversationType tab = currentTab;
+        List<Conversation> cached = tabConversations.get(tab);
+        if (cached != null) {
+            showConversations(cached);
+        } else {
+            conversationItems.clear();
+            showConversationPlaceholder("Đang tải conversations...", "#999");
+        }
         
         // Load async
         MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-        final ConversationType finalCurrentTab = currentTab; // Make effectively final
-        helper.getUserConversations()
+        // Lọc theo tab hiện tại (index type trong conversation cache)
+        String targetType = tab == ConversationType.PRIVATE ? "private" : "courseChat";
+        helper.getConversationsByType(targetType)
             .thenAccept(conversations -> {
+                List<Conversation> sorted = (conversations != null ? conversations : new ArrayList<Conversation>()).stream()
+                    .sorted(Comparator.comparingLong(Conversation::getLastUpdate).reversed())
+                    .collect(Collectors.toList());
+                
                 Platform.runLater(() -> {
-                    conversationListBox.getChildren().clear();
-                    
-                    List<Conversation> conversationsList = conversations != null ? conversations : new ArrayList<>();
-                    
-                    // Filter by current tab
-                    String targetType = finalCurrentTab == ConversationType.PRIVATE ? "private" : "courseChat";
-                    List<Conversation> filtered = conversationsList.stream()
-                        .filter(conv -> conv.getType() != null && conv.getType().equals(targetType))
-                        .sorted(Comparator.comparingLong(Conversation::getLastUpdate).reversed())
-                        .collect(Collectors.toList());
-                    
-                    for (Conversation conv : filtered) {
-                        addConversationCard(conv);
-                    }
-                    
-                    if (filtered.isEmpty()) {
-                        showEmptyState();
+                    tabConversations.put(tab, sorted);
+                    if (currentTab == tab && !isSearching) {
+                        showConversations(sorted);
                     }
                 });
             })
             .exceptionally(e -> {
                 log.error("Failed to load conversations", e);
                 Platform.runLater(() -> {
-                    conversationListBox.getChildren().clear();
-                    Label errorLabel = new Label("Lỗi khi tải conversations");
-                    errorLabel.setStyle("-fx-text-fill: #D32F2F; -fx-font-size: 14; -fx-padding: 20;");
-                    conversationListBox.getChildren().add(errorLabel);
+                    if (tabConversations.get(tab) == null) {
+                        conversationItems.clear();
+                        showConversationPlaceholder("Lỗi khi tải conversations", "#D32F2F");
+                    }
                 });
                 return null;
             });
     }
     
-    private void addConversationCard(Conversation conv) {
-        HBox card = new HBox(10);
-        card.setStyle("-fx-padding: 10; -fx-background-color: white; -fx-background-radius: 5;");
-        card.setPrefWidth(280);
-        card.setOnMouseClicked(e -> openConversation(conv));
-        card.setOnMouseEntered(e -> card.setStyle("-fx-padding: 10; -fx-background-color: #F0F0F0; -fx-background-radius: 5;"));
-        card.setOnMouseExited(e -> {
-            if (selectedConversation == null || !selectedConversation.getConversationId().equals(conv.getConversationId())) {
-                card.setStyle("-fx-padding: 10; -fx-background-color: white; -fx-background-radius: 5;");
-            }
-        });
-        
-        // Avatar container
-        StackPane avatarContainer = new StackPane();
-        avatarContainer.setPrefSize(50, 50);
-        
-        // Default avatar (circle with initial)
-        Circle defaultAvatar = new Circle(25, Color.LIGHTGRAY);
-        Label initialLabel = new Label("?");
-        initialLabel.setStyle("-fx-font-size: 20; -fx-font-weight: bold; -fx-text-fill: #666;");
-        avatarContainer.getChildren().addAll(defaultAvatar, initialLabel);
-        
-        // Load avatar from user (for private conversations)
-        if ("private".equals(conv.getType()) && conv.getParticipants() != null) {
-            String otherUserId = conv.getParticipants().stream()
-                .filter(id -> !id.equals(currentUser.getUserId()))
-                .findFirst()
-                .orElse(null);
-            
-            if (otherUserId != null) {
-                new Thread(() -> {
-                    try {
-                        User otherUser = rmiClient.getAuthService().getUserById(otherUserId);
-                        Platform.runLater(() -> {
-                            if (otherUser != null) {
-                                if (otherUser.getFullName() != null) {
-                                    initialLabel.setText(otherUser.getFullName().substring(0, 1).toUpperCase());
-                                }
-                                
-                                if (otherUser.getAvatarUrl() != null && !otherUser.getAvatarUrl().isEmpty()) {
-                                    try {
-                                        ImageView avatarView = new ImageView();
-                                        avatarView.setFitWidth(50);
-                                        avatarView.setFitHeight(50);
-                                        avatarView.setPreserveRatio(true);
-                                        avatarView.setSmooth(true);
-                                        Image avatarImage = new Image(otherUser.getAvatarUrl(), true);
-                                        avatarView.setImage(avatarImage);
-                                        
-                                        // Clip to circle
-                                        Circle clip = new Circle(25, 25, 25);
-                                        avatarView.setClip(clip);
-                                        
-                                        avatarContainer.getChildren().clear();
-                                        avatarContainer.getChildren().add(avatarView);
-                                    } catch (Exception e) {
-                                        log.warn("Failed to load avatar image: {}", e.getMessage());
-                                    }
-                                }
-                            }
-                        });
-                    } catch (Exception e) {
-                        log.warn("Failed to load avatar for user {}: {}", otherUserId, e.getMessage());
-                    }
-                }).start();
-            }
-        } else if ("courseChat".equals(conv.getType())) {
-            // Course icon
-            defaultAvatar.setFill(Color.web("#4CAF50"));
-            initialLabel.setText("📚");
+    private void showConversations(List<Conversation> conversations) {
+        if (!conversations.equals(conversationItems)) {
+            conversationItems.setAll(conversations);
         }
-        
-        // Info
-        VBox info = new VBox(3);
-        info.setPrefWidth(200);
-        
-        // Get conversation name from participants
-        String displayName = getConversationDisplayName(conv);
-        Label nameLabel = new Label(displayName);
-        nameLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14;");
-        nameLabel.setTextOverrun(OverrunStyle.ELLIPSIS);
-        
-        Label subtitleLabel = new Label();
-        if ("courseChat".equals(conv.getType())) {
-            subtitleLabel.setText("Course Chat");
-        } else {
-            subtitleLabel.setText("Online");
+        if (conversations.isEmpty()) {
+            showConversationPlaceholder("No conversations yet", "#999");
+        }
+        if (selectedConversation != null) {
+            updateCardSelection(selectedConversation);
         }
-        subtitleLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 11;");
-        
-        // Preview from last message
-        Label previewLabel = new Label("");
-        previewLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 12;");
-        previewLabel.setMaxWidth(200);
-        previewLabel.setTextOverrun(OverrunStyle.ELLIPSIS);
-        
-        // Load last message preview
-        loadLastMessagePreview(conv, previewLabel);
-        
-        Label timeLabel = new Label(formatTime(conv.getLastUpdate()));
-        timeLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 11;");
-        
-        info.getChildren().addAll(nameLabel, subtitleLabel, previewLabel, timeLabel);
-        
-        card.getChildren().addAll(avatarContainer, info);
-        conversationListBox.getChildren().add(card);
-    }
-    
-    private void showEmptyState() {
-        Label emptyLabel = new Label("No conversations yet");
-        emptyLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 14; -fx-padding: 20;");
-        conversationListBox.getChildren().add(emptyLabel);
     }
     
     private void openConversation(Conversation conv) {
         selectedConversation = conv;
         
+        // Nạp trước profile của participants cho header và message bubbles (1 lookup / user)
+        userDirectory.prefetch(conv.getParticipants());
+        
         // Update header - Get display name from participants
         updateConversationHeader(conv);
         
@@ -315,10 +268,10 @@ public class MessengerController {
             
             if (otherUserId != null) {
                 // Check if user is online and load avatar
-                new Thread(() -> {
+                ClientExecutors.io().execute(() -> {
                     try {
                         boolean isOnline = rmiClient.getPeerService().isUserOnline(otherUserId);
-                        User otherUser = rmiClient.getAuthService().getUserById(otherUserId);
+                        User otherUser = userDirectory.getUser(otherUserId).get();
                         
                         Platform.runLater(() -> {
                             conversationStatusLabel.setText(isOnline ? "🟢 Online" : "⚫ Offline");
@@ -327,19 +280,13 @@ public class MessengerController {
                                 
                                 // Load avatar
                                 if (otherUser.getAvatarUrl() != null && !otherUser.getAvatarUrl().isEmpty()) {
-                                    try {
-                                        Image avatarImage = new Image(otherUser.getAvatarUrl(), true);
-                                        conversationAvatarImage.setImage(avatarImage);
-                                        
-                                        // Clip to circle
-                                        Circle clip = new Circle(20, 20, 20);
-                                        conversationAvatarImage.setClip(clip);
-                                    } catch (Exception e) {
-                                        log.warn("Failed to load avatar image: {}", e.getMessage());
-                                        conversationAvatarImage.setImage(null);
-                                    }
+                                    ImageCache.getInstance().loadInto(conversationAvatarImage, otherUser.getAvatarUrl(), 40, 40);
+
+                                    // Clip to circle
+                                    Circle clip = new Circle(20, 20, 20);
+                                    conversationAvatarImage.setClip(clip);
                                 } else {
-                                    conversationAvatarImage.setImage(null);
+                                    ImageCache.getInstance().clear(conversationAvatarImage);
                                 }
                             }
                         });
@@ -350,7 +297,7 @@ public class MessengerController {
                             conversationAvatarImage.setImage(null);
                         });
                     }
-                }).start();
+                });
             } else {
                 conversationStatusLabel.setText("");
                 conversationAvatarImage.setImage(null);
@@ -362,231 +309,133 @@ public class MessengerController {
     }
     
     private void updateCardSelection(Conversation conv) {
-        for (javafx.scene.Node node : conversationListBox.getChildren()) {
-            if (node instanceof HBox) {
-                HBox card = (HBox) node;
-                if (selectedConversation != null && selectedConversation.getConversationId().equals(conv.getConversationId())) {
-                    card.setStyle("-fx-padding: 10; -fx-background-color: #E3F2FD; -fx-background-radius: 5;");
-                } else {
-                    card.setStyle("-fx-padding: 10; -fx-background-color: white; -fx-background-radius: 5;");
-                }
+        for (int i = 0; i < conversationItems.size(); i++) {
+            if (conversationItems.get(i).getConversationId().equals(conv.getConversationId())) {
+                conversationListView.getSelectionModel().select(i);
+                return;
             }
         }
+        conversationListView.getSelectionModel().clearSelection();
+    }
+    
+    /**
+     * ListView với MessageBubbleCell: số node phụ thuộc viewport, không phụ thuộc độ dài history
+     */
+    private void setupMessageList() {
+        messagesListView.setItems(messageItems);
+        messagesListView.setCellFactory(list -> new MessageBubbleCell(currentUser.getUserId(), this::openFileFromUrl));
+    }
+    
+    /**
+     * ScrollBar dọc của ListView chỉ tồn tại sau lần layout đầu tiên có item -> gắn listener lúc đó (1 lần)
+     */
+    private void hookMessageScrollBar() {
+        if (messageScrollBarHooked) return;
+        for (javafx.scene.Node node : messagesListView.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                ScrollBar scrollBar = (ScrollBar) node;
+                scrollBar.valueProperty().addListener((obs, oldValue, value) -> {
+                    if (value.doubleValue() <= scrollBar.getMin() && oldValue.doubleValue() > value.doubleValue()) {
+                        loadOlderMessages();
+                    }
+                });
+                messageScrollBarHooked = true;
+                return;
+            }
+        }
+    }
+    
+    private void showMessagePlaceholder(String text, String color) {
+        Label label = new Label(text);
+        label.setStyle("-fx-text-fill: " + color + "; -fx-font-size: 14; -fx-padding: 20;");
+        messagesListView.setPlaceholder(label);
     }
     
     private void loadMessages(Conversation conv) {
-        messagesBox.getChildren().clear();
+        messageItems.clear();
+        loadingOlder = false;
+        olderExhausted = false;
         
         // Show loading state
-        Label loadingLabel = new Label("Đang tải messages...");
-        loadingLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 14; -fx-padding: 20;");
-        messagesBox.getChildren().add(loadingLabel);
+        showMessagePlaceholder("Đang tải messages...", "#999");
         
-        // Load async
+        // Load async: đọc từ message store trên đĩa, sau đó sync phần mới từ server
         MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-        helper.getMessages(conv.getConversationId(), 50)
+        helper.getMessages(conv.getConversationId(), MESSAGE_PAGE_SIZE)
             .thenAccept(messages -> {
-                Platform.runLater(() -> {
-                    messagesBox.getChildren().clear();
-                    
-                    if (messages != null) {
-                        for (Message msg : messages) {
-                            addMessageBubble(msg);
+                Platform.runLater(() -> renderMessages(conv, messages));
+                helper.syncMessages(conv.getConversationId())
+                    .thenCompose(fresh -> fresh.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : helper.getMessages(conv.getConversationId(), MESSAGE_PAGE_SIZE))
+                    .thenAccept(updated -> {
+                        if (updated != null) {
+                            Platform.runLater(() -> renderMessages(conv, updated));
                         }
-                        
-                        // Scroll to bottom
-                        messagesScrollPane.setVvalue(1.0);
-                    }
-                });
+                    });
             })
             .exceptionally(e -> {
                 log.error("Failed to load messages", e);
                 Platform.runLater(() -> {
-                    messagesBox.getChildren().clear();
-                    Label errorLabel = new Label("Lỗi khi tải messages");
-                    errorLabel.setStyle("-fx-text-fill: #D32F2F; -fx-font-size: 14; -fx-padding: 20;");
-                    messagesBox.getChildren().add(errorLabel);
+                    messageItems.clear();
+                    showMessagePlaceholder("Lỗi khi tải messages", "#D32F2F");
                 });
                 return null;
             });
     }
     
-    private void addMessageBubble(Message message) {
-        boolean isSent = message.getSenderId().equals(currentUser.getUserId());
-        
-        VBox bubbleContainer = new VBox(5);
-        bubbleContainer.setAlignment(isSent ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
-        bubbleContainer.setPadding(new Insets(5, 10, 5, 10));
-        
-        HBox messageRow = new HBox(10);
-        messageRow.setAlignment(isSent ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
-        
-        // Avatar (only for received messages)
-        if (!isSent) {
-            StackPane avatarContainer = new StackPane();
-            avatarContainer.setPrefSize(40, 40);
-            
-            // Default avatar (circle with initial)
-            Circle defaultAvatar = new Circle(20, Color.LIGHTGRAY);
-            Label initialLabel = new Label("?");
-            initialLabel.setStyle("-fx-font-size: 18; -fx-font-weight: bold; -fx-text-fill: #666;");
-            avatarContainer.getChildren().addAll(defaultAvatar, initialLabel);
-            
-            // Load avatar from user
-            String senderId = message.getSenderId();
-            new Thread(() -> {
-                try {
-                    User sender = rmiClient.getAuthService().getUserById(senderId);
-                    Platform.runLater(() -> {
-                        if (sender != null && sender.getFullName() != null) {
-                            initialLabel.setText(sender.getFullName().substring(0, 1).toUpperCase());
-                        }
-                        
-                        if (sender != null && sender.getAvatarUrl() != null && !sender.getAvatarUrl().isEmpty()) {
-                            try {
-                                ImageView avatarView = new ImageView();
-                                avatarView.setFitWidth(40);
-                                avatarView.setFitHeight(40);
-                                avatarView.setPreserveRatio(true);
-                                avatarView.setSmooth(true);
-                                Image avatarImage = new Image(sender.getAvatarUrl(), true);
-                                avatarView.setImage(avatarImage);
-                                
-                                // Clip to circle
-                                Circle clip = new Circle(20, 20, 20);
-                                avatarView.setClip(clip);
-                                
-                                avatarContainer.getChildren().clear();
-                                avatarContainer.getChildren().add(avatarView);
-                            } catch (Exception e) {
-                                log.warn("Failed to load avatar image: {}", e.getMessage());
-                            }
-                        }
-                    });
-                } catch (Exception e) {
-                    log.warn("Failed to load avatar for user {}: {}", senderId, e.getMessage());
-                }
-            }).start();
-            
-            messageRow.getChildren().add(avatarContainer);
+    private void renderMessages(Conversation conv, List<Message> messages) {
+        // Người dùng đã chuyển sang conversation khác trong lúc tải
+        if (!isSelected(conv.getConversationId())) {
+            return;
         }
-        
-        VBox messageContent = new VBox(5);
-        messageContent.setMaxWidth(400);
-        messageContent.setPadding(new Insets(10, 15, 10, 15));
-        
-        // Style based on sent/received
-        if (isSent) {
-            messageContent.setStyle("-fx-background-color: #0084FF; -fx-background-radius: 18;");
-        } else {
-            messageContent.setStyle("-fx-background-color: #E4E6EB; -fx-background-radius: 18;");
+        showMessagePlaceholder("", "#999");
+        messageItems.setAll(messages != null ? messages : List.of());
+        scrollMessagesToBottom();
+        Platform.runLater(this::hookMessageScrollBar);
+    }
+    
+    /**
+     * Cuộn tới đầu list -> tải trang message cũ hơn (store trước, server khi store hết)
+     */
+    private void loadOlderMessages() {
+        if (selectedConversation == null || loadingOlder || olderExhausted || messageItems.isEmpty()) {
+            return;
         }
-        
-        // Message content based on type
-        if (message.getType() == MessageType.TEXT) {
-            Label textLabel = new Label(message.getContent() != null ? message.getContent() : "");
-            textLabel.setWrapText(true);
-            textLabel.setStyle(isSent ? "-fx-text-fill: white; -fx-font-size: 14;" : "-fx-text-fill: black; -fx-font-size: 14;");
-            messageContent.getChildren().add(textLabel);
-        } else if (message.getType() == MessageType.IMAGE && message.getContent() != null && message.getContent().startsWith("http")) {
-            // Display image from URL (Cloudinary)
-            try {
-                ImageView imageView = new ImageView();
-                Image image = new Image(message.getContent(), true);
-                imageView.setImage(image);
-                imageView.setFitWidth(300);
-                imageView.setFitHeight(300);
-                imageView.setPreserveRatio(true);
-                imageView.setSmooth(true);
-                imageView.setCache(true);
-                messageContent.getChildren().add(imageView);
-            } catch (Exception e) {
-                log.error("Failed to load image: {}", e.getMessage());
-                Label errorLabel = new Label("[Image failed to load]");
-                errorLabel.setStyle(isSent ? "-fx-text-fill: white; -fx-font-size: 14;" : "-fx-text-fill: black; -fx-font-size: 14;");
-                messageContent.getChildren().add(errorLabel);
-            }
-        } else if (message.getType() == MessageType.VIDEO && message.getContent() != null && message.getContent().startsWith("http")) {
-            // Display video from URL (Cloudinary) - show thumbnail with play button
-            try {
-                StackPane videoContainer = new StackPane();
-                videoContainer.setPrefWidth(300);
-                videoContainer.setPrefHeight(200);
-                
-                // Video thumbnail (Cloudinary auto-generates thumbnail for videos)
-                ImageView thumbnailView = new ImageView();
-                // Try to get thumbnail URL (Cloudinary format: add .jpg extension or use transformation)
-                String thumbnailUrl = message.getContent();
-                if (thumbnailUrl.contains("upload/")) {
-                    // Insert transformation before file extension
-                    thumbnailUrl = thumbnailUrl.replace("/upload/", "/upload/w_300,h_200,c_fill/");
+        loadingOlder = true;
+        String conversationId = selectedConversation.getConversationId();
+        String anchorMessageId = messageItems.get(0).getMessageId();
+        
+        MessengerServiceHelper.getInstance()
+            .getOlderMessages(conversationId, anchorMessageId, MESSAGE_PAGE_SIZE)
+            .whenComplete((older, e) -> Platform.runLater(() -> {
+                loadingOlder = false;
+                if (!isSelected(conversationId)) return;
+                if (e != null || older == null || older.isEmpty()) {
+                    olderExhausted = e == null;
+                    return;
                 }
-                Image thumbnail = new Image(thumbnailUrl, true);
-                thumbnailView.setImage(thumbnail);
-                thumbnailView.setFitWidth(300);
-                thumbnailView.setFitHeight(200);
-                thumbnailView.setPreserveRatio(true);
-                thumbnailView.setSmooth(true);
-                
-                // Play button overlay
-                Circle playButton = new Circle(30, Color.WHITE);
-                playButton.setOpacity(0.8);
-                Label playIcon = new Label("▶");
-                playIcon.setStyle("-fx-font-size: 24; -fx-text-fill: #0084FF;");
-                StackPane playOverlay = new StackPane();
-                playOverlay.getChildren().addAll(playButton, playIcon);
-                
-                videoContainer.getChildren().addAll(thumbnailView, playOverlay);
-                
-                // Click to open video in desktop
-                videoContainer.setOnMouseClicked(e -> openFileFromUrl(message.getContent()));
-                videoContainer.setStyle("-fx-cursor: hand;");
-                
-                messageContent.getChildren().add(videoContainer);
-            } catch (Exception e) {
-                log.error("Failed to load video thumbnail: {}", e.getMessage());
-                Label errorLabel = new Label("[Video failed to load]");
-                errorLabel.setStyle(isSent ? "-fx-text-fill: white; -fx-font-size: 14;" : "-fx-text-fill: black; -fx-font-size: 14;");
-                messageContent.getChildren().add(errorLabel);
-            }
-        } else if (message.getType() == MessageType.FILE && message.getContent() != null && message.getContent().startsWith("http")) {
-            // Display file - clickable to open in desktop
-            HBox fileContainer = new HBox(10);
-            fileContainer.setAlignment(Pos.CENTER_LEFT);
-            fileContainer.setStyle("-fx-cursor: hand;");
-            fileContainer.setOnMouseClicked(e -> openFileFromUrl(message.getContent()));
-            
-            Label fileLabel = new Label("📎 " + (message.getContent().contains("/") 
-                ? message.getContent().substring(message.getContent().lastIndexOf("/") + 1) 
-                : "File"));
-            fileLabel.setWrapText(true);
-            fileLabel.setStyle(isSent ? "-fx-text-fill: white; -fx-font-size: 14;" : "-fx-text-fill: black; -fx-font-size: 14;");
-            
-            fileContainer.getChildren().add(fileLabel);
-            messageContent.getChildren().add(fileContainer);
-        } else {
-            // For FILE, VIDEO, or IMAGE without URL
-            Label textLabel = new Label(message.getContent() != null ? message.getContent() : "[Media]");
-            textLabel.setWrapText(true);
-            textLabel.setStyle(isSent ? "-fx-text-fill: white; -fx-font-size: 14;" : "-fx-text-fill: black; -fx-font-size: 14;");
-            messageContent.getChildren().add(textLabel);
+                messageItems.addAll(0, older);
+                // Giữ message đang xem ở đầu viewport
+                messagesListView.scrollTo(older.size());
+            }));
+    }
+    
+    private boolean isSelected(String conversationId) {
+        return selectedConversation != null && selectedConversation.getConversationId().equals(conversationId);
+    }
+    
+    private void scrollMessagesToBottom() {
+        if (!messageItems.isEmpty()) {
+            messagesListView.scrollTo(messageItems.size() - 1);
         }
-        
-        // Timestamp
-        Label timeLabel = new Label(formatMessageTime(message.getTimestamp()));
-        timeLabel.setStyle("-fx-font-size: 10; -fx-text-fill: #999;");
-        messageContent.getChildren().add(timeLabel);
-        
-        messageRow.getChildren().add(messageContent);
-        bubbleContainer.getChildren().add(messageRow);
-        messagesBox.getChildren().add(bubbleContainer);
     }
     
     /**
      * Download và mở file từ URL bằng desktop application
      */
     private void openFileFromUrl(String fileUrl) {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 // Download file to temp directory
                 java.net.URL url = new java.net.URL(fileUrl);
@@ -624,7 +473,7 @@ public class MessengerController {
                     alert.showAndWait();
                 });
             }
-        }).start();
+        });
     }
     
     private void setupInputArea() {
@@ -706,35 +555,6 @@ public class MessengerController {
         });
     }
     
-    /**
-     * Load last message preview for conversation card
-     */
-    private void loadLastMessagePreview(Conversation conv, Label previewLabel) {
-        if (conv.getConversationId() == null) {
-            previewLabel.setText("");
-            return;
-        }
-        
-        // Load last message (limit=1 to get the most recent)
-        MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-        helper.getMessages(conv.getConversationId(), 1)
-            .thenAccept(messages -> {
-                Platform.runLater(() -> {
-                    if (messages != null && !messages.isEmpty()) {
-                        Message lastMessage = messages.get(messages.size() - 1); // Get the last one
-                        String preview = formatMessagePreview(lastMessage);
-                        previewLabel.setText(preview);
-                    } else {
-                        previewLabel.setText("");
-                    }
-                });
-            })
-            .exceptionally(e -> {
-                log.warn("Failed to load last message preview: {}", e.getMessage());
-                return null;
-            });
-    }
-    
     /**
      * Format message preview text (like Meta Messenger)
      */
@@ -810,7 +630,7 @@ public class MessengerController {
     }
     
     private void loadAllUsers() {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 List<User> loadedUsers = rmiClient.getAuthService().searchUsers("");
     
@@ -825,18 +645,19 @@ public class MessengerController {
                 log.error("Failed to load users", e);
                 allUsers = new ArrayList<>();
             }
-        }).start();
+        });
     }
     
     
     private void searchUsers(String query) {
+        showSearchResults(true);
         conversationListBox.getChildren().clear();
     
         Label loadingLabel = new Label("Đang tìm kiếm...");
         loadingLabel.setStyle("-fx-text-fill: #999; -fx-font-size: 14; -fx-padding: 20;");
         conversationListBox.getChildren().add(loadingLabel);
     
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 List<User> result = rmiClient.getAuthService().searchUsers(query);
     
@@ -868,7 +689,7 @@ public class MessengerController {
                     conversationListBox.getChildren().add(errorLabel);
                 });
             }
-        }).start();
+        });
     }
     
     
@@ -906,21 +727,13 @@ public class MessengerController {
     }
     
     private void createConversationWithUser(User otherUser) {
-        new Thread(() -> {
+        ClientExecutors.io().execute(() -> {
             try {
                 log.info("Creating conversation with user: {}", otherUser.getUserId());
                 
                 // Kiểm tra conversation đã tồn tại trong list chưa
                 MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-                List<Conversation> existingConversations = helper.getUserConversations().get();
-                
-                Conversation existingConv = existingConversations.stream()
-                    .filter(conv -> "private".equals(conv.getType()) 
-                        && conv.getParticipants() != null 
-                        && conv.getParticipants().contains(otherUser.getUserId())
-                        && conv.getParticipants().contains(currentUser.getUserId()))
-                    .findFirst()
-                    .orElse(null);
+                Conversation existingConv = helper.findPrivateConversation(otherUser.getUserId()).get();
                 
                 Conversation conversation;
                 if (existingConv != null) {
@@ -962,7 +775,7 @@ public class MessengerController {
                     alert.showAndWait();
                 });
             }
-        }).start();
+        });
     }
     
     @FXML
@@ -1005,26 +818,28 @@ public class MessengerController {
                 return;
             }
             
-            if (selectedConversation != null && selectedConversation.getConversationId().equals(conv.getConversationId())) {
-                addMessageBubble(message);
-                messagesScrollPane.setVvalue(1.0);
+            if (isSelected(conv.getConversationId())) {
+                messageItems.add(message);
+                scrollMessagesToBottom();
             }
-            // Update conversation list preview
+            // Update conversation list preview: MessageStore có thể chưa có message này -> seed từ message
+            previewCache.seed(message, formatMessagePreview(message));
             loadConversations();
         });
     }
     
-    private String formatTime(long timestamp) {
-        if (timestamp == 0) return "";
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-        return sdf.format(new Date(timestamp));
-    }
-    
-    private String formatMessageTime(long timestamp) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-        return sdf.format(new Date(timestamp));
+    private void onSendFailed(Message message, String reason) {
+        String content = message.getContent() != null ? message.getContent() : "";
+        String preview = content.length() > 80 ? content.substring(0, 80) + "..." : content;
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Không gửi được tin nhắn");
+            alert.setHeaderText(null);
+            alert.setContentText("Server từ chối lưu tin nhắn:\n" + preview + "\n\nLý do: " + reason);
+            alert.show();
+        });
     }
-    
+
     /**
      * Get display name for conversation from participants
      */
@@ -1040,6 +855,11 @@ public class MessengerController {
                 .findFirst()
                 .orElse(null);
             
+            User cachedUser = otherUserId != null ? userDirectory.peek(otherUserId) : null;
+            if (cachedUser != null && cachedUser.getFullName() != null) {
+                return cachedUser.getFullName();
+            }
+            
             if (otherUserId != null && allUsers != null) {
                 return allUsers.stream()
                     .filter(u -> u.getUserId().equals(otherUserId))
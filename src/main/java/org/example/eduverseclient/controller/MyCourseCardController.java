@@ -6,11 +6,11 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.service.ImageCache;
 
 @Slf4j
 @Getter
@@ -86,13 +86,8 @@ public class MyCourseCardController {
 
         // Set thumbnail
         if (course.getThumbnailUrl() != null && !course.getThumbnailUrl().isEmpty()) {
-            try {
-                Image image = new Image(course.getThumbnailUrl(), true);
-                thumbnailImage.setImage(image);
-            } catch (Exception e) {
-                log.warn("Failed to load thumbnail: {}", course.getThumbnailUrl());
-                setPlaceholderImage();
-            }
+            ImageCache.getInstance().loadInto(thumbnailImage, course.getThumbnailUrl(), 280, 157,
+                    this::setPlaceholderImage);
         } else {
             setPlaceholderImage();
         }
@@ -6,11 +6,11 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.service.ImageCache;
 
 @Slf4j
 @Getter
@@ -77,14 +77,8 @@ public class RecentLessonCardController {
 
         // Set course thumbnail
         if (course.getThumbnailUrl() != null && !course.getThumbnailUrl().isEmpty()) {
-            try {
-                Image image = new Image(course.getThumbnailUrl(), true);
-                courseThumbnail.setImage(image);
-            } catch (Exception e) {
-                log.warn("Failed to load course thumbnail: {}", course.getThumbnailUrl());
-                courseThumbnail.setImage(null);
-                courseThumbnail.getStyleClass().add("placeholder-thumbnail");
-            }
+            ImageCache.getInstance().loadInto(courseThumbnail, course.getThumbnailUrl(), 120, 68,
+                    () -> courseThumbnail.getStyleClass().add("placeholder-thumbnail"));
         } else {
             courseThumbnail.setImage(null);
             courseThumbnail.getStyleClass().add("placeholder-thumbnail");
@@ -0,0 +1,176 @@
+package org.example.eduverseclient.media;
+
+import common.constant.AntiCheatConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+
+/**
+ * AntiCheatFrameGate - Tiền xử lý frame trước khi gửi lên AI service
+ * - Decode JPEG ở độ phân giải thấp (source subsampling)
+ * - Tính frame-difference trên bản grayscale nhỏ để bỏ qua frame gần như giống hệt
+ * - Vẫn gửi ít nhất 1 frame mỗi MAX_SKIP_INTERVAL_MS
+ * - Re-encode frame ở độ phân giải giảm để payload nhỏ hơn
+ */
+@Slf4j
+public class AntiCheatFrameGate {
+
+    private static final int THUMB_WIDTH = 64;
+    private static final int THUMB_HEIGHT = 48;
+
+    private final double diffThreshold;
+    private final long maxSkipIntervalMs;
+    private final int maxWidth;
+
+    private byte[] lastThumbnail;
+    private long lastSentTime = 0;
+
+    // Thống kê
+    private long acceptedFrames = 0;
+    private long skippedFrames = 0;
+
+    public AntiCheatFrameGate() {
+        this(AntiCheatConfig.FRAME_DIFF_THRESHOLD,
+                AntiCheatConfig.MAX_SKIP_INTERVAL_MS,
+                AntiCheatConfig.ANALYSIS_MAX_WIDTH);
+    }
+
+    public AntiCheatFrameGate(double diffThreshold, long maxSkipIntervalMs, int maxWidth) {
+        this.diffThreshold = diffThreshold;
+        this.maxSkipIntervalMs = maxSkipIntervalMs;
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * Xử lý 1 frame JPEG.
+     * @return JPEG đã thu nhỏ nếu cần gửi, null nếu frame bị bỏ qua
+     */
+    public synchronized byte[] process(byte[] jpegBytes) {
+        if (jpegBytes == null || jpegBytes.length == 0) {
+            return null;
+        }
+
+        BufferedImage image = decodeSubsampled(jpegBytes);
+        if (image == null) {
+            // Không decode được -> gửi nguyên frame, để AI service quyết định
+            lastSentTime = System.currentTimeMillis();
+            acceptedFrames++;
+            return jpegBytes;
+        }
+
+        byte[] thumbnail = toGrayThumbnail(image);
+        double score = lastThumbnail == null ? 1.0 : diffScore(lastThumbnail, thumbnail);
+        long now = System.currentTimeMillis();
+        boolean forced = now - lastSentTime >= maxSkipIntervalMs;
+
+        if (score < diffThreshold && !forced) {
+            skippedFrames++;
+            log.trace("⏭️ Anti-cheat frame skipped: diff={} < {}", String.format("%.4f", score), diffThreshold);
+            return null;
+        }
+
+        lastThumbnail = thumbnail;
+        lastSentTime = now;
+        acceptedFrames++;
+
+        byte[] reduced = encodeReduced(image);
+        log.debug("📉 Anti-cheat frame accepted: diff={}, forced={}, {} -> {} bytes",
+                String.format("%.4f", score), forced, jpegBytes.length,
+                reduced != null ? reduced.length : jpegBytes.length);
+        return reduced != null ? reduced : jpegBytes;
+    }
+
+    public synchronized void reset() {
+        lastThumbnail = null;
+        lastSentTime = 0;
+    }
+
+    public synchronized long getAcceptedFrames() {
+        return acceptedFrames;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Decode JPEG với source subsampling để chiều rộng không vượt quá maxWidth
+     * (rẻ hơn nhiều so với decode full rồi mới resize)
+     */
+    private BufferedImage decodeSubsampled(byte[] jpegBytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(jpegBytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int step = Math.max(1, (int) Math.ceil((double) width / maxWidth));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (Exception e) {
+            log.debug("Failed to decode frame for anti-cheat gate: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] toGrayThumbnail(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(THUMB_WIDTH, THUMB_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, THUMB_WIDTH, THUMB_HEIGHT, null);
+        g.dispose();
+
+        byte[] pixels = new byte[THUMB_WIDTH * THUMB_HEIGHT];
+        gray.getRaster().getDataElements(0, 0, THUMB_WIDTH, THUMB_HEIGHT, pixels);
+        return pixels;
+    }
+
+    /**
+     * Mean absolute difference, chuẩn hóa về [0, 1]
+     */
+    private double diffScore(byte[] previous, byte[] current) {
+        long sum = 0;
+        for (int i = 0; i < current.length; i++) {
+            sum += Math.abs((previous[i] & 0xFF) - (current[i] & 0xFF));
+        }
+        return sum / (255.0 * current.length);
+    }
+
+    private byte[] encodeReduced(BufferedImage image) {
+        try {
+            BufferedImage rgb = image;
+            if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+                rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = rgb.createGraphics();
+                g.drawImage(image, 0, 0, null);
+                g.dispose();
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            if (!ImageIO.write(rgb, "jpg", baos)) {
+                return null;
+            }
+            return baos.toByteArray();
+        } catch (Exception e) {
+            log.debug("Failed to re-encode anti-cheat frame: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package org.example.eduverseclient.media;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.sound.sampled.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 
 @Slf4j
@@ -64,7 +64,7 @@ public class AudioPlayer {
             speaker.start();
             
             isRunning = true;
-            executor = Executors.newSingleThreadExecutor();
+            executor = ClientExecutors.newPool("audio-player", 1);
             executor.submit(this::playbackLoop);
             
             log.info("✅ Audio player started");
@@ -6,12 +6,12 @@ import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.imageio.ImageIO;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -113,7 +113,7 @@ public class CameraCapture {
 
             // Khởi tạo luồng capture nếu chưa có hoặc đã bị shutdown
             if (executor == null || executor.isShutdown()) {
-                executor = Executors.newScheduledThreadPool(1);
+                executor = ClientExecutors.newScheduler("camera-capture");
             }
 
             int intervalMs = 1000 / FPS;
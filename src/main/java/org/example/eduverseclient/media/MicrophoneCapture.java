@@ -1,10 +1,10 @@
 package org.example.eduverseclient.media;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.sound.sampled.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -77,7 +77,7 @@ public class MicrophoneCapture {
             microphone.start();
 
             isRunning = true;
-            executor = Executors.newSingleThreadExecutor();
+            executor = ClientExecutors.newPool("microphone-capture", 1);
 
             // Chạy vòng lặp thu âm trên luồng riêng
             executor.submit(this::captureLoop);
@@ -7,7 +7,10 @@ import javafx.scene.image.Image;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.media.*;
+import org.example.eduverseclient.network.rmi.ResilientStub;
 import org.example.eduverseclient.network.udp.*;
+import org.example.eduverseclient.service.ClientEventBus;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -19,7 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
@@ -57,20 +60,19 @@ public class ExamStreamManager {
     // Peer Cache
     private List<Peer> otherPeers;  // Tất cả peers khác (proctor hoặc students)
     private long lastPeerUpdateTime = 0;
-    private static final long PEER_UPDATE_INTERVAL = 2000;
+    private static final long PEER_UPDATE_INTERVAL = 2000; // khi server không push
     private ScheduledExecutorService peerUpdateExecutor;
+    private ClientEventBus.Subscription membershipSubscription;
 
-    // Circuit breaker for updatePeerList
-    private int consecutiveFailures = 0;
-    private static final int MAX_FAILURES = 3;
-    private static final long CIRCUIT_BREAKER_TIMEOUT = 10000;
-    private long lastFailureTime = 0;
 
     // Callbacks
     private BiConsumer<String, Image> videoCallback;
 
     // Anti-cheating
     private org.example.eduverseclient.service.AntiCheatService antiCheatService;
+    private AntiCheatFrameGate antiCheatFrameGate;
+    private org.example.eduverseclient.service.AntiCheatBatcher antiCheatBatcher;  // Chỉ có nếu proctor + batch mode
+    private org.example.eduverseclient.service.ViolationAggregator violationAggregator;
     private long lastAnalysisTime = 0;
     private static final long ANALYSIS_INTERVAL_MS = 1000; // 1 FPS
     private java.util.function.Consumer<org.example.eduverseclient.service.AntiCheatService.AnalysisResult> violationCallback;
@@ -82,6 +84,8 @@ public class ExamStreamManager {
         this.examId = participant.getExamId();
         this.audioPlayers = new ConcurrentHashMap<>();
         this.antiCheatService = org.example.eduverseclient.service.AntiCheatService.getInstance();
+        this.antiCheatFrameGate = new AntiCheatFrameGate();
+        this.violationAggregator = new org.example.eduverseclient.service.ViolationAggregator(examId);
         log.info("✅ ExamStreamManager initialized - Role: {}, ExamId: {}",
                 isProctor ? "PROCTOR" : "STUDENT", examId);
     }
@@ -99,11 +103,19 @@ public class ExamStreamManager {
             log.info("✅ Sockets bound: Video={}, Audio={}, Chat={}",
                     myPeer.getVideoPort(), myPeer.getAudioPort(), myPeer.getChatPort());
 
+            violationAggregator.start();
+
             // Initial peer list update
             updatePeerList();
-            peerUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
-            peerUpdateExecutor.scheduleAtFixedRate(this::updatePeerList,
-                    PEER_UPDATE_INTERVAL, PEER_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+            // Cập nhật khi server push user vào/rời phòng thi, polling chỉ là safety-net
+            peerUpdateExecutor = ClientExecutors.newScheduler("exam-peer-update");
+            ClientEventBus.getInstance().schedulePoll(peerUpdateExecutor, this::updatePeerList, PEER_UPDATE_INTERVAL);
+            membershipSubscription = ClientEventBus.getInstance().subscribe(
+                    ClientEventBus.ExamMembershipChanged.class, event -> {
+                        if (examId.equals(event.getExamId())) {
+                            refreshPeerListNow();
+                        }
+                    });
 
             // ============ VIDEO ============
             cameraCapture = CameraCapture.getInstance();
@@ -118,14 +130,23 @@ public class ExamStreamManager {
                 // Proctor forward video từ students đến tất cả participants khác
                 if (isProctor && !senderId.equals(myPeer.getUserId())) {
                     forwardVideoToOthers(senderId, receivedImage);
+
+                    // Batch mode: proctor gom frame của students để phân tích anti-cheat
+                    if (antiCheatBatcher != null) {
+                        antiCheatBatcher.offer(senderId, () -> convertImageToBytes(receivedImage));
+                    }
                 }
             });
 
+            if (isProctor && common.constant.AntiCheatConfig.PROCTOR_BATCH_ANALYSIS) {
+                antiCheatBatcher = new org.example.eduverseclient.service.AntiCheatBatcher(examId, this::handleBatchResult);
+                antiCheatBatcher.start();
+            }
+
             cameraCapture.start(
                     frameData -> {
                         if (isProctor) {
                             // PROCTOR: Broadcast camera của mình đến TẤT CẢ students
-                            updatePeerList();
                             if (otherPeers != null && !otherPeers.isEmpty() && videoSender != null) {
                                 otherPeers.forEach(peer -> {
                                     try {
@@ -140,7 +161,10 @@ public class ExamStreamManager {
                             sendFrameToProctor(frameData);
 
                             // Analyze frame for anti-cheat (chỉ cho students, 1 FPS)
-                            analyzeFrameForAntiCheat(frameData);
+                            // Batch mode: proctor phân tích thay, student không tự gọi AI service
+                            if (!common.constant.AntiCheatConfig.PROCTOR_BATCH_ANALYSIS) {
+                                analyzeFrameForAntiCheat(frameData);
+                            }
                         }
                     },
                     previewImage -> {
@@ -206,13 +230,19 @@ public class ExamStreamManager {
         }
         lastAnalysisTime = now;
 
-        int size = (frameBytes == null ? -1 : frameBytes.length);
-        boolean jpegHeader = looksLikeJpeg(frameBytes);
+        // Pre-analysis: bỏ qua frame không thay đổi, thu nhỏ frame trước khi gửi
+        byte[] analysisFrame = antiCheatFrameGate.process(frameBytes);
+        if (analysisFrame == null) {
+            return;
+        }
 
-        log.info("🔍 Anti-cheat send frame: examId={}, userId={}, size={} bytes, jpegHeader={}",
-                examId, myPeer.getUserId(), size, jpegHeader);
+        int size = analysisFrame.length;
+        boolean jpegHeader = looksLikeJpeg(analysisFrame);
 
-        antiCheatService.analyzeFrame(frameBytes, examId, myPeer.getUserId())
+        log.info("🔍 Anti-cheat send frame: examId={}, userId={}, size={} bytes (original {}), jpegHeader={}",
+                examId, myPeer.getUserId(), size, frameBytes == null ? -1 : frameBytes.length, jpegHeader);
+
+        antiCheatService.analyzeFrame(analysisFrame, examId, myPeer.getUserId())
                 .thenAccept(result -> {
                     if (result != null) {
                         // ✅ FIX log format
@@ -226,7 +256,7 @@ public class ExamStreamManager {
                         }
 
                         if ("VIOLATION".equalsIgnoreCase(result.decision) || result.suspicionScore >= 0.70) {
-                            log.warn("🚨 VIOLATION detected! Reporting to server...");
+                            log.warn("🚨 VIOLATION detected! Queuing report to server...");
                             reportViolationToServer(result);
                         }
                     } else {
@@ -239,24 +269,40 @@ public class ExamStreamManager {
                 });
     }
 
+    /**
+     * Kết quả batch (proctor) cho 1 student
+     */
+    private void handleBatchResult(String userId, org.example.eduverseclient.service.AntiCheatService.AnalysisResult result) {
+        log.debug("📊 Batch anti-cheat result - User: {}, Decision: {}, Score: {}",
+                userId, result.decision, String.format("%.2f", result.suspicionScore));
+
+        if (result.isViolation()) {
+            String userName = userId;
+            if (otherPeers != null) {
+                userName = otherPeers.stream()
+                        .filter(p -> userId.equals(p.getUserId()) && p.getUserName() != null)
+                        .map(Peer::getUserName)
+                        .findFirst()
+                        .orElse(userId);
+            }
+            reportViolationToServer(userId, userName, result);
+        }
+    }
+
     private void reportViolationToServer(org.example.eduverseclient.service.AntiCheatService.AnalysisResult result) {
+        reportViolationToServer(myPeer.getUserId(), RMIClient.getInstance().getCurrentUser().getFullName(), result);
+    }
+
+    /**
+     * Violation không gửi ngay mà gộp thành episode, flush theo batch (xem ViolationAggregator)
+     */
+    private void reportViolationToServer(String userId, String userName,
+                                         org.example.eduverseclient.service.AntiCheatService.AnalysisResult result) {
         try {
-            common.model.exam.Violation violation = common.model.exam.Violation.builder()
-                    .violationId(java.util.UUID.randomUUID().toString())
-                    .examId(examId)
-                    .userId(myPeer.getUserId())
-                    .userName(RMIClient.getInstance().getCurrentUser().getFullName())
-                    .violationType(String.join(", ", result.flags))
-                    .suspicionScore(result.suspicionScore)
-                    .decision(result.decision)
-                    .flags(result.flags)
-                    .timestamp(System.currentTimeMillis())
-                    .build();
-
-            org.example.eduverseclient.service.ExamService.getInstance().reportViolation(violation);
-            log.warn("🚨 VIOLATION reported to server: {} (score: {})", result.decision, result.suspicionScore);
+            violationAggregator.add(userId, userName, result, System.currentTimeMillis());
+            log.debug("🚨 VIOLATION queued for aggregation: {} - {} (score: {})", userId, result.decision, result.suspicionScore);
         } catch (Exception e) {
-            log.error("Failed to report violation to server", e);
+            log.error("Failed to queue violation", e);
         }
     }
 
@@ -264,6 +310,19 @@ public class ExamStreamManager {
         log.info("🛑 Stopping Exam Stream Manager...");
 
         try {
+            if (antiCheatBatcher != null) {
+                antiCheatBatcher.stop();
+                antiCheatBatcher = null;
+            }
+
+            if (violationAggregator != null) {
+                violationAggregator.stop();
+            }
+
+            if (membershipSubscription != null) {
+                membershipSubscription.close();
+                membershipSubscription = null;
+            }
             if (peerUpdateExecutor != null) {
                 peerUpdateExecutor.shutdown();
                 try {
@@ -378,7 +437,9 @@ public class ExamStreamManager {
                         }
                     } else {
                         sendFrameToProctor(frameData);
-                        analyzeFrameForAntiCheat(frameData);
+                        if (!common.constant.AntiCheatConfig.PROCTOR_BATCH_ANALYSIS) {
+                            analyzeFrameForAntiCheat(frameData);
+                        }
                     }
                 },
                 previewImage -> {
@@ -430,7 +491,6 @@ public class ExamStreamManager {
     // --- FORWARDING METHODS ---
 
     private void forwardVideoToOthers(String senderId, Image receivedImage) {
-        updatePeerList();
         byte[] frameData = convertImageToBytes(receivedImage);
         if (frameData == null) {
             log.warn("Failed to convert image to bytes for forwarding");
@@ -455,7 +515,6 @@ public class ExamStreamManager {
     }
 
     private void forwardAudioToOthers(String senderId, byte[] audioData) {
-        updatePeerList();
         if (otherPeers == null || otherPeers.isEmpty()) {
             return;
         }
@@ -483,17 +542,21 @@ public class ExamStreamManager {
         }
     }
 
-    private void updatePeerList() {
-        if (consecutiveFailures >= MAX_FAILURES) {
-            long timeSinceLastFailure = System.currentTimeMillis() - lastFailureTime;
-            if (timeSinceLastFailure < CIRCUIT_BREAKER_TIMEOUT) {
-                return;
-            } else {
-                consecutiveFailures = 0;
-                log.info("🔄 Circuit breaker reset, retrying peer list update");
-            }
+    /**
+     * Cập nhật peer list trên thread peer-update (giữ updatePeerList chạy tuần tự)
+     */
+    private void refreshPeerListNow() {
+        ScheduledExecutorService executor = peerUpdateExecutor;
+        if (executor == null) return;
+        try {
+            executor.execute(this::updatePeerList);
+        } catch (RejectedExecutionException e) {
+            // Đang stop
         }
+    }
 
+    private void updatePeerList() {
+        // Server không tới được: circuit breaker dùng chung của MeetingService (ResilientStub) fail ngay
         try {
             List<Peer> latestPeers = RMIClient.getInstance().getMeetingService().getAllPeers(examId);
 
@@ -502,7 +565,6 @@ public class ExamStreamManager {
                         .filter(p -> p != null && !p.getUserId().equals(myPeer.getUserId()))
                         .collect(Collectors.toList());
                 this.lastPeerUpdateTime = System.currentTimeMillis();
-                consecutiveFailures = 0;
 
                 if (isProctor) {
                     log.debug("📋 Updated peer list: {} students", otherPeers.size());
@@ -512,9 +574,9 @@ public class ExamStreamManager {
             } else {
                 this.otherPeers = new ArrayList<>();
             }
+        } catch (ResilientStub.CircuitOpenException e) {
+            log.debug("⏸️ {}, using cached peer list", e.getMessage());
         } catch (Exception e) {
-            consecutiveFailures++;
-            lastFailureTime = System.currentTimeMillis();
             log.warn("⚠️ Server connection lost. Using cached peer list ({} peers). Error: {}",
                     (otherPeers != null ? otherPeers.size() : 0), e.getMessage());
         }
@@ -1,5 +1,6 @@
 package org.example.eduverseclient.network.media;
 
+import common.constant.NetworkConfig;
 import common.enums.MeetingRole;
 import common.model.MeetingEnrollment;
 import common.model.Peer;
@@ -8,7 +9,10 @@ import javafx.scene.image.Image;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
 import org.example.eduverseclient.media.*;
+import org.example.eduverseclient.network.rmi.ResilientStub;
 import org.example.eduverseclient.network.udp.*;
+import org.example.eduverseclient.service.ClientEventBus;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -16,10 +20,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
@@ -52,14 +58,22 @@ public class MediaStreamManager {
     // Peer Cache
     private List<Peer> otherPeers;
     private long lastPeerUpdateTime = 0;
-    private static final long PEER_UPDATE_INTERVAL = 2000; // Update every 2 seconds
+    private static final long PEER_UPDATE_INTERVAL = 2000; // Update every 2 seconds (khi server không push)
     private ScheduledExecutorService peerUpdateExecutor;
+    private ClientEventBus.Subscription membershipSubscription;
     
-    // Circuit breaker for updatePeerList
-    private int consecutiveFailures = 0;
-    private static final int MAX_FAILURES = 3;
-    private static final long CIRCUIT_BREAKER_TIMEOUT = 10000; // 10 seconds
-    private long lastFailureTime = 0;
+
+    // LAN multicast (null nếu tắt / không mở được): host gửi 1 bản cho cả subnet, participant join group meetingId
+    private MulticastChannel videoMulticast;
+    private MulticastChannel audioMulticast;
+    private MulticastChannel chatMulticast;
+    private String multicastGroupHost;
+    private UDPVideoSender videoMulticastSender;
+    private UDPAudioSender audioMulticastSender;
+    private UDPChatSender chatMulticastSender;
+    private UDPVideoReceiver videoMulticastReceiver;
+    private UDPAudioReceiver audioMulticastReceiver;
+    private UDPChatReceiver chatMulticastReceiver;
 
     // Callbacks
     private UDPChatSender chatSender;
@@ -111,10 +125,16 @@ public class MediaStreamManager {
             // Initial peer list update
             updatePeerList();
 
-            // Start periodic peer list updates
-            peerUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
-            peerUpdateExecutor.scheduleAtFixedRate(this::updatePeerList,
-                    PEER_UPDATE_INTERVAL, PEER_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+            // Peer list: cập nhật khi server push user vào/rời meeting, polling chỉ là safety-net
+            // (gửi / forward frame dùng danh sách đã cache, không gọi RMI)
+            peerUpdateExecutor = ClientExecutors.newScheduler("meeting-peer-update");
+            ClientEventBus.getInstance().schedulePoll(peerUpdateExecutor, this::updatePeerList, PEER_UPDATE_INTERVAL);
+            membershipSubscription = ClientEventBus.getInstance().subscribe(
+                    ClientEventBus.MeetingMembershipChanged.class, event -> {
+                        if (meetingId.equals(event.getMeetingId())) {
+                            refreshPeerListNow();
+                        }
+                    });
             
             // Force immediate update after short delay to catch late joiners (only runs once)
             peerUpdateExecutor.schedule(() -> {
@@ -142,14 +162,8 @@ public class MediaStreamManager {
                           //  updatePeerList();
 
 
-                            if (otherPeers != null && videoSender != null) {
-                                otherPeers.forEach(peer -> {
-                                    try {
-                                        videoSender.sendFrame(frameData, peer.getIpAddress(), peer.getVideoPort());
-                                    } catch (Exception e) {
-                                        log.error("Failed to send frame to {}: {}", peer.getUserId(), e.getMessage());
-                                    }
-                                });
+                            if (videoSender != null) {
+                                broadcastVideo(myPeer.getUserId(), frameData);
                             }
                         } else {
                             // Participant: send to host only
@@ -173,14 +187,8 @@ public class MediaStreamManager {
             microphoneCapture.start(audioData -> {
                 if (myEnrollment.getRole() == MeetingRole.HOST) {
                   //  updatePeerList();
-                    if (otherPeers != null && audioSender != null) {
-                        otherPeers.forEach(peer -> {
-                            try {
-                                audioSender.sendAudio(audioData, peer.getIpAddress(), peer.getAudioPort());
-                            } catch (Exception e) {
-                                log.error("Failed to send audio to {}: {}", peer.getUserId(), e.getMessage());
-                            }
-                        });
+                    if (audioSender != null) {
+                        broadcastAudio(myPeer.getUserId(), audioData);
                     }
                 } else {
                     sendAudioToHost(audioData);
@@ -190,6 +198,8 @@ public class MediaStreamManager {
             // ============ CHAT ============
             chatSender = new UDPChatSender(chatSocket, myPeer.getUserId());
             chatReceiver = new UDPChatReceiver(chatSocket);
+            chatReceiver.setFileAckHandler(chatSender::onFileAck);
+            chatReceiver.setFileResumeHandler(chatSender::onFileResume);
 
             chatReceiver.start(
                     (senderId, conversationId, message) -> {
@@ -200,12 +210,22 @@ public class MediaStreamManager {
                     new UDPChatReceiver.FileTransferCallback() {
                         @Override public void onFileStart(String senderId, String conversationId, String fileName, int fileSize, int totalChunks) {}
                         @Override public void onFileChunk(String senderId, String conversationId, int chunkIndex, int totalChunks) {}
-                        @Override public void onFileComplete(String senderId, String conversationId, String fileName, byte[] fileData) {
-                            log.info("✅ File received: {}", fileName);
+                        @Override public void onFileComplete(String senderId, String conversationId, String fileName, Path file) {
+                            try {
+                                Path saved = UDPChatReceiver.moveToDownloads(file, fileName);
+                                log.info("✅ File received: {} -> {}", fileName, saved);
+                                if (chatMessageCallback != null) chatMessageCallback.accept(senderId, "📎 " + fileName + ": " + saved);
+                            } catch (IOException e) {
+                                log.warn("⚠️ Failed to save received file {}: {}", fileName, e.getMessage());
+                                try { Files.deleteIfExists(file); } catch (IOException ignored) {}
+                            }
                         }
                     }
             );
 
+            // ============ LAN MULTICAST (optional) ============
+            startMulticast();
+
             log.info("✅ Media streaming started successfully!");
 
         } catch (SocketException e) {
@@ -219,6 +239,10 @@ public class MediaStreamManager {
 
         try {
             // 0. Stop periodic peer updates first
+            if (membershipSubscription != null) {
+                membershipSubscription.close();
+                membershipSubscription = null;
+            }
             if (peerUpdateExecutor != null) {
                 peerUpdateExecutor.shutdown();
                 try {
@@ -270,6 +294,8 @@ public class MediaStreamManager {
                 }
             }
 
+            stopMulticast();
+
             // 3. Wait a bit for receivers to finish processing
             try {
                 Thread.sleep(100);
@@ -341,15 +367,8 @@ public class MediaStreamManager {
             camera.start(
                     frameData -> {
                         if (myEnrollment.getRole() == MeetingRole.HOST) {
-                            updatePeerList();
-                            if (otherPeers != null && videoSender != null) {
-                                otherPeers.forEach(peer -> {
-                                    try {
-                                        videoSender.sendFrame(frameData, peer.getIpAddress(), peer.getVideoPort());
-                                    } catch (Exception e) {
-                                        log.error("Failed to send frame to {}: {}", peer.getUserId(), e.getMessage());
-                                    }
-                                });
+                            if (videoSender != null) {
+                                broadcastVideo(myPeer.getUserId(), frameData);
                             }
                         } else {
                             sendFrameToHost(frameData);
@@ -416,64 +435,151 @@ public class MediaStreamManager {
     // --- FORWARDING METHODS ---
 
     private void forwardChatToOthers(String senderId, String message) {
-        updatePeerList(); // Ensure fresh peer list before forwarding
-
-        forwardData(senderId, (peer) ->
+        forwardData(senderId, chatMulticast,
+                () -> chatMulticastSender.relayMessage(senderId, meetingId, message, multicastGroupHost, chatMulticast.getPort()),
+                (peer) ->
                 //  Truyền thêm meetingId vào vị trí conversationId
-                chatSender.forwardMessage(senderId, meetingId, message, peer.getIpAddress(), peer.getChatPort())
+                chatSender.relayMessage(senderId, meetingId, message, peer.getIpAddress(), peer.getChatPort())
         );
     }
 
     private void forwardVideoToOthers(String senderId, Image receivedImage) {
-        updatePeerList(); // Ensure fresh peer list before forwarding
         byte[] frameData = convertImageToBytes(receivedImage);
         if (frameData != null) {
-            forwardData(senderId, (peer) ->
-                    videoSender.sendFrame(frameData, peer.getIpAddress(), peer.getVideoPort()));
+            broadcastVideo(senderId, frameData);
         }
     }
 
     private void forwardAudioToOthers(String senderId, byte[] audioData) {
-        updatePeerList(); // Ensure fresh peer list before forwarding
-        forwardData(senderId, (peer) ->
-                audioSender.sendAudio(audioData, peer.getIpAddress(), peer.getAudioPort()));
+        broadcastAudio(senderId, audioData);
+    }
+
+    private void broadcastVideo(String senderId, byte[] frameData) {
+        forwardData(senderId, videoMulticast,
+                () -> videoMulticastSender.sendFrame(frameData, multicastGroupHost, videoMulticast.getPort()),
+                (peer) -> videoSender.sendFrame(frameData, peer.getIpAddress(), peer.getVideoPort()));
+    }
+
+    private void broadcastAudio(String senderId, byte[] audioData) {
+        forwardData(senderId, audioMulticast,
+                () -> audioMulticastSender.sendAudio(audioData, multicastGroupHost, audioMulticast.getPort()),
+                (peer) -> audioSender.sendAudio(audioData, peer.getIpAddress(), peer.getAudioPort()));
     }
 
-    private void forwardData(String senderId, ThrowingConsumer<Peer> action) {
+    /**
+     * Gửi tới mọi peer trừ sender gốc và host.
+     * Có multicast: peer đã xác nhận đang nhận group meetingId (beacon MulticastMembership) nhận chung 1 gói
+     * multicast (gửi tối đa 1 lần); peer khác subnet hoặc open()/join() lỗi nhận unicast.
+     * Sender gốc nếu là member cũng nhận lại gói multicast - phía nhận tự bỏ gói của chính mình.
+     */
+    private void forwardData(String senderId, MulticastChannel multicast, ThrowingRunnable multicastAction,
+                             ThrowingConsumer<Peer> action) {
         if (otherPeers == null) return;
-        otherPeers.stream()
-                // Filter out:
-                // 1. The original sender (so they don't get their own message back)
-                // 2. Myself (Host)
-                .filter(p -> !p.getUserId().equals(senderId) && !p.getUserId().equals(myPeer.getUserId()))
-                .forEach(peer -> {
-                    try {
-                        action.accept(peer);
-                    } catch (Exception e) {
-                        log.error("Forward failed to {}: {}", peer.getUserId(), e.getMessage());
+        boolean useMulticast = multicast != null && myEnrollment.getRole() == MeetingRole.HOST;
+        boolean multicastSent = false;
+        for (Peer peer : otherPeers) {
+            // Filter out:
+            // 1. The original sender (so they don't get their own message back)
+            // 2. Myself (Host)
+            if (peer.getUserId().equals(senderId) || peer.getUserId().equals(myPeer.getUserId())) continue;
+            try {
+                if (useMulticast && multicast.isConfirmedMember(meetingId, peer)) {
+                    if (!multicastSent) {
+                        multicastSent = true;
+                        multicastAction.run();
                     }
-                });
+                } else {
+                    action.accept(peer);
+                }
+            } catch (Exception e) {
+                log.error("Forward failed to {}: {}", peer.getUserId(), e.getMessage());
+            }
+        }
     }
 
     @FunctionalInterface interface ThrowingConsumer<T> { void accept(T t) throws Exception; }
+    @FunctionalInterface interface ThrowingRunnable { void run() throws Exception; }
+
+    // --- LAN MULTICAST ---
+
+    /**
+     * Host: mở socket multicast để gửi. Participant: join group meetingId và nhận song song với socket unicast.
+     * Không mở được multicast -> mọi thứ vẫn chạy unicast như cũ.
+     */
+    private void startMulticast() {
+        if (!NetworkConfig.MULTICAST_ENABLED) return;
+
+        multicastGroupHost = MulticastChannel.groupHost(meetingId);
+        videoMulticast = MulticastChannel.open(NetworkConfig.MULTICAST_VIDEO_PORT);
+        audioMulticast = MulticastChannel.open(NetworkConfig.MULTICAST_AUDIO_PORT);
+        chatMulticast = MulticastChannel.open(NetworkConfig.MULTICAST_CHAT_PORT);
+        if (videoMulticast == null && audioMulticast == null && chatMulticast == null) return;
+        if (!MulticastMembership.getInstance().start(myPeer.getUserId())) {
+            // Không xác nhận được member -> toàn bộ unicast
+            stopMulticast();
+            return;
+        }
+
+        if (myEnrollment.getRole() == MeetingRole.HOST) {
+            if (videoMulticast != null) videoMulticastSender = new UDPVideoSender(videoMulticast.getSocket(), myPeer.getUserId());
+            if (audioMulticast != null) audioMulticastSender = new UDPAudioSender(audioMulticast.getSocket(), myPeer.getUserId());
+            if (chatMulticast != null) chatMulticastSender = new UDPChatSender(chatMulticast.getSocket(), myPeer.getUserId());
+            return;
+        }
+
+        String myUserId = myPeer.getUserId();
+        if (videoMulticast != null && videoMulticast.join(meetingId)) {
+            videoMulticastReceiver = new UDPVideoReceiver(videoMulticast.getSocket());
+            videoMulticastReceiver.start((senderId, receivedImage) -> {
+                if (!myUserId.equals(senderId) && videoCallback != null) videoCallback.accept(senderId, receivedImage);
+            });
+        }
+        if (audioMulticast != null && audioMulticast.join(meetingId)) {
+            audioMulticastReceiver = new UDPAudioReceiver(audioMulticast.getSocket());
+            audioMulticastReceiver.start(this::playAudio);
+        }
+        if (chatMulticast != null && chatMulticast.join(meetingId)) {
+            chatMulticastReceiver = new UDPChatReceiver(chatMulticast.getSocket());
+            chatMulticastReceiver.start((senderId, conversationId, message) -> {
+                if (!myUserId.equals(senderId) && meetingId.equals(conversationId) && chatMessageCallback != null) {
+                    chatMessageCallback.accept(senderId, message);
+                }
+            }, null);
+        }
+    }
+
+    private void stopMulticast() {
+        try {
+            if (videoMulticastReceiver != null) videoMulticastReceiver.stop();
+            if (audioMulticastReceiver != null) audioMulticastReceiver.stop();
+            if (chatMulticastReceiver != null) chatMulticastReceiver.stop();
+        } catch (Exception e) {
+            log.warn("Error stopping multicast receivers", e);
+        }
+        // Đóng socket để thread receive còn đang block trong receive() thoát ra
+        if (videoMulticast != null) videoMulticast.close();
+        if (audioMulticast != null) audioMulticast.close();
+        if (chatMulticast != null) chatMulticast.close();
+        videoMulticast = audioMulticast = chatMulticast = null;
+    }
 
     // --- UTILITY METHODS ---
 
-    private void updatePeerList() {
-        // Circuit breaker: Skip RMI call if too many failures
-        if (consecutiveFailures >= MAX_FAILURES) {
-            long timeSinceLastFailure = System.currentTimeMillis() - lastFailureTime;
-            if (timeSinceLastFailure < CIRCUIT_BREAKER_TIMEOUT) {
-                // Still in circuit breaker timeout, skip RMI call
-                log.debug("⏸️ Circuit breaker active, using cached peer list");
-                return;
-            } else {
-                // Timeout expired, reset and try again
-                consecutiveFailures = 0;
-                log.info("🔄 Circuit breaker reset, retrying peer list update");
-            }
+    /**
+     * Cập nhật peer list trên thread peer-update (giữ updatePeerList chạy tuần tự)
+     */
+    private void refreshPeerListNow() {
+        ScheduledExecutorService executor = peerUpdateExecutor;
+        if (executor == null) return;
+        try {
+            executor.execute(this::updatePeerList);
+        } catch (RejectedExecutionException e) {
+            // Đang stop
         }
-        
+    }
+
+    private void updatePeerList() {
+        // Server không tới được: circuit breaker dùng chung của MeetingService (ResilientStub) fail ngay
         try {
             // Cố gắng lấy danh sách mới từ Server
             List<Peer> latestPeers = RMIClient.getInstance().getMeetingService().getAllPeers(meetingId);
@@ -485,20 +591,13 @@ public class MediaStreamManager {
                         .collect(Collectors.toList());
 
                 this.lastPeerUpdateTime = System.currentTimeMillis();
-                consecutiveFailures = 0; // Reset on success
                 log.debug("📋 Updated peer list: {} peers", otherPeers.size());
             }
+        } catch (ResilientStub.CircuitOpenException e) {
+            log.debug("⏸️ {}, using cached peer list", e.getMessage());
         } catch (Exception e) {
-            consecutiveFailures++;
-            lastFailureTime = System.currentTimeMillis();
-            
-            if (consecutiveFailures >= MAX_FAILURES) {
-                log.warn("⚠️ Circuit breaker activated after {} failures. Using cached peer list ({} peers).",
-                        MAX_FAILURES, (otherPeers != null ? otherPeers.size() : 0));
-            } else {
-                log.warn("⚠️ Server connection issue ({} failures). Using cached peer list.",
-                        consecutiveFailures);
-            }
+            log.warn("⚠️ Server connection issue. Using cached peer list ({} peers): {}",
+                    (otherPeers != null ? otherPeers.size() : 0), e.getMessage());
             // ✨ QUAN TRỌNG: KHÔNG XÓA this.otherPeers
             // Hệ thống sẽ tiếp tục dùng danh sách cũ để gửi Video/Chat
         }
@@ -0,0 +1,237 @@
+package org.example.eduverseclient.network.rmi;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CachingStub - Dynamic proxy read-through cache cho các query RMI idempotent (cấu hình theo tên method)
+ * - cache(method, ttl): kết quả giữ theo (method, args) trong ttl, LRU tối đa MAX_ENTRIES mỗi service
+ * - Nhiều caller gọi cùng (method, args) khi chưa có cache -> chỉ 1 lời gọi RMI, các caller khác chờ kết quả đó
+ * - invalidateOn(mutation, methods...): mutation chạy xong (kể cả lỗi - server có thể đã ghi) -> xóa cache
+ *   các method liên quan; kết quả của lời gọi đang bay từ trước mutation không được ghi vào cache
+ * - List trả về là bản copy: caller sửa list không làm hỏng cache
+ */
+@Slf4j
+public final class CachingStub<T extends Remote> implements InvocationHandler {
+    private static final int MAX_ENTRIES = 256;
+
+    // Mọi cache đang dùng -> clearAll() khi logout / đổi user
+    private static final List<CachingStub<?>> ALL = new CopyOnWriteArrayList<>();
+
+    private final String serviceName;
+    private final T target;
+    private final Map<String, Long> ttls;
+    private final Map<String, Set<String>> invalidations;
+
+    // (method, args...) -> kết quả; accessOrder = true -> LRU (mọi truy cập synchronized trên cache)
+    private final LinkedHashMap<List<Object>, CachedValue> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedValue> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private long epoch = 0;  // tăng mỗi lần invalidate (guarded by cache)
+
+    private static final class CachedValue {
+        final Object value;
+        final long fetchedAt;
+
+        CachedValue(Object value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private CachingStub(String serviceName, T target, Map<String, Long> ttls, Map<String, Set<String>> invalidations) {
+        this.serviceName = serviceName;
+        this.target = target;
+        this.ttls = ttls;
+        this.invalidations = invalidations;
+    }
+
+    public static <T extends Remote> Builder<T> builder(Class<T> type, String serviceName, T target) {
+        return new Builder<>(type, serviceName, target);
+    }
+
+    /**
+     * Xóa cache của mọi service (logout)
+     */
+    public static void clearAll() {
+        for (CachingStub<?> stub : ALL) {
+            stub.invalidate(null);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "CachingStub[" + serviceName + "]";
+            }
+        }
+
+        String name = method.getName();
+        Long ttl = ttls.get(name);
+        if (ttl == null) {
+            Set<String> affected = invalidations.get(name);
+            try {
+                return invokeTarget(method, args);
+            } finally {
+                if (affected != null) {
+                    invalidate(affected);
+                }
+            }
+        }
+
+        List<Object> key = new ArrayList<>();
+        key.add(name);
+        if (args != null) {
+            key.addAll(Arrays.asList(args));
+        }
+
+        long startEpoch;
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedValue cached = cache.get(key);
+            if (cached != null && now - cached.fetchedAt < ttl) {
+                return copyOf(cached.value);
+            }
+            startEpoch = epoch;
+        }
+
+        // Single-flight: caller đầu tiên gọi RMI, các caller cùng key chờ chung kết quả
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return copyOf(await(existing, name));
+        }
+
+        try {
+            Object value = invokeTarget(method, args);
+            if (value != null) {
+                synchronized (cache) {
+                    if (epoch == startEpoch) {
+                        cache.put(key, new CachedValue(value, now));
+                    }
+                }
+            }
+            mine.complete(value);
+            return copyOf(value);
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future, String method) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for " + method, e);
+        }
+    }
+
+    private static Object copyOf(Object value) {
+        return value instanceof List ? new ArrayList<>((List<?>) value) : value;
+    }
+
+    /**
+     * @param methods null -> xóa toàn bộ
+     */
+    private void invalidate(Set<String> methods) {
+        synchronized (cache) {
+            epoch++;
+            if (methods == null) {
+                cache.clear();
+            } else {
+                cache.keySet().removeIf(key -> methods.contains((String) key.get(0)));
+            }
+        }
+        // Lời gọi đang bay có thể đọc dữ liệu cũ -> caller mới không nhập chung nữa
+        inFlight.keySet().removeIf(key -> methods == null || methods.contains((String) key.get(0)));
+        log.debug("🧹 {} cache invalidated: {}", serviceName, methods == null ? "all" : methods);
+    }
+
+    public static final class Builder<T extends Remote> {
+        private final Class<T> type;
+        private final String serviceName;
+        private final T target;
+        private final Map<String, Long> ttls = new HashMap<>();
+        private final Map<String, Set<String>> invalidations = new HashMap<>();
+
+        private Builder(Class<T> type, String serviceName, T target) {
+            this.type = type;
+            this.serviceName = serviceName;
+            this.target = target;
+        }
+
+        public Builder<T> cache(String method, long ttlMs) {
+            requireMethod(method);
+            ttls.put(method, ttlMs);
+            return this;
+        }
+
+        public Builder<T> invalidateOn(String mutation, String... cachedMethods) {
+            requireMethod(mutation);
+            invalidations.computeIfAbsent(mutation, k -> new HashSet<>()).addAll(Arrays.asList(cachedMethods));
+            return this;
+        }
+
+        public T build() {
+            for (Set<String> methods : invalidations.values()) {
+                for (String method : methods) {
+                    if (!ttls.containsKey(method)) {
+                        throw new IllegalArgumentException(serviceName + "." + method + " is not cached");
+                    }
+                }
+            }
+            CachingStub<T> handler = new CachingStub<>(serviceName, target, Map.copyOf(ttls), Map.copyOf(invalidations));
+            ALL.add(handler);
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+
+        private void requireMethod(String method) {
+            boolean exists = Arrays.stream(type.getMethods()).anyMatch(m -> m.getName().equals(method));
+            if (!exists) {
+                throw new IllegalArgumentException(type.getSimpleName() + " has no method " + method);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.eduverseclient.network.rmi;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CircuitBreaker - Dùng chung cho mọi lời gọi tới 1 RMI service
+ * - CLOSED: gọi bình thường, đếm lỗi kết nối liên tiếp
+ * - OPEN: sau FAILURE_THRESHOLD lỗi -> fail ngay, không chạm socket trong openMs
+ * - HALF_OPEN: hết openMs -> cho đúng 1 lời gọi thử; thành công thì CLOSED, lỗi thì OPEN lại với openMs gấp đôi
+ *   (backoff 1s -> 2s -> ... tối đa 30s)
+ */
+@Slf4j
+class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long INITIAL_OPEN_MS = 1000;
+    private static final long MAX_OPEN_MS = 30_000;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openMs = INITIAL_OPEN_MS;
+    private long openUntil = 0;
+
+    CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return false nếu đang OPEN (hoặc đang có 1 lời gọi thử HALF_OPEN) -> caller fail ngay
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) return false;
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("✅ {} reachable again, circuit closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMs = INITIAL_OPEN_MS;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            openMs = Math.min(openMs * 2, MAX_OPEN_MS);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    synchronized long remainingOpenMs() {
+        return state == State.CLOSED ? 0 : Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openMs;
+        log.warn("🔌 {} unavailable ({} failures), circuit open for {} ms", name, consecutiveFailures, openMs);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.eduverseclient.network.rmi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+
+/**
+ * InstrumentedStub - Dynamic proxy đo mọi lời gọi RMI của 1 service (số lần gọi, lỗi, đang chạy, độ trễ)
+ * - Nằm dưới CachingStub (cache hit không tính là lời gọi server) và trên ResilientStub
+ *   (thời gian lookup lại / retry tính vào độ trễ của lời gọi)
+ * - Số liệu gom ở RmiMetrics; mỗi lời gọi cũng là 1 JFR event (RmiCallEvent) khi đang ghi JFR
+ */
+public final class InstrumentedStub implements InvocationHandler {
+    private final String serviceName;
+    private final Object target;
+
+    private InstrumentedStub(String serviceName, Object target) {
+        this.serviceName = serviceName;
+        this.target = target;
+    }
+
+    public static <T extends Remote> T wrap(Class<T> type, String serviceName, T target) {
+        InstrumentedStub handler = new InstrumentedStub(serviceName, target);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "InstrumentedStub[" + serviceName + "]";
+            }
+        }
+
+        RmiMetrics.MethodMetrics metrics = RmiMetrics.getInstance().forMethod(serviceName, method.getName());
+        RmiCallEvent event = new RmiCallEvent();
+        event.begin();
+        metrics.onStart();
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            error = e.getCause();
+            throw error;
+        } finally {
+            metrics.onComplete(System.nanoTime() - start, error != null);
+            event.end();
+            if (event.shouldCommit()) {
+                event.service = serviceName;
+                event.method = method.getName();
+                event.success = error == null;
+                event.error = error == null ? null : error.getClass().getSimpleName();
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.example.eduverseclient.network.rmi;
+
+import common.constant.RMIConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMISocketFactory;
+
+/**
+ * ResilientStub - Dynamic proxy bọc stub RMI của 1 service, caller giữ proxy như stub bình thường
+ * - Stub chết (server restart: ConnectException / NoSuchObjectException) -> lookup lại từ registry
+ *   rồi gọi lại đúng 1 lần (2 lỗi này nghĩa là lời gọi chưa tới server, gọi lại không bị thực thi 2 lần)
+ * - 1 CircuitBreaker cho mỗi service: server không tới được thì mọi caller fail ngay (CircuitOpenException),
+ *   lookup lại theo backoff của breaker thay vì mỗi caller tự retry
+ * - Deadline mỗi lời gọi = SO_TIMEOUT của TimeoutSocketFactory; hết hạn -> DeadlineExceededException
+ *   thay vì UnmarshalException bọc SocketTimeoutException. Method không tồn tại trên server cũ là chuyện khác:
+ *   server trả lời, caller nhận ServerException bọc UnmarshalException (RemoteErrors.isMissingMethod)
+ * - Connect lỗi (kể cả connect timeout, ConnectIOException) -> bỏ stub cũ để lần sau lookup lại
+ */
+@Slf4j
+public final class ResilientStub<T extends Remote> implements InvocationHandler {
+    private static boolean socketFactoryInstalled = false;
+
+    private final Class<T> type;
+    private final String serviceName;
+    private final String host;
+    private final int port;
+    private final CircuitBreaker breaker;
+    private volatile T stub;
+
+    private ResilientStub(Class<T> type, String serviceName, String host, int port, T initialStub) {
+        this.type = type;
+        this.serviceName = serviceName;
+        this.host = host;
+        this.port = port;
+        this.breaker = new CircuitBreaker(serviceName);
+        this.stub = initialStub;
+    }
+
+    /**
+     * Cài socket factory có connect timeout + call deadline cho mọi kết nối RMI phía client (gọi 1 lần trước lookup)
+     */
+    public static synchronized void installSocketFactory() {
+        if (socketFactoryInstalled) return;
+        try {
+            RMISocketFactory.setSocketFactory(
+                    new TimeoutSocketFactory(RMIConfig.CONNECT_TIMEOUT_MS, RMIConfig.CALL_TIMEOUT_MS));
+        } catch (IOException e) {
+            log.warn("⚠️ RMI socket factory already set, call deadlines not applied: {}", e.getMessage());
+        }
+        socketFactoryInstalled = true;
+    }
+
+    /**
+     * @param initialStub stub vừa lookup (null -> lookup ở lời gọi đầu tiên)
+     */
+    public static <T extends Remote> T create(Class<T> type, String serviceName, String host, int port, T initialStub) {
+        ResilientStub<T> handler = new ResilientStub<>(type, serviceName, host, port, initialStub);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(serviceName, breaker.remainingOpenMs());
+        }
+
+        boolean retried = false;
+        while (true) {
+            T target;
+            try {
+                target = resolve();
+            } catch (NotBoundException e) {
+                breaker.onFailure();
+                throw new ConnectException(serviceName + " is not bound in registry", e);
+            } catch (Exception e) {
+                breaker.onFailure();
+                throw e;
+            }
+
+            try {
+                Object result = method.invoke(target, args);
+                breaker.onSuccess();
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof ConnectException || cause instanceof NoSuchObjectException) {
+                    invalidate(target);
+                    if (!retried) {
+                        retried = true;
+                        log.info("🔄 {} stub is stale ({}), re-resolving", serviceName, cause.getClass().getSimpleName());
+                        continue;
+                    }
+                    breaker.onFailure();
+                    throw cause;
+                }
+                // Trước isTimeout: connect timeout (ConnectIOException bọc SocketTimeoutException) cũng phải bỏ stub
+                if (cause instanceof ConnectIOException || cause instanceof java.rmi.UnknownHostException) {
+                    invalidate(target);
+                    breaker.onFailure();
+                    throw cause;
+                }
+                if (isTimeout(cause)) {
+                    breaker.onFailure();
+                    throw new DeadlineExceededException(serviceName + "." + method.getName(), cause);
+                }
+
+                // Server đã trả lời (exception nghiệp vụ / ServerException bọc UnmarshalException do method không tồn tại...)
+                breaker.onSuccess();
+                throw cause;
+            } catch (IllegalAccessException e) {
+                breaker.onSuccess();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private T resolve() throws RemoteException, NotBoundException {
+        T current = stub;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (stub == null) {
+                Registry registry = LocateRegistry.getRegistry(host, port);
+                stub = type.cast(registry.lookup(serviceName));
+                log.info("🔌 Re-resolved {} from registry {}:{}", serviceName, host, port);
+            }
+            return stub;
+        }
+    }
+
+    private synchronized void invalidate(T failed) {
+        if (stub == failed) {
+            stub = null;
+        }
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException) return true;
+        }
+        return false;
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "ResilientStub[" + serviceName + "]";
+        }
+    }
+
+    /**
+     * Circuit đang mở: không gọi tới server (vẫn là ConnectException cho caller đang bắt lỗi kết nối)
+     */
+    public static class CircuitOpenException extends ConnectException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String serviceName, long retryInMs) {
+            super(serviceName + " unavailable, retry in " + retryInMs + " ms");
+        }
+    }
+
+    /**
+     * Không có response trong RMIConfig.CALL_TIMEOUT_MS
+     */
+    public static class DeadlineExceededException extends RemoteException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String call, Throwable cause) {
+            super(call + " exceeded " + RMIConfig.CALL_TIMEOUT_MS + " ms deadline", cause);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.eduverseclient.network.rmi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event cho 1 lời gọi RMI - ghi cùng recording với event JavaFX / GC để đối chiếu UI bị đứng với độ trễ server
+ * (không tốn gì khi không ghi JFR: shouldCommit() = false)
+ */
+@Name("org.example.eduverseclient.RmiCall")
+@Label("RMI Call")
+@Category({"EduVerse", "RMI"})
+@Description("Lời gọi RMI từ client tới server")
+@StackTrace(false)
+class RmiCallEvent extends jdk.jfr.Event {
+    @Label("Service")
+    String service;
+
+    @Label("Method")
+    String method;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+}
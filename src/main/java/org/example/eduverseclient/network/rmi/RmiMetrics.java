@@ -0,0 +1,226 @@
+package org.example.eduverseclient.network.rmi;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+import org.example.eduverseclient.utils.LatencyHistogram;
+
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RmiMetrics - Số liệu lời gọi RMI theo từng method (ghi bởi InstrumentedStub)
+ * - calls / errors / inFlight + LatencyHistogram (p50/p95/p99) cho mỗi "Service.method"
+ * - Mỗi REPORT_INTERVAL_SECONDS log 1 dòng cho các method có lời gọi mới (chậm nhất trước)
+ * - JMX MXBean org.example.eduverseclient:type=RmiMetrics để xem trực tiếp bằng JConsole / VisualVM
+ */
+@Slf4j
+public class RmiMetrics implements RmiMetricsMXBean {
+    private static RmiMetrics instance;
+
+    private static final long REPORT_INTERVAL_SECONDS = 60;
+    private static final String OBJECT_NAME = "org.example.eduverseclient:type=RmiMetrics";
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reporter;
+    private boolean registered = false;
+
+    private RmiMetrics() {
+    }
+
+    public static synchronized RmiMetrics getInstance() {
+        if (instance == null) {
+            instance = new RmiMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Đăng ký MBean + bắt đầu log định kỳ (gọi lại nhiều lần không sao)
+     */
+    public synchronized void start() {
+        if (!registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                log.warn("⚠️ Failed to register RMI metrics MBean: {}", e.getMessage());
+            }
+            registered = true;
+        }
+        if (reporter == null) {
+            reporter = ClientExecutors.newScheduler("rmi-metrics");
+            reporter.scheduleAtFixedRate(this::report,
+                    REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    MethodMetrics forMethod(String service, String method) {
+        return methods.computeIfAbsent(service + "." + method, MethodMetrics::new);
+    }
+
+    /**
+     * Log toàn bộ số liệu tích lũy (vd. khi tắt client)
+     */
+    public void logStats() {
+        methods.values().stream()
+                .filter(m -> m.calls.get() > 0)
+                .sorted(Comparator.comparingDouble((MethodMetrics m) -> m.latency.getPercentileMillis(99)).reversed())
+                .forEach(m -> log.info("📊 RMI {}", m.summary("", m.calls.get(), m.errors.get())));
+    }
+
+    private void report() {
+        methods.values().stream()
+                .filter(m -> m.calls.get() > m.reportedCalls)
+                .sorted(Comparator.comparingDouble((MethodMetrics m) -> m.latency.getPercentileMillis(99)).reversed())
+                .forEach(m -> {
+                    long calls = m.calls.get();
+                    long errors = m.errors.get();
+                    // calls/errors: trong chu kỳ vừa rồi, histogram: tích lũy
+                    log.info("📊 RMI {}", m.summary("+", calls - m.reportedCalls, errors - m.reportedErrors));
+                    m.reportedCalls = calls;
+                    m.reportedErrors = errors;
+                });
+    }
+
+    // ==================================================================
+    // MXBean
+    // ==================================================================
+
+    @Override
+    public long getTotalCalls() {
+        return methods.values().stream().mapToLong(m -> m.calls.get()).sum();
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return methods.values().stream().mapToLong(m -> m.errors.get()).sum();
+    }
+
+    @Override
+    public int getInFlight() {
+        return methods.values().stream().mapToInt(m -> m.inFlight.get()).sum();
+    }
+
+    @Override
+    public Map<String, MethodStats> getMethodStats() {
+        Map<String, MethodStats> stats = new TreeMap<>();
+        methods.forEach((name, m) -> stats.put(name, m.snapshot()));
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        methods.clear();
+    }
+
+    /**
+     * Bộ đếm của 1 method
+     */
+    static final class MethodMetrics {
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        // Chỉ thread reporter đọc/ghi
+        private long reportedCalls = 0;
+        private long reportedErrors = 0;
+
+        private MethodMetrics(String name) {
+            this.name = name;
+        }
+
+        void onStart() {
+            inFlight.incrementAndGet();
+        }
+
+        void onComplete(long elapsedNanos, boolean failed) {
+            inFlight.decrementAndGet();
+            calls.incrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            latency.recordNanos(elapsedNanos);
+        }
+
+        private String summary(String sign, long calls, long errors) {
+            return String.format("%s calls=%s%d errors=%s%d inFlight=%d %s",
+                    name, sign, calls, sign, errors, inFlight.get(), latency.summary());
+        }
+
+        private MethodStats snapshot() {
+            return new MethodStats(calls.get(), errors.get(), inFlight.get(),
+                    latency.getPercentileMillis(50), latency.getPercentileMillis(95),
+                    latency.getPercentileMillis(99), latency.getMaxMillis());
+        }
+    }
+
+    /**
+     * Snapshot số liệu 1 method cho JMX (CompositeData)
+     */
+    public static final class MethodStats {
+        private final long calls;
+        private final long errors;
+        private final int inFlight;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        @ConstructorProperties({"calls", "errors", "inFlight", "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+        public MethodStats(long calls, long errors, int inFlight,
+                           double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+            this.calls = calls;
+            this.errors = errors;
+            this.inFlight = inFlight;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.eduverseclient.network.rmi;
+
+import java.util.Map;
+
+/**
+ * JMX view của RmiMetrics (ObjectName: org.example.eduverseclient:type=RmiMetrics)
+ */
+public interface RmiMetricsMXBean {
+    long getTotalCalls();
+
+    long getTotalErrors();
+
+    int getInFlight();
+
+    /**
+     * "Service.method" -> số liệu của method
+     */
+    Map<String, RmiMetrics.MethodStats> getMethodStats();
+
+    void reset();
+}
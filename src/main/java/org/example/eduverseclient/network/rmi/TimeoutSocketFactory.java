@@ -0,0 +1,42 @@
+package org.example.eduverseclient.network.rmi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+
+/**
+ * TimeoutSocketFactory - Socket factory mặc định của RMI phía client
+ * - connect timeout: server chết / mất mạng -> lỗi sau vài giây thay vì chờ TCP timeout của OS (~2 phút)
+ * - SO_TIMEOUT = deadline mỗi lời gọi: không có response trong thời gian này -> SocketTimeoutException
+ *   (RMI giữ nguyên SO_TIMEOUT do factory đặt cho cả connection được tái sử dụng)
+ * - Server socket (export IClientCallback) giữ nguyên như mặc định
+ */
+class TimeoutSocketFactory extends RMISocketFactory {
+    private final int connectTimeoutMs;
+    private final int callTimeoutMs;
+
+    TimeoutSocketFactory(int connectTimeoutMs, int callTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.callTimeoutMs = callTimeoutMs;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setSoTimeout(callTimeoutMs);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port);
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.eduverseclient.network.udp;
+
+import common.constant.NetworkConfig;
+import common.model.Peer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.NetworkUtil;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MulticastChannel - 1 MulticastSocket trên LAN cho 1 loại stream (video / audio / chat)
+ * - Group address 239.x.y.z (administratively scoped) suy ra từ groupId (meetingId / conversationId)
+ * - TTL 1: gói không ra khỏi subnet; bật loopback để client khác trên cùng máy (cùng port nhờ SO_REUSEADDR)
+ *   cũng nhận được - phía nhận tự bỏ gói có senderId của chính mình
+ * - Socket được dùng thẳng với UDPVideoReceiver/UDPAudioReceiver/UDPChatReceiver và các Sender tương ứng
+ *   (MulticastSocket là DatagramSocket), gửi tới groupHost(groupId):getPort()
+ * - Chỉ peer đã xác nhận đang nhận group (beacon của MulticastMembership) mới nhận qua multicast,
+ *   peer khác subnet / chưa xác nhận vẫn nhận unicast như cũ (xem isConfirmedMember)
+ */
+@Slf4j
+public class MulticastChannel {
+
+    private final MulticastSocket socket;
+    private final NetworkInterface networkInterface;
+    private final String localIp;
+    private final int port;
+    private final Set<String> joinedGroups = ConcurrentHashMap.newKeySet();
+
+    private MulticastChannel(MulticastSocket socket, NetworkInterface networkInterface, String localIp, int port) {
+        this.socket = socket;
+        this.networkInterface = networkInterface;
+        this.localIp = localIp;
+        this.port = port;
+    }
+
+    /**
+     * Mở channel trên port, gắn vào interface LAN (interface của NetworkUtil.getLocalIPAddress)
+     * @return null nếu multicast bị tắt trong config hoặc không mở được (caller dùng unicast)
+     */
+    public static MulticastChannel open(int port) {
+        if (!NetworkConfig.MULTICAST_ENABLED) {
+            return null;
+        }
+        String localIp = NetworkUtil.getLocalIPAddress();
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(InetAddress.getByName(localIp));
+            if (networkInterface == null || !networkInterface.supportsMulticast()) {
+                log.warn("⚠️ No multicast-capable interface for {} - using unicast only", localIp);
+                return null;
+            }
+
+            // MulticastSocket bật SO_REUSEADDR: nhiều client trên cùng máy vẫn bind được cùng port
+            MulticastSocket socket = new MulticastSocket(port);
+            socket.setNetworkInterface(networkInterface);
+            socket.setTimeToLive(NetworkConfig.MULTICAST_TTL);
+            socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            log.info("✅ Multicast channel opened on port {} via {}", port, networkInterface.getName());
+            return new MulticastChannel(socket, networkInterface, localIp, port);
+        } catch (IOException e) {
+            log.warn("⚠️ Failed to open multicast channel on port {}: {} - using unicast only", port, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 239.192.0.0/14 (organization-local scope), 3 byte cuối lấy từ hash của groupId
+     */
+    public static InetAddress groupAddress(String groupId) {
+        byte[] hash = groupId.getBytes(StandardCharsets.UTF_8);
+        int h = 0x811C9DC5;  // FNV-1a
+        for (byte b : hash) {
+            h ^= (b & 0xff);
+            h *= 0x01000193;
+        }
+        byte[] address = {(byte) 239, (byte) (192 | ((h >>> 16) & 0x03)), (byte) (h >>> 8), (byte) h};
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // Không xảy ra với mảng 4 byte
+        }
+    }
+
+    public static String groupHost(String groupId) {
+        return groupAddress(groupId).getHostAddress();
+    }
+
+    /**
+     * Join group và báo cho sender qua MulticastMembership (sender bắt đầu multicast cho mình từ beacon đầu tiên)
+     */
+    public boolean join(String groupId) {
+        if (!joinGroup(groupId)) return false;
+        MulticastMembership.getInstance().announce(port, groupId);
+        return true;
+    }
+
+    /**
+     * Join group không báo membership (socket beacon của MulticastMembership)
+     */
+    boolean joinGroup(String groupId) {
+        if (joinedGroups.contains(groupId)) return true;
+        if (joinedGroups.size() >= NetworkConfig.MULTICAST_MAX_GROUPS) {
+            log.warn("⚠️ Multicast group limit reached ({}), not joining {}", NetworkConfig.MULTICAST_MAX_GROUPS, groupId);
+            return false;
+        }
+        try {
+            socket.joinGroup(new InetSocketAddress(groupAddress(groupId), port), networkInterface);
+            joinedGroups.add(groupId);
+            log.info("📡 Joined multicast group {} ({}:{})", groupId, groupHost(groupId), port);
+            return true;
+        } catch (IOException e) {
+            log.warn("⚠️ Failed to join multicast group {}: {}", groupId, e.getMessage());
+            return false;
+        }
+    }
+
+    public void leave(String groupId) {
+        if (!joinedGroups.remove(groupId)) return;
+        MulticastMembership.getInstance().withdraw(port, groupId);
+        try {
+            socket.leaveGroup(new InetSocketAddress(groupAddress(groupId), port), networkInterface);
+        } catch (IOException e) {
+            log.debug("Leave multicast group {} failed: {}", groupId, e.getMessage());
+        }
+    }
+
+    public boolean isJoined(String groupId) {
+        return joinedGroups.contains(groupId);
+    }
+
+    /**
+     * Peer cùng subnet nhận qua multicast; peer khác subnet (qua router/NAT) phải unicast
+     */
+    public boolean isLanPeer(Peer peer) {
+        return peer != null && NetworkUtil.isSameSubnet(localIp, peer.getIpAddress());
+    }
+
+    /**
+     * Peer cùng subnet VÀ đã báo (beacon) đang nhận groupId trên port này -> gửi multicast thay unicast được
+     */
+    public boolean isConfirmedMember(String groupId, Peer peer) {
+        return isLanPeer(peer) && MulticastMembership.getInstance().isMember(port, groupId, peer.getUserId());
+    }
+
+    public DatagramSocket getSocket() {
+        return socket;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void close() {
+        for (String groupId : joinedGroups.toArray(new String[0])) {
+            leave(groupId);
+        }
+        socket.close();
+    }
+}
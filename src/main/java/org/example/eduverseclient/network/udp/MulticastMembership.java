@@ -0,0 +1,164 @@
+package org.example.eduverseclient.network.udp;
+
+import common.constant.NetworkConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MulticastMembership - Biết peer nào THỰC SỰ đang nhận 1 group multicast
+ * - Mỗi client định kỳ gửi beacon liệt kê các (port, groupId) đã join thành công (MulticastChannel.join)
+ *   tới 1 discovery group cố định trên MULTICAST_BEACON_PORT
+ * - Sender chỉ thay unicast bằng multicast cho peer đã xác nhận (isMember). Peer chưa xác nhận - join lỗi,
+ *   vượt MULTICAST_MAX_GROUPS, chưa join conversation mới, tắt multicast - vẫn nhận unicast
+ * - Beacon format (UTF-8, mỗi dòng 1 field): "EVMB", userId, rồi mỗi membership "port groupId"
+ */
+@Slf4j
+public class MulticastMembership {
+    private static MulticastMembership instance;
+
+    private static final String MAGIC = "EVMB";
+    private static final String DISCOVERY_GROUP = "eduverse-multicast-membership";
+    // Mất 2 beacon liên tiếp (UDP) vẫn còn là member
+    private static final long MEMBER_TTL_MS = NetworkConfig.MULTICAST_BEACON_INTERVAL_MS * 3;
+
+    // "port groupId" mà client này đang nhận
+    private final Set<String> ownMemberships = ConcurrentHashMap.newKeySet();
+    // "port groupId" -> userId -> lần cuối thấy beacon
+    private final Map<String, Map<String, Long>> members = new ConcurrentHashMap<>();
+
+    private String userId;
+    private MulticastChannel channel;
+    private ScheduledExecutorService beaconExecutor;
+    private Thread receiveThread;
+
+    private MulticastMembership() {
+    }
+
+    public static synchronized MulticastMembership getInstance() {
+        if (instance == null) {
+            instance = new MulticastMembership();
+        }
+        return instance;
+    }
+
+    /**
+     * Mở socket beacon (gọi lại nhiều lần không sao - messenger và meeting dùng chung)
+     * @return false nếu không mở được: isMember luôn false, mọi peer nhận unicast
+     */
+    public synchronized boolean start(String userId) {
+        this.userId = userId;
+        if (channel != null) return true;
+
+        MulticastChannel opened = MulticastChannel.open(NetworkConfig.MULTICAST_BEACON_PORT);
+        if (opened == null) return false;
+        if (!opened.joinGroup(DISCOVERY_GROUP)) {
+            opened.close();
+            return false;
+        }
+        channel = opened;
+
+        receiveThread = ClientExecutors.newThread("multicast-membership", () -> receiveLoop(opened));
+        receiveThread.start();
+        beaconExecutor = ClientExecutors.newScheduler("multicast-beacon");
+        beaconExecutor.scheduleWithFixedDelay(this::sendBeacon,
+                0, NetworkConfig.MULTICAST_BEACON_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (beaconExecutor != null) {
+            beaconExecutor.shutdownNow();
+            beaconExecutor = null;
+        }
+        if (channel != null) {
+            // Đóng socket để receiveLoop thoát khỏi receive()
+            channel.close();
+            channel = null;
+        }
+        receiveThread = null;
+        ownMemberships.clear();
+        members.clear();
+    }
+
+    /**
+     * Gọi bởi MulticastChannel sau khi join group thành công: báo ngay cho các sender
+     */
+    void announce(int port, String groupId) {
+        if (ownMemberships.add(key(port, groupId))) {
+            ClientExecutors.io().execute(this::sendBeacon);
+        }
+    }
+
+    void withdraw(int port, String groupId) {
+        ownMemberships.remove(key(port, groupId));
+    }
+
+    /**
+     * userId có beacon gần đây cho group này trên port này
+     */
+    public boolean isMember(int port, String groupId, String userId) {
+        Map<String, Long> groupMembers = members.get(key(port, groupId));
+        if (groupMembers == null) return false;
+        Long lastSeen = groupMembers.get(userId);
+        return lastSeen != null && System.currentTimeMillis() - lastSeen <= MEMBER_TTL_MS;
+    }
+
+    private void sendBeacon() {
+        MulticastChannel current = channel;
+        String me = userId;
+        if (current == null || me == null || ownMemberships.isEmpty()) return;
+
+        StringBuilder beacon = new StringBuilder(MAGIC).append('\n').append(me);
+        for (String membership : ownMemberships) {
+            beacon.append('\n').append(membership);
+        }
+        byte[] data = beacon.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            current.getSocket().send(new DatagramPacket(data, data.length,
+                    MulticastChannel.groupAddress(DISCOVERY_GROUP), current.getPort()));
+        } catch (IOException e) {
+            log.debug("Send multicast beacon failed: {}", e.getMessage());
+        }
+    }
+
+    private void receiveLoop(MulticastChannel source) {
+        byte[] buffer = new byte[8192];
+        while (!source.getSocket().isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                source.getSocket().receive(packet);
+                onBeacon(new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                if (!source.getSocket().isClosed()) {
+                    log.debug("Receive multicast beacon failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void onBeacon(String beacon) {
+        String[] lines = beacon.split("\n");
+        if (lines.length < 2 || !MAGIC.equals(lines[0]) || lines[1].equals(userId)) return;
+
+        long now = System.currentTimeMillis();
+        for (int i = 2; i < lines.length; i++) {
+            members.computeIfAbsent(lines[i], k -> new ConcurrentHashMap<>()).put(lines[1], now);
+        }
+        // Dọn member hết hạn (để map không lớn dần theo số group đã từng thấy)
+        members.values().forEach(groupMembers -> groupMembers.values().removeIf(seen -> now - seen > MEMBER_TTL_MS));
+        members.values().removeIf(Map::isEmpty);
+    }
+
+    private static String key(int port, String groupId) {
+        return port + " " + groupId;
+    }
+}
@@ -0,0 +1,284 @@
+package org.example.eduverseclient.network.udp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * OutgoingFileTransfer - Trạng thái selective-repeat của 1 file đang gửi tới 1 peer
+ * - Sliding window, ACK cumulative + SACK bitmap
+ * - RTO theo RFC 6298 (SRTT/RTTVAR, Karn: không đo RTT trên chunk gửi lại)
+ * - Congestion control kiểu AIMD: slow start -> congestion avoidance, giảm nửa khi mất gói
+ *
+ * Mọi method đều synchronized; thread nhận gọi onAck(), thread gửi (1 thread điều phối nhiều transfer -
+ * xem UDPChatSender.sendFileToAll) được đánh thức qua progressListener và chờ tối đa getWaitMs().
+ */
+class OutgoingFileTransfer {
+
+    static final int INITIAL_CWND = 4;
+    static final int MAX_WINDOW = 512;          // Giới hạn bởi SACK bitmap (512 bit = 64 bytes)
+    static final int DUP_THRESHOLD = 3;         // Số chunk sau lỗ hổng đã ACK thì gửi lại ngay (fast retransmit)
+
+    private static final long INITIAL_RTO_MS = 500;
+    private static final long MIN_RTO_MS = 30;
+    private static final long MAX_RTO_MS = 4000;
+
+    final int transferId;
+    final int totalChunks;
+
+    private final long[] sentAt;
+    private final int[] sendCount;
+    private final BitSet acked;
+    private final BitSet fastRetransmitQueue = new BitSet();
+
+    private int cumAck = 0;             // Mọi chunk < cumAck đã được ACK
+    private int nextToSend = 0;
+    private double cwnd = INITIAL_CWND;
+    private double ssthresh = MAX_WINDOW;
+    private int recoveryPoint = -1;     // Đang trong fast recovery cho tới khi cumAck >= recoveryPoint
+
+    private double srtt = -1;
+    private double rttvar = 0;
+    private long rto = INITIAL_RTO_MS;
+
+    private boolean startAcked = false;
+    private long lastProgressTime;
+    private long nextDeadline = Long.MAX_VALUE;
+
+    // Thống kê
+    private int retransmissions = 0;
+
+    // Gọi sau mỗi ACK/FILE_RESUME (đang giữ lock của transfer)
+    private final Runnable progressListener;
+
+    OutgoingFileTransfer(int transferId, int totalChunks, Runnable progressListener) {
+        this.transferId = transferId;
+        this.totalChunks = totalChunks;
+        this.progressListener = progressListener;
+        this.sentAt = new long[totalChunks];
+        this.sendCount = new int[totalChunks];
+        this.acked = new BitSet(totalChunks);
+        this.lastProgressTime = System.currentTimeMillis();
+    }
+
+    // ==================================================================
+    // ACK HANDLING (thread nhận)
+    // ==================================================================
+
+    /**
+     * @param ackedUpTo   cumulative ACK: mọi chunk < ackedUpTo đã nhận
+     * @param triggerIndex chunk làm phát sinh ACK này (-1 nếu là ACK cho FILE_START/FILE_END)
+     * @param sackBitmap  bit i = chunk (ackedUpTo + 1 + i) đã nhận
+     */
+    synchronized void onAck(int ackedUpTo, int triggerIndex, byte[] sackBitmap, long now) {
+        if (!startAcked) {
+            startAcked = true;
+            lastProgressTime = now;
+        }
+
+        int cumulative = Math.min(ackedUpTo, totalChunks);
+        int newlyAcked = 0;
+        for (int i = acked.nextClearBit(cumAck); i < cumulative; i = acked.nextClearBit(i + 1)) {
+            acked.set(i);
+            newlyAcked++;
+        }
+        if (sackBitmap != null) {
+            for (int bit = 0; bit < sackBitmap.length * 8; bit++) {
+                int index = cumulative + 1 + bit;
+                if (index >= totalChunks) break;
+                if ((sackBitmap[bit >> 3] & (1 << (bit & 7))) != 0 && !acked.get(index)) {
+                    acked.set(index);
+                    newlyAcked++;
+                }
+            }
+        }
+
+        // Karn: chỉ đo RTT trên chunk được gửi đúng 1 lần
+        if (triggerIndex >= 0 && triggerIndex < totalChunks && sendCount[triggerIndex] == 1 && newlyAcked > 0) {
+            sampleRtt(now - sentAt[triggerIndex]);
+        }
+
+        cumAck = acked.nextClearBit(cumAck);
+
+        if (newlyAcked > 0) {
+            lastProgressTime = now;
+            if (recoveryPoint >= 0 && cumAck >= recoveryPoint) {
+                recoveryPoint = -1;
+            }
+            if (cwnd < ssthresh) {
+                cwnd += newlyAcked;                 // Slow start
+            } else {
+                cwnd += (double) newlyAcked / cwnd; // Congestion avoidance
+            }
+            cwnd = Math.min(cwnd, MAX_WINDOW);
+        }
+
+        detectHoles();
+        signalProgress();
+    }
+
+    /**
+     * FILE_RESUME: receiver đã có sẵn các chunk trong bitmap (từ lần gửi trước) -> coi như đã ACK.
+     * Cũng là ACK cho FILE_START. Không đo RTT, không tăng cwnd.
+     */
+    synchronized void onResume(BitSet alreadyReceived, long now) {
+        startAcked = true;
+        lastProgressTime = now;
+        for (int i = alreadyReceived.nextSetBit(0); i >= 0 && i < totalChunks; i = alreadyReceived.nextSetBit(i + 1)) {
+            acked.set(i);
+        }
+        cumAck = acked.nextClearBit(cumAck);
+        signalProgress();
+    }
+
+    private void signalProgress() {
+        if (progressListener != null) {
+            progressListener.run();
+        }
+    }
+
+    /**
+     * Chunk chưa ACK mà đã có >= DUP_THRESHOLD chunk gửi sau nó được ACK -> coi như mất
+     */
+    private void detectHoles() {
+        boolean lossDetected = false;
+        for (int hole = acked.nextClearBit(cumAck); hole < nextToSend; hole = acked.nextClearBit(hole + 1)) {
+            if (sendCount[hole] != 1 || fastRetransmitQueue.get(hole)) continue;
+            int ackedAfter = acked.get(hole + 1, nextToSend).cardinality();
+            if (ackedAfter < DUP_THRESHOLD) break;  // Các lỗ phía sau còn ít ACK hơn
+            fastRetransmitQueue.set(hole);
+            lossDetected = true;
+        }
+
+        if (lossDetected && recoveryPoint < 0) {
+            ssthresh = Math.max(inFlight() / 2.0, 2);
+            cwnd = ssthresh;
+            recoveryPoint = nextToSend;
+        }
+    }
+
+    private void sampleRtt(long rttMs) {
+        double sample = Math.max(1, rttMs);
+        if (srtt < 0) {
+            srtt = sample;
+            rttvar = sample / 2;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - sample);
+            srtt = 0.875 * srtt + 0.125 * sample;
+        }
+        rto = Math.max(MIN_RTO_MS, Math.min(MAX_RTO_MS, (long) Math.ceil(srtt + 4 * rttvar)));
+    }
+
+    // ==================================================================
+    // SEND SCHEDULING (thread gửi)
+    // ==================================================================
+
+    /**
+     * Danh sách chunk cần gửi ngay: fast retransmit, chunk hết RTO, rồi chunk mới trong window
+     */
+    synchronized List<Integer> collectSendable(long now) {
+        List<Integer> result = new ArrayList<>();
+        int budget = (int) Math.max(1, Math.floor(cwnd));
+
+        for (int i = fastRetransmitQueue.nextSetBit(0); i >= 0; i = fastRetransmitQueue.nextSetBit(i + 1)) {
+            if (!acked.get(i)) result.add(i);
+        }
+        fastRetransmitQueue.clear();
+
+        // Retransmission timeout
+        nextDeadline = Long.MAX_VALUE;
+        boolean timedOut = false;
+        for (int i = acked.nextClearBit(cumAck); i < nextToSend; i = acked.nextClearBit(i + 1)) {
+            if (result.contains(i)) continue;
+            long deadline = sentAt[i] + rto;
+            if (deadline <= now) {
+                if (result.size() < budget) {
+                    result.add(i);
+                    timedOut = true;
+                }
+            } else {
+                nextDeadline = Math.min(nextDeadline, deadline);
+            }
+        }
+        if (timedOut) {
+            ssthresh = Math.max(inFlight() / 2.0, 2);
+            cwnd = 1;
+            rto = Math.min(MAX_RTO_MS, rto * 2);
+            recoveryPoint = -1;
+        }
+
+        // Chunk mới
+        int inFlight = inFlight();
+        while (inFlight + countNew(result) < cwnd && nextToSend < totalChunks && nextToSend < cumAck + MAX_WINDOW) {
+            if (acked.get(nextToSend)) {
+                nextToSend++;   // Receiver đã có từ lần gửi trước (resume)
+                continue;
+            }
+            result.add(nextToSend++);
+        }
+        return result;
+    }
+
+    private int countNew(List<Integer> scheduled) {
+        int count = 0;
+        for (int index : scheduled) {
+            if (sendCount[index] == 0) count++;
+        }
+        return count;
+    }
+
+    synchronized void markSent(int chunkIndex, long now) {
+        if (sendCount[chunkIndex] > 0) {
+            retransmissions++;
+        }
+        sendCount[chunkIndex]++;
+        sentAt[chunkIndex] = now;
+        nextDeadline = Math.min(nextDeadline, now + rto);
+    }
+
+    /**
+     * Thời gian tối đa có thể chờ trước khi phải gọi lại collectSendable (deadline RTO gần nhất)
+     */
+    synchronized long getWaitMs(long now) {
+        long waitMs = nextDeadline == Long.MAX_VALUE ? rto : Math.max(1, nextDeadline - now);
+        return Math.min(waitMs, rto);
+    }
+
+
+    // ==================================================================
+    // STATE
+    // ==================================================================
+
+    private int inFlight() {
+        if (nextToSend <= cumAck) return 0;
+        return (nextToSend - cumAck) - acked.get(cumAck, nextToSend).cardinality();
+    }
+
+    synchronized boolean isStartAcked() {
+        return startAcked;
+    }
+
+    synchronized boolean isComplete() {
+        return cumAck >= totalChunks;
+    }
+
+    synchronized boolean isStalled(long now, long stallTimeoutMs) {
+        return now - lastProgressTime > stallTimeoutMs;
+    }
+
+    synchronized long getRto() {
+        return rto;
+    }
+
+    synchronized int getAckedCount() {
+        return acked.cardinality();
+    }
+
+    synchronized int getRetransmissions() {
+        return retransmissions;
+    }
+
+    synchronized double getSmoothedRttMs() {
+        return srtt;
+    }
+}
@@ -2,6 +2,7 @@ package org.example.eduverseclient.network.udp;
 
 import javafx.application.Platform;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -33,8 +34,7 @@ public class UDPAudioReceiver {
         this.audioCallback = audioCallback;
         isRunning = true;
         
-        receiveThread = new Thread(this::receiveLoop);
-        receiveThread.setDaemon(true);
+        receiveThread = ClientExecutors.newThread("audio-receiver", this::receiveLoop);
         receiveThread.start();
         
         log.info("✅ UDPAudioReceiver started");
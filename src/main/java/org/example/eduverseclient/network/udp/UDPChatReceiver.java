@@ -1,16 +1,38 @@
 package org.example.eduverseclient.network.udp;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
 
 @Slf4j
 public class UDPChatReceiver {
@@ -26,9 +48,51 @@ public class UDPChatReceiver {
     private TextMessageCallback textMessageCallback;
     private FileTransferCallback fileCallback;
 
-    // File buffer: senderId + "|" + conversationId -> FileTransferState
+    // Selective repeat: ACK mang SACK bitmap cho tối đa SACK_BITS chunk sau cumulative ACK
+    private static final int SACK_BITS = 512;
+    private static final int SOCKET_RECEIVE_BUFFER = 4 * 1024 * 1024;
+    private static final int COMPLETED_HISTORY = 64;
+    // Lưu manifest sau mỗi N chunk mới (ngoài lần lưu khi stop)
+    private static final int MANIFEST_SAVE_CHUNKS = 256;
+
+    // Giới hạn transfer đang nhận (chống leak và chống 1 peer mở vô hạn transfer)
+    private static final long TRANSFER_IDLE_TIMEOUT_MS = 60_000;
+    private static final long SWEEP_INTERVAL_MS = 10_000;
+    private static final int MAX_TRANSFERS_PER_SENDER = 4;
+    private static final long MAX_IN_PROGRESS_BYTES = 1024L * 1024 * 1024;
+    // Part file + manifest resume không được dùng lại quá lâu thì xóa
+    private static final long RESUME_FILE_MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    // Thư mục chứa file đang nhận (.part) và file đã nhận xong
+    public static final Path INCOMING_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "eduverse", "incoming");
+    // Thư mục người dùng thấy được, file nhận xong được chuyển sang đây (moveToDownloads)
+    public static final Path DOWNLOADS_DIR = Paths.get(System.getProperty("user.home"), "Downloads", "EduVerse");
+
+    // File buffer: senderId + "|" + conversationId + "|" + transferId -> FileTransferState
     private Map<String, FileTransferState> fileTransfers = new ConcurrentHashMap<>();
 
+    // Transfer resume được: senderId + "|" + conversationId + "|" + sha256 -> FileTransferState
+    // (sender gửi lại FILE_START với transferId mới nhưng cùng nội dung -> nhận tiếp từ chunk còn thiếu)
+    private final Map<String, FileTransferState> resumableTransfers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweepExecutor;
+    private final AtomicLong inProgressBytes = new AtomicLong();
+    // Thống kê
+    private final AtomicLong abortedTransfers = new AtomicLong();   // Bị từ chối do giới hạn hoặc lỗi ghi/verify
+    private final AtomicLong expiredTransfers = new AtomicLong();   // Bị sweeper dọn do idle quá lâu
+
+    // Transfer đã hoàn tất -> totalChunks (để ACK lại chunk/FILE_END gửi trễ)
+    private final Map<String, Integer> completedTransfers = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > COMPLETED_HISTORY;
+                }
+            });
+
+    private Consumer<byte[]> fileAckHandler;
+    private Consumer<byte[]> fileResumeHandler;
+
     /**
      * Callback interface for text messages
      */
@@ -42,25 +106,68 @@ public class UDPChatReceiver {
     public interface FileTransferCallback {
         void onFileStart(String senderId, String conversationId, String fileName, int fileSize, int totalChunks);
         void onFileChunk(String senderId, String conversationId, int chunkIndex, int totalChunks);
-        void onFileComplete(String senderId, String conversationId, String fileName, byte[] fileData);
+        /**
+         * @param file file đã nhận đầy đủ trên đĩa (trong INCOMING_DIR), caller chịu trách nhiệm di chuyển/xóa
+         *             (moveToDownloads); file bỏ quên được sweeper xóa sau RESUME_FILE_MAX_AGE_MS.
+         *             Được gọi trên io pool (không phải thread receive), có thể chạy I/O chậm
+         */
+        void onFileComplete(String senderId, String conversationId, String fileName, Path file);
     }
 
+    /**
+     * Chunk được ghi thẳng vào file tạm (đã pre-size) tại offset chunkIndex * chunkSize,
+     * không giữ chunk trên heap.
+     * Transfer có sha256 thì resume được: part file + manifest (.manifest) có tên cố định theo resumeKey
+     * và được giữ lại khi receiver stop.
+     */
     private static class FileTransferState {
+        String transferKey;
+        String senderId;
+        volatile long lastActivity = System.currentTimeMillis();
         String fileName;
         int fileSize;
         int totalChunks;
-        Map<Integer, byte[]> chunks = new ConcurrentHashMap<>();
+        int chunkSize;
+        BitSet received = new BitSet();
+        Path partFile;
+        FileChannel channel;
+        // Resume + integrity (null nếu sender cũ không gửi sha256 - khi đó chunk không có CRC32C)
+        String sha256;
+        String resumeKey;
+        Path manifestFile;
+        int chunksSinceSave;
     }
 
     public UDPChatReceiver(DatagramSocket socket) {
         this.socket = socket;
-        this.executorService = Executors.newFixedThreadPool(2);
+        this.executorService = ClientExecutors.newPool("chat-receiver", 2);
+        try {
+            // Buffer lớn để không rớt gói khi sender gửi cả window liên tiếp
+            socket.setReceiveBufferSize(SOCKET_RECEIVE_BUFFER);
+        } catch (Exception e) {
+            log.debug("Could not enlarge chat socket receive buffer: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * FILE_ACK nhận trên socket dùng chung được chuyển cho UDPChatSender (xem UDPChatSender.onFileAck)
+     */
+    public void setFileAckHandler(Consumer<byte[]> fileAckHandler) {
+        this.fileAckHandler = fileAckHandler;
+    }
+
+    /**
+     * FILE_RESUME (bitmap các chunk receiver đã có) được chuyển cho UDPChatSender.onFileResume
+     */
+    public void setFileResumeHandler(Consumer<byte[]> fileResumeHandler) {
+        this.fileResumeHandler = fileResumeHandler;
     }
 
     public void start(TextMessageCallback textMessageCallback, FileTransferCallback fileCallback) {
         this.textMessageCallback = textMessageCallback;
         this.fileCallback = fileCallback;
         this.isRunning = true;
+        startSweeper();
 
         executorService.submit(() -> {
             byte[] buffer = new byte[MAX_PACKET_SIZE];
@@ -98,13 +205,23 @@ public class UDPChatReceiver {
                             handleTextMessage(senderId, conversationId, content);
                             break;
                         case 1: // FILE_START
-                            handleFileStart(senderId, conversationId, content);
+                            handleFileStart(senderId, conversationId, content, packet.getSocketAddress());
                             break;
                         case 2: // FILE_CHUNK
-                            handleFileChunk(senderId, conversationId, content);
+                            handleFileChunk(senderId, conversationId, content, packet.getSocketAddress());
                             break;
                         case 3: // FILE_END
-                            handleFileEnd(senderId, conversationId, content);
+                            handleFileEnd(senderId, conversationId, content, packet.getSocketAddress());
+                            break;
+                        case 4: // FILE_ACK
+                            if (fileAckHandler != null) {
+                                fileAckHandler.accept(content);
+                            }
+                            break;
+                        case 5: // FILE_RESUME
+                            if (fileResumeHandler != null) {
+                                fileResumeHandler.accept(content);
+                            }
                             break;
                         default:
                             log.warn("❓ Unknown message type: {}", messageType);
@@ -130,11 +247,11 @@ public class UDPChatReceiver {
         }
     }
 
-    private void handleFileStart(String senderId, String conversationId, byte[] content) {
+    private void handleFileStart(String senderId, String conversationId, byte[] content, SocketAddress replyTo) {
         String metadata = new String(content, StandardCharsets.UTF_8);
         String[] parts = metadata.split("\\|");
 
-        if (parts.length != 3) {
+        if (parts.length < 5) {
             log.error("❌ Invalid FILE_START metadata");
             return;
         }
@@ -142,88 +259,636 @@ public class UDPChatReceiver {
         String fileName = parts[0];
         int fileSize = Integer.parseInt(parts[1]);
         int totalChunks = Integer.parseInt(parts[2]);
+        int transferId = Integer.parseInt(parts[3]);
+        int chunkSize = Integer.parseInt(parts[4]);
+        String sha256 = parts.length >= 6 && !parts[5].isEmpty() ? parts[5] : null;
+
+        String transferKey = senderId + "|" + conversationId + "|" + transferId;
+        Integer completedChunks = completedTransfers.get(transferKey);
+        if (completedChunks != null) {
+            sendAck(conversationId, transferId, completedChunks, -1, null, replyTo);
+            return;
+        }
 
-        FileTransferState state = new FileTransferState();
-        state.fileName = fileName;
-        state.fileSize = fileSize;
-        state.totalChunks = totalChunks;
+        FileTransferState state = fileTransfers.get(transferKey);
+        if (state == null) {
+            // Transfer mới (hoặc resume từ đĩa) phải qua giới hạn; sender retry transfer đang nhận thì không
+            String resumeKey = sha256 != null ? senderId + "|" + conversationId + "|" + sha256 : null;
+            FileTransferState previous = resumeKey != null ? resumableTransfers.get(resumeKey) : null;
+            if (previous != null && (previous.totalChunks != totalChunks || previous.chunkSize != chunkSize)) {
+                // Sender đổi cách chia chunk: state cũ đang giữ cùng .part file -> đóng + xóa trước khi mở lại,
+                // transfer mới tính lại giới hạn như bình thường
+                log.info("🔁 Chunk layout of {} changed ({}x{} -> {}x{}) - restarting transfer",
+                        fileName, previous.totalChunks, previous.chunkSize, totalChunks, chunkSize);
+                if (fileTransfers.remove(previous.transferKey, previous)) {
+                    inProgressBytes.addAndGet(-previous.fileSize);
+                }
+                synchronized (previous) {
+                    discard(previous);
+                }
+                previous = null;
+            }
+            boolean inMemory = previous != null;
+            if (!inMemory && !admit(senderId, fileName, fileSize)) {
+                return;  // Không ACK -> sender stall và bỏ cuộc
+            }
+            if (resumeKey != null) {
+                state = resumeTransfer(resumeKey, transferKey, senderId, fileName, fileSize, totalChunks, chunkSize);
+            }
+        }
+        if (state == null) {
+            state = new FileTransferState();
+            state.transferKey = transferKey;
+            state.senderId = senderId;
+            state.fileName = fileName;
+            state.fileSize = fileSize;
+            state.totalChunks = totalChunks;
+            state.chunkSize = chunkSize;
+            state.sha256 = sha256;
+            try {
+                if (sha256 != null) {
+                    state.resumeKey = senderId + "|" + conversationId + "|" + sha256;
+                    openResumablePartFile(state, false);
+                    resumableTransfers.put(state.resumeKey, state);
+                } else {
+                    openPartFile(state);
+                }
+            } catch (IOException e) {
+                log.error("❌ Cannot create temp file for {}: {}", fileName, e.getMessage());
+                discard(state);
+                return;
+            }
+            fileTransfers.put(transferKey, state);
+            inProgressBytes.addAndGet(fileSize);
 
-        String transferKey = senderId + "|" + conversationId;
-        fileTransfers.put(transferKey, state);
+            log.info("📥 FILE_START: {} ({} bytes, {} chunks) from {} in conversation {}", fileName, fileSize, totalChunks, senderId, conversationId);
 
-        log.info("📥 FILE_START: {} ({} bytes, {} chunks) from {} in conversation {}", fileName, fileSize, totalChunks, senderId, conversationId);
+            if (fileCallback != null) {
+                fileCallback.onFileStart(senderId, conversationId, fileName, fileSize, totalChunks);
+            }
+        }
 
-        if (fileCallback != null) {
-            fileCallback.onFileStart(senderId, conversationId, fileName, fileSize, totalChunks);
+        // Đã có chunk từ lần gửi trước -> báo bitmap đầy đủ để sender bỏ qua; ngược lại ACK FILE_START
+        // (cũng là ACK lại nếu FILE_START bị gửi lại do ACK trước bị mất)
+        if (!state.received.isEmpty()) {
+            sendResume(conversationId, transferId, state, replyTo);
+        } else {
+            sendAck(conversationId, transferId, state, -1, replyTo);
+        }
+    }
+
+    /**
+     * Tìm transfer cùng nội dung đang dở: trong bộ nhớ (sender retry sau khi stall)
+     * hoặc từ manifest trên đĩa (receiver đã stop/start lại)
+     * @return state đã gắn với transferKey mới, null nếu không có gì để resume
+     */
+    private FileTransferState resumeTransfer(String resumeKey, String transferKey, String senderId, String fileName,
+                                             int fileSize, int totalChunks, int chunkSize) {
+        FileTransferState state = resumableTransfers.get(resumeKey);
+        if (state == null) {
+            state = loadManifest(resumeKey, fileSize, totalChunks, chunkSize);
+            if (state == null) return null;
+            state.senderId = senderId;
+            resumableTransfers.put(resumeKey, state);
+            inProgressBytes.addAndGet(fileSize);
+        } else {
+            // Khác totalChunks/chunkSize đã bị handleFileStart bỏ trước đó
+            fileTransfers.remove(state.transferKey);
         }
+
+        state.transferKey = transferKey;
+        state.fileName = fileName;
+        state.lastActivity = System.currentTimeMillis();
+        fileTransfers.put(transferKey, state);
+        log.info("🔁 Resuming {} - already have {}/{} chunks", fileName, state.received.cardinality(), totalChunks);
+        return state;
     }
 
-    private void handleFileChunk(String senderId, String conversationId, byte[] content) {
+    /**
+     * Kiểm tra giới hạn trước khi mở transfer mới
+     */
+    private boolean admit(String senderId, String fileName, int fileSize) {
+        long activeFromSender = fileTransfers.values().stream()
+                .filter(state -> senderId.equals(state.senderId))
+                .count();
+        if (activeFromSender >= MAX_TRANSFERS_PER_SENDER) {
+            abortedTransfers.incrementAndGet();
+            log.warn("⚠️ Rejected {} from {}: {} transfers already in progress", fileName, senderId, activeFromSender);
+            return false;
+        }
+        if (inProgressBytes.get() + fileSize > MAX_IN_PROGRESS_BYTES) {
+            abortedTransfers.incrementAndGet();
+            log.warn("⚠️ Rejected {} from {}: in-progress budget exceeded ({} + {} > {} bytes)",
+                    fileName, senderId, inProgressBytes.get(), fileSize, MAX_IN_PROGRESS_BYTES);
+            return false;
+        }
+        return true;
+    }
+
+    private void handleFileChunk(String senderId, String conversationId, byte[] content, SocketAddress replyTo) {
         ByteBuffer buffer = ByteBuffer.wrap(content);
+        int transferId = buffer.getInt();
         int chunkIndex = buffer.getInt();
         int totalChunks = buffer.getInt();
 
-        byte[] chunkData = new byte[content.length - 8];
-        buffer.get(chunkData);
+        String transferKey = senderId + "|" + conversationId + "|" + transferId;
+        Integer completedChunks = completedTransfers.get(transferKey);
+        if (completedChunks != null) {
+            sendAck(conversationId, transferId, completedChunks, chunkIndex, null, replyTo);
+            return;
+        }
 
-        String transferKey = senderId + "|" + conversationId;
         FileTransferState state = fileTransfers.get(transferKey);
         if (state == null) {
             log.error("❌ FILE_CHUNK without FILE_START for key: {}", transferKey);
             return;
         }
 
-        state.chunks.put(chunkIndex, chunkData);
+        if (chunkIndex < 0 || chunkIndex >= state.totalChunks) {
+            log.warn("⚠️ FILE_CHUNK index out of range: {}/{}", chunkIndex, state.totalChunks);
+            return;
+        }
+
+        if (state.sha256 != null) {
+            // CRC32C của phần data -> chunk hỏng bị bỏ, không ACK để sender gửi lại
+            int expectedCrc = buffer.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                log.warn("⚠️ FILE_CHUNK {} of {} failed CRC32C check", chunkIndex, state.fileName);
+                return;
+            }
+        }
+
+        state.lastActivity = System.currentTimeMillis();
+
+        boolean isNew;
+        synchronized (state) {
+            isNew = !state.received.get(chunkIndex);
+            if (isNew) {
+                try {
+                    // Positional write: không cần giữ chunk trên heap
+                    long position = (long) chunkIndex * state.chunkSize;
+                    while (buffer.hasRemaining()) {
+                        position += state.channel.write(buffer, position);
+                    }
+                    state.received.set(chunkIndex);
+                    if (state.resumeKey != null && ++state.chunksSinceSave >= MANIFEST_SAVE_CHUNKS) {
+                        saveManifest(state);
+                    }
+                } catch (IOException e) {
+                    log.error("❌ Failed to write chunk {} of {}: {}", chunkIndex, state.fileName, e.getMessage());
+                    return;  // Không ACK -> sender sẽ gửi lại
+                }
+            }
+        }
+
+        // ACK mọi chunk (kể cả trùng) để bù cho ACK bị mất
+        sendAck(conversationId, transferId, state, chunkIndex, replyTo);
+
+        if (!isNew) {
+            return;
+        }
 
         log.debug("📥 FILE_CHUNK {}/{} from {} in conversation {}", chunkIndex + 1, totalChunks, senderId, conversationId);
 
         if (fileCallback != null) {
             fileCallback.onFileChunk(senderId, conversationId, chunkIndex, totalChunks);
         }
+
+        if (state.received.cardinality() == state.totalChunks) {
+            completeTransfer(senderId, conversationId, transferKey, state);
+        }
     }
 
-    private void handleFileEnd(String senderId, String conversationId, byte[] content) {
-        String fileName = new String(content, StandardCharsets.UTF_8);
+    private void handleFileEnd(String senderId, String conversationId, byte[] content, SocketAddress replyTo) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int transferId = buffer.getInt();
+        int totalChunks = buffer.getInt();
+        byte[] fileNameBytes = new byte[buffer.remaining()];
+        buffer.get(fileNameBytes);
+        String fileName = new String(fileNameBytes, StandardCharsets.UTF_8);
+
+        String transferKey = senderId + "|" + conversationId + "|" + transferId;
+        if (completedTransfers.containsKey(transferKey)) {
+            log.debug("FILE_END: {} already completed", fileName);
+            sendAck(conversationId, transferId, totalChunks, -1, null, replyTo);
+            return;
+        }
 
-        String transferKey = senderId + "|" + conversationId;
         FileTransferState state = fileTransfers.get(transferKey);
         if (state == null) {
             log.error("❌ FILE_END without FILE_START for key: {}", transferKey);
             return;
         }
 
-        // Reassemble file
-        if (state.chunks.size() != state.totalChunks) {
-            log.error("❌ Missing chunks: got {}/{}", state.chunks.size(), state.totalChunks);
+        // Resume khi đã có đủ chunk (vd. receiver stop ngay sau chunk cuối) -> hoàn tất luôn
+        if (state.received.cardinality() == state.totalChunks) {
+            sendAck(conversationId, transferId, state, -1, replyTo);
+            completeTransfer(senderId, conversationId, transferKey, state);
             return;
         }
 
-        byte[] fileData = new byte[state.fileSize];
-        int offset = 0;
+        // Sender nghĩ đã xong nhưng mình còn thiếu -> báo lại trạng thái để sender gửi bù
+        log.warn("⚠️ FILE_END before all chunks: got {}/{}", state.received.cardinality(), state.totalChunks);
+        sendAck(conversationId, transferId, state, -1, replyTo);
+    }
 
-        for (int i = 0; i < state.totalChunks; i++) {
-            byte[] chunk = state.chunks.get(i);
-            if (chunk == null) {
-                log.error("❌ Missing chunk {}", i);
-                return;
-            }
+    private void completeTransfer(String senderId, String conversationId, String transferKey, FileTransferState state) {
+        if (fileTransfers.remove(transferKey) == null) {
+            return;  // Đã được complete bởi lần gọi khác
+        }
+        inProgressBytes.addAndGet(-state.fileSize);
+        if (state.resumeKey != null) {
+            resumableTransfers.remove(state.resumeKey, state);
+        }
+        completedTransfers.put(transferKey, state.totalChunks);
+
+        // Hash lại cả file + callback (move sang Downloads, có thể là copy khác filesystem)
+        // chạy trên io pool: thread receive phải tiếp tục ACK các transfer khác
+        try {
+            ClientExecutors.io().execute(() -> finishTransfer(senderId, conversationId, state));
+        } catch (RejectedExecutionException e) {
+            abortedTransfers.incrementAndGet();
+            discard(state);
+        }
+    }
 
-            System.arraycopy(chunk, 0, fileData, offset, chunk.length);
-            offset += chunk.length;
+    /**
+     * Kiểm tra SHA-256, chuyển part file thành file hoàn chỉnh trong INCOMING_DIR rồi gọi onFileComplete (io pool)
+     */
+    private void finishTransfer(String senderId, String conversationId, FileTransferState state) {
+        Path completedFile;
+        try {
+            state.channel.force(false);
+            if (state.sha256 != null) {
+                String actual = sha256Of(state.channel, state.fileSize);
+                if (!actual.equalsIgnoreCase(state.sha256)) {
+                    log.error("❌ SHA-256 mismatch for {}: expected {}, got {} - file discarded",
+                            state.fileName, state.sha256, actual);
+                    abortedTransfers.incrementAndGet();
+                    discard(state);
+                    return;
+                }
+            }
+            state.channel.close();
+            completedFile = INCOMING_DIR.resolve(UUID.randomUUID() + "-" + sanitizeFileName(state.fileName));
+            Files.move(state.partFile, completedFile, StandardCopyOption.ATOMIC_MOVE);
+            if (state.manifestFile != null) {
+                Files.deleteIfExists(state.manifestFile);
+            }
+        } catch (IOException e) {
+            log.error("❌ Failed to finalize received file {}: {}", state.fileName, e.getMessage());
+            abortedTransfers.incrementAndGet();
+            discard(state);
+            return;
         }
 
-        log.info("✅ FILE_END: {} - Reassembled {} bytes from {} in conversation {}", fileName, fileData.length, senderId, conversationId);
+        log.info("✅ FILE complete: {} - {} bytes from {} in conversation {} -> {}",
+                state.fileName, state.fileSize, senderId, conversationId, completedFile);
 
         if (fileCallback != null) {
-            fileCallback.onFileComplete(senderId, conversationId, fileName, fileData);
+            fileCallback.onFileComplete(senderId, conversationId, state.fileName, completedFile);
         }
+    }
+
+    // ==================================================================
+    // CLEANUP (idle transfer + file resume cũ trên đĩa)
+    // ==================================================================
 
-        fileTransfers.remove(transferKey);
+    private void startSweeper() {
+        if (sweepExecutor != null) return;
+        sweepExecutor = ClientExecutors.newScheduler("chat-transfer-sweeper");
+        sweepExecutor.execute(this::deleteStaleResumeFiles);
+        sweepExecutor.scheduleWithFixedDelay(this::sweepIdleTransfers,
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Transfer không nhận được chunk nào quá TRANSFER_IDLE_TIMEOUT_MS bị gỡ khỏi bộ nhớ.
+     * Transfer resume được thì lưu manifest + giữ part file (sender gửi lại sau vẫn nhận tiếp).
+     */
+    private void sweepIdleTransfers() {
+        long now = System.currentTimeMillis();
+        fileTransfers.forEach((transferKey, state) -> {
+            if (now - state.lastActivity < TRANSFER_IDLE_TIMEOUT_MS) return;
+            if (!fileTransfers.remove(transferKey, state)) return;
+
+            inProgressBytes.addAndGet(-state.fileSize);
+            expiredTransfers.incrementAndGet();
+            log.warn("⏱️ File transfer {} from {} expired at {}/{} chunks",
+                    state.fileName, state.senderId, state.received.cardinality(), state.totalChunks);
+
+            if (state.resumeKey != null) {
+                resumableTransfers.remove(state.resumeKey, state);
+                synchronized (state) {
+                    saveManifest(state);
+                }
+                closeQuietly(state, false);
+            } else {
+                closeQuietly(state, true);
+            }
+        });
+    }
+
+    private void deleteStaleResumeFiles() {
+        if (!Files.isDirectory(INCOMING_DIR)) return;
+        long cutoff = System.currentTimeMillis() - RESUME_FILE_MAX_AGE_MS;
+        // Gồm cả file đã nhận xong mà caller chưa chuyển đi (vd. app bị tắt giữa chừng)
+        try (var files = Files.newDirectoryStream(INCOMING_DIR)) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException ignored) {}
+            }
+        } catch (IOException e) {
+            log.debug("Failed to clean incoming dir: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Chuyển file đã nhận (trong INCOMING_DIR) sang DOWNLOADS_DIR với tên gốc, thêm " (n)" nếu trùng tên
+     * @return đường dẫn mới của file
+     */
+    public static Path moveToDownloads(Path file, String fileName) throws IOException {
+        Files.createDirectories(DOWNLOADS_DIR);
+        String name = sanitizeFileName(fileName);
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+
+        for (int i = 0; ; i++) {
+            Path target = DOWNLOADS_DIR.resolve(i == 0 ? name : base + " (" + i + ")" + ext);
+            try {
+                // Khác filesystem (tmp -> home) thì Files.move tự copy + xóa
+                return Files.move(file, target);
+            } catch (FileAlreadyExistsException e) {
+                // thử tên tiếp theo
+            }
+        }
+    }
+
+    public int getActiveTransfers() {
+        return fileTransfers.size();
+    }
+
+    public long getInProgressBytes() {
+        return inProgressBytes.get();
+    }
+
+    public long getAbortedTransfers() {
+        return abortedTransfers.get();
+    }
+
+    public long getExpiredTransfers() {
+        return expiredTransfers.get();
+    }
+
+    private static String sha256Of(FileChannel channel, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void openPartFile(FileTransferState state) throws IOException {
+        Files.createDirectories(INCOMING_DIR);
+        state.partFile = Files.createTempFile(INCOMING_DIR, "transfer-", ".part");
+        state.channel = FileChannel.open(state.partFile, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        presize(state);
+    }
+
+    /**
+     * Part file + manifest có tên cố định theo resumeKey để tìm lại được sau khi receiver khởi động lại
+     * @param keepContent true khi resume từ manifest (giữ nguyên chunk đã ghi)
+     */
+    private void openResumablePartFile(FileTransferState state, boolean keepContent) throws IOException {
+        Files.createDirectories(INCOMING_DIR);
+        String baseName = resumeBaseName(state.resumeKey);
+        state.partFile = INCOMING_DIR.resolve(baseName + ".part");
+        state.manifestFile = INCOMING_DIR.resolve(baseName + ".manifest");
+        state.channel = FileChannel.open(state.partFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (!keepContent) {
+            state.channel.truncate(0);
+            presize(state);
+        }
+    }
+
+    /**
+     * Gồm cả local port: 2 receiver trên cùng máy (vd. messenger + meeting) không dùng chung part file,
+     * còn receiver tạo lại trên cùng socket (pause/resume) vẫn tìm thấy
+     */
+    private String resumeBaseName(String resumeKey) {
+        String key = socket.getLocalPort() + "|" + resumeKey;
+        return "resume-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void presize(FileTransferState state) throws IOException {
+        if (state.fileSize > 0) {
+            // Pre-size (sparse) để ghi chunk theo offset bất kỳ
+            state.channel.write(ByteBuffer.wrap(new byte[1]), state.fileSize - 1L);
+        }
+    }
+
+    // ==================================================================
+    // MANIFEST (partial transfer trên đĩa)
+    // ==================================================================
+
+    /**
+     * Ghi manifest (ghi file tạm rồi rename để không bao giờ để lại manifest dở).
+     * Gọi khi đang giữ lock của state; bitmap luôn được ghi SAU data nên không bao giờ báo thừa chunk.
+     */
+    private void saveManifest(FileTransferState state) {
+        state.chunksSinceSave = 0;
+        Properties manifest = new Properties();
+        manifest.setProperty("fileName", state.fileName);
+        manifest.setProperty("fileSize", String.valueOf(state.fileSize));
+        manifest.setProperty("totalChunks", String.valueOf(state.totalChunks));
+        manifest.setProperty("chunkSize", String.valueOf(state.chunkSize));
+        manifest.setProperty("resumeKey", state.resumeKey);
+        manifest.setProperty("received", Base64.getEncoder().encodeToString(state.received.toByteArray()));
+
+        Path tmp = state.manifestFile.resolveSibling(state.manifestFile.getFileName() + ".tmp");
+        try {
+            try (var out = Files.newOutputStream(tmp)) {
+                manifest.store(out, "EduVerse partial file transfer");
+            }
+            Files.move(tmp, state.manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save transfer manifest for {}: {}", state.fileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Đọc manifest của resumeKey; manifest không khớp metadata mới hoặc part file sai kích thước -> bỏ
+     */
+    private FileTransferState loadManifest(String resumeKey, int fileSize, int totalChunks, int chunkSize) {
+        String baseName = resumeBaseName(resumeKey);
+        Path manifestFile = INCOMING_DIR.resolve(baseName + ".manifest");
+        Path partFile = INCOMING_DIR.resolve(baseName + ".part");
+        if (!Files.exists(manifestFile) || !Files.exists(partFile)) {
+            return null;
+        }
+
+        FileTransferState state = new FileTransferState();
+        state.resumeKey = resumeKey;
+        state.sha256 = resumeKey.substring(resumeKey.lastIndexOf('|') + 1);
+        state.fileSize = fileSize;
+        state.totalChunks = totalChunks;
+        state.chunkSize = chunkSize;
+        try {
+            Properties manifest = new Properties();
+            try (var in = Files.newInputStream(manifestFile)) {
+                manifest.load(in);
+            }
+            boolean matches = resumeKey.equals(manifest.getProperty("resumeKey"))
+                    && String.valueOf(fileSize).equals(manifest.getProperty("fileSize"))
+                    && String.valueOf(totalChunks).equals(manifest.getProperty("totalChunks"))
+                    && String.valueOf(chunkSize).equals(manifest.getProperty("chunkSize"))
+                    && Files.size(partFile) == fileSize;
+            BitSet received = BitSet.valueOf(Base64.getDecoder().decode(manifest.getProperty("received", "")));
+            if (!matches || received.length() > totalChunks) {
+                log.warn("⚠️ Stale transfer manifest {} - starting over", manifestFile.getFileName());
+                return null;
+            }
+            state.received = received;
+            openResumablePartFile(state, true);
+            return state;
+        } catch (Exception e) {
+            log.warn("Failed to load transfer manifest {}: {}", manifestFile.getFileName(), e.getMessage());
+            closeQuietly(state, false);
+            return null;
+        }
+    }
+
+    /**
+     * Bỏ hẳn transfer: đóng + xóa part file và manifest
+     */
+    private void discard(FileTransferState state) {
+        if (state.resumeKey != null) {
+            resumableTransfers.remove(state.resumeKey, state);
+        }
+        closeQuietly(state, true);
+        if (state.manifestFile != null) {
+            try {
+                Files.deleteIfExists(state.manifestFile);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void closeQuietly(FileTransferState state, boolean deletePartFile) {
+        try {
+            if (state.channel != null && state.channel.isOpen()) {
+                state.channel.close();
+            }
+        } catch (IOException ignored) {}
+        if (deletePartFile && state.partFile != null) {
+            try {
+                Files.deleteIfExists(state.partFile);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static String sanitizeFileName(String fileName) {
+        String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        return name.replaceAll("[\\\\/:*?\"<>|]", "_");
+    }
+
+    private void sendAck(String conversationId, int transferId, FileTransferState state, int triggerIndex, SocketAddress replyTo) {
+        int cumulativeAck;
+        byte[] sack = new byte[SACK_BITS / 8];
+        synchronized (state) {
+            cumulativeAck = state.received.nextClearBit(0);
+            for (int i = state.received.nextSetBit(cumulativeAck + 1);
+                 i >= 0 && i <= cumulativeAck + SACK_BITS;
+                 i = state.received.nextSetBit(i + 1)) {
+                int bit = i - cumulativeAck - 1;
+                sack[bit >> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        sendAck(conversationId, transferId, cumulativeAck, triggerIndex, sack, replyTo);
+    }
+
+    /**
+     * FILE_RESUME content: transferId(4) + totalChunks(4) + bitmapLength(4) + bitmap (bit i = đã có chunk i)
+     * Bitmap cho file 2GB / chunk 16KB chỉ 16KB -> vừa 1 datagram
+     */
+    private void sendResume(String conversationId, int transferId, FileTransferState state, SocketAddress replyTo) {
+        try {
+            byte[] bitmap;
+            synchronized (state) {
+                bitmap = state.received.toByteArray();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 12 + bitmap.length);
+            buffer.put(padString("", 36).getBytes(StandardCharsets.UTF_8));
+            buffer.put(padString(conversationId, 36).getBytes(StandardCharsets.UTF_8));
+            buffer.putInt(5); // FILE_RESUME
+            buffer.putInt(12 + bitmap.length);
+            buffer.putInt(transferId);
+            buffer.putInt(state.totalChunks);
+            buffer.putInt(bitmap.length);
+            buffer.put(bitmap);
+            socket.send(new DatagramPacket(buffer.array(), buffer.array().length, replyTo));
+        } catch (Exception e) {
+            log.warn("Failed to send FILE_RESUME: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * FILE_ACK content: transferId(4) + cumulativeAck(4) + triggerIndex(4) + sackLength(4) + sackBitmap
+     */
+    private void sendAck(String conversationId, int transferId, int cumulativeAck, int triggerIndex,
+                         byte[] sack, SocketAddress replyTo) {
+        try {
+            int sackLength = sack != null ? sack.length : 0;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 16 + sackLength);
+            buffer.put(padString("", 36).getBytes(StandardCharsets.UTF_8));
+            buffer.put(padString(conversationId, 36).getBytes(StandardCharsets.UTF_8));
+            buffer.putInt(4); // FILE_ACK
+            buffer.putInt(16 + sackLength);
+            buffer.putInt(transferId);
+            buffer.putInt(cumulativeAck);
+            buffer.putInt(triggerIndex);
+            buffer.putInt(sackLength);
+            if (sack != null) {
+                buffer.put(sack);
+            }
+            socket.send(new DatagramPacket(buffer.array(), buffer.array().length, replyTo));
+        } catch (Exception e) {
+            log.warn("Failed to send FILE_ACK: {}", e.getMessage());
+        }
+    }
+
+    private String padString(String str, int length) {
+        if (str == null) str = "";
+        if (str.length() >= length) return str.substring(0, length);
+        return String.format("%-" + length + "s", str);
     }
 
     public void stop() {
         isRunning = false;
 
+        if (sweepExecutor != null) {
+            sweepExecutor.shutdownNow();
+            sweepExecutor = null;
+        }
+
         // Shutdown executor service properly
         if (executorService != null) {
             executorService.shutdown();
@@ -245,7 +910,24 @@ public class UDPChatReceiver {
         // Don't close socket here - MediaStreamManager will handle it
         // Closing socket here can cause issues if MediaStreamManager still needs it
 
+        // Transfer resume được: lưu manifest và giữ part file để receiver mới nhận tiếp
+        fileTransfers.values().forEach(state -> {
+            if (state.resumeKey != null) {
+                synchronized (state) {
+                    try {
+                        state.channel.force(false);
+                    } catch (IOException ignored) {}
+                    saveManifest(state);
+                }
+                closeQuietly(state, false);
+            } else {
+                closeQuietly(state, true);
+            }
+        });
         fileTransfers.clear();
+        resumableTransfers.clear();
+        inProgressBytes.set(0);
+        completedTransfers.clear();
 
         log.info("🛑 UDP Chat Receiver stopped");
     }
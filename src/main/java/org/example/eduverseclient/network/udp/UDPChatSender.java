@@ -2,11 +2,29 @@ package org.example.eduverseclient.network.udp;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
 
 @Slf4j
 public class UDPChatSender {
@@ -22,6 +40,15 @@ public class UDPChatSender {
     private static final int HEADER_SIZE = 80;
     private static final int MAX_PACKET_SIZE = 65000;
 
+    // File chunk nhỏ để 1 datagram chỉ bị phân mảnh IP ít lần (mất 1 fragment = mất cả chunk)
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final long STALL_TIMEOUT_MS = 15000;
+    // Transfer bị stall được thử lại với transferId mới; receiver báo chunk đã có qua FILE_RESUME
+    private static final int MAX_ATTEMPTS = 3;
+
+    // transferId -> trạng thái gửi (ACK được UDPChatReceiver chuyển tới qua onFileAck)
+    private final Map<Integer, OutgoingFileTransfer> outgoingTransfers = new ConcurrentHashMap<>();
+
     // ==================================================================
     // 1. PUBLIC METHODS (Giao diện cho bên ngoài gọi)
     // ==================================================================
@@ -33,6 +60,14 @@ public class UDPChatSender {
         sendPacketInternal(this.myUserId, conversationId, 0, message, targetIP, targetPort);
     }
 
+    /**
+     * Host meeting chuyển tiếp tin nhắn của NGƯỜI KHÁC tới participant, giữ senderId gốc
+     * (conversationId = meetingId)
+     */
+    public void relayMessage(String originalSenderId, String conversationId, String message, String targetIP, int targetPort) {
+        sendPacketInternal(originalSenderId, conversationId, 0, message, targetIP, targetPort);
+    }
+
     /**
      * Chuyển tiếp tin nhắn của NGƯỜI KHÁC (Host -> Client khác)
      * @deprecated Not used in P2P messenger, kept for backward compatibility
@@ -46,35 +81,355 @@ public class UDPChatSender {
     }
 
     // ==================================================================
-    // 2. FILE SENDING
+    // 2. FILE SENDING (selective repeat - xem OutgoingFileTransfer; nhiều peer - xem sendFileToAll)
     // ==================================================================
 
     /**
-     * Gửi file với conversationId
+     * Gửi file với conversationId (blocking cho tới khi peer ACK đủ chunk hoặc transfer bị stall)
+     * @return true nếu peer đã nhận đủ file
      */
-    public void sendFile(String conversationId, String fileName, byte[] fileData, String targetIP, int targetPort) {
+    public boolean sendFile(String conversationId, String fileName, byte[] fileData, String targetIP, int targetPort) {
+        return sendFile(conversationId, fileName, ByteBuffer.wrap(fileData), targetIP, targetPort);
+    }
+
+    /**
+     * Gửi file trên đĩa: memory-map file, chunk được copy thẳng từ mapping vào datagram buffer
+     * -> bộ nhớ dùng không phụ thuộc kích thước file
+     */
+    public boolean sendFile(String conversationId, String fileName, Path file, String targetIP, int targetPort) {
         try {
-            int totalChunks = (int) Math.ceil((double) fileData.length / (MAX_PACKET_SIZE - HEADER_SIZE - 100));
-            sendFileStart(conversationId, fileName, fileData.length, totalChunks, targetIP, targetPort);
-
-            int offset = 0;
-            for (int i = 0; i < totalChunks; i++) {
-                int chunkSize = Math.min(MAX_PACKET_SIZE - HEADER_SIZE - 100, fileData.length - offset);
-                byte[] chunk = new byte[chunkSize];
-                System.arraycopy(fileData, offset, chunk, 0, chunkSize);
-                sendFileChunk(conversationId, i, totalChunks, chunk, targetIP, targetPort);
-                offset += chunkSize;
-                Thread.sleep(5); // Throttle nhẹ 5ms
+            return sendFile(conversationId, fileName, mapFile(file), targetIP, targetPort);
+        } catch (IOException e) {
+            log.error("❌ Failed to map file {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Memory-map file read-only (mapping vẫn hợp lệ sau khi đóng channel).
+     * Dùng chung 1 mapping cho nhiều peer được vì chỉ đọc bằng absolute get.
+     */
+    public static ByteBuffer mapFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + size + " bytes");
             }
-            sendFileEnd(conversationId, fileName, targetIP, targetPort);
-            log.info("✅ Sent file {} ({} bytes)", fileName, fileData.length);
-        } catch (Exception e) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @param fileData nội dung file (heap hoặc mapped); chỉ đọc bằng absolute get, không đổi position
+     */
+    public boolean sendFile(String conversationId, String fileName, ByteBuffer fileData, String targetIP, int targetPort) {
+        InetSocketAddress target = new InetSocketAddress(targetIP, targetPort);
+        return Boolean.TRUE.equals(sendFileToAll(conversationId, fileName, fileData, List.of(target)).get(target));
+    }
+
+    /**
+     * Gửi 1 file tới nhiều peer cùng lúc: 1 thread điều phối, mỗi peer 1 OutgoingFileTransfer (window riêng),
+     * chunk được gửi xen kẽ giữa các peer từ cùng 1 buffer -> tổng thời gian ~ thời gian gửi cho 1 peer
+     * (giới hạn bởi uplink), peer chậm/mất gói không làm chậm peer khác.
+     * Blocking cho tới khi mọi peer nhận xong hoặc bỏ cuộc.
+     * @return target -> true nếu peer đã nhận đủ file
+     */
+    public Map<InetSocketAddress, Boolean> sendFileToAll(String conversationId, String fileName, ByteBuffer fileData,
+                                                         Collection<InetSocketAddress> targets) {
+        Map<InetSocketAddress, Boolean> results = new LinkedHashMap<>();
+        if (targets.isEmpty()) return results;
+
+        FanOut fanOut;
+        try {
+            // SHA-256 cả file: receiver dùng để verify và làm khóa resume (cùng nội dung -> nhận tiếp)
+            fanOut = new FanOut(conversationId, fileName, fileData, sha256Of(fileData));
+        } catch (NoSuchAlgorithmException e) {
             log.error("❌ Failed to send file", e);
+            targets.forEach(target -> results.put(target, false));
+            return results;
+        }
+
+        List<Recipient> active = new ArrayList<>();
+        for (InetSocketAddress target : targets) {
+            if (target.isUnresolved()) {
+                log.error("❌ Cannot resolve file transfer target {}", target);
+                results.put(target, false);
+                continue;
+            }
+            Recipient recipient = new Recipient(target);
+            active.add(recipient);
+            fanOut.beginAttempt(recipient);
+        }
+
+        try {
+            while (!active.isEmpty()) {
+                long now = System.currentTimeMillis();
+                long waitMs = STALL_TIMEOUT_MS;
+
+                for (Iterator<Recipient> it = active.iterator(); it.hasNext(); ) {
+                    Recipient recipient = it.next();
+                    Boolean outcome = fanOut.step(recipient, now);
+                    if (outcome != null) {
+                        results.put(recipient.target, outcome);
+                        it.remove();
+                    } else {
+                        waitMs = Math.min(waitMs, recipient.waitMs(System.currentTimeMillis()));
+                    }
+                }
+
+                if (!active.isEmpty()) {
+                    fanOut.awaitProgress(waitMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("File transfer {} interrupted", fileName);
+        } finally {
+            for (Recipient recipient : active) {
+                results.putIfAbsent(recipient.target, false);
+                outgoingTransfers.remove(recipient.transfer.transferId);
+            }
+        }
+
+        long delivered = results.values().stream().filter(Boolean::booleanValue).count();
+        if (results.size() > 1) {
+            log.info("📤 Fan-out {} to {}/{} peers", fileName, delivered, results.size());
+        }
+        return results;
+    }
+
+    /**
+     * Trạng thái gửi tới 1 peer trong fan-out (chỉ thread điều phối truy cập)
+     */
+    private static class Recipient {
+        final InetSocketAddress target;
+        int attempt = 0;
+        OutgoingFileTransfer transfer;
+        ChunkPacket chunkPacket;
+        long attemptStart;
+        long lastStartSent;
+        boolean dataPhase;
+        int resumedChunks;
+
+        Recipient(InetSocketAddress target) {
+            this.target = target;
+        }
+
+        long waitMs(long now) {
+            if (!dataPhase) {
+                return Math.max(1, lastStartSent + transfer.getRto() - now);
+            }
+            return transfer.getWaitMs(now);
         }
     }
 
-    private void sendFileStart(String conversationId, String fileName, int fileSize, int totalChunks, String targetIP, int targetPort) throws Exception {
-        String metadata = String.format("%s|%d|%d", fileName, fileSize, totalChunks);
+    /**
+     * 1 file đang được fan-out: dữ liệu, SHA-256 và CRC32C từng chunk dùng chung cho mọi peer
+     */
+    private class FanOut {
+        final String conversationId;
+        final String fileName;
+        final ByteBuffer fileData;
+        final String sha256;
+        final int fileSize;
+        final int totalChunks;
+        final int[] chunkCrcs;
+        final BitSet crcKnown = new BitSet();
+
+        // ACK của bất kỳ peer nào đánh thức thread điều phối
+        private final Object progressLock = new Object();
+        private boolean progressSignalled = false;
+
+        FanOut(String conversationId, String fileName, ByteBuffer fileData, String sha256) {
+            this.conversationId = conversationId;
+            this.fileName = fileName;
+            this.fileData = fileData;
+            this.sha256 = sha256;
+            this.fileSize = fileData.limit();
+            this.totalChunks = Math.max(1, (int) Math.ceil((double) fileSize / CHUNK_SIZE));
+            this.chunkCrcs = new int[totalChunks];
+        }
+
+        /**
+         * Lần gửi mới với transferId mới; receiver sẽ báo chunk đã có qua FILE_RESUME
+         */
+        void beginAttempt(Recipient recipient) {
+            if (recipient.transfer != null) {
+                outgoingTransfers.remove(recipient.transfer.transferId);
+            }
+            int transferId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+            recipient.attempt++;
+            recipient.transfer = new OutgoingFileTransfer(transferId, totalChunks, this::signalProgress);
+            recipient.chunkPacket = new ChunkPacket(conversationId, transferId, totalChunks,
+                    recipient.target.getAddress(), recipient.target.getPort());
+            recipient.dataPhase = false;
+            recipient.attemptStart = System.currentTimeMillis();
+            outgoingTransfers.put(transferId, recipient.transfer);
+            sendStart(recipient);
+        }
+
+        /**
+         * Tiến 1 bước cho 1 peer: gửi lại FILE_START, hoặc gửi các chunk window cho phép
+         * @return true/false khi peer đã xong/thất bại hẳn, null nếu còn đang gửi
+         */
+        Boolean step(Recipient recipient, long now) {
+            OutgoingFileTransfer transfer = recipient.transfer;
+            try {
+                if (!recipient.dataPhase) {
+                    // 1. Handshake: gửi lại FILE_START cho tới khi nhận được ACK/FILE_RESUME đầu tiên
+                    if (transfer.isStartAcked()) {
+                        recipient.dataPhase = true;
+                        recipient.resumedChunks = transfer.getAckedCount();
+                        if (recipient.resumedChunks > 0) {
+                            log.info("🔁 Peer {} already has {}/{} chunks of {}",
+                                    recipient.target, recipient.resumedChunks, totalChunks, fileName);
+                        }
+                    } else if (now - recipient.attemptStart > STALL_TIMEOUT_MS) {
+                        log.error("❌ File transfer {}: no response from {}", fileName, recipient.target);
+                        return retryOrFail(recipient);
+                    } else {
+                        if (now - recipient.lastStartSent >= transfer.getRto()) {
+                            sendStart(recipient);
+                        }
+                        return null;
+                    }
+                }
+
+                // 2. Sliding window
+                if (transfer.isComplete()) {
+                    sendFileEnd(conversationId, transfer.transferId, totalChunks, fileName,
+                            recipient.target.getAddress(), recipient.target.getPort());
+                    outgoingTransfers.remove(transfer.transferId);
+                    log.info("✅ Sent file {} to {} ({} bytes, {} chunks, {} resumed, {} retransmissions, srtt={}ms)",
+                            fileName, recipient.target, fileSize, totalChunks, recipient.resumedChunks,
+                            transfer.getRetransmissions(), String.format("%.1f", transfer.getSmoothedRttMs()));
+                    return true;
+                }
+                if (transfer.isStalled(now, STALL_TIMEOUT_MS)) {
+                    log.error("❌ File transfer {} stalled at {}/{} chunks to {}",
+                            fileName, transfer.getAckedCount(), totalChunks, recipient.target);
+                    return retryOrFail(recipient);
+                }
+                for (int chunkIndex : transfer.collectSendable(now)) {
+                    int offset = chunkIndex * CHUNK_SIZE;
+                    int length = Math.min(CHUNK_SIZE, fileSize - offset);
+                    recipient.chunkPacket.send(chunkIndex, fileData, offset, length, this);
+                    transfer.markSent(chunkIndex, System.currentTimeMillis());
+                }
+                return null;
+
+            } catch (Exception e) {
+                log.error("❌ Failed to send file {} to {}", fileName, recipient.target, e);
+                outgoingTransfers.remove(transfer.transferId);
+                return false;
+            }
+        }
+
+        private Boolean retryOrFail(Recipient recipient) {
+            if (recipient.attempt >= MAX_ATTEMPTS) {
+                outgoingTransfers.remove(recipient.transfer.transferId);
+                log.error("❌ File transfer {} to {} failed after {} attempts", fileName, recipient.target, MAX_ATTEMPTS);
+                return false;
+            }
+            log.warn("🔁 Retrying file transfer {} to {} (attempt {}/{})",
+                    fileName, recipient.target, recipient.attempt + 1, MAX_ATTEMPTS);
+            beginAttempt(recipient);
+            return null;
+        }
+
+        private void sendStart(Recipient recipient) {
+            recipient.lastStartSent = System.currentTimeMillis();
+            try {
+                sendFileStart(conversationId, recipient.transfer.transferId, fileName, fileSize, totalChunks, sha256,
+                        recipient.target.getAddress(), recipient.target.getPort());
+            } catch (Exception e) {
+                log.warn("Failed to send FILE_START to {}: {}", recipient.target, e.getMessage());
+            }
+        }
+
+        /**
+         * CRC32C của chunk, tính 1 lần (từ bytes vừa copy vào packet) rồi dùng lại cho mọi peer
+         */
+        int chunkCrc(int chunkIndex, byte[] chunk, int offset, int length) {
+            if (!crcKnown.get(chunkIndex)) {
+                CRC32C crc = new CRC32C();
+                crc.update(chunk, offset, length);
+                chunkCrcs[chunkIndex] = (int) crc.getValue();
+                crcKnown.set(chunkIndex);
+            }
+            return chunkCrcs[chunkIndex];
+        }
+
+        private void signalProgress() {
+            synchronized (progressLock) {
+                progressSignalled = true;
+                progressLock.notifyAll();
+            }
+        }
+
+        void awaitProgress(long timeoutMs) throws InterruptedException {
+            synchronized (progressLock) {
+                if (!progressSignalled) {
+                    progressLock.wait(Math.max(1, timeoutMs));
+                }
+                progressSignalled = false;
+            }
+        }
+    }
+
+    private static String sha256Of(ByteBuffer fileData) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(fileData.duplicate().position(0));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Gọi bởi UDPChatReceiver khi nhận FILE_ACK trên socket dùng chung.
+     * Content: transferId(4) + cumulativeAck(4) + triggerIndex(4) + sackLength(4) + sackBitmap
+     */
+    public void onFileAck(byte[] content) {
+        if (content == null || content.length < 16) return;
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int transferId = buffer.getInt();
+        int cumulativeAck = buffer.getInt();
+        int triggerIndex = buffer.getInt();
+        int sackLength = Math.min(buffer.getInt(), buffer.remaining());
+        byte[] sack = new byte[Math.max(0, sackLength)];
+        buffer.get(sack);
+
+        OutgoingFileTransfer transfer = outgoingTransfers.get(transferId);
+        if (transfer != null) {
+            transfer.onAck(cumulativeAck, triggerIndex, sack, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Gọi bởi UDPChatReceiver khi nhận FILE_RESUME.
+     * Content: transferId(4) + totalChunks(4) + bitmapLength(4) + bitmap
+     */
+    public void onFileResume(byte[] content) {
+        if (content == null || content.length < 12) return;
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int transferId = buffer.getInt();
+        int totalChunks = buffer.getInt();
+        int bitmapLength = Math.min(buffer.getInt(), buffer.remaining());
+        byte[] bitmap = new byte[Math.max(0, bitmapLength)];
+        buffer.get(bitmap);
+
+        OutgoingFileTransfer transfer = outgoingTransfers.get(transferId);
+        if (transfer != null && transfer.totalChunks == totalChunks) {
+            transfer.onResume(BitSet.valueOf(bitmap), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Metadata: fileName|fileSize|totalChunks|transferId|chunkSize|sha256
+     */
+    private void sendFileStart(String conversationId, int transferId, String fileName, int fileSize, int totalChunks,
+                               String sha256, InetAddress address, int targetPort) throws Exception {
+        String metadata = String.format("%s|%d|%d|%d|%d|%s", fileName, fileSize, totalChunks, transferId, CHUNK_SIZE, sha256);
         byte[] metadataBytes = metadata.getBytes(StandardCharsets.UTF_8);
         ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + metadataBytes.length);
 
@@ -85,39 +440,56 @@ public class UDPChatSender {
         buffer.putInt(metadataBytes.length);
         buffer.put(metadataBytes);
 
-        DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.array().length, InetAddress.getByName(targetIP), targetPort);
-        socket.send(packet);
+        socket.send(new DatagramPacket(buffer.array(), buffer.array().length, address, targetPort));
     }
 
-    private void sendFileChunk(String conversationId, int chunkIndex, int totalChunks, byte[] chunk, String targetIP, int targetPort) throws Exception {
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 + chunk.length);
-        
-        // Header: senderId + conversationId + type + length
-        buffer.put(padString(this.myUserId, 36).getBytes(StandardCharsets.UTF_8));
-        buffer.put(padString(conversationId, 36).getBytes(StandardCharsets.UTF_8));
-        buffer.putInt(2); // FILE_CHUNK
-        buffer.putInt(8 + chunk.length);
-        buffer.putInt(chunkIndex);
-        buffer.putInt(totalChunks);
-        buffer.put(chunk);
-        
-        DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.array().length, InetAddress.getByName(targetIP), targetPort);
-        socket.send(packet);
+    /**
+     * Datagram buffer tái sử dụng cho FILE_CHUNK của 1 transfer (header ghi sẵn 1 lần)
+     * Layout: header(80) + transferId(4) + chunkIndex(4) + totalChunks(4) + crc32c(4) + data
+     */
+    private class ChunkPacket {
+        private static final int PREFIX = 16;
+        private final byte[] data = new byte[HEADER_SIZE + PREFIX + CHUNK_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(data);
+        private final DatagramPacket packet;
+
+        ChunkPacket(String conversationId, int transferId, int totalChunks, InetAddress address, int targetPort) {
+            buffer.put(padString(myUserId, 36).getBytes(StandardCharsets.UTF_8));
+            buffer.put(padString(conversationId, 36).getBytes(StandardCharsets.UTF_8));
+            buffer.putInt(2); // FILE_CHUNK
+            buffer.putInt(0); // length - ghi theo từng chunk
+            buffer.putInt(transferId);
+            buffer.putInt(0); // chunkIndex - ghi theo từng chunk
+            buffer.putInt(totalChunks);
+            buffer.putInt(0); // crc32c - ghi theo từng chunk
+            this.packet = new DatagramPacket(data, data.length, address, targetPort);
+        }
+
+        void send(int chunkIndex, ByteBuffer fileData, int offset, int length, FanOut fanOut) throws IOException {
+            buffer.putInt(HEADER_SIZE - 4, PREFIX + length);
+            buffer.putInt(HEADER_SIZE + 4, chunkIndex);
+            fileData.get(offset, data, HEADER_SIZE + PREFIX, length);
+            buffer.putInt(HEADER_SIZE + 12, fanOut.chunkCrc(chunkIndex, data, HEADER_SIZE + PREFIX, length));
+            packet.setLength(HEADER_SIZE + PREFIX + length);
+            socket.send(packet);
+        }
     }
 
-    private void sendFileEnd(String conversationId, String fileName, String targetIP, int targetPort) throws Exception {
+    private void sendFileEnd(String conversationId, int transferId, int totalChunks, String fileName,
+                             InetAddress address, int targetPort) throws Exception {
         byte[] fileNameBytes = fileName.getBytes(StandardCharsets.UTF_8);
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + fileNameBytes.length);
-        
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 + fileNameBytes.length);
+
         // Header: senderId + conversationId + type + length
         buffer.put(padString(this.myUserId, 36).getBytes(StandardCharsets.UTF_8));
         buffer.put(padString(conversationId, 36).getBytes(StandardCharsets.UTF_8));
         buffer.putInt(3); // FILE_END
-        buffer.putInt(fileNameBytes.length);
+        buffer.putInt(8 + fileNameBytes.length);
+        buffer.putInt(transferId);
+        buffer.putInt(totalChunks);
         buffer.put(fileNameBytes);
-        
-        DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.array().length, InetAddress.getByName(targetIP), targetPort);
-        socket.send(packet);
+
+        socket.send(new DatagramPacket(buffer.array(), buffer.array().length, address, targetPort));
     }
 
     // ==================================================================
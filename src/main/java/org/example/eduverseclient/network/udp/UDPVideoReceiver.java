@@ -5,6 +5,7 @@ import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -41,8 +42,7 @@ public class UDPVideoReceiver {
         this.frameCallback = frameCallback;
         isRunning = true;
         
-        receiveThread = new Thread(this::receiveLoop);
-        receiveThread.setDaemon(true);
+        receiveThread = ClientExecutors.newThread("video-receiver", this::receiveLoop);
         receiveThread.start();
         
         log.info("✅ UDPVideoReceiver started");
@@ -0,0 +1,152 @@
+package org.example.eduverseclient.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.media.AntiCheatFrameGate;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * AntiCheatBatcher - Gom frame của nhiều student (phía proctor) thành batch theo time window
+ * - Mỗi student tối đa 1 frame mỗi frameIntervalMs (frame mới nhất trong window được giữ lại)
+ * - Frame đi qua AntiCheatFrameGate riêng của từng student như chế độ từng frame (bỏ frame không đổi,
+ *   thu nhỏ trước khi gửi); encode + gate chạy trên pool cpu, không chặn thread nhận UDP
+ * - Flush khi hết window hoặc khi đủ maxFrames
+ * - Kết quả batch được fan-out về từng userId qua resultCallback
+ */
+@Slf4j
+public class AntiCheatBatcher {
+
+    private final AntiCheatService antiCheatService;
+    private final String examId;
+    private final int maxFrames;
+    private final long windowMs;
+    private final long frameIntervalMs;
+    private final BiConsumer<String, AntiCheatService.AnalysisResult> resultCallback;
+
+    // userId -> frame mới nhất trong window hiện tại (giữ thứ tự đến)
+    private final Map<String, AntiCheatService.BatchFrame> pending = new LinkedHashMap<>();
+    private final Map<String, Long> lastAcceptedTime = new ConcurrentHashMap<>();
+    private final Map<String, AntiCheatFrameGate> gates = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushExecutor;
+
+    public AntiCheatBatcher(String examId, BiConsumer<String, AntiCheatService.AnalysisResult> resultCallback) {
+        this(AntiCheatService.getInstance(), examId,
+                common.constant.AntiCheatConfig.BATCH_MAX_FRAMES,
+                common.constant.AntiCheatConfig.BATCH_WINDOW_MS,
+                common.constant.AntiCheatConfig.ANALYSIS_INTERVAL_MS,
+                resultCallback);
+    }
+
+    public AntiCheatBatcher(AntiCheatService antiCheatService, String examId, int maxFrames, long windowMs,
+                            long frameIntervalMs, BiConsumer<String, AntiCheatService.AnalysisResult> resultCallback) {
+        this.antiCheatService = antiCheatService;
+        this.examId = examId;
+        this.maxFrames = maxFrames;
+        this.windowMs = windowMs;
+        this.frameIntervalMs = frameIntervalMs;
+        this.resultCallback = resultCallback;
+    }
+
+    public synchronized void start() {
+        if (flushExecutor != null) return;
+        flushExecutor = ClientExecutors.newScheduler("anti-cheat-batcher");
+        flushExecutor.scheduleAtFixedRate(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+        log.info("✅ Anti-cheat batcher started - window={}ms, maxFrames={}", windowMs, maxFrames);
+    }
+
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flushExecutor;
+            flushExecutor = null;
+            pending.clear();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        lastAcceptedTime.clear();
+        gates.clear();
+    }
+
+    /**
+     * Đưa frame của 1 student vào batch.
+     * frameSupplier chỉ được gọi khi frame thực sự được nhận (tránh encode JPEG cho frame bị throttle),
+     * và được gọi trên pool cpu.
+     */
+    public void offer(String userId, Supplier<byte[]> frameSupplier) {
+        if (userId == null) return;
+
+        long now = System.currentTimeMillis();
+        Long last = lastAcceptedTime.get(userId);
+        if (last != null && now - last < frameIntervalMs) {
+            return;
+        }
+        lastAcceptedTime.put(userId, now);
+
+        try {
+            ClientExecutors.cpu().execute(() -> prepare(userId, now, frameSupplier));
+        } catch (RejectedExecutionException e) {
+            // Client đang tắt
+        }
+    }
+
+    private void prepare(String userId, long timestamp, Supplier<byte[]> frameSupplier) {
+        synchronized (this) {
+            if (flushExecutor == null) return;
+        }
+
+        byte[] frame = frameSupplier.get();
+        if (frame == null || frame.length == 0) {
+            return;
+        }
+        byte[] analysisFrame = gates.computeIfAbsent(userId, id -> new AntiCheatFrameGate()).process(frame);
+        if (analysisFrame == null) {
+            return;
+        }
+
+        boolean full;
+        synchronized (this) {
+            if (flushExecutor == null) return;
+            pending.put(userId, new AntiCheatService.BatchFrame(userId, timestamp, analysisFrame));
+            full = pending.size() >= maxFrames;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        List<AntiCheatService.BatchFrame> frames;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            frames = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        antiCheatService.analyzeBatch(examId, frames)
+                .thenAccept(results -> {
+                    if (results == null || resultCallback == null) return;
+                    results.forEach((userId, result) -> {
+                        try {
+                            resultCallback.accept(userId, result);
+                        } catch (Exception e) {
+                            log.error("Error in anti-cheat batch result callback for {}", userId, e);
+                        }
+                    });
+                })
+                .exceptionally(ex -> {
+                    log.error("❌ Error in anti-cheat batch analysis", ex);
+                    return null;
+                });
+    }
+}
@@ -1,13 +1,18 @@
 package org.example.eduverseclient.service;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+import org.example.eduverseclient.utils.LatencyHistogram;
 
+import java.io.ByteArrayOutputStream;
 import java.net.ProxySelector;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
@@ -15,6 +20,10 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class AntiCheatService {
@@ -23,12 +32,29 @@ public class AntiCheatService {
     private final HttpClient httpClient;
     private final Gson gson = new Gson();
 
-    private static final String AI_SERVICE_URL = common.constant.AntiCheatConfig.AI_SERVICE_URL;
     private static final Duration TIMEOUT = Duration.ofSeconds(5);
 
     private static final int MIN_FRAME_SIZE_BYTES = 1024;
 
+    private static final int MAX_IN_FLIGHT = common.constant.AntiCheatConfig.MAX_IN_FLIGHT_REQUESTS;
+
+    private final String serviceUrl;
+    private final boolean binaryTransport;
+
+    // Executor riêng (không dùng common ForkJoinPool), dùng chung mọi instance + giới hạn số request đang chạy
+    private static final ExecutorService EXECUTOR = ClientExecutors.newPool("anti-cheat-http", MAX_IN_FLIGHT);
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
     private AntiCheatService() {
+        this(common.constant.AntiCheatConfig.AI_SERVICE_URL, common.constant.AntiCheatConfig.BINARY_TRANSPORT);
+    }
+
+    AntiCheatService(String serviceUrl, boolean binaryTransport) {
+        this.serviceUrl = serviceUrl;
+        this.binaryTransport = binaryTransport;
+
         // ✅ ổn định cho uvicorn/FastAPI:
         // - Force HTTP/1.1
         // - Disable system proxy
@@ -47,108 +73,351 @@ public class AntiCheatService {
     }
 
     public CompletableFuture<AnalysisResult> analyzeFrame(byte[] imageBytes, String examId, String userId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                if (imageBytes == null || imageBytes.length == 0) {
-                    log.info("⏭️ Frame skipped: empty bytes");
-                    return null;
-                }
-
-                if (imageBytes.length < MIN_FRAME_SIZE_BYTES) {
-                    log.info("⏭️ Frame skipped: too small ({} < {})", imageBytes.length, MIN_FRAME_SIZE_BYTES);
-                    return null;
-                }
-
-                if (userId == null || userId.trim().isEmpty()) {
-                    log.warn("⏭️ Frame skipped: missing userId");
-                    return null;
-                }
+        // Drop-newest: nếu đã đủ số request đang chạy thì bỏ frame mới này
+        if (!inFlight.tryAcquire()) {
+            droppedFrames.incrementAndGet();
+            log.debug("⏭️ Frame dropped: {} requests already in flight", MAX_IN_FLIGHT);
+            return CompletableFuture.completedFuture(null);
+        }
 
-                if (examId == null || examId.trim().isEmpty()) {
-                    log.warn("⏭️ Frame skipped: missing examId");
-                    return null;
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return doAnalyzeFrame(imageBytes, examId, userId);
+                } finally {
+                    inFlight.release();
                 }
+            }, EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            droppedFrames.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-                String url = normalizeAnalyzeUrl(AI_SERVICE_URL);
-
-                String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-                if (base64Image.isEmpty()) {
-                    log.warn("⏭️ Frame skipped: base64 empty");
-                    return null;
-                }
+    private AnalysisResult doAnalyzeFrame(byte[] imageBytes, String examId, String userId) {
+        try {
+            if (imageBytes == null || imageBytes.length == 0) {
+                log.info("⏭️ Frame skipped: empty bytes");
+                return null;
+            }
 
-                // ✅ build JSON thủ công (khỏi dính module reflection)
-                JsonObject payload = new JsonObject();
-                payload.addProperty("user_id", userId.trim());
-                payload.addProperty("session_id", examId.trim());
-                payload.addProperty("frame_base64", base64Image);
+            if (imageBytes.length < MIN_FRAME_SIZE_BYTES) {
+                log.info("⏭️ Frame skipped: too small ({} < {})", imageBytes.length, MIN_FRAME_SIZE_BYTES);
+                return null;
+            }
 
-                String jsonBody = gson.toJson(payload);
-                if (jsonBody == null || jsonBody.isEmpty()) {
-                    log.error("❌ Failed to build json body");
-                    return null;
-                }
+            if (userId == null || userId.trim().isEmpty()) {
+                log.warn("⏭️ Frame skipped: missing userId");
+                return null;
+            }
 
-                log.info("➡️ AI request: url={}, userId={}, examId={}, frameBytes={}, jsonChars={}",
-                        url, userId, examId, imageBytes.length, jsonBody.length());
-
-                HttpRequest httpRequest = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(TIMEOUT)
-                        .header("Content-Type", "application/json; charset=UTF-8")
-                        .header("Accept", "application/json")
-                        .header("User-Agent", "EduverseClient/1.0")
-                        // ❌ KHÔNG set "Connection" (bị Java HttpClient cấm)
-                        .POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
-                        .build();
-
-                HttpResponse<String> response = httpClient.send(
-                        httpRequest,
-                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
-                );
-
-                int statusCode = response.statusCode();
-                String responseBody = response.body();
-
-                log.info("⬅️ AI response: status={}, bodyPreview={}", statusCode, safePreview(responseBody, 300));
-
-                if (statusCode == 422) {
-                    log.error("❌ HTTP 422 - Validation Error. RequestPreview={}, ResponsePreview={}",
-                            safePreview(jsonBody, 250), safePreview(responseBody, 600));
-                    return null;
-                }
+            if (examId == null || examId.trim().isEmpty()) {
+                log.warn("⏭️ Frame skipped: missing examId");
+                return null;
+            }
 
-                if (statusCode != 200) {
-                    log.warn("⚠️ AI service returned status {} - URL: {}, Response: {}",
-                            statusCode, url, safePreview(responseBody, 600));
-                    return null;
-                }
+            HttpRequest httpRequest = binaryTransport
+                    ? buildBinaryRequest(imageBytes, examId.trim(), userId.trim())
+                    : buildJsonRequest(imageBytes, examId.trim(), userId.trim());
+            if (httpRequest == null) {
+                return null;
+            }
 
-                AnalysisResult result = parseResponse(responseBody);
-                if (result == null) {
-                    log.warn("⚠️ Failed to parse AI response - URL: {}, Response: {}",
-                            url, safePreview(responseBody, 600));
-                    return null;
-                }
+            long startNanos = System.nanoTime();
+            HttpResponse<String> response = httpClient.send(
+                    httpRequest,
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+            );
+            latency.recordNanos(System.nanoTime() - startNanos);
 
-                log.info("✅ AI Analysis - Decision: {}, Score: {}, Flags: {}",
-                        result.decision,
-                        String.format("%.2f", result.suspicionScore),
-                        result.flags.isEmpty() ? "none" : String.join(", ", result.flags));
+            int statusCode = response.statusCode();
+            String responseBody = response.body();
+            String url = httpRequest.uri().toString();
 
-                return result;
+            log.info("⬅️ AI response: status={}, bodyPreview={}", statusCode, safePreview(responseBody, 300));
 
-            } catch (java.net.http.HttpTimeoutException e) {
-                log.warn("⏱️ AI service timeout - URL: {}, Error: {}", AI_SERVICE_URL, e.getMessage());
+            if (statusCode == 422) {
+                log.error("❌ HTTP 422 - Validation Error. URL={}, ResponsePreview={}",
+                        url, safePreview(responseBody, 600));
                 return null;
-            } catch (java.net.ConnectException e) {
-                log.warn("🔌 AI service connection failed - URL: {}, Error: {}", AI_SERVICE_URL, e.getMessage());
+            }
+
+            if (statusCode != 200) {
+                log.warn("⚠️ AI service returned status {} - URL: {}, Response: {}",
+                        statusCode, url, safePreview(responseBody, 600));
                 return null;
-            } catch (Exception e) {
-                log.error("❌ Failed to analyze frame - URL: {}, Error: {}", AI_SERVICE_URL, e.getMessage(), e);
+            }
+
+            AnalysisResult result = parseResponse(responseBody);
+            if (result == null) {
+                log.warn("⚠️ Failed to parse AI response - URL: {}, Response: {}",
+                        url, safePreview(responseBody, 600));
                 return null;
             }
-        });
+
+            log.info("✅ AI Analysis - Decision: {}, Score: {}, Flags: {}, Latency: {}",
+                    result.decision,
+                    String.format("%.2f", result.suspicionScore),
+                    result.flags.isEmpty() ? "none" : String.join(", ", result.flags),
+                    latency.summary());
+
+            return result;
+
+        } catch (java.net.http.HttpTimeoutException e) {
+            log.warn("⏱️ AI service timeout - URL: {}, Error: {}", serviceUrl, e.getMessage());
+            return null;
+        } catch (java.net.ConnectException e) {
+            log.warn("🔌 AI service connection failed - URL: {}, Error: {}", serviceUrl, e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.error("❌ Failed to analyze frame - URL: {}, Error: {}", serviceUrl, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * JSON transport (mặc định): frame Base64 trong body JSON
+     */
+    private HttpRequest buildJsonRequest(byte[] imageBytes, String examId, String userId) {
+        String url = normalizeAnalyzeUrl(serviceUrl);
+
+        String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+        if (base64Image.isEmpty()) {
+            log.warn("⏭️ Frame skipped: base64 empty");
+            return null;
+        }
+
+        // ✅ build JSON thủ công (khỏi dính module reflection)
+        JsonObject payload = new JsonObject();
+        payload.addProperty("user_id", userId);
+        payload.addProperty("session_id", examId);
+        payload.addProperty("frame_base64", base64Image);
+
+        String jsonBody = gson.toJson(payload);
+        if (jsonBody == null || jsonBody.isEmpty()) {
+            log.error("❌ Failed to build json body");
+            return null;
+        }
+
+        log.info("➡️ AI request: url={}, userId={}, examId={}, frameBytes={}, jsonChars={}",
+                url, userId, examId, imageBytes.length, jsonBody.length());
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .header("User-Agent", "EduverseClient/1.0")
+                // ❌ KHÔNG set "Connection" (bị Java HttpClient cấm)
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    /**
+     * Binary transport: POST raw JPEG bytes (application/octet-stream),
+     * user_id/session_id đi qua query string -> không Base64, không copy string
+     */
+    private HttpRequest buildBinaryRequest(byte[] imageBytes, String examId, String userId) {
+        String url = normalizeAnalyzeUrl(serviceUrl) + "/raw"
+                + "?user_id=" + URLEncoder.encode(userId, StandardCharsets.UTF_8)
+                + "&session_id=" + URLEncoder.encode(examId, StandardCharsets.UTF_8);
+
+        log.info("➡️ AI request (binary): url={}, frameBytes={}", url, imageBytes.length);
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/octet-stream")
+                .header("Accept", "application/json")
+                .header("User-Agent", "EduverseClient/1.0")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(imageBytes))
+                .build();
+    }
+
+    // --- METRICS ---
+
+    /**
+     * @param percentile 0 - 100
+     */
+    public double getLatencyPercentileMillis(double percentile) {
+        return latency.getPercentileMillis(percentile);
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public int getInFlightRequests() {
+        return MAX_IN_FLIGHT - inFlight.availablePermits();
+    }
+
+    // --- BATCH MODE (proctor-side aggregation) ---
+
+    /**
+     * Gửi nhiều frame (của nhiều student) trong 1 request tới {AI_SERVICE_URL}/batch
+     * (binary transport: multipart tới /batch/raw, không Base64)
+     * @return userId -> AnalysisResult (map rỗng nếu lỗi hoặc bị drop do quá tải)
+     */
+    public CompletableFuture<Map<String, AnalysisResult>> analyzeBatch(String examId, List<BatchFrame> frames) {
+        if (frames == null || frames.isEmpty() || examId == null || examId.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        if (!inFlight.tryAcquire()) {
+            droppedFrames.addAndGet(frames.size());
+            log.debug("⏭️ Batch dropped ({} frames): {} requests already in flight", frames.size(), MAX_IN_FLIGHT);
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return doAnalyzeBatch(examId.trim(), frames);
+                } finally {
+                    inFlight.release();
+                }
+            }, EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            droppedFrames.addAndGet(frames.size());
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+    }
+
+    private Map<String, AnalysisResult> doAnalyzeBatch(String examId, List<BatchFrame> frames) {
+        String url = normalizeAnalyzeUrl(serviceUrl) + (binaryTransport ? "/batch/raw" : "/batch");
+        try {
+            HttpRequest httpRequest = binaryTransport
+                    ? buildBinaryBatchRequest(url, examId, frames)
+                    : buildJsonBatchRequest(url, examId, frames);
+
+            long startNanos = System.nanoTime();
+            HttpResponse<String> response = httpClient.send(
+                    httpRequest,
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+            );
+            latency.recordNanos(System.nanoTime() - startNanos);
+
+            if (response.statusCode() != 200) {
+                log.warn("⚠️ AI service returned status {} for batch - URL: {}, Response: {}",
+                        response.statusCode(), url, safePreview(response.body(), 600));
+                return Collections.emptyMap();
+            }
+
+            Map<String, AnalysisResult> results = parseBatchResponse(response.body());
+            if (results == null) {
+                log.warn("⚠️ Failed to parse AI batch response - URL: {}, Response: {}",
+                        url, safePreview(response.body(), 600));
+                return Collections.emptyMap();
+            }
+
+            log.info("✅ AI batch analysis - {} frames -> {} results, Latency: {}",
+                    frames.size(), results.size(), latency.summary());
+            return results;
+
+        } catch (java.net.http.HttpTimeoutException e) {
+            log.warn("⏱️ AI service batch timeout - URL: {}, Error: {}", url, e.getMessage());
+        } catch (java.net.ConnectException e) {
+            log.warn("🔌 AI service connection failed - URL: {}, Error: {}", url, e.getMessage());
+        } catch (Exception e) {
+            log.error("❌ Failed to analyze batch - URL: {}, Error: {}", url, e.getMessage(), e);
+        }
+        return Collections.emptyMap();
+    }
+
+    private HttpRequest buildJsonBatchRequest(String url, String examId, List<BatchFrame> frames) {
+        String jsonBody = buildBatchBody(examId, frames);
+
+        log.info("➡️ AI batch request: url={}, examId={}, frames={}, jsonChars={}",
+                url, examId, frames.size(), jsonBody.length());
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "application/json")
+                .header("User-Agent", "EduverseClient/1.0")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    /**
+     * Binary batch: multipart/form-data, mỗi frame 1 part "frames" (filename = user_id, raw JPEG),
+     * field "meta" = JSON [{"user_id", "timestamp"}] cùng thứ tự với các part
+     */
+    private HttpRequest buildBinaryBatchRequest(String url, String examId, List<BatchFrame> frames) {
+        String boundary = "eduverse-" + UUID.randomUUID();
+        byte[] body = buildBinaryBatchBody(boundary, examId, frames);
+
+        log.info("➡️ AI batch request (binary): url={}, examId={}, frames={}, bytes={}",
+                url, examId, frames.size(), body.length);
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .header("Accept", "application/json")
+                .header("User-Agent", "EduverseClient/1.0")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    byte[] buildBinaryBatchBody(String boundary, String examId, List<BatchFrame> frames) {
+        JsonArray meta = new JsonArray();
+        for (BatchFrame frame : frames) {
+            JsonObject item = new JsonObject();
+            item.addProperty("user_id", frame.userId);
+            item.addProperty("timestamp", frame.timestamp);
+            meta.add(item);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFormField(out, boundary, "session_id", examId);
+        writeFormField(out, boundary, "meta", gson.toJson(meta));
+        for (BatchFrame frame : frames) {
+            writeAscii(out, "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"frames\"; filename=\"" + frame.userId + "\"\r\n"
+                    + "Content-Type: image/jpeg\r\n\r\n");
+            out.writeBytes(frame.jpegBytes);
+            writeAscii(out, "\r\n");
+        }
+        writeAscii(out, "--" + boundary + "--\r\n");
+        return out.toByteArray();
+    }
+
+    private void writeFormField(ByteArrayOutputStream out, String boundary, String name, String value) {
+        writeAscii(out, "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n");
+        out.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        writeAscii(out, "\r\n");
+    }
+
+    private void writeAscii(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * {"session_id": "...", "frames": [{"user_id": "...", "timestamp": ..., "frame_base64": "..."}, ...]}
+     */
+    String buildBatchBody(String examId, List<BatchFrame> frames) {
+        JsonArray items = new JsonArray();
+        for (BatchFrame frame : frames) {
+            JsonObject item = new JsonObject();
+            item.addProperty("user_id", frame.userId);
+            item.addProperty("timestamp", frame.timestamp);
+            item.addProperty("frame_base64", Base64.getEncoder().encodeToString(frame.jpegBytes));
+            items.add(item);
+        }
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("session_id", examId);
+        payload.add("frames", items);
+        return gson.toJson(payload);
     }
 
     private String normalizeAnalyzeUrl(String rawUrl) {
@@ -175,8 +444,48 @@ public class AntiCheatService {
         try {
             if (json == null || json.trim().isEmpty()) return null;
 
-            JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
+            return parseResult(JsonParser.parseString(json).getAsJsonObject());
 
+        } catch (Exception e) {
+            log.error("❌ Failed to parse AI response JSON: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Batch response: {"results": [{"user_id": "...", "decision": "...", "suspicion_score": ..., ...}, ...]}
+     */
+    Map<String, AnalysisResult> parseBatchResponse(String json) {
+        try {
+            if (json == null || json.trim().isEmpty()) return null;
+
+            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+            if (!root.has("results") || !root.get("results").isJsonArray()) {
+                return null;
+            }
+
+            Map<String, AnalysisResult> results = new LinkedHashMap<>();
+            for (JsonElement element : root.getAsJsonArray("results")) {
+                if (!element.isJsonObject()) continue;
+                JsonObject item = element.getAsJsonObject();
+                String userId = optString(item, "user_id", null);
+                if (userId == null) continue;
+
+                AnalysisResult result = parseResult(item);
+                if (result != null) {
+                    results.put(userId, result);
+                }
+            }
+            return results;
+
+        } catch (Exception e) {
+            log.error("❌ Failed to parse AI batch response JSON: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private AnalysisResult parseResult(JsonObject jsonObject) {
+        try {
             String decision = optString(jsonObject, "decision", "OK");
             double suspicionScore = optDouble(jsonObject, "suspicion_score", 0.0);
 
@@ -234,6 +543,18 @@ public class AntiCheatService {
         return defaultValue;
     }
 
+    public static class BatchFrame {
+        public final String userId;
+        public final long timestamp;
+        public final byte[] jpegBytes;
+
+        public BatchFrame(String userId, long timestamp, byte[] jpegBytes) {
+            this.userId = userId;
+            this.timestamp = timestamp;
+            this.jpegBytes = jpegBytes;
+        }
+    }
+
     public static class AnalysisResult {
         public final String decision;
         public final double suspicionScore;
@@ -0,0 +1,149 @@
+package org.example.eduverseclient.service;
+
+import common.model.Meeting;
+import common.model.Message;
+import common.model.User;
+import common.rmi.IClientCallback;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.RemoteErrors;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * ClientCallbackService - Export IClientCallback khi login và đăng ký với server (IPeerService.registerCallback)
+ * - Mọi callback chỉ chuyển thành event trên ClientEventBus rồi trả về ngay (không giữ thread RMI của server)
+ * - Server không hỗ trợ / đăng ký lỗi -> pushActive = false, các màn hình giữ chu kỳ polling cũ
+ * - Heartbeat báo server không còn biết client (server restart) -> register() lại
+ * - Stub export ra chứa host của client: dùng IP RMIClient đã phát hiện (java.rmi.server.hostname),
+ *   trừ khi đã cấu hình -Djava.rmi.server.hostname
+ */
+@Slf4j
+public class ClientCallbackService implements IClientCallback {
+    private static ClientCallbackService instance;
+
+    private static final String HOSTNAME_PROPERTY = "java.rmi.server.hostname";
+    private static final String CONFIGURED_HOSTNAME = System.getProperty(HOSTNAME_PROPERTY);
+
+    private final RMIClient rmiClient;
+    private final ClientEventBus eventBus = ClientEventBus.getInstance();
+
+    private boolean exported = false;
+    private String registeredUserId;
+    private volatile boolean unsupported = false;
+
+    private ClientCallbackService() {
+        this.rmiClient = RMIClient.getInstance();
+    }
+
+    public static synchronized ClientCallbackService getInstance() {
+        if (instance == null) {
+            instance = new ClientCallbackService();
+        }
+        return instance;
+    }
+
+    /**
+     * Export (lần đầu) và đăng ký callback cho user hiện tại
+     * @return true nếu server đã nhận callback
+     */
+    public synchronized boolean register() {
+        User currentUser = rmiClient.getCurrentUser();
+        if (currentUser == null || unsupported) return false;
+
+        try {
+            if (!exported) {
+                // Mặc định stub mang InetAddress.getLocalHost() (có thể là 127.0.1.1 / sai card mạng)
+                // -> server không gọi lại được. RMI đọc lại property này khi export
+                String myIPAddress = rmiClient.getMyIPAddress();
+                if (CONFIGURED_HOSTNAME == null && myIPAddress != null) {
+                    System.setProperty(HOSTNAME_PROPERTY, myIPAddress);
+                }
+                UnicastRemoteObject.exportObject(this, 0);
+                exported = true;
+            }
+            boolean registered = rmiClient.getPeerService().registerCallback(currentUser.getUserId(), this);
+            registeredUserId = registered ? currentUser.getUserId() : null;
+            eventBus.setPushActive(registered);
+            log.info(registered ? "✅ Server push enabled" : "⚠️ Server rejected callback registration, using polling");
+            return registered;
+        } catch (Exception e) {
+            if (RemoteErrors.isMissingMethod(e)) {
+                // Server cũ không nhận ra method hash -> nhớ lại, không thử nữa
+                log.warn("⚠️ Server does not support registerCallback, using polling");
+                unsupported = true;
+            } else {
+                log.warn("⚠️ Register callback failed: {}", e.getMessage());
+            }
+        }
+        eventBus.setPushActive(false);
+        return false;
+    }
+
+    /**
+     * Hủy đăng ký + unexport (logout)
+     */
+    public synchronized void unregister() {
+        eventBus.setPushActive(false);
+        if (registeredUserId != null) {
+            try {
+                rmiClient.getPeerService().unregisterCallback(registeredUserId);
+            } catch (Exception e) {
+                log.warn("⚠️ Unregister callback failed: {}", e.getMessage());
+            }
+            registeredUserId = null;
+        }
+        if (exported) {
+            try {
+                UnicastRemoteObject.unexportObject(this, true);
+            } catch (Exception e) {
+                log.debug("Unexport client callback failed: {}", e.getMessage());
+            }
+            exported = false;
+        }
+    }
+
+    // ==================================================================
+    // IClientCallback (gọi từ server, trên thread RMI)
+    // ==================================================================
+
+    @Override
+    public void onMeetingStarted(Meeting meeting) throws RemoteException {
+        if (meeting != null) {
+            eventBus.publish(new ClientEventBus.MeetingStarted(meeting));
+        }
+    }
+
+    @Override
+    public void onMeetingEnded(String meetingId) throws RemoteException {
+        eventBus.publish(new ClientEventBus.MeetingEnded(meetingId));
+    }
+
+    @Override
+    public void onUserJoinedMeeting(String meetingId, String userId, String userName) throws RemoteException {
+        eventBus.publish(new ClientEventBus.MeetingMembershipChanged(meetingId, userId, userName, true));
+    }
+
+    @Override
+    public void onUserLeftMeeting(String meetingId, String userId, String userName) throws RemoteException {
+        eventBus.publish(new ClientEventBus.MeetingMembershipChanged(meetingId, userId, userName, false));
+    }
+
+    @Override
+    public void onNewMessage(Message message) throws RemoteException {
+        if (message != null) {
+            eventBus.publish(new ClientEventBus.NewMessage(message));
+        }
+    }
+
+    @Override
+    public void onUserJoinedExam(String examId, String userId, String userName) throws RemoteException {
+        eventBus.publish(new ClientEventBus.ExamMembershipChanged(examId, userId, userName, true));
+    }
+
+    @Override
+    public void onUserLeftExam(String examId, String userId, String userName) throws RemoteException {
+        eventBus.publish(new ClientEventBus.ExamMembershipChanged(examId, userId, userName, false));
+    }
+}
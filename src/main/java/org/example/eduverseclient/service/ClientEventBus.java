@@ -0,0 +1,173 @@
+package org.example.eduverseclient.service;
+
+import common.model.Meeting;
+import common.model.Message;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ClientEventBus - Phân phối sự kiện server push (IClientCallback) tới service / controller trong client
+ * - Subscribe theo loại event (class), handler chạy trên 1 thread "client-events" theo đúng thứ tự nhận:
+ *   thread RMI của callback trả về ngay, handler cần UI thì tự Platform.runLater
+ * - isPushActive(): callback đã được server nhận -> polling chỉ còn là safety-net (SAFETY_POLL_MS)
+ */
+@Slf4j
+public class ClientEventBus {
+    private static ClientEventBus instance;
+
+    // Chu kỳ polling dự phòng khi push hoạt động (bắt sự kiện bị lỡ: mất kết nối, server restart)
+    public static final long SAFETY_POLL_MS = 30_000;
+
+    private final Map<Class<?>, List<Consumer<Object>>> handlers = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher = ClientExecutors.newPool("client-events", 1);
+    private volatile boolean pushActive = false;
+
+    private ClientEventBus() {
+    }
+
+    public static synchronized ClientEventBus getInstance() {
+        if (instance == null) {
+            instance = new ClientEventBus();
+        }
+        return instance;
+    }
+
+    /**
+     * Hủy đăng ký khi màn hình / manager dừng
+     */
+    @FunctionalInterface
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public <E> Subscription subscribe(Class<E> type, Consumer<? super E> handler) {
+        Consumer<Object> wrapper = event -> handler.accept(type.cast(event));
+        handlers.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>()).add(wrapper);
+        return () -> {
+            List<Consumer<Object>> list = handlers.get(type);
+            if (list != null) {
+                list.remove(wrapper);
+            }
+        };
+    }
+
+    public void publish(Object event) {
+        List<Consumer<Object>> list = handlers.get(event.getClass());
+        if (list == null || list.isEmpty()) return;
+        dispatcher.execute(() -> {
+            for (Consumer<Object> handler : list) {
+                try {
+                    handler.accept(event);
+                } catch (Exception e) {
+                    log.error("Error handling {}", event.getClass().getSimpleName(), e);
+                }
+            }
+        });
+    }
+
+    public boolean isPushActive() {
+        return pushActive;
+    }
+
+    void setPushActive(boolean pushActive) {
+        this.pushActive = pushActive;
+    }
+
+    /**
+     * Chu kỳ polling cho 1 nguồn dữ liệu: chậm khi có push, giữ nguyên chu kỳ cũ khi không có
+     */
+    public long pollInterval(long fallbackMs) {
+        return pushActive ? SAFETY_POLL_MS : fallbackMs;
+    }
+
+    /**
+     * Chạy task định kỳ trên executor với chu kỳ pollInterval(fallbackMs) đọc lại sau mỗi lượt
+     * (push tắt -> lượt sau polling nhanh lại). Dừng khi executor bị shutdown
+     */
+    public void schedulePoll(ScheduledExecutorService executor, Runnable task, long fallbackMs) {
+        try {
+            executor.schedule(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Error in poll task", e);
+                } finally {
+                    if (!executor.isShutdown()) {
+                        schedulePoll(executor, task, fallbackMs);
+                    }
+                }
+            }, pollInterval(fallbackMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Executor vừa shutdown
+        }
+    }
+
+    // ==================================================================
+    // EVENTS
+    // ==================================================================
+
+    @Getter
+    @AllArgsConstructor
+    public static final class MeetingStarted {
+        private final Meeting meeting;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class MeetingEnded {
+        private final String meetingId;
+    }
+
+    /**
+     * User vào / rời meeting
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class MeetingMembershipChanged {
+        private final String meetingId;
+        private final String userId;
+        private final String userName;
+        private final boolean joined;
+    }
+
+    /**
+     * User vào / rời phòng thi
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class ExamMembershipChanged {
+        private final String examId;
+        private final String userId;
+        private final String userName;
+        private final boolean joined;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class NewMessage {
+        private final Message message;
+    }
+
+    /**
+     * Message gửi đi bị server từ chối hẳn (MessageOutbox đã chuyển sang dead-letter.log)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class MessageSendFailed {
+        private final Message message;
+        private final String reason;
+    }
+}
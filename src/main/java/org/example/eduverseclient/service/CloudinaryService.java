@@ -7,6 +7,7 @@ import com.cloudinary.utils.ObjectUtils;
 import common.constant.FirebaseConfig;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -46,14 +47,25 @@ public class CloudinaryService {
      * Upload file lên Cloudinary
      */
     public CompletableFuture<UploadResult> uploadFile(byte[] fileData, String fileName, String fileType) {
+        return upload(fileData, fileData.length, fileName, fileType);
+    }
+
+    /**
+     * Upload file trên đĩa (Cloudinary SDK tự stream file, không đọc toàn bộ vào heap)
+     */
+    public CompletableFuture<UploadResult> uploadFile(java.io.File file, String fileName, String fileType) {
+        return upload(file, file.length(), fileName, fileType);
+    }
+
+    private CompletableFuture<UploadResult> upload(Object source, long sourceSize, String fileName, String fileType) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                log.info("Uploading file to Cloudinary: {} ({} bytes)", fileName, fileData.length);
+                log.info("Uploading file to Cloudinary: {} ({} bytes)", fileName, sourceSize);
                 
                 // Prepare upload parameters using ObjectUtils
                 @SuppressWarnings("unchecked")
                 Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                    fileData,
+                    source,
                     ObjectUtils.asMap(
                         "resource_type", "auto", // Auto-detect image/video/raw
                         "public_id", "messages/" + UUID.randomUUID(),
@@ -63,7 +75,7 @@ public class CloudinaryService {
                 
                 UploadResult result = new UploadResult();
                 result.fileUrl = (String) uploadResult.get("secure_url"); // Use secure_url (HTTPS)
-                result.fileSize = fileData.length;
+                result.fileSize = sourceSize;
                 
                 // Generate thumbnail URL for images/videos
                 if (fileType.startsWith("image/")) {
@@ -90,7 +102,7 @@ public class CloudinaryService {
                 log.error("Cloudinary upload failed", e);
                 throw new RuntimeException("Upload failed: " + e.getMessage(), e);
             }
-        });
+        }, ClientExecutors.io());
     }
     
     /**
@@ -0,0 +1,298 @@
+package org.example.eduverseclient.service;
+
+import common.model.Conversation;
+import common.model.Message;
+import common.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
+import org.example.eduverseclient.utils.RemoteErrors;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConversationStore - Cache conversations của user hiện tại phía client (dùng bởi MessengerServiceHelper)
+ * - Index theo conversationId + theo type (private / courseChat): lookup không gọi RMI
+ * - Load toàn bộ 1 lần (lazy), sau đó thread nền refresh delta: getUserConversationsAfter(cursor)
+ *   (server cũ không có method này -> fallback load lại toàn bộ list)
+ * - Delta không thấy conversation bị xóa -> định kỳ vẫn load lại toàn bộ (FULL_RELOAD_INTERVAL_MS)
+ * - Message mới (gửi/nhận) cập nhật lastUpdate/lastMessageId tại chỗ; message của conversation
+ *   chưa biết -> load lại (giới hạn tần suất bởi MISS_RELOAD_MIN_INTERVAL_MS)
+ */
+@Slf4j
+class ConversationStore {
+
+    private static final long REFRESH_INTERVAL_MS = 30000;
+    private static final long FULL_RELOAD_INTERVAL_MS = 10 * 60 * 1000;
+    private static final long MISS_RELOAD_MIN_INTERVAL_MS = 2000;
+    private static final long DELTA_OVERLAP_MS = 5000;   // Lệch đồng hồ client/server
+
+    private final RMIClient rmiClient;
+
+    private final Map<String, Conversation> byId = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> idsByType = new ConcurrentHashMap<>();  // type -> conversationIds
+
+    private final Object loadLock = new Object();
+    private volatile String ownerId;            // User của dữ liệu đang cache (đổi user -> load lại)
+    private volatile boolean loaded = false;
+    private volatile long lastFullLoad = 0;
+    private volatile long lastMissReload = 0;
+    private volatile long deltaCursor = 0;      // lastUpdate lớn nhất đã thấy
+    private volatile boolean deltaUnsupported = false;
+    private ScheduledExecutorService refreshExecutor;
+
+    ConversationStore(RMIClient rmiClient) {
+        this.rmiClient = rmiClient;
+    }
+
+    synchronized void start() {
+        if (refreshExecutor != null) return;
+        refreshExecutor = ClientExecutors.newScheduler("conversation-store");
+        refreshExecutor.scheduleWithFixedDelay(this::refresh,
+                REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = refreshExecutor;
+            refreshExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        clear();
+    }
+
+    // ==================================================================
+    // LOOKUP
+    // ==================================================================
+
+    /**
+     * true nếu lookup có thể trả lời ngay từ cache (không chặn, không RMI)
+     */
+    boolean isReady() {
+        return loaded && isOwner(currentUserId());
+    }
+
+    /**
+     * Chỉ đọc cache, không bao giờ gọi RMI
+     */
+    Conversation peek(String conversationId) {
+        return isReady() ? byId.get(conversationId) : null;
+    }
+
+    /**
+     * Có thể gọi RMI: load lần đầu, hoặc load lại khi conversationId chưa biết (conversation mới tạo)
+     */
+    Conversation get(String conversationId) {
+        if (conversationId == null || !ensureLoaded()) return null;
+        Conversation conversation = byId.get(conversationId);
+        if (conversation == null && reloadOnMiss()) {
+            conversation = byId.get(conversationId);
+        }
+        return conversation;
+    }
+
+    List<Conversation> getAll() {
+        if (!ensureLoaded()) return new ArrayList<>();
+        return new ArrayList<>(byId.values());
+    }
+
+    List<Conversation> getByType(String type) {
+        List<Conversation> result = new ArrayList<>();
+        if (type == null || !ensureLoaded()) return result;
+        for (String id : idsByType.getOrDefault(type, Set.of())) {
+            Conversation conversation = byId.get(id);
+            if (conversation != null) result.add(conversation);
+        }
+        return result;
+    }
+
+    /**
+     * Conversation private giữa 2 user (dùng index type, không quét courseChat)
+     */
+    Conversation findPrivate(String userId1, String userId2) {
+        for (Conversation conversation : getByType("private")) {
+            List<String> participants = conversation.getParticipants();
+            if (participants != null && participants.size() == 2
+                    && participants.contains(userId1) && participants.contains(userId2)) {
+                return conversation;
+            }
+        }
+        return null;
+    }
+
+    // ==================================================================
+    // INVALIDATION
+    // ==================================================================
+
+    /**
+     * Conversation vừa nhận từ server (create / getCourseConversation)
+     */
+    void put(Conversation conversation) {
+        if (conversation == null || conversation.getConversationId() == null || !loaded) return;
+        index(conversation);
+    }
+
+    /**
+     * Message mới gửi/nhận: cập nhật preview (lastUpdate / lastMessageId) không cần RMI
+     */
+    void onMessage(Message message) {
+        if (message == null || message.getConversationId() == null || !loaded) return;
+        Conversation current = byId.get(message.getConversationId());
+        if (current == null) {
+            // Conversation chưa biết (người khác vừa tạo) -> get() sẽ load lại khi có lookup
+            return;
+        }
+        if (message.getTimestamp() < current.getLastUpdate()) return;
+
+        // Thay object mới thay vì sửa tại chỗ: UI có thể đang đọc object cũ
+        Conversation updated = copy(current);
+        updated.setLastUpdate(message.getTimestamp());
+        if (message.getMessageId() != null) {
+            updated.setLastMessageId(message.getMessageId());
+        }
+        byId.put(updated.getConversationId(), updated);
+    }
+
+    void clear() {
+        synchronized (loadLock) {
+            loaded = false;
+            ownerId = null;
+            deltaCursor = 0;
+            byId.clear();
+            idsByType.clear();
+        }
+    }
+
+    // ==================================================================
+    // LOADING
+    // ==================================================================
+
+    private boolean ensureLoaded() {
+        String userId = currentUserId();
+        if (userId == null) return false;
+        if (loaded && isOwner(userId)) return true;
+
+        synchronized (loadLock) {
+            if (loaded && isOwner(userId)) return true;
+            if (!isOwner(userId)) {
+                byId.clear();
+                idsByType.clear();
+                deltaCursor = 0;
+                loaded = false;
+            }
+            return fullReload(userId);
+        }
+    }
+
+    private boolean reloadOnMiss() {
+        long now = System.currentTimeMillis();
+        if (now - lastMissReload < MISS_RELOAD_MIN_INTERVAL_MS) return false;
+        synchronized (loadLock) {
+            if (now - lastMissReload < MISS_RELOAD_MIN_INTERVAL_MS) return false;
+            lastMissReload = now;
+            String userId = currentUserId();
+            return userId != null && isOwner(userId) && fullReload(userId);
+        }
+    }
+
+    /**
+     * Gọi khi đang giữ loadLock
+     */
+    private boolean fullReload(String userId) {
+        try {
+            List<Conversation> conversations = rmiClient.getChatService().getUserConversations(userId);
+            Set<String> ids = new HashSet<>();
+            if (conversations != null) {
+                for (Conversation conversation : conversations) {
+                    if (conversation == null || conversation.getConversationId() == null) continue;
+                    ids.add(conversation.getConversationId());
+                    index(conversation);
+                }
+            }
+            // Conversation không còn trên server
+            byId.keySet().retainAll(ids);
+            idsByType.values().forEach(typeIds -> typeIds.retainAll(ids));
+
+            ownerId = userId;
+            loaded = true;
+            lastFullLoad = System.currentTimeMillis();
+            log.debug("Loaded {} conversations into store", ids.size());
+            return true;
+        } catch (Exception e) {
+            log.error("Load user conversations failed", e);
+            return false;
+        }
+    }
+
+    private void refresh() {
+        String userId = currentUserId();
+        if (!loaded || userId == null || !isOwner(userId)) return;   // Chưa ai dùng -> không load
+
+        synchronized (loadLock) {
+            if (deltaUnsupported || System.currentTimeMillis() - lastFullLoad > FULL_RELOAD_INTERVAL_MS) {
+                fullReload(userId);
+                return;
+            }
+            try {
+                List<Conversation> changed = rmiClient.getChatService()
+                        .getUserConversationsAfter(userId, Math.max(0, deltaCursor - DELTA_OVERLAP_MS));
+                if (changed != null) {
+                    changed.forEach(this::put);
+                }
+            } catch (Exception e) {
+                if (!RemoteErrors.isMissingMethod(e)) {
+                    log.warn("Failed to refresh conversations: {}", e.getMessage());
+                    return;
+                }
+                // Server cũ không nhận ra method hash -> nhớ lại, từ giờ chỉ full reload
+                log.warn("⚠️ Server does not support getUserConversationsAfter, falling back to full reload");
+                deltaUnsupported = true;
+                fullReload(userId);
+            }
+        }
+    }
+
+    private void index(Conversation conversation) {
+        String id = conversation.getConversationId();
+        Conversation previous = byId.put(id, conversation);
+        if (previous != null && previous.getType() != null && !previous.getType().equals(conversation.getType())) {
+            Set<String> oldType = idsByType.get(previous.getType());
+            if (oldType != null) oldType.remove(id);
+        }
+        if (conversation.getType() != null) {
+            idsByType.computeIfAbsent(conversation.getType(), k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        if (conversation.getLastUpdate() > deltaCursor) {
+            deltaCursor = conversation.getLastUpdate();
+        }
+    }
+
+    private boolean isOwner(String userId) {
+        return userId != null && userId.equals(ownerId);
+    }
+
+    private String currentUserId() {
+        User currentUser = rmiClient.getCurrentUser();
+        return currentUser != null ? currentUser.getUserId() : null;
+    }
+
+    private static Conversation copy(Conversation conversation) {
+        return Conversation.builder()
+                .conversationId(conversation.getConversationId())
+                .type(conversation.getType())
+                .participants(conversation.getParticipants())
+                .lastMessageId(conversation.getLastMessageId())
+                .lastUpdate(conversation.getLastUpdate())
+                .build();
+    }
+}
@@ -7,8 +7,10 @@ import common.model.exam.ExamResult;
 import common.model.exam.Question;
 import common.model.exam.StudentAnswer;
 import common.model.exam.Violation;
+import common.rmi.IViolationCallback;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.RemoteErrors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,6 +19,7 @@ import java.util.List;
 public class ExamService {
     private static ExamService instance;
     private final RMIClient rmiClient;
+    private volatile boolean batchReportUnsupported = false;
     
     private ExamService() {
         this.rmiClient = RMIClient.getInstance();
@@ -313,6 +316,55 @@ public class ExamService {
         }
     }
 
+    /**
+     * Báo cáo nhiều violation trong 1 lần gọi RMI.
+     * Nếu server chưa hỗ trợ reportViolations thì fallback gọi reportViolation từng cái.
+     * @return các violation chưa tới được server (lỗi kết nối) - caller giữ lại để gửi lần sau
+     */
+    public List<Violation> reportViolations(List<Violation> violations) {
+        if (violations == null || violations.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (!batchReportUnsupported) {
+            try {
+                int saved = rmiClient.getExamService().reportViolations(violations);
+                log.info("🚨 Reported {} / {} violation episodes to server", saved, violations.size());
+                return new ArrayList<>();
+            } catch (Exception e) {
+                if (RemoteErrors.isConnectionFailure(e)) {
+                    log.warn("⚠️ Report violations failed, keeping {} for retry: {}", violations.size(), e.getMessage());
+                    return new ArrayList<>(violations);
+                }
+                if (RemoteErrors.isMissingMethod(e)) {
+                    // Server cũ không nhận ra method hash -> nhớ lại và dùng fallback
+                    log.warn("⚠️ Server does not support reportViolations, falling back to single reports");
+                    batchReportUnsupported = true;
+                } else {
+                    // Server từ chối cả batch -> báo từng cái để chỉ bỏ episode bị từ chối
+                    log.warn("⚠️ Server rejected violation batch, reporting one by one: {}", e.getMessage());
+                }
+            }
+        }
+
+        int reported = 0;
+        for (int i = 0; i < violations.size(); i++) {
+            try {
+                if (rmiClient.getExamService().reportViolation(violations.get(i))) {
+                    reported++;
+                }
+            } catch (Exception e) {
+                if (RemoteErrors.isConnectionFailure(e)) {
+                    log.warn("⚠️ Report violation failed, keeping {} for retry: {}", violations.size() - i, e.getMessage());
+                    return new ArrayList<>(violations.subList(i, violations.size()));
+                }
+                log.error("❌ Server rejected violation {}, dropped: {}", violations.get(i).getViolationId(), e.getMessage());
+            }
+        }
+        log.info("🚨 Reported {} / {} violation episodes to server", reported, violations.size());
+        return new ArrayList<>();
+    }
+
     /**
      * Lấy violations gần đây (cho proctor)
      */
@@ -325,6 +377,27 @@ public class ExamService {
         }
     }
 
+    /**
+     * Đăng ký nhận violations qua callback (push)
+     * @return false nếu server không hỗ trợ hoặc lỗi (caller nên dùng polling)
+     */
+    public boolean subscribeViolations(String examId, IViolationCallback callback) {
+        try {
+            return rmiClient.getExamService().subscribeViolations(examId, callback);
+        } catch (Exception e) {
+            log.warn("⚠️ Subscribe violations failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public void unsubscribeViolations(String examId, IViolationCallback callback) {
+        try {
+            rmiClient.getExamService().unsubscribeViolations(examId, callback);
+        } catch (Exception e) {
+            log.warn("⚠️ Unsubscribe violations failed: {}", e.getMessage());
+        }
+    }
+
     /**
      * Lấy tất cả violations của exam (cho proctor)
      */
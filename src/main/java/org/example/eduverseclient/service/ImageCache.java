@@ -0,0 +1,379 @@
+package org.example.eduverseclient.service;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * ImageCache - Cache ảnh dùng chung (avatar, thumbnail message, ảnh course)
+ * - Tầng RAM: LRU theo key (url + kích thước hiển thị), giới hạn bởi tổng số byte pixel đã decode
+ * - Tầng đĩa: ~/.eduverse/images
+ *     blobs/<sha256 nội dung>     - content-addressed: nhiều URL cùng ảnh chỉ lưu 1 lần
+ *     meta/<sha256 url>.properties - blob, ETag, Last-Modified, thời điểm validate gần nhất
+ *   Quá REVALIDATE_AFTER_MS thì vẫn trả ảnh trên đĩa ngay, đồng thời hỏi lại server (If-None-Match /
+ *   If-Modified-Since) ở nền: 304 -> giữ nguyên, 200 -> blob mới, bỏ bản decode cũ khỏi RAM
+ * - Decode đúng kích thước hiển thị (Image(url, w, h, preserveRatio, smooth)) trên thread nền
+ * - Các request đồng thời cho cùng key dùng chung 1 lần tải/decode
+ */
+@Slf4j
+public class ImageCache {
+    private static ImageCache instance;
+
+    public static final Path CACHE_ROOT = Paths.get(System.getProperty("user.home"), ".eduverse", "images");
+
+    private static final long MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 256L * 1024 * 1024;
+    private static final long REVALIDATE_AFTER_MS = 24 * 60 * 60 * 1000;
+    private static final int MAX_CONCURRENT_LOADS = 4;
+    private static final Duration TIMEOUT = Duration.ofSeconds(15);
+
+    // Key trong ImageView.getProperties(): URL mà view đang chờ (view được tái sử dụng trong cell)
+    private static final String VIEW_URL_KEY = "image-cache-url";
+
+    private final Path blobDir = CACHE_ROOT.resolve("blobs");
+    private final Path metaDir = CACHE_ROOT.resolve("meta");
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+
+    // key -> ảnh đã decode; accessOrder = true -> LRU (guarded by memory)
+    private final LinkedHashMap<String, Image> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+
+    private final Map<String, CompletableFuture<Image>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private ImageCache() {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        this.executor = ClientExecutors.newPool("image-cache", MAX_CONCURRENT_LOADS);
+
+        executor.execute(this::pruneDisk);
+    }
+
+    public static synchronized ImageCache getInstance() {
+        if (instance == null) {
+            instance = new ImageCache();
+        }
+        return instance;
+    }
+
+    // ==================================================================
+    // PUBLIC API
+    // ==================================================================
+
+    /**
+     * Ảnh đã decode ở kích thước width x height (0 = kích thước gốc), giữ tỉ lệ
+     * @return future hoàn thành exceptionally nếu tải / decode lỗi
+     */
+    public CompletableFuture<Image> load(String url, double width, double height) {
+        String key = key(url, width, height);
+        Image cached = peek(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return inFlight.computeIfAbsent(key, k -> {
+            CompletableFuture<Image> future = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    Image image = loadBlocking(url, width, height, key);
+                    inFlight.remove(key, future);
+                    future.complete(image);
+                } catch (Exception e) {
+                    inFlight.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Gán ảnh vào view (FX thread). Cache RAM hit -> gán ngay; không thì gán khi tải xong,
+     * trừ khi view đã được gán URL khác trong lúc chờ (cell tái sử dụng).
+     */
+    public void loadInto(ImageView view, String url, double width, double height) {
+        loadInto(view, url, width, height, null);
+    }
+
+    /**
+     * @param onError chạy trên FX thread khi không tải được ảnh (vd. hiện placeholder)
+     */
+    public void loadInto(ImageView view, String url, double width, double height, Runnable onError) {
+        view.getProperties().put(VIEW_URL_KEY, url);
+        if (url == null || url.isEmpty()) {
+            view.setImage(null);
+            return;
+        }
+
+        Image cached = peek(key(url, width, height));
+        if (cached != null) {
+            view.setImage(cached);
+            return;
+        }
+
+        view.setImage(null);
+        load(url, width, height).whenComplete((image, e) -> Platform.runLater(() -> {
+            if (!url.equals(view.getProperties().get(VIEW_URL_KEY))) return;
+            if (e != null || image == null) {
+                log.warn("Failed to load image {}: {}", url, e != null ? e.getMessage() : "empty");
+                if (onError != null) onError.run();
+                return;
+            }
+            view.setImage(image);
+        }));
+    }
+
+    /**
+     * Bỏ gán ảnh đang chờ của view (cell trống / đổi sang nội dung không có ảnh)
+     */
+    public void clear(ImageView view) {
+        view.getProperties().remove(VIEW_URL_KEY);
+        view.setImage(null);
+    }
+
+    // ==================================================================
+    // MEMORY TIER
+    // ==================================================================
+
+    private Image peek(String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    private void putMemory(String key, Image image) {
+        long bytes = pixelBytes(image);
+        synchronized (memory) {
+            Image previous = memory.put(key, image);
+            if (previous != null) {
+                memoryBytes -= pixelBytes(previous);
+            }
+            memoryBytes += bytes;
+
+            var iterator = memory.entrySet().iterator();
+            while (memoryBytes > MAX_MEMORY_BYTES && iterator.hasNext()) {
+                Map.Entry<String, Image> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) continue;
+                memoryBytes -= pixelBytes(eldest.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void evictUrl(String url) {
+        String prefix = url + "@";
+        synchronized (memory) {
+            var iterator = memory.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Image> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    memoryBytes -= pixelBytes(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static long pixelBytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    private static String key(String url, double width, double height) {
+        return url + "@" + (int) Math.ceil(width) + "x" + (int) Math.ceil(height);
+    }
+
+    // ==================================================================
+    // DISK TIER
+    // ==================================================================
+
+    private Image loadBlocking(String url, double width, double height, String key) throws IOException {
+        Properties meta = readMeta(url);
+        Path blob = meta != null ? blobDir.resolve(meta.getProperty("blob", "")) : null;
+
+        if (blob != null && Files.isRegularFile(blob)) {
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));  // LRU trên đĩa
+            long validatedAt = Long.parseLong(meta.getProperty("validatedAt", "0"));
+            if (System.currentTimeMillis() - validatedAt > REVALIDATE_AFTER_MS) {
+                revalidateAsync(url);
+            }
+        } else {
+            blob = download(url, null);
+        }
+
+        Image image = new Image(blob.toUri().toString(), width, height, true, true, false);
+        if (image.isError()) {
+            throw new IOException("Cannot decode image", image.getException());
+        }
+        putMemory(key, image);
+        return image;
+    }
+
+    private void revalidateAsync(String url) {
+        if (!revalidating.add(url)) return;
+        executor.execute(() -> {
+            try {
+                Properties before = readMeta(url);
+                Path blob = download(url, before);
+                if (before == null || !blob.getFileName().toString().equals(before.getProperty("blob"))) {
+                    evictUrl(url);  // Nội dung đổi -> lần hiển thị sau decode bản mới
+                }
+            } catch (Exception e) {
+                log.debug("Revalidate {} failed: {}", url, e.getMessage());
+            } finally {
+                revalidating.remove(url);
+            }
+        });
+    }
+
+    /**
+     * GET (có điều kiện nếu có meta cũ), lưu blob + meta
+     * @return blob hiện hành của URL
+     */
+    private Path download(String url, Properties previous) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).GET();
+        if (previous != null) {
+            String etag = previous.getProperty("etag");
+            String lastModified = previous.getProperty("lastModified");
+            if (etag != null) request.header("If-None-Match", etag);
+            if (lastModified != null) request.header("If-Modified-Since", lastModified);
+        }
+
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+
+        Properties meta = new Properties();
+        if (response.statusCode() == 304 && previous != null) {
+            meta.putAll(previous);
+        } else if (response.statusCode() == 200) {
+            byte[] body = response.body();
+            String blobName = sha256(body);
+            Path blob = blobDir.resolve(blobName);
+            if (!Files.exists(blob)) {
+                writeAtomically(blob, body);
+            }
+            meta.setProperty("url", url);
+            meta.setProperty("blob", blobName);
+            response.headers().firstValue("ETag").ifPresent(v -> meta.setProperty("etag", v));
+            response.headers().firstValue("Last-Modified").ifPresent(v -> meta.setProperty("lastModified", v));
+        } else {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+
+        meta.setProperty("validatedAt", Long.toString(System.currentTimeMillis()));
+        writeMeta(url, meta);
+        return blobDir.resolve(meta.getProperty("blob"));
+    }
+
+    private Properties readMeta(String url) {
+        Path file = metaDir.resolve(sha256(url.getBytes(StandardCharsets.UTF_8)) + ".properties");
+        if (!Files.isRegularFile(file)) return null;
+        Properties meta = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            meta.load(in);
+            return meta.getProperty("blob") != null ? meta : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeMeta(String url, Properties meta) throws IOException {
+        Path file = metaDir.resolve(sha256(url.getBytes(StandardCharsets.UTF_8)) + ".properties");
+        Files.createDirectories(metaDir);
+        Path tmp = Files.createTempFile(metaDir, "meta-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            meta.store(out, null);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeAtomically(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "blob-", ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Giữ tổng dung lượng blob dưới MAX_DISK_BYTES: xóa blob ít dùng nhất (mtime được cập nhật mỗi lần đọc).
+     * Meta trỏ tới blob đã xóa sẽ tự tải lại ở lần sau.
+     */
+    private void pruneDisk() {
+        if (!Files.isDirectory(blobDir)) return;
+        List<Path> blobs = new ArrayList<>();
+        long total = 0;
+        try (var stream = Files.newDirectoryStream(blobDir)) {
+            for (Path blob : stream) {
+                blobs.add(blob);
+                total += Files.size(blob);
+            }
+        } catch (IOException e) {
+            log.debug("Scan image cache failed: {}", e.getMessage());
+            return;
+        }
+        if (total <= MAX_DISK_BYTES) return;
+
+        blobs.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path blob : blobs) {
+            if (total <= MAX_DISK_BYTES) break;
+            try {
+                long size = Files.size(blob);
+                Files.deleteIfExists(blob);
+                total -= size;
+            } catch (IOException e) {
+                log.debug("Delete {} failed: {}", blob, e.getMessage());
+            }
+        }
+        log.info("🧹 Image cache pruned to {} MB", total / (1024 * 1024));
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
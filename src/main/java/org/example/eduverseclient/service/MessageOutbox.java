@@ -0,0 +1,526 @@
+package org.example.eduverseclient.service;
+
+import common.enums.MessageType;
+import common.model.Message;
+import common.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
+import org.example.eduverseclient.utils.RemoteErrors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageOutbox - Hàng đợi ghi-sau cho message gửi đi (lưu lên server qua IChatService)
+ * - enqueue() chỉ đưa vào hàng đợi RAM, không chặn caller (FX thread / callback upload)
+ * - 1 thread "message-outbox" duy nhất sở hữu journal và RMI:
+ *     gom message trong BATCH_WINDOW_MS (tối đa MAX_BATCH) -> ghi journal + force 1 lần
+ *     -> sendMessages(batch) -> ghi ACK
+ * - Journal ~/.eduverse/outbox/<userId>/outbox.log, record [int length][int crc32c][kind][data]
+ *   ENQUEUE = message (encode của MessageStore), ACK = messageId. Mở lại -> message chưa ACK được gửi tiếp,
+ *   record ghi dở (crash) bị cắt bỏ. Journal được viết lại gọn khi không còn message chờ / quá COMPACT_BYTES.
+ * - Lỗi kết nối -> giữ message, thử lại với exponential backoff (có jitter); message mới vẫn được ghi journal trong lúc chờ
+ * - Server từ chối -> gửi lại từng message để tách message lỗi, message lỗi không chặn các message sau:
+ *     exception nghiệp vụ (RuntimeException từ server) / server không đọc được message -> dead-letter.log ngay
+ *     ServerException khác / trả null (có thể server đang lỗi tạm thời) -> thử lại, dead-letter sau REJECTION_BUDGET_MS
+ *   Message bị dead-letter (cùng format record) được báo cho UI qua ClientEventBus.MessageSendFailed
+ * - Server có thể nhận 1 message 2 lần (timeout sau khi server đã lưu): sendMessages bỏ trùng theo messageId do
+ *   client sinh. Server cũ (fallback sendMessage/sendFileMessage) tự sinh id nên lần gửi lại có thể tạo bản trùng
+ */
+@Slf4j
+public class MessageOutbox {
+    private static MessageOutbox instance;
+
+    public static final Path OUTBOX_ROOT = Paths.get(System.getProperty("user.home"), ".eduverse", "outbox");
+
+    private static final long BATCH_WINDOW_MS = 150;
+    private static final int MAX_BATCH = 50;
+    private static final long RETRY_BASE_MS = 500;
+    private static final long RETRY_MAX_MS = 30_000;
+    private static final long REJECTION_BUDGET_MS = 24 * 60 * 60 * 1000L;  // Từ lần server từ chối đầu tiên
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final int RECORD_HEADER_BYTES = 8;               // length + crc32c
+    private static final int MAX_RECORD_BYTES = 4 * 1024 * 1024;
+    private static final byte KIND_ENQUEUE = 1;
+    private static final byte KIND_ACK = 2;
+
+    private final RMIClient rmiClient;
+    private final LinkedBlockingQueue<Message> incoming = new LinkedBlockingQueue<>();
+
+    private volatile Thread writer;
+    private volatile boolean running = false;
+    private Thread stopping;    // Writer vừa close() - có thể còn kẹt trong RMI
+
+    // Server cũ không có sendMessages -> gửi từng message
+    private volatile boolean batchUnsupported = false;
+
+    // Trạng thái journal - chỉ thread writer truy cập
+    private String ownerId;
+    private Path journalPath;
+    private FileChannel journal;
+    private long journalSize;
+    private final Map<String, Message> pending = new LinkedHashMap<>();    // Đã ghi journal, chưa ACK
+    private final Map<String, Long> rejections = new HashMap<>();          // messageId -> lần đầu server từ chối
+    private int failures = 0;
+
+    private MessageOutbox() {
+        this.rmiClient = RMIClient.getInstance();
+    }
+
+    public static synchronized MessageOutbox getInstance() {
+        if (instance == null) {
+            instance = new MessageOutbox();
+        }
+        return instance;
+    }
+
+    /**
+     * Start thread writer (idempotent) - message còn lại trong journal từ phiên trước được gửi tiếp
+     */
+    public synchronized void start() {
+        if (running) return;
+        if (stopping != null) {
+            // Journal chỉ có 1 writer: chờ writer cũ đóng journal xong
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            stopping = null;
+        }
+        running = true;
+        writer = ClientExecutors.newThread("message-outbox", this::run);
+        writer.start();
+    }
+
+    /**
+     * Xếp message vào hàng đợi lưu server (không chặn)
+     */
+    public void enqueue(Message message) {
+        if (message == null || message.getMessageId() == null || message.getConversationId() == null) {
+            log.warn("Ignoring invalid outbox message: {}", message);
+            return;
+        }
+        incoming.add(message);
+        start();
+    }
+
+    /**
+     * Dừng writer: message đang chờ trong RAM được ghi journal trước khi đóng (gửi ở lần start sau).
+     * Không interrupt writer - FileChannel bị đóng nếu thread bị interrupt giữa lúc ghi.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            thread = writer;
+            writer = null;
+            stopping = thread;
+        }
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================================================================
+    // WRITER THREAD
+    // ==================================================================
+
+    private void run() {
+        log.info("✅ Message outbox started");
+        try {
+            while (running) {
+                if (!ensureOpen()) {
+                    // Chưa login - chờ rồi thử lại
+                    Thread.sleep(1000);
+                    continue;
+                }
+
+                if (pending.isEmpty()) {
+                    Message first = incoming.poll(1, TimeUnit.SECONDS);
+                    if (first == null) continue;
+                    List<Message> batch = new ArrayList<>();
+                    batch.add(first);
+                    // Gom thêm message tới trong cửa sổ batch
+                    long deadline = System.currentTimeMillis() + BATCH_WINDOW_MS;
+                    while (batch.size() < MAX_BATCH) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) break;
+                        Message next = incoming.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                    journalEnqueue(batch);
+                } else {
+                    drainIncoming();
+                }
+
+                if (!sendPending()) {
+                    backoff();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("❌ Message outbox stopped unexpectedly", e);
+        } finally {
+            try {
+                drainIncoming();
+            } catch (IOException e) {
+                log.error("❌ Failed to journal {} outgoing messages", incoming.size(), e);
+            }
+            closeJournal();
+            // Dừng do lỗi (không qua close) -> cho phép enqueue/start tạo writer mới
+            if (writer == Thread.currentThread()) {
+                running = false;
+                writer = null;
+            }
+            log.info("Message outbox stopped");
+        }
+    }
+
+    /**
+     * Gửi tối đa MAX_BATCH message đang chờ
+     * @return false nếu lỗi (cần backoff)
+     */
+    private boolean sendPending() throws IOException {
+        List<Message> batch = new ArrayList<>(Math.min(pending.size(), MAX_BATCH));
+        for (Message message : pending.values()) {
+            if (batch.size() == MAX_BATCH) break;
+            batch.add(message);
+        }
+        if (batch.isEmpty()) return true;
+
+        List<String> done = send(batch);
+        done.forEach(rejections::remove);
+        if (!done.isEmpty()) {
+            journalAck(done);
+            log.info("✅ Saved {} messages to server ({} pending)", done.size(), pending.size());
+        }
+        if (done.size() < batch.size()) {
+            return false;
+        }
+
+        failures = 0;
+        if (pending.isEmpty() ? journalSize > 0 : journalSize > COMPACT_BYTES) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @return messageId của các message đã xong (server đã lưu, hoặc đã chuyển sang dead-letter)
+     */
+    private List<String> send(List<Message> batch) throws IOException {
+        List<String> done = new ArrayList<>();
+        if (!batchUnsupported) {
+            try {
+                rmiClient.getChatService().sendMessages(batch);
+                batch.forEach(message -> done.add(message.getMessageId()));
+                return done;
+            } catch (Exception e) {
+                if (RemoteErrors.isMissingMethod(e)) {
+                    // Server cũ không nhận ra method hash -> nhớ lại và dùng fallback
+                    log.warn("⚠️ Server does not support sendMessages, falling back to single sends");
+                    batchUnsupported = true;
+                } else if (e instanceof ServerException || e instanceof RuntimeException) {
+                    // Server từ chối cả batch -> gửi từng message để tách message lỗi
+                    log.warn("Server rejected batch of {} messages, retrying one by one: {}", batch.size(), e.getMessage());
+                } else {
+                    log.warn("Failed to save {} messages: {}", batch.size(), e.getMessage());
+                    return done;
+                }
+            }
+        }
+
+        for (Message message : batch) {
+            try {
+                if (sendOne(message)) {
+                    done.add(message.getMessageId());
+                } else if (reject(message, "server returned no message", false)) {
+                    done.add(message.getMessageId());
+                }
+            } catch (ServerException e) {
+                // Server đã nhận request nhưng lỗi - không chặn các message sau.
+                // UnmarshalException: server không đọc được chính message này -> gửi lại cũng vậy
+                if (reject(message, String.valueOf(e.getCause()), e.getCause() instanceof UnmarshalException)) {
+                    done.add(message.getMessageId());
+                }
+            } catch (RuntimeException e) {
+                // Exception nghiệp vụ server ném ra (message không hợp lệ...) -> không thử lại
+                if (reject(message, e.toString(), true)) {
+                    done.add(message.getMessageId());
+                }
+            } catch (Exception e) {
+                log.warn("Failed to save message {}: {}", message.getMessageId(), e.getMessage());
+                break;      // Lỗi kết nối: message sau chờ lượt thử lại (giữ thứ tự)
+            }
+        }
+        return done;
+    }
+
+    /**
+     * @return false nếu server không trả về message đã lưu
+     */
+    private boolean sendOne(Message message) throws RemoteException {
+        if (!batchUnsupported) {
+            // Vẫn qua sendMessages để server bỏ trùng theo messageId
+            List<Message> saved = rmiClient.getChatService().sendMessages(List.of(message));
+            return saved != null && !saved.isEmpty();
+        }
+        Message saved;
+        if (message.getType() == MessageType.TEXT || message.getType() == null) {
+            saved = rmiClient.getChatService().sendMessage(
+                    message.getConversationId(), message.getSenderId(), message.getContent());
+        } else {
+            saved = rmiClient.getChatService().sendFileMessage(
+                    message.getConversationId(), message.getSenderId(), message.getType(),
+                    message.getContent() != null ? message.getContent() : "");
+        }
+        return saved != null;
+    }
+
+    /**
+     * Ghi nhận 1 lần server từ chối message
+     * @param permanent server chắc chắn không nhận message này (gửi lại cũng bị từ chối)
+     * @return true nếu message được chuyển sang dead-letter (coi như xong):
+     *         permanent, hoặc vẫn bị từ chối sau REJECTION_BUDGET_MS
+     */
+    private boolean reject(Message message, String reason, boolean permanent) throws IOException {
+        long now = System.currentTimeMillis();
+        long firstRejectedAt = rejections.computeIfAbsent(message.getMessageId(), k -> now);
+        if (!permanent && now - firstRejectedAt < REJECTION_BUDGET_MS) {
+            log.warn("Server rejected message {} (retrying for {} more minutes): {}", message.getMessageId(),
+                    TimeUnit.MILLISECONDS.toMinutes(REJECTION_BUDGET_MS - (now - firstRejectedAt)), reason);
+            return false;
+        }
+        rejections.remove(message.getMessageId());
+        deadLetter(message);
+        log.error("❌ Message {} rejected by server, moved to dead-letter: {}", message.getMessageId(), reason);
+        ClientEventBus.getInstance().publish(new ClientEventBus.MessageSendFailed(message, reason));
+        return true;
+    }
+
+    /**
+     * Chờ trước lần thử lại; message mới trong lúc chờ vẫn được ghi journal ngay
+     */
+    private void backoff() throws InterruptedException, IOException {
+        failures++;
+        long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(failures - 1, 16));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        log.info("⏳ Retrying {} pending messages in {} ms", pending.size(), delay);
+
+        long deadline = System.currentTimeMillis() + delay;
+        long remaining;
+        while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            // Poll từng đoạn ngắn để close() không phải chờ hết backoff
+            Message next = incoming.poll(Math.min(remaining, 500), TimeUnit.MILLISECONDS);
+            if (next != null) {
+                List<Message> batch = new ArrayList<>();
+                batch.add(next);
+                incoming.drainTo(batch);
+                journalEnqueue(batch);
+            }
+        }
+    }
+
+    private void drainIncoming() throws IOException {
+        List<Message> batch = new ArrayList<>();
+        incoming.drainTo(batch);
+        if (!batch.isEmpty() && journal != null) {
+            journalEnqueue(batch);
+        }
+    }
+
+    // ==================================================================
+    // JOURNAL
+    // ==================================================================
+
+    /**
+     * Mở journal của user hiện tại (lần đầu, hoặc khi đổi user) và nạp message chưa ACK
+     */
+    private boolean ensureOpen() {
+        User currentUser = rmiClient.getCurrentUser();
+        if (currentUser == null) return false;
+        if (currentUser.getUserId().equals(ownerId)) return true;
+
+        closeJournal();
+        try {
+            Path directory = OUTBOX_ROOT.resolve(currentUser.getUserId());
+            Files.createDirectories(directory);
+            journalPath = directory.resolve("outbox.log");
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journalSize = journal.size();
+            replay();
+            ownerId = currentUser.getUserId();
+            if (!pending.isEmpty()) {
+                log.info("📤 Outbox has {} unsent messages from previous session", pending.size());
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("❌ Failed to open message outbox: {}", e.getMessage());
+            closeJournal();
+            return false;
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.force(false);
+                journal.close();
+            } catch (IOException e) {
+                log.debug("Close outbox journal failed: {}", e.getMessage());
+            }
+        }
+        journal = null;
+        journalPath = null;
+        journalSize = 0;
+        ownerId = null;
+        pending.clear();
+        rejections.clear();
+        failures = 0;
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= journalSize) {
+            header.clear();
+            MessageStore.readFully(journal, header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 1 || length > MAX_RECORD_BYTES || position + RECORD_HEADER_BYTES + length > journalSize) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            MessageStore.readFully(journal, payload, position + RECORD_HEADER_BYTES);
+            payload.flip();
+            if (MessageStore.crc32c(payload) != crc) break;
+
+            byte[] bytes = payload.array();
+            if (bytes[0] == KIND_ENQUEUE) {
+                byte[] encoded = new byte[length - 1];
+                System.arraycopy(bytes, 1, encoded, 0, encoded.length);
+                Message message = MessageStore.decode(encoded);
+                if (message != null && message.getMessageId() != null) {
+                    pending.put(message.getMessageId(), message);
+                }
+            } else if (bytes[0] == KIND_ACK) {
+                pending.remove(new String(bytes, 1, length - 1, StandardCharsets.UTF_8));
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+
+        if (position < journalSize) {
+            log.warn("⚠️ Truncating damaged tail of outbox journal at {} (was {} bytes)", position, journalSize);
+            journal.truncate(position);
+            journalSize = position;
+        }
+    }
+
+    private void journalEnqueue(List<Message> batch) throws IOException {
+        for (Message message : batch) {
+            byte[] encoded = MessageStore.encode(message);
+            byte[] payload = new byte[encoded.length + 1];
+            payload[0] = KIND_ENQUEUE;
+            System.arraycopy(encoded, 0, payload, 1, encoded.length);
+            append(payload);
+            pending.put(message.getMessageId(), message);
+        }
+        // Group commit: 1 lần force cho cả batch
+        journal.force(false);
+    }
+
+    private void journalAck(List<String> messageIds) throws IOException {
+        for (String messageId : messageIds) {
+            byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[id.length + 1];
+            payload[0] = KIND_ACK;
+            System.arraycopy(id, 0, payload, 1, id.length);
+            append(payload);
+            pending.remove(messageId);
+        }
+        // Không force: mất ACK khi crash chỉ dẫn tới gửi lại (sendMessages bỏ trùng theo messageId)
+    }
+
+    /**
+     * Message server từ chối vĩnh viễn -> dead-letter.log cạnh journal (record ENQUEUE, đọc lại được bằng MessageStore.decode)
+     */
+    private void deadLetter(Message message) throws IOException {
+        byte[] encoded = MessageStore.encode(message);
+        byte[] payload = new byte[encoded.length + 1];
+        payload[0] = KIND_ENQUEUE;
+        System.arraycopy(encoded, 0, payload, 1, encoded.length);
+        try (FileChannel deadLetters = FileChannel.open(journalPath.resolveSibling("dead-letter.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer record = record(payload);
+            while (record.hasRemaining()) {
+                deadLetters.write(record);
+            }
+            deadLetters.force(false);
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        ByteBuffer record = record(payload);
+        while (record.hasRemaining()) {
+            journal.write(record, journalSize + record.position());
+        }
+        journalSize += record.limit();
+    }
+
+    private static ByteBuffer record(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(MessageStore.crc32c(ByteBuffer.wrap(payload)));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Viết lại journal chỉ gồm message đang chờ (file tạm + atomic move)
+     */
+    private void compact() throws IOException {
+        Path tmp = journalPath.resolveSibling("outbox.log.tmp");
+        Map<String, Message> remaining = new LinkedHashMap<>(pending);
+
+        journal.close();
+        journal = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journalSize = 0;
+        pending.clear();
+        journalEnqueue(new ArrayList<>(remaining.values()));
+        journal.close();
+
+        Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.debug("Outbox journal compacted: {} pending, {} bytes", pending.size(), journalSize);
+    }
+}
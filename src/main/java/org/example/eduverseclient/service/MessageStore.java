@@ -0,0 +1,569 @@
+package org.example.eduverseclient.service;
+
+import common.enums.MessageType;
+import common.model.Message;
+import common.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32C;
+
+/**
+ * MessageStore - Lưu messages trên đĩa phía client, đồng bộ tăng dần với server
+ * - Segment log append-only: ~/.eduverse/messages/<userId>/segment-<n>.log, mỗi segment tối đa SEGMENT_MAX_BYTES
+ *   Record: [int length][int crc32c][payload] - record cuối bị ghi dở (crash) được cắt bỏ khi mở lại
+ * - Index trong RAM (dựng lại khi mở bằng cách quét segment): conversationId -> entries sắp theo timestamp,
+ *   mỗi entry trỏ tới (segment, offset) - đọc message = 1 positional read
+ * - Sync: getMessagesAfter(conversationId, timestamp lớn nhất đã có); conversation chưa có gì thì lấy
+ *   BOOTSTRAP_LIMIT message gần nhất. Message trùng (theo messageId) bị bỏ qua.
+ * - Chỉ lưu message lấy từ server (id do server cấp); message UDP hiển thị live không ghi vào đây
+ */
+@Slf4j
+public class MessageStore {
+    private static MessageStore instance;
+
+    public static final Path STORE_ROOT = Paths.get(System.getProperty("user.home"), ".eduverse", "messages");
+
+    private static final long SEGMENT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final int RECORD_HEADER_BYTES = 8;               // length + crc32c
+    private static final int MAX_RECORD_BYTES = 4 * 1024 * 1024;
+    private static final byte RECORD_VERSION = 1;
+    private static final int BOOTSTRAP_LIMIT = 50;
+    private static final int SYNC_THREADS = 2;
+    static final long CLOCK_SKEW_MARGIN_MS = 5000;                  // Lệch đồng hồ client/server (như ConversationStore)
+
+    private final RMIClient rmiClient;
+    private final ExecutorService syncExecutor;
+
+    // Trạng thái log + index (guarded by this)
+    private String ownerId;
+    private Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, ConversationIndex> index = new HashMap<>();
+
+    // conversationId -> lượt sync đang chạy (guarded by runningSyncs)
+    private final Map<String, SyncTask> runningSyncs = new HashMap<>();
+    // conversationId -> thời điểm (đồng hồ client, đã trừ CLOCK_SKEW_MARGIN_MS) bắt đầu lượt sync thành công gần nhất
+    private final Map<String, Long> lastSyncTimes = new ConcurrentHashMap<>();
+    // Conversation đã có đủ lịch sử từ server (không còn message cũ hơn để tải)
+    private final Set<String> historyComplete = ConcurrentHashMap.newKeySet();
+
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        long size;
+
+        Segment(int number, Path path, FileChannel channel, long size) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private static final class Entry {
+        final String messageId;
+        final long timestamp;
+        final Segment segment;
+        final long offset;      // Vị trí payload (sau header)
+        final int length;
+
+        Entry(String messageId, long timestamp, Segment segment, long offset, int length) {
+            this.messageId = messageId;
+            this.timestamp = timestamp;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class ConversationIndex {
+        final List<Entry> entries = new ArrayList<>();     // Tăng dần theo timestamp
+        final Map<String, Entry> byId = new HashMap<>();
+
+        void add(Entry entry) {
+            int position = entries.size();
+            // Hầu hết message tới theo thứ tự -> thêm vào cuối; message cũ (load history) -> binary search
+            if (position > 0 && entries.get(position - 1).timestamp > entry.timestamp) {
+                int low = 0;
+                int high = position - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (entries.get(mid).timestamp > entry.timestamp) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                position = low;
+            }
+            entries.add(position, entry);
+            byId.put(entry.messageId, entry);
+        }
+
+        long lastTimestamp() {
+            return entries.isEmpty() ? -1 : entries.get(entries.size() - 1).timestamp;
+        }
+    }
+
+    /**
+     * Gộp các yêu cầu sync cùng conversation: yêu cầu tới khi đang sync -> chạy thêm đúng 1 lượt sau
+     */
+    private static final class SyncTask {
+        final CompletableFuture<List<Message>> future = new CompletableFuture<>();
+        final List<Message> fetched = new ArrayList<>();
+        boolean dirty = false;
+    }
+
+    private MessageStore() {
+        this.rmiClient = RMIClient.getInstance();
+
+        this.syncExecutor = ClientExecutors.newPool("message-sync", SYNC_THREADS);
+    }
+
+    public static synchronized MessageStore getInstance() {
+        if (instance == null) {
+            instance = new MessageStore();
+        }
+        return instance;
+    }
+
+    // ==================================================================
+    // LOCAL READS (không RMI)
+    // ==================================================================
+
+    public synchronized boolean hasMessages(String conversationId) {
+        if (!ensureOpen()) return false;
+        ConversationIndex conversation = index.get(conversationId);
+        return conversation != null && !conversation.entries.isEmpty();
+    }
+
+    /**
+     * limit message mới nhất, tăng dần theo timestamp (message cuối là mới nhất)
+     */
+    public synchronized List<Message> getRecentMessages(String conversationId, int limit) {
+        List<Message> result = new ArrayList<>();
+        if (!ensureOpen()) return result;
+        ConversationIndex conversation = index.get(conversationId);
+        if (conversation == null) return result;
+
+        List<Entry> entries = conversation.entries;
+        for (int i = Math.max(0, entries.size() - limit); i < entries.size(); i++) {
+            Message message = read(entries.get(i));
+            if (message != null) result.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Tối đa limit message ngay trước message anchorMessageId (tăng dần theo timestamp) - phân trang khi cuộn lên
+     */
+    public synchronized List<Message> getMessagesBefore(String conversationId, String anchorMessageId, int limit) {
+        List<Message> result = new ArrayList<>();
+        if (!ensureOpen()) return result;
+        ConversationIndex conversation = index.get(conversationId);
+        if (conversation == null) return result;
+
+        Entry anchor = conversation.byId.get(anchorMessageId);
+        int end = anchor != null ? conversation.entries.indexOf(anchor) : -1;
+        for (int i = Math.max(0, end - limit); i < end; i++) {
+            Message message = read(conversation.entries.get(i));
+            if (message != null) result.add(message);
+        }
+        return result;
+    }
+
+    public synchronized Message getLastMessage(String conversationId) {
+        if (!ensureOpen()) return null;
+        ConversationIndex conversation = index.get(conversationId);
+        if (conversation == null || conversation.entries.isEmpty()) return null;
+        return read(conversation.entries.get(conversation.entries.size() - 1));
+    }
+
+    /**
+     * Timestamp message mới nhất đã lưu, -1 nếu chưa có
+     */
+    public synchronized long getLastTimestamp(String conversationId) {
+        if (!ensureOpen()) return -1;
+        ConversationIndex conversation = index.get(conversationId);
+        return conversation != null ? conversation.lastTimestamp() : -1;
+    }
+
+    /**
+     * true nếu store đã có mọi message tới thời điểm updatedAt
+     * (theo timestamp message đã lưu, hoặc đã sync thành công sau thời điểm đó).
+     * updatedAt là giờ server còn lastSyncTimes là giờ client -> lastSyncTimes đã lùi CLOCK_SKEW_MARGIN_MS
+     */
+    public boolean isUpToDate(String conversationId, long updatedAt) {
+        return updatedAt <= getLastTimestamp(conversationId)
+                || updatedAt <= lastSyncTimes.getOrDefault(conversationId, -1L);
+    }
+
+    // ==================================================================
+    // SYNC
+    // ==================================================================
+
+    /**
+     * Kéo message mới của conversation từ server về store (chạy nền, gộp yêu cầu đồng thời)
+     * @return future các message vừa được thêm (tăng dần theo timestamp)
+     */
+    public CompletableFuture<List<Message>> syncAsync(String conversationId) {
+        synchronized (runningSyncs) {
+            SyncTask running = runningSyncs.get(conversationId);
+            if (running != null) {
+                running.dirty = true;
+                return running.future;
+            }
+            SyncTask task = new SyncTask();
+            runningSyncs.put(conversationId, task);
+            syncExecutor.execute(() -> runSync(conversationId, task));
+            return task.future;
+        }
+    }
+
+    private void runSync(String conversationId, SyncTask task) {
+        try {
+            while (true) {
+                task.fetched.addAll(syncOnce(conversationId));
+                synchronized (runningSyncs) {
+                    if (!task.dirty) {
+                        runningSyncs.remove(conversationId);
+                        break;
+                    }
+                    task.dirty = false;
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (runningSyncs) {
+                runningSyncs.remove(conversationId);
+            }
+            log.warn("Message sync failed for {}: {}", conversationId, e.getMessage());
+        }
+        task.future.complete(task.fetched);
+    }
+
+    private List<Message> syncOnce(String conversationId) {
+        long cursor = getLastTimestamp(conversationId);
+        long startedAt = System.currentTimeMillis();
+        List<Message> remote;
+        try {
+            // Lùi CLOCK_SKEW_MARGIN_MS: server có thể so sánh ">", có message cùng timestamp, và timestamp do
+            // client khác gán có thể lệch giờ (tới sau nhưng cũ hơn cursor) - trùng sẽ bị loại theo messageId
+            remote = cursor < 0
+                    ? rmiClient.getChatService().getMessages(conversationId, BOOTSTRAP_LIMIT)
+                    : rmiClient.getChatService().getMessagesAfter(conversationId,
+                            Math.max(0, cursor - CLOCK_SKEW_MARGIN_MS));
+        } catch (Exception e) {
+            log.warn("Failed to fetch messages for {}: {}", conversationId, e.getMessage());
+            return new ArrayList<>();
+        }
+        lastSyncTimes.merge(conversationId, startedAt - CLOCK_SKEW_MARGIN_MS, Math::max);
+        if (remote == null || remote.isEmpty()) return new ArrayList<>();
+        return append(conversationId, remote);
+    }
+
+    /**
+     * Ghi các message chưa có vào segment hiện tại
+     * @return message thực sự được thêm
+     */
+    private synchronized List<Message> append(String conversationId, List<Message> messages) {
+        List<Message> added = new ArrayList<>();
+        if (!ensureOpen()) return added;
+
+        ConversationIndex conversation = index.computeIfAbsent(conversationId, k -> new ConversationIndex());
+        List<Message> sorted = new ArrayList<>(messages);
+        sorted.sort(Comparator.comparingLong(Message::getTimestamp));
+
+        try {
+            for (Message message : sorted) {
+                if (message == null || message.getMessageId() == null) continue;
+                if (conversation.byId.containsKey(message.getMessageId())) continue;
+                if (message.getConversationId() == null) {
+                    message.setConversationId(conversationId);
+                }
+                conversation.add(write(message));
+                added.add(message);
+            }
+        } catch (IOException e) {
+            log.error("❌ Failed to append messages to store: {}", e.getMessage());
+        }
+        return added;
+    }
+
+    /**
+     * Tải thêm tối đa limit message cũ hơn những gì store đang có. Server chỉ có getMessages(id, N)
+     * (N message mới nhất) nên lấy N = số đã có + limit rồi bỏ phần trùng.
+     * @return số message cũ được thêm; 0 khi đã hết lịch sử
+     */
+    public int loadOlder(String conversationId, int limit) {
+        if (historyComplete.contains(conversationId)) return 0;
+
+        int known;
+        synchronized (this) {
+            if (!ensureOpen()) return 0;
+            ConversationIndex conversation = index.get(conversationId);
+            known = conversation != null ? conversation.entries.size() : 0;
+        }
+
+        List<Message> remote;
+        try {
+            remote = rmiClient.getChatService().getMessages(conversationId, known + limit);
+        } catch (Exception e) {
+            log.warn("Failed to load older messages for {}: {}", conversationId, e.getMessage());
+            return 0;
+        }
+        if (remote == null || remote.size() < known + limit) {
+            historyComplete.add(conversationId);
+        }
+        return remote == null ? 0 : append(conversationId, remote).size();
+    }
+
+    // ==================================================================
+    // LIFECYCLE
+    // ==================================================================
+
+    /**
+     * Mở store của user hiện tại (lần đầu dùng, hoặc khi đổi user)
+     */
+    private boolean ensureOpen() {
+        User currentUser = rmiClient.getCurrentUser();
+        if (currentUser == null) return false;
+        if (currentUser.getUserId().equals(ownerId)) return true;
+
+        close();
+        try {
+            directory = STORE_ROOT.resolve(currentUser.getUserId());
+            Files.createDirectories(directory);
+            openSegments();
+            ownerId = currentUser.getUserId();
+            log.info("✅ Message store opened: {} segments, {} conversations", segments.size(), index.size());
+            return true;
+        } catch (IOException e) {
+            log.error("❌ Failed to open message store: {}", e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            try {
+                segment.channel.force(false);
+                segment.channel.close();
+            } catch (IOException e) {
+                log.debug("Close segment {} failed: {}", segment.path, e.getMessage());
+            }
+        }
+        segments.clear();
+        index.clear();
+        lastSyncTimes.clear();
+        historyComplete.clear();
+        ownerId = null;
+        directory = null;
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (var stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparingInt(MessageStore::segmentNumber));
+
+        for (Path file : files) {
+            int number = segmentNumber(file);
+            if (number < 0) continue;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(number, file, channel, channel.size());
+            segments.add(segment);
+            scan(segment);
+        }
+    }
+
+    /**
+     * Dựng index từ segment; gặp record hỏng (ghi dở khi crash) -> cắt segment tại đó
+     */
+    private void scan(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= segment.size) {
+            header.clear();
+            readFully(segment.channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || position + RECORD_HEADER_BYTES + length > segment.size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(segment.channel, payload, position + RECORD_HEADER_BYTES);
+            payload.flip();
+            if (crc32c(payload) != crc) break;
+
+            Message message = decode(payload.array());
+            if (message != null && message.getMessageId() != null && message.getConversationId() != null) {
+                ConversationIndex conversation = index.computeIfAbsent(message.getConversationId(), k -> new ConversationIndex());
+                if (!conversation.byId.containsKey(message.getMessageId())) {
+                    conversation.add(new Entry(message.getMessageId(), message.getTimestamp(),
+                            segment, position + RECORD_HEADER_BYTES, length));
+                }
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+
+        if (position < segment.size) {
+            log.warn("⚠️ Truncating damaged tail of {} at {} (was {} bytes)", segment.path.getFileName(), position, segment.size);
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private Entry write(Message message) throws IOException {
+        byte[] payload = encode(message);
+        Segment segment = activeSegment(RECORD_HEADER_BYTES + payload.length);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(crc32c(ByteBuffer.wrap(payload)));
+        record.put(payload);
+        record.flip();
+
+        long position = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, position + record.position());
+        }
+        segment.size += RECORD_HEADER_BYTES + payload.length;
+        return new Entry(message.getMessageId(), message.getTimestamp(), segment, position + RECORD_HEADER_BYTES, payload.length);
+    }
+
+    private Segment activeSegment(int recordBytes) throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && last.size + recordBytes <= SEGMENT_MAX_BYTES) {
+            return last;
+        }
+        if (last != null) {
+            last.channel.force(false);  // Segment cũ không ghi nữa
+        }
+        int number = last != null ? last.number + 1 : 1;
+        Path path = directory.resolve(String.format("segment-%08d.log", number));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(number, path, channel, channel.size());
+        segments.add(segment);
+        return segment;
+    }
+
+    private Message read(Entry entry) {
+        try {
+            ByteBuffer payload = ByteBuffer.allocate(entry.length);
+            readFully(entry.segment.channel, payload, entry.offset);
+            return decode(payload.array());
+        } catch (IOException e) {
+            log.warn("Failed to read message {}: {}", entry.messageId, e.getMessage());
+            return null;
+        }
+    }
+
+    // ==================================================================
+    // ENCODING
+    // ==================================================================
+
+    static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_VERSION);
+        writeString(out, message.getMessageId());
+        writeString(out, message.getConversationId());
+        writeString(out, message.getSenderId());
+        writeString(out, message.getType() != null ? message.getType().name() : null);
+        writeString(out, message.getContent());
+        out.writeLong(message.getTimestamp());
+        out.writeBoolean(message.isSeen());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Message decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != RECORD_VERSION) return null;
+            String messageId = readString(in);
+            String conversationId = readString(in);
+            String senderId = readString(in);
+            String type = readString(in);
+            String content = readString(in);
+            return Message.builder()
+                    .messageId(messageId)
+                    .conversationId(conversationId)
+                    .senderId(senderId)
+                    .type(type != null ? MessageType.valueOf(type) : null)
+                    .content(content)
+                    .timestamp(in.readLong())
+                    .seen(in.readBoolean())
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int crc32c(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of segment");
+        }
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
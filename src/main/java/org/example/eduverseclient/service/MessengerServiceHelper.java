@@ -5,6 +5,7 @@ import common.model.Message;
 import common.model.User;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -13,14 +14,17 @@ import java.util.concurrent.CompletableFuture;
 /**
  * Client-side helper service for messenger operations
  * Wraps RMI ChatService calls and provides convenient methods
+ * Conversations được cache trong ConversationStore: lookup theo id/type không gọi RMI
  */
 @Slf4j
 public class MessengerServiceHelper {
     private static MessengerServiceHelper instance;
     private final RMIClient rmiClient;
+    private final ConversationStore conversationStore;
 
     private MessengerServiceHelper() {
         this.rmiClient = RMIClient.getInstance();
+        this.conversationStore = new ConversationStore(rmiClient);
     }
 
     public static synchronized MessengerServiceHelper getInstance() {
@@ -31,38 +35,106 @@ public class MessengerServiceHelper {
     }
 
     /**
-     * Lấy danh sách conversations của user
+     * Bật refresh delta định kỳ của conversation cache (gọi khi messenger khởi động)
+     */
+    public void startConversationSync() {
+        conversationStore.start();
+    }
+
+    public void stopConversationSync() {
+        conversationStore.stop();
+    }
+
+    /**
+     * Cập nhật conversation cache theo message vừa gửi/nhận (preview, thứ tự list)
+     */
+    public void onMessage(Message message) {
+        conversationStore.onMessage(message);
+    }
+
+    /**
+     * Lấy danh sách conversations của user (từ cache, chỉ lần đầu gọi RMI)
      */
     public CompletableFuture<List<Conversation>> getUserConversations() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                User currentUser = rmiClient.getCurrentUser();
-                if (currentUser == null) {
-                    return new ArrayList<>();
-                }
+        if (conversationStore.isReady()) {
+            return CompletableFuture.completedFuture(conversationStore.getAll());
+        }
+        return CompletableFuture.supplyAsync(conversationStore::getAll, ClientExecutors.io());
+    }
 
-                return rmiClient.getChatService().getUserConversations(currentUser.getUserId());
+    /**
+     * Lấy conversations theo type ("private" / "courseChat") từ cache
+     */
+    public CompletableFuture<List<Conversation>> getConversationsByType(String type) {
+        if (conversationStore.isReady()) {
+            return CompletableFuture.completedFuture(conversationStore.getByType(type));
+        }
+        return CompletableFuture.supplyAsync(() -> conversationStore.getByType(type), ClientExecutors.io());
+    }
 
-            } catch (Exception e) {
-                log.error("Get user conversations failed", e);
-                return new ArrayList<>();
+    /**
+     * Tìm private conversation giữa current user và otherUserId trong cache (null nếu chưa có)
+     */
+    public CompletableFuture<Conversation> findPrivateConversation(String otherUserId) {
+        return CompletableFuture.supplyAsync(() -> {
+            User currentUser = rmiClient.getCurrentUser();
+            if (currentUser == null) {
+                return null;
             }
-        });
+            return conversationStore.findPrivate(currentUser.getUserId(), otherUserId);
+        }, ClientExecutors.io());
     }
 
     /**
-     * Lấy messages của conversation
+     * Lấy messages của conversation từ MessageStore (đọc đĩa).
+     * Chỉ gọi server khi conversation chưa có message nào trong store; sau đó dùng syncMessages để lấy phần mới.
      */
     public CompletableFuture<List<Message>> getMessages(String conversationId, int limit) {
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                return rmiClient.getChatService().getMessages(conversationId, limit);
+            MessageStore store = MessageStore.getInstance();
+            if (!store.hasMessages(conversationId)) {
+                store.syncAsync(conversationId).join();
+            }
+            return store.getRecentMessages(conversationId, limit);
+        }, ClientExecutors.io());
+    }
 
-            } catch (Exception e) {
-                log.error("Get messages failed", e);
-                return new ArrayList<>();
+    /**
+     * Trang message cũ hơn anchorMessageId (cuộn lên trong message list).
+     * Store hết message cũ -> tải thêm từ server rồi đọc lại.
+     */
+    public CompletableFuture<List<Message>> getOlderMessages(String conversationId, String anchorMessageId, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            MessageStore store = MessageStore.getInstance();
+            List<Message> older = store.getMessagesBefore(conversationId, anchorMessageId, limit);
+            if (older.size() < limit && store.loadOlder(conversationId, limit) > 0) {
+                older = store.getMessagesBefore(conversationId, anchorMessageId, limit);
             }
-        });
+            return older;
+        }, ClientExecutors.io());
+    }
+
+    /**
+     * Đồng bộ tăng dần (getMessagesAfter) conversation vào MessageStore
+     * @return future các message mới được thêm vào store
+     */
+    public CompletableFuture<List<Message>> syncMessages(String conversationId) {
+        return MessageStore.getInstance().syncAsync(conversationId);
+    }
+
+    /**
+     * Message mới nhất của conversation (preview). Đọc từ store; chỉ sync khi conversation
+     * có cập nhật mới hơn message cuối trong store.
+     */
+    public CompletableFuture<Message> getLastMessage(Conversation conversation) {
+        String conversationId = conversation.getConversationId();
+        return CompletableFuture.supplyAsync(() -> {
+            MessageStore store = MessageStore.getInstance();
+            if (!store.isUpToDate(conversationId, conversation.getLastUpdate())) {
+                store.syncAsync(conversationId).join();
+            }
+            return store.getLastMessage(conversationId);
+        }, ClientExecutors.io());
     }
 
     /**
@@ -77,7 +149,7 @@ public class MessengerServiceHelper {
                 log.error("Get messages after failed", e);
                 return new ArrayList<>();
             }
-        });
+        }, ClientExecutors.io());
     }
 
     /**
@@ -91,16 +163,18 @@ public class MessengerServiceHelper {
                     throw new IllegalStateException("User not logged in");
                 }
 
-                return rmiClient.getChatService().createPrivateConversation(
+                Conversation conversation = rmiClient.getChatService().createPrivateConversation(
                     currentUser.getUserId(),
                     otherUserId
                 );
+                conversationStore.put(conversation);
+                return conversation;
 
             } catch (Exception e) {
                 log.error("Create private conversation failed", e);
                 return null;
             }
-        });
+        }, ClientExecutors.io());
     }
 
     /**
@@ -109,93 +183,26 @@ public class MessengerServiceHelper {
     public CompletableFuture<Conversation> getCourseConversation(String courseId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return rmiClient.getChatService().getCourseConversation(courseId);
+                Conversation conversation = rmiClient.getChatService().getCourseConversation(courseId);
+                conversationStore.put(conversation);
+                return conversation;
 
             } catch (Exception e) {
                 log.error("Get course conversation failed", e);
                 return null;
             }
-        });
+        }, ClientExecutors.io());
     }
 
     /**
-     * Lưu message vào Firebase (text message)
-     * Note: For file/image/video messages, use P2PMessengerService.saveToFirebase
-     */
-    public CompletableFuture<Message> saveMessageToFirebase(Message message) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // For now, only text messages are supported via ChatService
-                if (message.getType() == null || message.getContent() == null) {
-                    log.warn("Only text messages are supported for Firebase save via ChatService");
-                    return null;
-                }
-
-                User currentUser = rmiClient.getCurrentUser();
-                if (currentUser == null) {
-                    return null;
-                }
-                return rmiClient.getChatService().sendMessage(
-                    message.getConversationId(),
-                    currentUser.getUserId(),
-                    message.getContent()
-                );
-
-            } catch (Exception e) {
-                log.error("Save message to Firebase failed", e);
-                return null;
-            }
-        });
-    }
-
-    /**
-     * Lấy conversation theo ID
+     * Lấy conversation theo ID (cache hit -> future đã hoàn thành, không RMI)
      */
     public CompletableFuture<Conversation> getConversation(String conversationId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Get all user conversations and find the one matching conversationId
-                User currentUser = rmiClient.getCurrentUser();
-                if (currentUser == null) {
-                    return null;
-                }
-                
-                List<Conversation> conversations = rmiClient.getChatService().getUserConversations(currentUser.getUserId());
-                return conversations.stream()
-                    .filter(conv -> conv.getConversationId().equals(conversationId))
-                    .findFirst()
-                    .orElse(null);
-                    
-            } catch (Exception e) {
-                log.error("Get conversation failed", e);
-                return null;
-            }
-        });
-    }
-
-    /**
-     * Lưu file message vào Firebase (FILE/IMAGE/VIDEO với URL)
-     */
-    public CompletableFuture<Message> saveFileMessageToFirebase(Message message) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                User currentUser = rmiClient.getCurrentUser();
-                if (currentUser == null) {
-                    return null;
-                }
-                
-                return rmiClient.getChatService().sendFileMessage(
-                    message.getConversationId(),
-                    currentUser.getUserId(),
-                    message.getType(),
-                    message.getContent() != null ? message.getContent() : ""
-                );
-                
-            } catch (Exception e) {
-                log.error("Save file message to Firebase failed", e);
-                return null;
-            }
-        });
+        Conversation cached = conversationStore.peek(conversationId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> conversationStore.get(conversationId), ClientExecutors.io());
     }
 
     /**
@@ -215,7 +222,7 @@ public class MessengerServiceHelper {
                 log.error("Mark as read failed", e);
                 return false;
             }
-        });
+        }, ClientExecutors.io());
     }
 }
 
@@ -7,19 +7,26 @@ import common.model.Peer;
 import common.model.User;
 import lombok.extern.slf4j.Slf4j;
 import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.network.udp.MulticastChannel;
+import org.example.eduverseclient.network.udp.MulticastMembership;
 import org.example.eduverseclient.network.udp.UDPChatReceiver;
 import org.example.eduverseclient.network.udp.UDPChatSender;
+import org.example.eduverseclient.utils.ClientExecutors;
 import org.example.eduverseclient.utils.MediaProcessor;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Slf4j
 public class P2PMessengerService {
@@ -32,19 +39,26 @@ public class P2PMessengerService {
     private UDPChatSender chatSender;
     private UDPChatReceiver chatReceiver;
     private java.net.DatagramSocket chatSocket;
+
+    // LAN multicast cho course chat (null nếu tắt): mỗi conversation "courseChat" là 1 group
+    private MulticastChannel multicastChannel;
+    private UDPChatSender multicastSender;
+    private UDPChatReceiver multicastReceiver;
     
     // State
     private User currentUser;
     private Peer myPeer;
     private boolean isInitialized = false;
+    private volatile long pausedAt = 0;   // Receiver bị pause (vào meeting) từ lúc này -> bù message khi resume
     
-    // Conversation cache
-    private final Map<String, List<Peer>> conversationPeersCache = new ConcurrentHashMap<>();
-    private final Map<String, Long> lastPeerUpdateTime = new ConcurrentHashMap<>();
-    private static final long PEER_CACHE_TTL = 5000; // 5 seconds
+    // Địa chỉ peer (cache + refresh theo lô ở nền)
+    private final PeerDirectory peerDirectory = PeerDirectory.getInstance();
     
     // Callbacks
     private BiConsumer<Message, Conversation> messageCallback;
+    private BiConsumer<Message, String> sendFailedCallback;
+    private ClientEventBus.Subscription pushSubscription;
+    private ClientEventBus.Subscription sendFailedSubscription;
     
     private P2PMessengerService() {
         this.rmiClient = RMIClient.getInstance();
@@ -84,6 +98,8 @@ public class P2PMessengerService {
             // Khởi tạo UDP sender/receiver
             chatSender = new UDPChatSender(chatSocket, currentUser.getUserId());
             chatReceiver = new UDPChatReceiver(chatSocket);
+            chatReceiver.setFileAckHandler(chatSender::onFileAck);
+            chatReceiver.setFileResumeHandler(chatSender::onFileResume);
             
             // Start receiver với callbacks
             chatReceiver.start(
@@ -100,12 +116,23 @@ public class P2PMessengerService {
                     }
                     
                     @Override
-                    public void onFileComplete(String senderId, String conversationId, String fileName, byte[] fileData) {
-                        handleFileTransfer(senderId, conversationId, fileName, fileData);
+                    public void onFileComplete(String senderId, String conversationId, String fileName, Path file) {
+                        handleFileTransfer(senderId, conversationId, fileName, file);
                     }
                 }
             );
             
+            peerDirectory.start();
+            // Trước khi outbox start: message từ phiên trước cũng có thể bị dead-letter
+            sendFailedSubscription = ClientEventBus.getInstance().subscribe(
+                    ClientEventBus.MessageSendFailed.class, this::onSendFailed);
+            MessageOutbox.getInstance().start();
+            MessengerServiceHelper.getInstance().startConversationSync();
+            pushSubscription = ClientEventBus.getInstance().subscribe(
+                    ClientEventBus.NewMessage.class, event -> onPushedMessage(event.getMessage()));
+            startMulticast();
+            warmUpConversations();
+
             isInitialized = true;
             log.info("✅ P2P Messenger Service initialized on port {}", myPeer.getChatPort());
             
@@ -114,6 +141,62 @@ public class P2PMessengerService {
         }
     }
     
+    /**
+     * Mở socket multicast và join group của các course chat (chạy nền, không chặn initialize).
+     * Socket riêng -> không bị ảnh hưởng bởi pauseReceiver/resumeReceiver khi vào meeting.
+     */
+    private void startMulticast() {
+        multicastChannel = MulticastChannel.open(common.constant.NetworkConfig.MULTICAST_MESSENGER_PORT);
+        if (multicastChannel == null) return;
+        if (!MulticastMembership.getInstance().start(currentUser.getUserId())) {
+            // Không biết ai đang nhận group -> không dùng multicast
+            multicastChannel.close();
+            multicastChannel = null;
+            return;
+        }
+
+        multicastSender = new UDPChatSender(multicastChannel.getSocket(), currentUser.getUserId());
+        multicastReceiver = new UDPChatReceiver(multicastChannel.getSocket());
+        multicastReceiver.start((senderId, conversationId, messageText) -> {
+            // Gói multicast của group khác cùng port hoặc của chính mình -> bỏ
+            if (senderId.equals(currentUser.getUserId()) || !multicastChannel.isJoined(conversationId)) return;
+            handleTextMessage(senderId, conversationId, messageText);
+        }, null);
+    }
+
+    /**
+     * Chạy nền sau initialize: resolve trước peer của mọi participant (gửi tin không phải chờ RMI)
+     * và join multicast group của các course chat.
+     * Server cũ không có getGlobalPeers: PeerDirectory bỏ qua prefetch (mỗi participant sẽ là 1 RMI)
+     */
+    private void warmUpConversations() {
+        MessengerServiceHelper.getInstance().getUserConversations()
+                .thenAccept(conversations -> {
+                    if (conversations == null) return;
+                    List<String> participants = new ArrayList<>();
+                    conversations.forEach(conv -> {
+                        if (conv.getParticipants() != null) participants.addAll(conv.getParticipants());
+                    });
+                    participants.remove(currentUser.getUserId());
+                    peerDirectory.prefetch(participants);
+
+                    if (multicastChannel != null) {
+                        conversations.stream()
+                                .filter(this::isMulticastConversation)
+                                .sorted((a, b) -> Long.compare(b.getLastUpdate(), a.getLastUpdate()))
+                                .forEach(conv -> multicastChannel.join(conv.getConversationId()));
+                    }
+                })
+                .exceptionally(e -> {
+                    log.warn("Failed to warm up conversations: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    private boolean isMulticastConversation(Conversation conv) {
+        return conv != null && "courseChat".equals(conv.getType());
+    }
+
     /**
      * Get chat socket for reuse by MediaStreamManager
      */
@@ -134,6 +217,19 @@ public class P2PMessengerService {
     public void setMessageCallback(BiConsumer<Message, Conversation> callback) {
         this.messageCallback = callback;
     }
+
+    /**
+     * Set callback khi message gửi đi bị server từ chối hẳn (message, lý do) - không lưu được lên server
+     */
+    public void setSendFailedCallback(BiConsumer<Message, String> callback) {
+        this.sendFailedCallback = callback;
+    }
+
+    private void onSendFailed(ClientEventBus.MessageSendFailed event) {
+        if (sendFailedCallback != null) {
+            sendFailedCallback.accept(event.getMessage(), event.getReason());
+        }
+    }
     
     /**
      * Gửi text message
@@ -156,10 +252,7 @@ public class P2PMessengerService {
                 .build();
             
             // 2. Trigger callback để hiển thị ngay trên UI
-            if (messageCallback != null) {
-                Conversation conv = getConversation(conversationId);
-                messageCallback.accept(message, conv);
-            }
+            dispatchMessage(message);
             
             // 3. Gửi UDP P2P
             sendViaUDP(message, conversationId);
@@ -173,6 +266,7 @@ public class P2PMessengerService {
     }
 
     public void pauseReceiver() {
+        pausedAt = System.currentTimeMillis();
         if (chatReceiver != null) {
             chatReceiver.stop(); // Tạm dừng thread receive của Messenger
         }
@@ -197,6 +291,8 @@ public class P2PMessengerService {
 
         // Khởi tạo Receiver mới gắn vào Socket cũ
         chatReceiver = new UDPChatReceiver(chatSocket);
+        chatReceiver.setFileAckHandler(chatSender::onFileAck);
+        chatReceiver.setFileResumeHandler(chatSender::onFileResume);
 
         // Gắn lại các Callback (Logic y hệt như trong hàm initialize)
         chatReceiver.start(
@@ -213,14 +309,36 @@ public class P2PMessengerService {
                     }
 
                     @Override
-                    public void onFileComplete(String senderId, String conversationId, String fileName, byte[] fileData) {
-                        handleFileTransfer(senderId, conversationId, fileName, fileData);
+                    public void onFileComplete(String senderId, String conversationId, String fileName, Path file) {
+                        handleFileTransfer(senderId, conversationId, fileName, file);
                     }
                 }
         );
 
         // Đồng bộ lại tin nhắn từ Firebase để bù đắp cho khoảng thời gian bị Pause
-        // fetchMissedMessages(); // (Optional: Nên làm thêm hàm này sau)
+        fetchMissedMessages();
+    }
+
+    /**
+     * Sync message store cho mọi conversation, đẩy lên UI các message người khác gửi trong lúc receiver bị pause
+     */
+    private void fetchMissedMessages() {
+        long pausedSince = pausedAt;
+        if (pausedSince == 0) return;
+        pausedAt = 0;
+        // pausedAt là giờ client, timestamp message thì không -> lùi thêm biên lệch giờ.
+        // syncMessages chỉ trả message mới thêm vào store nên không dispatch trùng
+        long since = pausedSince - MessageStore.CLOCK_SKEW_MARGIN_MS;
+
+        MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
+        helper.getUserConversations().thenAccept(conversations -> {
+            for (Conversation conv : conversations) {
+                helper.syncMessages(conv.getConversationId()).thenAccept(fresh -> fresh.stream()
+                        .filter(message -> message.getTimestamp() >= since)
+                        .filter(message -> !currentUser.getUserId().equals(message.getSenderId()))
+                        .forEach(this::dispatchMessage));
+            }
+        });
     }
 
     /**
@@ -234,18 +352,24 @@ public class P2PMessengerService {
         
         CompletableFuture.runAsync(() -> {
             try {
-                // 1. Read file
-                byte[] fileData = Files.readAllBytes(file.toPath());
                 String fileName = file.getName();
                 String fileType = MediaProcessor.getFileType(fileName);
                 
-                // 2. Process file (compress nếu là image)
-                byte[] processedData = fileData;
+                // 1. Chuẩn bị payload: image thì compress (nhỏ, cần bytes),
+                //    các file khác memory-map -> không đọc toàn bộ file vào heap
+                byte[] compressedImage = null;
+                ByteBuffer payload;
                 if (type == MessageType.IMAGE) {
-                    processedData = MediaProcessor.compressImage(fileData);
+                    byte[] original = Files.readAllBytes(file.toPath());
+                    // Nén ảnh là việc CPU -> pool cpu (giới hạn theo số core), thread io chỉ chờ
+                    compressedImage = CompletableFuture.supplyAsync(
+                            () -> MediaProcessor.compressImage(original), ClientExecutors.cpu()).join();
+                    payload = ByteBuffer.wrap(compressedImage);
+                } else {
+                    payload = UDPChatSender.mapFile(file.toPath());
                 }
                 
-                // 3. Tạo Message object với content là fileName (tạm thời)
+                // 2. Tạo Message object với content là fileName (tạm thời)
                 Message message = Message.builder()
                     .messageId(UUID.randomUUID().toString())
                     .conversationId(conversationId)
@@ -259,17 +383,17 @@ public class P2PMessengerService {
                 final String finalFileName = fileName;
                 final Message finalMessage = message;
                 
-                // 4. Trigger callback để hiển thị ngay trên UI (với fileName)
-                if (messageCallback != null) {
-                    Conversation conv = getConversation(conversationId);
-                    messageCallback.accept(finalMessage, conv);
-                }
+                // 3. Trigger callback để hiển thị ngay trên UI (với fileName)
+                dispatchMessage(finalMessage);
                 
-                // 5. Gửi UDP P2P (real-time)
-                sendFileViaUDP(finalMessage, processedData, conversationId, finalFileName);
+                // 4. Gửi UDP P2P (real-time)
+                sendFileViaUDP(finalMessage, payload, conversationId, finalFileName);
                 
-                // 6. Upload Cloudinary và lưu Firebase (sender lưu, receiver không lưu)
-                cloudinaryService.uploadFile(processedData, finalFileName, fileType)
+                // 5. Upload Cloudinary và lưu Firebase (sender lưu, receiver không lưu)
+                CompletableFuture<CloudinaryService.UploadResult> upload = compressedImage != null
+                    ? cloudinaryService.uploadFile(compressedImage, finalFileName, fileType)
+                    : cloudinaryService.uploadFile(file, finalFileName, fileType);
+                upload
                     .thenAccept(uploadResult -> {
                         // Update message content với URL (file/image/video URL)
                         finalMessage.setContent(uploadResult.getFileUrl());
@@ -286,7 +410,7 @@ public class P2PMessengerService {
             } catch (Exception e) {
                 log.error("Send file failed", e);
             }
-        });
+        }, ClientExecutors.io());
     }
     
     /**
@@ -294,20 +418,45 @@ public class P2PMessengerService {
      */
     private void sendViaUDP(Message message, String conversationId) {
         try {
-            List<Peer> peers = getConversationPeers(conversationId);
+            String content = message.getContent() != null ? message.getContent() : "";
+            // Peer chưa có trong PeerDirectory: gửi unicast ngay khi resolve xong (không bỏ qua tin đầu tiên)
+            List<Peer> peers = getConversationPeers(conversationId, late -> late.forEach(peer -> {
+                if (peer.getUserId().equals(currentUser.getUserId())) return;
+                log.info("Sending delayed UDP message to newly resolved peer {}", peer.getUserId());
+                chatSender.sendMessage(conversationId, content, peer.getIpAddress(), peer.getChatPort());
+            }));
             log.info("Sending message via UDP to {} peers in conversation {}", peers.size(), conversationId);
             
             if (peers.isEmpty()) {
-                log.warn("No peers found for conversation {}, message will only be saved to Firebase", conversationId);
+                log.info("No resolved peers yet for conversation {}, waiting for peer directory", conversationId);
                 return;
             }
             
+            // Course chat: peer đã xác nhận đang nhận group (beacon) nhận chung 1 gói multicast,
+            // peer khác subnet / chưa join group (conversation mới, vượt giới hạn group, join lỗi) nhận unicast
+            MulticastChannel channel = multicastChannel;
+            boolean useMulticast = channel != null && isMulticastConversation(getConversation(conversationId));
+            boolean multicastSent = false;
+            if (useMulticast) {
+                // Conversation tạo sau warm-up: join khi bắt đầu chat để nhận được trả lời qua multicast
+                channel.join(conversationId);
+            }
+
             for (Peer peer : peers) {
                 if (!peer.getUserId().equals(currentUser.getUserId())) {
+                    if (useMulticast && channel.isConfirmedMember(conversationId, peer)) {
+                        if (!multicastSent) {
+                            multicastSent = true;
+                            log.info("Sending UDP multicast message to conversation {}", conversationId);
+                            multicastSender.sendMessage(conversationId, content,
+                                    MulticastChannel.groupHost(conversationId), channel.getPort());
+                        }
+                        continue;
+                    }
                     log.info("Sending UDP message to peer {} at {}:{}", peer.getUserId(), peer.getIpAddress(), peer.getChatPort());
                     chatSender.sendMessage(
                         conversationId,
-                        message.getContent() != null ? message.getContent() : "",
+                        content,
                         peer.getIpAddress(),
                         peer.getChatPort()
                     );
@@ -319,66 +468,52 @@ public class P2PMessengerService {
     }
     
     /**
-     * Gửi file qua UDP P2P
+     * Gửi file qua UDP P2P - fan-out song song tới mọi peer (xem UDPChatSender.sendFileToAll)
      */
-    private void sendFileViaUDP(Message message, byte[] fileData, String conversationId, String fileName) {
+    private void sendFileViaUDP(Message message, ByteBuffer fileData, String conversationId, String fileName) {
         try {
-            List<Peer> peers = getConversationPeers(conversationId);
-            
-            for (Peer peer : peers) {
-                if (!peer.getUserId().equals(currentUser.getUserId())) {
-                    chatSender.sendFile(
-                        conversationId,
-                        fileName,
-                        fileData,
-                        peer.getIpAddress(),
-                        peer.getChatPort()
-                    );
-                }
+            // Peer chưa resolve: gửi file (blocking) cho họ trên io pool khi PeerDirectory báo lại
+            List<Peer> peers = getConversationPeers(conversationId,
+                    late -> ClientExecutors.io().execute(() -> sendFileToPeers(late, fileData, conversationId, fileName)));
+            sendFileToPeers(peers, fileData, conversationId, fileName);
+        } catch (Exception e) {
+            log.error("Failed to send file via UDP", e);
+        }
+    }
+
+    private void sendFileToPeers(List<Peer> peers, ByteBuffer fileData, String conversationId, String fileName) {
+        List<InetSocketAddress> targets = new ArrayList<>();
+        for (Peer peer : peers) {
+            if (!peer.getUserId().equals(currentUser.getUserId())) {
+                targets.add(new InetSocketAddress(peer.getIpAddress(), peer.getChatPort()));
             }
+        }
+        if (targets.isEmpty()) return;
+
+        try {
+            Map<InetSocketAddress, Boolean> results = chatSender.sendFileToAll(conversationId, fileName, fileData, targets);
+            results.forEach((target, delivered) -> {
+                if (!delivered) {
+                    log.warn("⚠️ File {} not delivered to {} via UDP (message vẫn được lưu lên server)", fileName, target);
+                }
+            });
         } catch (Exception e) {
             log.error("Failed to send file via UDP", e);
         }
     }
     
     /**
-     * Lấy danh sách peers trong conversation
+     * Lấy danh sách peers trong conversation (địa chỉ lấy từ PeerDirectory - không gọi RMI cho từng peer)
+     * @param onResolved nhận peer của participant chưa có trong PeerDirectory khi resolve xong (xem PeerDirectory.getPeers)
      */
-    private List<Peer> getConversationPeers(String conversationId) {
-        // Check cache
-        Long lastUpdate = lastPeerUpdateTime.get(conversationId);
-        if (lastUpdate != null && (System.currentTimeMillis() - lastUpdate) < PEER_CACHE_TTL) {
-            List<Peer> cached = conversationPeersCache.get(conversationId);
-            if (cached != null && !cached.isEmpty()) {
-                return cached;
-            }
-        }
-        
+    private List<Peer> getConversationPeers(String conversationId, Consumer<List<Peer>> onResolved) {
         try {
-            // Query conversation từ server để lấy participants (sync)
             MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
             Conversation conv = helper.getConversation(conversationId).get();
             
             if (conv != null && conv.getParticipants() != null) {
-                List<Peer> peers = new ArrayList<>();
-                
-                // Lấy peer info cho mỗi participant
-                for (String userId : conv.getParticipants()) {
-                    try {
-                        Peer peer = rmiClient.getPeerService().getGlobalPeer(userId);
-                        if (peer != null && peer.isAlive(30000)) { // 30s timeout
-                            peers.add(peer);
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to get peer for user {}: {}", userId, e.getMessage());
-                    }
-                }
-                
-                // Update cache
-                conversationPeersCache.put(conversationId, peers);
-                lastPeerUpdateTime.put(conversationId, System.currentTimeMillis());
-                
-                log.info("Found {} peers for conversation {}", peers.size(), conversationId);
+                List<Peer> peers = peerDirectory.getPeers(conv.getParticipants(), onResolved);
+                log.debug("Found {} peers for conversation {}", peers.size(), conversationId);
                 return peers;
             }
             
@@ -390,27 +525,10 @@ public class P2PMessengerService {
     }
     
     /**
-     * Lưu message vào Firebase (async)
+     * Lưu message vào Firebase qua outbox (ghi journal, gửi theo batch, tự thử lại khi lỗi)
      */
     private void saveToFirebase(Message message) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                // Save text messages via ChatService
-                if (message.getType() == MessageType.TEXT && message.getContent() != null) {
-                    MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-                    helper.saveMessageToFirebase(message).get();
-                    log.info("✅ Message saved to Firebase: {}", message.getMessageId());
-                } else {
-                    // For file/image/video messages, save via RMI ChatService
-                    // Use MessageDAO.sendMessage với type và content (URL)
-                    MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-                    helper.saveFileMessageToFirebase(message).get();
-                    log.info("✅ File message saved to Firebase: {} with URL: {}", message.getMessageId(), message.getContent());
-                }
-            } catch (Exception e) {
-                log.error("Failed to save message to Firebase", e);
-            }
-        });
+        MessageOutbox.getInstance().enqueue(message);
     }
     
     /**
@@ -429,10 +547,7 @@ public class P2PMessengerService {
                 .build();
             
             // Trigger callback
-            if (messageCallback != null) {
-                Conversation conv = getConversation(conversationId);
-                messageCallback.accept(message, conv);
-            }
+            dispatchMessage(message);
             
             // Note: Không lưu Firebase ở receiver - sender đã lưu rồi
             
@@ -442,10 +557,13 @@ public class P2PMessengerService {
     }
     
     /**
-     * Handle file transfer từ UDP
+     * Handle file transfer từ UDP (chạy trên io pool): chuyển file sang thư mục Downloads, message trỏ tới file local (file: URI)
      */
-    private void handleFileTransfer(String senderId, String conversationId, String fileName, byte[] fileData) {
+    private void handleFileTransfer(String senderId, String conversationId, String fileName, Path file) {
         try {
+            Path saved = UDPChatReceiver.moveToDownloads(file, fileName);
+            log.info("📥 Saved received file {} -> {}", fileName, saved);
+
             String fileType = MediaProcessor.getFileType(fileName);
             MessageType type = MediaProcessor.isImage(fileName) ? MessageType.IMAGE :
                               MediaProcessor.isVideo(fileName) ? MessageType.VIDEO :
@@ -456,21 +574,21 @@ public class P2PMessengerService {
                 .conversationId(conversationId)
                 .senderId(senderId)
                 .type(type)
-                .content(fileName) // Store fileName temporarily
+                .content(saved.toUri().toString())
                 .timestamp(System.currentTimeMillis())
                 .build();
             
             // Trigger callback
-            if (messageCallback != null) {
-                Conversation conv = getConversation(conversationId);
-                messageCallback.accept(message, conv);
-            }
+            dispatchMessage(message);
             
             // Note: Không upload Cloudinary và không lưu Firebase ở receiver - sender đã làm rồi
             // Receiver chỉ hiển thị file đã nhận qua UDP, URL sẽ được sync từ Firebase khi load messages
             
         } catch (Exception e) {
             log.error("Handle file transfer failed", e);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {}
         }
     }
     
@@ -479,23 +597,9 @@ public class P2PMessengerService {
      */
     private String getConversationIdForUser(String userId) {
         try {
-            // Query conversations từ server và tìm conversation giữa currentUser và userId
-            MessengerServiceHelper helper = MessengerServiceHelper.getInstance();
-            List<Conversation> conversations = helper.getUserConversations().get();
-            
-            if (conversations != null) {
-                Conversation found = conversations.stream()
-                    .filter(conv -> "private".equals(conv.getType())
-                        && conv.getParticipants() != null
-                        && conv.getParticipants().size() == 2
-                        && conv.getParticipants().contains(currentUser.getUserId())
-                        && conv.getParticipants().contains(userId))
-                    .findFirst()
-                    .orElse(null);
-                
-                if (found != null) {
-                    return found.getConversationId();
-                }
+            Conversation found = MessengerServiceHelper.getInstance().findPrivateConversation(userId).get();
+            if (found != null) {
+                return found.getConversationId();
             }
         } catch (Exception e) {
             log.warn("Failed to find conversation for user {}: {}", userId, e.getMessage());
@@ -505,6 +609,26 @@ public class P2PMessengerService {
         return null;
     }
     
+    /**
+     * Message server push: chỉ cập nhật conversation cache + message store, không đẩy lên UI
+     * (UI nhận qua UDP, tránh hiển thị trùng). Đang pause thì fetchMissedMessages sẽ bù khi resume.
+     */
+    private void onPushedMessage(Message message) {
+        if (pausedAt != 0 || currentUser.getUserId().equals(message.getSenderId())) return;
+        MessengerServiceHelper.getInstance().onMessage(message);
+        MessageStore.getInstance().syncAsync(message.getConversationId());
+    }
+
+    /**
+     * Cập nhật conversation cache rồi đẩy message lên UI
+     */
+    private void dispatchMessage(Message message) {
+        MessengerServiceHelper.getInstance().onMessage(message);
+        if (messageCallback != null) {
+            messageCallback.accept(message, getConversation(message.getConversationId()));
+        }
+    }
+    
     /**
      * Helper: Lấy conversation object
      */
@@ -528,6 +652,27 @@ public class P2PMessengerService {
         if (chatReceiver != null) {
             chatReceiver.stop();
         }
+        if (multicastReceiver != null) {
+            multicastReceiver.stop();
+        }
+        if (multicastChannel != null) {
+            multicastChannel.close();
+            multicastChannel = null;
+        }
+        // Shutdown = logout / thoát app: meeting cũng đã dừng
+        MulticastMembership.getInstance().stop();
+        if (pushSubscription != null) {
+            pushSubscription.close();
+            pushSubscription = null;
+        }
+        if (sendFailedSubscription != null) {
+            sendFailedSubscription.close();
+            sendFailedSubscription = null;
+        }
+        peerDirectory.stop();
+        MessengerServiceHelper.getInstance().stopConversationSync();
+        MessageOutbox.getInstance().close();
+        MessageStore.getInstance().close();
         if (chatSocket != null && !chatSocket.isClosed()) {
             chatSocket.close();
         }
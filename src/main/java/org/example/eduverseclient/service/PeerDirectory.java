@@ -0,0 +1,288 @@
+package org.example.eduverseclient.service;
+
+import common.model.Peer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
+import org.example.eduverseclient.utils.RemoteErrors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * PeerDirectory - Cache địa chỉ peer (IP/port) của các user phía client
+ * - getPeers() không bao giờ gọi RMI: trả về peer đang có trong cache, user chưa biết được đưa vào hàng đợi
+ * - Thread nền refresh theo lô: 1 RMI getGlobalPeers cho tới BATCH_SIZE user
+ *   (server cũ không có getGlobalPeers -> fallback getGlobalPeer từng user, vẫn ở thread nền)
+ * - Chỉ refresh user được hỏi tới gần đây (TRACK_TTL_MS). Ở chế độ fallback: mỗi lần chỉ fetch user chưa resolve
+ *   (có tin đang chờ gửi), refresh toàn bộ thưa hơn (FALLBACK_REFRESH_INTERVAL_MS) và bỏ qua prefetch
+ * - getPeers(userIds, onResolved): user chưa resolve được báo lại qua callback khi fetch xong
+ *   (gửi bù tin nhắn đầu tiên thay vì bỏ qua peer chưa có trong cache)
+ */
+@Slf4j
+public class PeerDirectory {
+    private static PeerDirectory instance;
+
+    private static final long REFRESH_INTERVAL_MS = 5000;
+    private static final long FALLBACK_REFRESH_INTERVAL_MS = 2 * 60 * 1000;  // 1 RMI mỗi user -> refresh thưa hơn
+    private static final long TRACK_TTL_MS = 10 * 60 * 1000;    // Không ai hỏi tới 10 phút -> thôi refresh
+    private static final long PEER_ALIVE_TIMEOUT_MS = 30000;
+    private static final int BATCH_SIZE = 200;
+    private static final long WAIT_TIMEOUT_MS = 30000;           // Callback chờ resolve tối đa (server lỗi kéo dài)
+
+    private final RMIClient rmiClient;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();           // userId -> peer (đã resolve)
+    private final Map<String, Long> lastRequested = new ConcurrentHashMap<>();   // userId -> lần cuối được hỏi
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();           // Chưa resolve lần nào
+    private final Queue<PendingLookup> waiting = new ConcurrentLinkedQueue<>();  // Callback chờ user trong pending
+
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private volatile boolean batchUnsupported = false;
+    private long lastFullRefresh;                                                // Chỉ dùng trên thread refresh
+    private ScheduledExecutorService refreshExecutor;
+
+    private PeerDirectory() {
+        this.rmiClient = RMIClient.getInstance();
+    }
+
+    public static synchronized PeerDirectory getInstance() {
+        if (instance == null) {
+            instance = new PeerDirectory();
+        }
+        return instance;
+    }
+
+    public synchronized void start() {
+        if (refreshExecutor != null) return;
+        refreshExecutor = ClientExecutors.newScheduler("peer-directory");
+        refreshExecutor.scheduleWithFixedDelay(this::refreshTracked,
+                REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = refreshExecutor;
+            refreshExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        peers.clear();
+        lastRequested.clear();
+        pending.clear();
+        waiting.clear();
+    }
+
+    /**
+     * Peer còn sống của các user (không gọi RMI).
+     * User chưa có trong cache được resolve ở nền - lần gọi sau sẽ có.
+     */
+    public List<Peer> getPeers(Collection<String> userIds) {
+        return getPeers(userIds, null);
+    }
+
+    /**
+     * Như getPeers(userIds), thêm: peer còn sống của các user CHƯA có trong cache được đưa cho onResolved
+     * (thread nền của PeerDirectory, 1 lần, chỉ khi có ít nhất 1 peer) sau khi fetch xong
+     */
+    public List<Peer> getPeers(Collection<String> userIds, Consumer<List<Peer>> onResolved) {
+        long now = System.currentTimeMillis();
+        List<Peer> result = new ArrayList<>();
+        Set<String> unresolved = new HashSet<>();
+        boolean missing = false;
+
+        for (String userId : userIds) {
+            if (userId == null) continue;
+            lastRequested.put(userId, now);
+            Peer peer = peers.get(userId);
+            if (peer == null) {
+                missing |= pending.add(userId);
+                unresolved.add(userId);
+            } else if (peer.isAlive(PEER_ALIVE_TIMEOUT_MS)) {
+                result.add(peer);
+            }
+        }
+
+        if (onResolved != null && !unresolved.isEmpty()) {
+            waiting.add(new PendingLookup(unresolved, onResolved, now));
+        }
+        if (missing) {
+            refreshPendingAsync();
+        }
+        return result;
+    }
+
+    /**
+     * Đưa user vào cache trước khi cần (vd. participants của mọi conversation lúc khởi động).
+     * Chỉ dùng getGlobalPeers: server cũ (fallback từng user) thì bỏ qua, user được resolve khi thật sự cần gửi
+     */
+    public void prefetch(Collection<String> userIds) {
+        ScheduledExecutorService executor = refreshExecutor;
+        if (executor == null || batchUnsupported) return;
+        List<String> missing = userIds.stream()
+                .filter(userId -> userId != null && !peers.containsKey(userId))
+                .distinct()
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) return;
+        try {
+            executor.execute(() -> {
+                if (!fetch(missing, false)) return;
+                long now = System.currentTimeMillis();
+                missing.forEach(userId -> lastRequested.putIfAbsent(userId, now));
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Đang stop
+        }
+    }
+
+    private void refreshPendingAsync() {
+        ScheduledExecutorService executor = refreshExecutor;
+        if (executor == null || !refreshQueued.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> {
+                refreshQueued.set(false);
+                fetch(new ArrayList<>(pending), true);
+                completeWaiting();
+            });
+        } catch (Exception e) {
+            refreshQueued.set(false);
+        }
+    }
+
+    private void refreshTracked() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - TRACK_TTL_MS;
+        lastRequested.entrySet().removeIf(entry -> {
+            if (entry.getValue() >= cutoff) return false;
+            peers.remove(entry.getKey());
+            pending.remove(entry.getKey());
+            return true;
+        });
+
+        // Fallback: mỗi user 1 RMI -> thường chỉ fetch user chưa resolve, refresh toàn bộ theo chu kỳ dài
+        if (batchUnsupported && now - lastFullRefresh < FALLBACK_REFRESH_INTERVAL_MS) {
+            if (!pending.isEmpty()) {
+                fetch(new ArrayList<>(pending), true);
+            }
+        } else {
+            lastFullRefresh = now;
+            fetch(new ArrayList<>(lastRequested.keySet()), true);
+        }
+        completeWaiting();
+    }
+
+    /**
+     * Gọi callback của các lookup mà mọi user đã được fetch (còn pending = fetch lỗi, chờ lần refresh sau)
+     */
+    private void completeWaiting() {
+        long now = System.currentTimeMillis();
+        for (Iterator<PendingLookup> it = waiting.iterator(); it.hasNext(); ) {
+            PendingLookup lookup = it.next();
+            boolean resolved = lookup.userIds.stream().noneMatch(pending::contains);
+            if (!resolved && now - lookup.createdAt < WAIT_TIMEOUT_MS) continue;
+            it.remove();
+
+            List<Peer> found = new ArrayList<>();
+            for (String userId : lookup.userIds) {
+                Peer peer = peers.get(userId);
+                if (peer != null && peer.isAlive(PEER_ALIVE_TIMEOUT_MS)) {
+                    found.add(peer);
+                }
+            }
+            if (found.isEmpty()) continue;
+            try {
+                lookup.callback.accept(found);
+            } catch (Exception e) {
+                log.error("Error in peer lookup callback", e);
+            }
+        }
+    }
+
+    /**
+     * @param allowFallback false -> không fetch từng user khi server không có getGlobalPeers
+     * @return false nếu có lô không fetch được
+     */
+    private boolean fetch(List<String> userIds, boolean allowFallback) {
+        for (int from = 0; from < userIds.size(); from += BATCH_SIZE) {
+            List<String> batch = userIds.subList(from, Math.min(userIds.size(), from + BATCH_SIZE));
+            Map<String, Peer> fetched = fetchBatch(batch, allowFallback);
+            if (fetched == null) return false;  // Server lỗi -> giữ cache cũ (và pending), lần sau thử lại
+
+            for (String userId : batch) {
+                Peer peer = fetched.get(userId);
+                if (peer != null) {
+                    peers.put(userId, peer);
+                } else {
+                    peers.remove(userId);   // Offline
+                }
+                pending.remove(userId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return null nếu không liên lạc được server (hoặc server cũ và !allowFallback)
+     */
+    private Map<String, Peer> fetchBatch(List<String> userIds, boolean allowFallback) {
+        if (!batchUnsupported) {
+            try {
+                Map<String, Peer> result = rmiClient.getPeerService().getGlobalPeers(new ArrayList<>(userIds));
+                return result != null ? result : new HashMap<>();
+            } catch (Exception e) {
+                if (!RemoteErrors.isMissingMethod(e)) {
+                    log.warn("Failed to refresh peer directory: {}", e.getMessage());
+                    return null;
+                }
+                // Server cũ không nhận ra method hash -> nhớ lại và dùng fallback
+                log.warn("⚠️ Server does not support getGlobalPeers, falling back to single lookups");
+                batchUnsupported = true;
+            }
+        }
+        if (!allowFallback) {
+            return null;
+        }
+
+        Map<String, Peer> result = new HashMap<>();
+        for (String userId : userIds) {
+            try {
+                Peer peer = rmiClient.getPeerService().getGlobalPeer(userId);
+                if (peer != null) {
+                    result.put(userId, peer);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to get peer for user {}: {}", userId, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static final class PendingLookup {
+        private final Set<String> userIds;
+        private final Consumer<List<Peer>> callback;
+        private final long createdAt;
+
+        private PendingLookup(Set<String> userIds, Consumer<List<Peer>> callback, long createdAt) {
+            this.userIds = userIds;
+            this.callback = callback;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.eduverseclient.service;
+
+import common.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.RMIClient;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * UserDirectory - Cache profile user (tên, avatar) phía client cho message bubble / conversation card
+ * - TTL + LRU (MAX_ENTRIES): profile ít đổi, nhưng không giữ mãi và không phình vô hạn
+ * - Gộp các lookup đồng thời cho cùng userId thành 1 RMI getUserById (in-flight future dùng chung)
+ * - RMI chạy trên pool giới hạn MAX_CONCURRENT_LOOKUPS thread - mở conversation đông người
+ *   không tạo hàng chục thread
+ */
+@Slf4j
+public class UserDirectory {
+    private static UserDirectory instance;
+
+    private static final long TTL_MS = 5 * 60 * 1000;
+    private static final int MAX_ENTRIES = 500;
+    private static final int MAX_CONCURRENT_LOOKUPS = 4;
+
+    private final RMIClient rmiClient;
+    private final ExecutorService executor;
+
+    // userId -> profile; accessOrder = true -> thứ tự LRU (mọi truy cập phải synchronized trên cache)
+    private final LinkedHashMap<String, CachedUser> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+
+    private static final class CachedUser {
+        final User user;
+        final long fetchedAt;
+
+        CachedUser(User user, long fetchedAt) {
+            this.user = user;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isFresh(long now) {
+            return now - fetchedAt < TTL_MS;
+        }
+    }
+
+    private UserDirectory() {
+        this.rmiClient = RMIClient.getInstance();
+
+        this.executor = ClientExecutors.newPool("user-directory", MAX_CONCURRENT_LOOKUPS);
+    }
+
+    public static synchronized UserDirectory getInstance() {
+        if (instance == null) {
+            instance = new UserDirectory();
+        }
+        return instance;
+    }
+
+    /**
+     * Profile của user: cache còn hạn -> future đã hoàn thành (không RMI);
+     * đang có lookup cho userId này -> dùng chung future đó.
+     * Future hoàn thành với null nếu không tìm thấy / lỗi RMI (lỗi không được cache).
+     */
+    public CompletableFuture<User> getUser(String userId) {
+        if (userId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        User cached = peek(userId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return inFlight.computeIfAbsent(userId, this::fetchAsync);
+    }
+
+    /**
+     * Chỉ đọc cache (không RMI), null nếu chưa có hoặc đã hết hạn
+     */
+    public User peek(String userId) {
+        synchronized (cache) {
+            CachedUser entry = cache.get(userId);
+            return entry != null && entry.isFresh(System.currentTimeMillis()) ? entry.user : null;
+        }
+    }
+
+    /**
+     * Nạp trước profile (vd. participants của conversation vừa mở) - user đã có trong cache bị bỏ qua
+     */
+    public void prefetch(Collection<String> userIds) {
+        if (userIds == null) return;
+        for (String userId : userIds) {
+            if (userId != null && peek(userId) == null) {
+                getUser(userId);
+            }
+        }
+    }
+
+    /**
+     * Bỏ profile khỏi cache (vd. user vừa đổi avatar)
+     */
+    public void invalidate(String userId) {
+        synchronized (cache) {
+            cache.remove(userId);
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private CompletableFuture<User> fetchAsync(String userId) {
+        CompletableFuture<User> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            User user = null;
+            try {
+                user = rmiClient.getAuthService().getUserById(userId);
+                if (user != null) {
+                    synchronized (cache) {
+                        cache.put(userId, new CachedUser(user, System.currentTimeMillis()));
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Failed to get user {}: {}", userId, e.getMessage());
+            } finally {
+                // Xóa in-flight trước khi complete: caller tiếp theo thấy cache, không thấy future cũ
+                inFlight.remove(userId, future);
+                future.complete(user);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.eduverseclient.service;
+
+import common.constant.AntiCheatConfig;
+import common.model.exam.Violation;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ViolationAggregator - Gộp các kết quả vi phạm liên tiếp cùng loại thành 1 episode
+ * - Mỗi user có tối đa 1 episode đang mở
+ * - Episode đóng khi đổi loại vi phạm, khi không thấy vi phạm quá mergeGapMs, hoặc khi dài quá maxEpisodeMs
+ * - Các episode đã đóng được gửi lên server theo batch mỗi flushIntervalMs; lỗi kết nối -> giữ lại gửi lần sau
+ *   (tối đa MAX_PENDING_EPISODES, bỏ episode cũ nhất khi vượt)
+ */
+@Slf4j
+public class ViolationAggregator {
+    private static final int MAX_PENDING_EPISODES = 500;
+
+    private final String examId;
+    private final long mergeGapMs;
+    private final long maxEpisodeMs;
+    private final long flushIntervalMs;
+
+    private final Map<String, Violation> openEpisodes = new HashMap<>();  // userId -> episode đang mở
+    private final List<Violation> closedEpisodes = new ArrayList<>();
+    private ScheduledExecutorService flushExecutor;
+
+    public ViolationAggregator(String examId) {
+        this(examId, AntiCheatConfig.VIOLATION_MERGE_GAP_MS,
+                AntiCheatConfig.VIOLATION_MAX_EPISODE_MS,
+                AntiCheatConfig.VIOLATION_FLUSH_INTERVAL_MS);
+    }
+
+    public ViolationAggregator(String examId, long mergeGapMs, long maxEpisodeMs, long flushIntervalMs) {
+        this.examId = examId;
+        this.mergeGapMs = mergeGapMs;
+        this.maxEpisodeMs = maxEpisodeMs;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public synchronized void start() {
+        if (flushExecutor != null) return;
+        flushExecutor = ClientExecutors.newScheduler("violation-aggregator");
+        flushExecutor.scheduleAtFixedRate(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Dừng timer, đóng tất cả episode đang mở và gửi nốt lên server
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = flushExecutor;
+            flushExecutor = null;
+            closedEpisodes.addAll(openEpisodes.values());
+            openEpisodes.clear();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        flush();
+    }
+
+    public synchronized void add(String userId, String userName, AntiCheatService.AnalysisResult result, long timestamp) {
+        String violationType = String.join(", ", result.flags);
+        Violation episode = openEpisodes.get(userId);
+
+        if (episode != null && episode.getViolationType().equals(violationType)
+                && timestamp - lastSeen(episode) <= mergeGapMs
+                && timestamp - episode.getTimestamp() < maxEpisodeMs) {
+            episode.setEndTimestamp(timestamp);
+            episode.setOccurrences(episode.getOccurrences() + 1);
+            if (result.suspicionScore > episode.getSuspicionScore()) {
+                episode.setSuspicionScore(result.suspicionScore);
+                episode.setDecision(result.decision);
+            }
+            return;
+        }
+
+        if (episode != null) {
+            closedEpisodes.add(episode);
+        }
+
+        openEpisodes.put(userId, Violation.builder()
+                .violationId(UUID.randomUUID().toString())
+                .examId(examId)
+                .userId(userId)
+                .userName(userName)
+                .violationType(violationType)
+                .suspicionScore(result.suspicionScore)
+                .decision(result.decision)
+                .flags(new ArrayList<>(result.flags))
+                .timestamp(timestamp)
+                .endTimestamp(timestamp)
+                .occurrences(1)
+                .build());
+    }
+
+    /**
+     * Đóng các episode đã hết hạn và gửi tất cả episode đã đóng lên server (1 RMI call)
+     */
+    public void flush() {
+        List<Violation> batch;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            openEpisodes.values().removeIf(episode -> {
+                boolean expired = now - lastSeen(episode) > mergeGapMs
+                        || now - episode.getTimestamp() >= maxEpisodeMs;
+                if (expired) {
+                    closedEpisodes.add(episode);
+                }
+                return expired;
+            });
+
+            if (closedEpisodes.isEmpty()) return;
+            batch = new ArrayList<>(closedEpisodes);
+            closedEpisodes.clear();
+        }
+
+        List<Violation> failed = ExamService.getInstance().reportViolations(batch);
+        if (failed.isEmpty()) return;
+
+        // Chưa tới server -> đưa lại đầu hàng đợi (giữ thứ tự thời gian), gửi ở lần flush sau
+        synchronized (this) {
+            closedEpisodes.addAll(0, failed);
+            int overflow = closedEpisodes.size() - MAX_PENDING_EPISODES;
+            if (overflow > 0) {
+                closedEpisodes.subList(0, overflow).clear();
+                log.warn("⚠️ Dropped {} oldest violation episodes, server unreachable", overflow);
+            }
+        }
+    }
+
+    private long lastSeen(Violation episode) {
+        return Math.max(episode.getTimestamp(), episode.getEndTimestamp());
+    }
+}
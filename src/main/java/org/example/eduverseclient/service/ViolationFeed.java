@@ -0,0 +1,168 @@
+package org.example.eduverseclient.service;
+
+import common.model.exam.Violation;
+import common.rmi.IViolationCallback;
+import lombok.extern.slf4j.Slf4j;
+import org.example.eduverseclient.utils.ClientExecutors;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ViolationFeed - Nguồn violations cho proctor
+ * - Ưu tiên push: export IViolationCallback và subscribe với server
+ * - Polling bằng cursor (timestamp lớn nhất đã thấy) chỉ là safety-net:
+ *   chậm khi push hoạt động, nhanh khi server không hỗ trợ push
+ * - Loại bỏ violation trùng (push + poll) theo violationId; chỉ nhớ id trong cửa sổ poll (cursor - 2 * lookback),
+ *   violation cũ hơn không còn được poll trả về nên set không lớn dần theo thời gian thi
+ * - start()/stop() gọi RMI (export, subscribe) -> không gọi trên FX thread
+ */
+@Slf4j
+public class ViolationFeed implements IViolationCallback {
+
+    private static final long PUSH_SAFETY_POLL_MS = 15000;
+    private static final long FALLBACK_POLL_MS = 2000;
+
+    // Episode được báo cáo sau khi kết thúc -> timestamp có thể nhỏ hơn cursor, nên poll lùi lại 1 khoảng
+    private static final long POLL_LOOKBACK_MS = common.constant.AntiCheatConfig.VIOLATION_MAX_EPISODE_MS
+            + common.constant.AntiCheatConfig.VIOLATION_FLUSH_INTERVAL_MS * 2;
+
+    private final String examId;
+    private final Consumer<List<Violation>> listener;
+    private final ExamService examService = ExamService.getInstance();
+
+    private final Map<String, Long> seenViolationIds = new ConcurrentHashMap<>();   // violationId -> seenAt
+    private volatile long cursor;
+    private boolean exported = false;
+    private boolean subscribed = false;
+    private boolean starting = false;
+    private boolean stopped = false;
+    private ScheduledExecutorService pollExecutor;
+
+    /**
+     * @param listener nhận các violation MỚI (chưa thấy), gọi trên thread RMI/poll - không phải FX thread
+     */
+    public ViolationFeed(String examId, Consumer<List<Violation>> listener) {
+        this.examId = examId;
+        this.listener = listener;
+    }
+
+    public void start() {
+        synchronized (this) {
+            // stop() có thể chạy trước start() khi cả hai được đẩy sang thread nền
+            if (starting || pollExecutor != null || stopped) return;
+            starting = true;
+            cursor = System.currentTimeMillis();
+        }
+
+        // Export + subscribe là RMI -> không giữ monitor (stop() không phải chờ)
+        boolean didExport = false;
+        boolean didSubscribe = false;
+        try {
+            UnicastRemoteObject.exportObject(this, 0);
+            didExport = true;
+            didSubscribe = examService.subscribeViolations(examId, this);
+        } catch (RemoteException e) {
+            log.warn("⚠️ Failed to export violation callback: {}", e.getMessage());
+        }
+
+        synchronized (this) {
+            starting = false;
+            if (!stopped) {
+                exported = didExport;
+                subscribed = didSubscribe;
+                long pollInterval = subscribed ? PUSH_SAFETY_POLL_MS : FALLBACK_POLL_MS;
+                pollExecutor = ClientExecutors.newScheduler("violation-feed-poll");
+                pollExecutor.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+                log.info("✅ Violation feed started - mode: {}, poll interval: {}ms",
+                        subscribed ? "PUSH" : "POLL", pollInterval);
+                return;
+            }
+        }
+
+        // stop() chạy trong lúc đang subscribe -> hoàn tác
+        release(didSubscribe, didExport);
+    }
+
+    public void stop() {
+        ScheduledExecutorService executor;
+        boolean wasSubscribed;
+        boolean wasExported;
+        synchronized (this) {
+            executor = pollExecutor;
+            pollExecutor = null;
+            wasSubscribed = subscribed;
+            wasExported = exported;
+            stopped = true;
+            subscribed = false;
+            exported = false;
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        release(wasSubscribed, wasExported);
+        seenViolationIds.clear();
+    }
+
+    private void release(boolean unsubscribe, boolean unexport) {
+        if (unsubscribe) {
+            examService.unsubscribeViolations(examId, this);
+        }
+        if (unexport) {
+            try {
+                UnicastRemoteObject.unexportObject(this, true);
+            } catch (Exception e) {
+                log.debug("Unexport violation callback failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onViolations(List<Violation> violations) throws RemoteException {
+        deliver(violations);
+    }
+
+    private void poll() {
+        // Id ngoài cửa sổ poll không thể bị trả về lần nữa -> quên đi
+        long horizon = cursor - POLL_LOOKBACK_MS * 2;
+        seenViolationIds.values().removeIf(seenAt -> seenAt < horizon);
+        try {
+            deliver(examService.getRecentViolations(examId, cursor - POLL_LOOKBACK_MS));
+        } catch (Exception e) {
+            log.warn("Failed to poll violations: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(List<Violation> violations) {
+        if (violations == null || violations.isEmpty()) return;
+
+        List<Violation> fresh = new ArrayList<>();
+        for (Violation violation : violations) {
+            if (violation == null) continue;
+            long seenAt = Math.max(violation.getTimestamp(), violation.getEndTimestamp());
+            String id = violation.getViolationId();
+            if (id != null && seenViolationIds.putIfAbsent(id, seenAt) != null) continue;
+            fresh.add(violation);
+
+            if (seenAt > cursor) {
+                cursor = seenAt;
+            }
+        }
+
+        if (!fresh.isEmpty()) {
+            try {
+                listener.accept(fresh);
+            } catch (Exception e) {
+                log.error("Error in violation feed listener", e);
+            }
+        }
+    }
+}
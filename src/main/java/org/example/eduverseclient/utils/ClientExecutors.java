@@ -0,0 +1,175 @@
+package org.example.eduverseclient.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClientExecutors - Thread pool dùng chung của client (thay cho new Thread(...).start() và common ForkJoinPool)
+ * - io():  việc chặn (RMI, HTTP, đọc/ghi file) - nhiều thread, tự co lại khi rảnh.
+ *          Không chạy RMI trên ForkJoinPool.commonPool(): pool đó chỉ có (số core - 1) thread và
+ *          parallel stream / CompletableFuture mặc định cũng dùng nó.
+ * - cpu(): việc tính toán (nén ảnh, encode) - số thread = số core, không để việc CPU tranh nhau quá số core
+ * - newPool(): pool riêng có giới hạn cho 1 service (cache, sync...), newScheduler(): việc định kỳ,
+ *   schedule(): chạy 1 lần sau delay
+ * Mọi thread đều là daemon, có tên, lỗi không bắt được được log. Pool tạo qua đây ghi nhận số task,
+ * thời gian chờ trong queue và thời gian chạy (LatencyHistogram) - xem logStats().
+ * JDK 17 chưa có virtual thread nên io() là pool platform thread lớn; khi lên JDK 21 chỉ cần đổi io().
+ */
+@Slf4j
+public final class ClientExecutors {
+
+    private static final int IO_THREADS = 64;
+    private static final int CPU_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final List<InstrumentedPool> POOLS = new CopyOnWriteArrayList<>();
+
+    private static final ExecutorService IO = newPool("io", IO_THREADS);
+    private static final ExecutorService CPU = newPool("cpu", CPU_THREADS);
+    private static final ScheduledExecutorService TIMER = newScheduler("client-timer");
+
+    private ClientExecutors() {
+    }
+
+    /**
+     * Pool cho việc chặn I/O (RMI, HTTP, file)
+     */
+    public static ExecutorService io() {
+        return IO;
+    }
+
+    /**
+     * Pool cho việc tính toán (nén ảnh, encode frame)
+     */
+    public static ExecutorService cpu() {
+        return CPU;
+    }
+
+    /**
+     * Chạy task trên io() sau delay - không giữ thread nào trong lúc chờ (thay cho new Thread + Thread.sleep)
+     */
+    public static void schedule(Runnable task, long delay, TimeUnit unit) {
+        TIMER.schedule(() -> IO.execute(task), delay, unit);
+    }
+
+    /**
+     * Pool riêng tối đa maxThreads thread "name-N" (thread rảnh quá KEEP_ALIVE_SECONDS thì dừng), queue không giới hạn.
+     * Pool theo instance (receiver, audio...) phải được shutdown khi xong - logStats() thôi giữ pool từ lúc đó
+     */
+    public static ExecutorService newPool(String name, int maxThreads) {
+        InstrumentedPool pool = new InstrumentedPool(name, maxThreads);
+        POOLS.add(pool);
+        return pool;
+    }
+
+    /**
+     * Scheduler 1 thread tên name, cho việc định kỳ (refresh, flush, poll)
+     */
+    public static ScheduledExecutorService newScheduler(String name) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> newThread(name, r));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Thread daemon có tên cho vòng lặp chạy lâu (receiver, writer) - chưa start
+     */
+    public static Thread newThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.setUncaughtExceptionHandler((thread, e) -> log.error("❌ Uncaught exception in {}", thread.getName(), e));
+        return t;
+    }
+
+    /**
+     * Thread factory đặt tên "prefix-N"
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> newThread(prefix + "-" + threadCount.incrementAndGet(), r);
+    }
+
+    /**
+     * Log thống kê các pool đã có task (vd. khi tắt client)
+     */
+    public static void logStats() {
+        for (InstrumentedPool pool : POOLS) {
+            if (pool.submitted.get() > 0) {
+                log.info("📊 {}", pool.stats());
+            }
+        }
+    }
+
+    /**
+     * ThreadPoolExecutor ghi nhận thời gian chờ queue và thời gian chạy của từng task
+     */
+    private static final class InstrumentedPool extends ThreadPoolExecutor {
+        private final String name;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram runTime = new LatencyHistogram();
+
+        InstrumentedPool(String name, int maxThreads) {
+            super(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory(name));
+            this.name = name;
+            allowCoreThreadTimeOut(true);
+        }
+
+        // Bỏ khỏi POOLS khi shutdown: pool tạo theo instance không bị giữ lại suốt đời client
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            release();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending = super.shutdownNow();
+            release();
+            return pending;
+        }
+
+        private void release() {
+            if (POOLS.remove(this) && submitted.get() > 0) {
+                log.debug("📊 {}", stats());
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            long enqueuedAt = System.nanoTime();
+            super.execute(() -> {
+                long startedAt = System.nanoTime();
+                queueWait.recordNanos(startedAt - enqueuedAt);
+                try {
+                    command.run();
+                } catch (RuntimeException | Error e) {
+                    failed.incrementAndGet();   // Log bởi UncaughtExceptionHandler của thread
+                    throw e;
+                } finally {
+                    runTime.recordNanos(System.nanoTime() - startedAt);
+                }
+            });
+        }
+
+        String stats() {
+            return String.format("%s pool: active=%d threads=%d queued=%d submitted=%d completed=%d failed=%d | wait %s | run %s",
+                    name, getActiveCount(), getPoolSize(), getQueue().size(), submitted.get(),
+                    getCompletedTaskCount(), failed.get(), queueWait.summary(), runTime.summary());
+        }
+    }
+}
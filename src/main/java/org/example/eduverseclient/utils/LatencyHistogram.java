@@ -0,0 +1,104 @@
+package org.example.eduverseclient.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram - Histogram độ trễ kiểu HDR (log-linear buckets), lock-free
+ * - Mỗi lũy thừa của 2 được chia thành 32 bucket tuyến tính (sai số ~3%)
+ * - Giá trị ghi nhận tính bằng micro giây, tối đa ~2^40 µs
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount());
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(value);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public double getMeanMillis() {
+        long count = totalCount.get();
+        return count == 0 ? 0.0 : totalMicros.get() / 1000.0 / count;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return giá trị (ms) tại percentile, 0 nếu chưa có dữ liệu
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) return 0.0;
+
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * Ví dụ: "n=120 p50=12.3ms p95=40.1ms p99=88.0ms max=95.2ms"
+     */
+    public String summary() {
+        return String.format("n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), getPercentileMillis(50), getPercentileMillis(95),
+                getPercentileMillis(99), getMaxMillis());
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        if (shift > MAGNITUDES) {
+            return bucketCount() - 1;
+        }
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long bucketUpperBound(int index) {
+        int shift = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    private static int bucketCount() {
+        return (MAGNITUDES + 1) * SUB_BUCKETS;
+    }
+}
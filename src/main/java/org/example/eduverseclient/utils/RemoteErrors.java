@@ -0,0 +1,43 @@
+package org.example.eduverseclient.utils;
+
+import org.example.eduverseclient.network.rmi.ResilientStub;
+
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.ServerException;
+import java.rmi.UnknownHostException;
+import java.rmi.UnmarshalException;
+
+/**
+ * RemoteErrors - Phân loại lỗi RMI phía client
+ */
+public final class RemoteErrors {
+
+    private RemoteErrors() {
+    }
+
+    /**
+     * Server không có method này (server cũ): server không nhận ra method hash và trả về UnmarshalException,
+     * client nhận nó bọc trong ServerException (không phải UnmarshalException trực tiếp).
+     * Caller nên nhớ lại (volatile flag) và dùng fallback, không retry.
+     */
+    public static boolean isMissingMethod(Throwable error) {
+        return error instanceof ServerException && error.getCause() instanceof UnmarshalException;
+    }
+
+    /**
+     * Lỗi kết nối / hết deadline phía client: server chưa xử lý (hoặc không biết) -> thử lại được.
+     * Exception từ phía server (ServerException, RuntimeException...) thì không: gửi lại cũng bị từ chối.
+     */
+    public static boolean isConnectionFailure(Throwable error) {
+        return error instanceof ConnectException              // gồm CircuitOpenException
+                || error instanceof ConnectIOException
+                || error instanceof UnknownHostException
+                || error instanceof NoSuchObjectException
+                || error instanceof ResilientStub.DeadlineExceededException
+                // Mất kết nối khi đang đọc response
+                || (error instanceof UnmarshalException && error.getCause() instanceof IOException);
+    }
+}
@@ -0,0 +1,188 @@
+package org.example.eduverseclient.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AntiCheatService batch mode với AI service giả (com.sun.net.httpserver) trên cổng ngẫu nhiên
+ */
+class AntiCheatServiceTest {
+
+    private static final byte[] FRAME_A = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1, 2, 3};
+    private static final byte[] FRAME_B = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 4, 5, 6, 7};
+
+    private HttpServer server;
+    private String baseUrl;
+
+    // Request cuối cùng server nhận được
+    private volatile String requestPath;
+    private volatile String requestContentType;
+    private volatile byte[] requestBody;
+
+    // Response server sẽ trả
+    private volatile int responseStatus = 200;
+    private volatile String responseBody = "{\"results\": []}";
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requestPath = exchange.getRequestURI().getPath();
+            requestContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            requestBody = exchange.getRequestBody().readAllBytes();
+
+            byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(responseStatus, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static List<AntiCheatService.BatchFrame> frames() {
+        return List.of(
+                new AntiCheatService.BatchFrame("student-a", 1000L, FRAME_A),
+                new AntiCheatService.BatchFrame("student-b", 2000L, FRAME_B));
+    }
+
+    private static Map<String, AntiCheatService.AnalysisResult> await(AntiCheatService service,
+                                                                      List<AntiCheatService.BatchFrame> frames)
+            throws Exception {
+        return service.analyzeBatch("exam-1", frames).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void jsonBatchEncodesAllFramesAndParsesResults() throws Exception {
+        responseBody = "{\"results\": ["
+                + "{\"user_id\": \"student-a\", \"decision\": \"VIOLATION\", \"suspicion_score\": 0.91,"
+                + " \"flags\": [\"multiple_faces\"], \"metrics\": {\"faces\": 2, \"note\": \"x\", \"gaze_ok\": false}},"
+                + "{\"user_id\": \"student-b\", \"decision\": \"OK\", \"suspicion_score\": 0.05}]}";
+
+        Map<String, AntiCheatService.AnalysisResult> results = await(new AntiCheatService(baseUrl, false), frames());
+
+        assertEquals("/analyze/frame/batch", requestPath);
+        assertTrue(requestContentType.startsWith("application/json"));
+
+        JsonObject payload = JsonParser.parseString(new String(requestBody, StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals("exam-1", payload.get("session_id").getAsString());
+        JsonArray items = payload.getAsJsonArray("frames");
+        assertEquals(2, items.size());
+        JsonObject first = items.get(0).getAsJsonObject();
+        assertEquals("student-a", first.get("user_id").getAsString());
+        assertEquals(1000L, first.get("timestamp").getAsLong());
+        assertArrayEquals(FRAME_A, Base64.getDecoder().decode(first.get("frame_base64").getAsString()));
+        assertEquals("student-b", items.get(1).getAsJsonObject().get("user_id").getAsString());
+
+        assertEquals(2, results.size());
+        AntiCheatService.AnalysisResult a = results.get("student-a");
+        assertTrue(a.isViolation());
+        assertEquals(0.91, a.suspicionScore, 1e-9);
+        assertEquals(List.of("multiple_faces"), a.flags);
+        assertEquals(2.0, a.metrics.get("faces"));
+        assertEquals("x", a.metrics.get("note"));
+        assertEquals(false, a.metrics.get("gaze_ok"));
+        AntiCheatService.AnalysisResult b = results.get("student-b");
+        assertFalse(b.isViolation());
+        assertFalse(b.isWarning());
+    }
+
+    @Test
+    void binaryBatchSendsRawJpegAsMultipart() throws Exception {
+        responseBody = "{\"results\": [{\"user_id\": \"student-b\", \"decision\": \"WARNING\", \"suspicion_score\": 0.6}]}";
+
+        Map<String, AntiCheatService.AnalysisResult> results = await(new AntiCheatService(baseUrl, true), frames());
+
+        assertEquals("/analyze/frame/batch/raw", requestPath);
+        assertTrue(requestContentType.startsWith("multipart/form-data; boundary="));
+        String boundary = requestContentType.substring(requestContentType.indexOf("boundary=") + "boundary=".length());
+
+        String body = new String(requestBody, StandardCharsets.ISO_8859_1);
+        assertTrue(body.startsWith("--" + boundary + "\r\n"));
+        assertTrue(body.endsWith("--" + boundary + "--\r\n"));
+        assertTrue(body.contains("name=\"session_id\"\r\n\r\nexam-1\r\n"));
+        assertTrue(body.contains("\"user_id\":\"student-a\",\"timestamp\":1000"));
+        assertTrue(body.contains("filename=\"student-a\"\r\nContent-Type: image/jpeg\r\n\r\n"
+                + new String(FRAME_A, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertTrue(body.contains("filename=\"student-b\"\r\nContent-Type: image/jpeg\r\n\r\n"
+                + new String(FRAME_B, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertFalse(body.contains("frame_base64"));
+
+        assertEquals(1, results.size());
+        assertTrue(results.get("student-b").isWarning());
+    }
+
+    @Test
+    void serverErrorYieldsEmptyResults() throws Exception {
+        responseStatus = 500;
+        responseBody = "{\"detail\": \"boom\"}";
+
+        assertTrue(await(new AntiCheatService(baseUrl, false), frames()).isEmpty());
+    }
+
+    @Test
+    void malformedOrIncompleteResponsesYieldEmptyResults() throws Exception {
+        AntiCheatService service = new AntiCheatService(baseUrl, false);
+
+        responseBody = "not json";
+        assertTrue(await(service, frames()).isEmpty());
+
+        responseBody = "{\"results\": {\"user_id\": \"student-a\"}}";
+        assertTrue(await(service, frames()).isEmpty());
+
+        responseBody = "";
+        assertTrue(await(service, frames()).isEmpty());
+    }
+
+    @Test
+    void resultEntriesWithoutUserIdAreSkipped() throws Exception {
+        responseBody = "{\"results\": [42, {\"decision\": \"VIOLATION\"},"
+                + " {\"user_id\": \"student-a\", \"suspicion_score\": \"high\"}]}";
+
+        Map<String, AntiCheatService.AnalysisResult> results = await(new AntiCheatService(baseUrl, false), frames());
+
+        assertEquals(1, results.size());
+        AntiCheatService.AnalysisResult a = results.get("student-a");
+        assertEquals("OK", a.decision);
+        assertEquals(0.0, a.suspicionScore);
+    }
+
+    @Test
+    void unreachableServiceYieldsEmptyResults() throws Exception {
+        server.stop(0);
+
+        assertTrue(await(new AntiCheatService(baseUrl, false), frames()).isEmpty());
+    }
+
+    @Test
+    void emptyBatchDoesNotCallService() throws Exception {
+        AntiCheatService service = new AntiCheatService(baseUrl, false);
+
+        assertTrue(await(service, List.of()).isEmpty());
+        assertTrue(service.analyzeBatch(" ", frames()).get(10, TimeUnit.SECONDS).isEmpty());
+        assertNull(requestPath);
+    }
+}